@@ -0,0 +1,31 @@
+package place.benchmark;
+
+/**
+ * A kernel that is measured by the BenchmarkRunner. run() does one
+ * operation of the kernel. It returns a value that depends on the
+ * result of the operation, the runner consumes these values so the
+ * JIT compiler can't remove the work.
+ */
+public abstract class Benchmark {
+
+    private final String name;
+
+    protected Benchmark(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Called once, before the warmup iterations. Benchmarks that share
+     * expensive state should build it here, not in their constructor,
+     * so benchmarks that are filtered out cost nothing.
+     */
+    public void setUp() {
+        // Do nothing
+    }
+
+    public abstract double run();
+}
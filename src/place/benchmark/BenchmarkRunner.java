@@ -0,0 +1,193 @@
+package place.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import place.interfaces.Logger;
+import place.interfaces.Options;
+
+/**
+ * Measures the throughput and the allocation rate of benchmarks.
+ *
+ * Every benchmark first runs a number of warmup iterations, so the hot
+ * code is compiled, and then a number of measured iterations. In every
+ * iteration run() is called until the iteration time has passed. The
+ * throughput is the mean number of operations per second over the
+ * measured iterations, the error is the standard deviation.
+ *
+ * The allocated bytes per operation are counted over all threads, so
+ * the allocations of worker threads are included. They are only
+ * reported if the JVM supports com.sun.management.ThreadMXBean.
+ */
+public class BenchmarkRunner {
+
+    private static final String
+        O_WARMUP_ITERATIONS = "benchmark warmup iterations",
+        O_ITERATIONS = "benchmark iterations",
+        O_ITERATION_TIME = "benchmark iteration time",
+        O_FILTER = "benchmark filter";
+
+    public static void initOptions(Options options) {
+        options.add(
+                O_WARMUP_ITERATIONS,
+                "number of iterations before the measurement starts",
+                new Integer(5));
+
+        options.add(
+                O_ITERATIONS,
+                "number of measured iterations",
+                new Integer(10));
+
+        options.add(
+                O_ITERATION_TIME,
+                "duration of one iteration in milliseconds",
+                new Integer(1000));
+
+        options.add(
+                O_FILTER,
+                "only run the benchmarks whose name contains a match of this regex",
+                "");
+    }
+
+
+    private final Logger logger;
+
+    private final int warmupIterations, iterations;
+    private final long iterationTime;
+    private final Pattern filter;
+
+    private final com.sun.management.ThreadMXBean threadBean;
+
+    // The results of the operations end up here
+    private volatile double sink;
+
+    public BenchmarkRunner(Options options, Logger logger) {
+        this.logger = logger;
+
+        this.warmupIterations = options.getInteger(O_WARMUP_ITERATIONS);
+        this.iterations = Math.max(1, options.getInteger(O_ITERATIONS));
+        this.iterationTime = options.getInteger(O_ITERATION_TIME) * 1000000L;
+        this.filter = Pattern.compile(options.getString(O_FILTER));
+
+        this.threadBean = BenchmarkRunner.getThreadBean();
+    }
+
+    private static com.sun.management.ThreadMXBean getThreadBean() {
+        java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if(!(threadBean instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+
+        com.sun.management.ThreadMXBean sunThreadBean = (com.sun.management.ThreadMXBean) threadBean;
+        if(!sunThreadBean.isThreadAllocatedMemorySupported()) {
+            return null;
+        }
+
+        sunThreadBean.setThreadAllocatedMemoryEnabled(true);
+        return sunThreadBean;
+    }
+
+
+    public void run(List<Benchmark> benchmarks) {
+        int maxNameLength = "Benchmark".length();
+        for(Benchmark benchmark : benchmarks) {
+            maxNameLength = Math.max(maxNameLength, benchmark.getName().length());
+        }
+        String format = "%-" + maxNameLength + "s   %14s   %12s   %12s\n";
+
+        if(this.threadBean == null) {
+            this.logger.println("Allocated bytes can't be measured on this JVM\n");
+        }
+
+        this.logger.printf(format, "Benchmark", "ops/s", "error", "B/op");
+
+        for(Benchmark benchmark : benchmarks) {
+            if(!this.filter.matcher(benchmark.getName()).find()) {
+                continue;
+            }
+
+            benchmark.setUp();
+
+            for(int iteration = 0; iteration < this.warmupIterations; iteration++) {
+                this.runIteration(benchmark);
+            }
+
+            double[] throughputs = new double[this.iterations];
+            long totalOperations = 0, totalBytes = 0;
+            for(int iteration = 0; iteration < this.iterations; iteration++) {
+                long bytesBefore = this.allocatedBytes();
+                long timeBefore = System.nanoTime();
+
+                long operations = this.runIteration(benchmark);
+
+                long time = System.nanoTime() - timeBefore;
+                long bytes = this.allocatedBytes() - bytesBefore;
+
+                throughputs[iteration] = operations * 1e9 / time;
+                totalOperations += operations;
+                totalBytes += Math.max(0, bytes);
+            }
+
+            this.logger.printf(
+                    format,
+                    benchmark.getName(),
+                    String.format("%.4g", this.mean(throughputs)),
+                    String.format("%.2g", this.standardDeviation(throughputs)),
+                    this.threadBean == null ? "-" : String.format("%.4g", (double) totalBytes / totalOperations));
+        }
+
+        this.logger.println();
+    }
+
+    private long runIteration(Benchmark benchmark) {
+        long operations = 0;
+        double result = 0;
+
+        long end = System.nanoTime() + this.iterationTime;
+        do {
+            result += benchmark.run();
+            operations++;
+        } while(System.nanoTime() < end);
+
+        this.sink = result;
+        return operations;
+    }
+
+    private long allocatedBytes() {
+        if(this.threadBean == null) {
+            return 0;
+        }
+
+        long bytes = 0;
+        for(long threadBytes : this.threadBean.getThreadAllocatedBytes(this.threadBean.getAllThreadIds())) {
+            // -1 for threads that have died in the meantime
+            if(threadBytes > 0) {
+                bytes += threadBytes;
+            }
+        }
+        return bytes;
+    }
+
+
+    private double mean(double[] values) {
+        double sum = 0;
+        for(double value : values) {
+            sum += value;
+        }
+        return sum / values.length;
+    }
+
+    private double standardDeviation(double[] values) {
+        if(values.length < 2) {
+            return 0;
+        }
+
+        double mean = this.mean(values);
+        double sum = 0;
+        for(double value : values) {
+            sum += (value - mean) * (value - mean);
+        }
+        return Math.sqrt(sum / (values.length - 1));
+    }
+}
@@ -0,0 +1,71 @@
+package place.benchmark;
+
+import java.util.Random;
+
+import place.mathtools.CGSolver;
+import place.mathtools.Csr;
+
+/**
+ * Solves a synthetic system with the structure of a placement system:
+ * the blocks are on a square grid, every block is connected to its
+ * right and bottom neighbour, and every block has a weak anchor to a
+ * random position. The size of the system doesn't depend on a circuit.
+ */
+public class CGSolverBenchmark extends Benchmark {
+
+    private static final double ANCHOR_WEIGHT = 0.01, EPSILON = 1e-4;
+
+    private final int gridSize;
+    private final CGSolver.Preconditioner preconditioner;
+    private final Random random;
+
+    private CGSolver solver;
+
+    public CGSolverBenchmark(int gridSize, CGSolver.Preconditioner preconditioner, Random random) {
+        super(String.format("CGSolver.solve %dx%d %s", gridSize, gridSize, preconditioner.toString().toLowerCase()));
+
+        this.gridSize = gridSize;
+        this.preconditioner = preconditioner;
+        this.random = random;
+    }
+
+    @Override
+    public void setUp() {
+        int size = this.gridSize;
+        int numRows = size * size;
+
+        Csr matrix = new Csr(numRows);
+        double[] vector = new double[numRows];
+
+        for(int row = 0; row < size; row++) {
+            for(int column = 0; column < size; column++) {
+                int index = row * size + column;
+
+                if(column + 1 < size) {
+                    this.addConnection(matrix, index, index + 1);
+                }
+                if(row + 1 < size) {
+                    this.addConnection(matrix, index, index + size);
+                }
+
+                matrix.addElement(index, index, ANCHOR_WEIGHT);
+                vector[index] = ANCHOR_WEIGHT * this.random.nextDouble() * size;
+            }
+        }
+
+        matrix.prepareArrays();
+        this.solver = new CGSolver(matrix, vector, this.preconditioner, null);
+    }
+
+    private void addConnection(Csr matrix, int index1, int index2) {
+        matrix.addElement(index1, index1, 1);
+        matrix.addElement(index1, index2, -1);
+        matrix.addElement(index2, index1, -1);
+        matrix.addElement(index2, index2, 1);
+    }
+
+    @Override
+    public double run() {
+        return this.solver.solve(EPSILON)[0];
+    }
+}
@@ -1,5 +1,7 @@
 package place.circuit;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -18,6 +20,7 @@ import place.circuit.block.GlobalBlock;
 import place.circuit.block.IOSite;
 import place.circuit.block.Macro;
 import place.circuit.block.Site;
+import place.circuit.pin.AbstractPin;
 import place.circuit.pin.GlobalPin;
 import place.circuit.timing.TimingGraph;
 
@@ -59,6 +62,22 @@ public class Circuit {
 
         this.timingGraph.build();
 
+        this.compactBlocks();
+    }
+
+    /**
+     * Same as initializeData(), but the timing graph is read from a
+     * circuit snapshot instead of being built from the netlist.
+     */
+    public void initializeData(ByteBuffer timingGraphData, List<AbstractPin> pins) throws IOException {
+        this.loadBlocks();
+
+        this.timingGraph.read(timingGraphData, pins);
+
+        this.compactBlocks();
+    }
+
+    private void compactBlocks() {
         for(List<AbstractBlock> blocksOfType : this.blocks.values()) {
             for(AbstractBlock block : blocksOfType) {
                 block.compact();
@@ -115,6 +115,32 @@ public class Architecture implements Serializable {
     }
 
 
+    /**
+     * Restore the parsed architecture and delay tables from the cache,
+     * instead of parsing the architecture file. Returns false if the
+     * cache has no entry for these files.
+     */
+    public boolean loadFromCache(ArchitectureCache cache, File lookupDumpFile) throws IOException {
+        Architecture cached = cache.load(this.architectureFile, lookupDumpFile);
+        if(cached == null) {
+            return false;
+        }
+
+        this.autoSize = cached.autoSize;
+        this.autoRatio = cached.autoRatio;
+        this.width = cached.width;
+        this.height = cached.height;
+        this.ioCapacity = cached.ioCapacity;
+        this.delayTables = cached.delayTables;
+
+        return true;
+    }
+
+    public void storeInCache(ArchitectureCache cache, File lookupDumpFile) throws IOException {
+        cache.store(this, this.architectureFile, lookupDumpFile);
+    }
+
+
     private void processLayout(Element root) {
         Element layoutElement = this.getFirstChild(root, "layout");
 
@@ -909,6 +935,36 @@ public class Architecture implements Serializable {
         this.buildDelayTables(lookupDumpFile);
     }
 
+    /**
+     * Build the delay tables in-process for a circuit of the given size,
+     * with a routing model that is calibrated on the tables in a vpr
+     * lookup dump. The dump may be for another grid size. The circuit
+     * may already refer to the delay tables of this architecture, they
+     * are updated in place.
+     */
+    public void generateDelayTables(File lookupDumpFile, int width, int height) throws IOException, InvalidFileFormatException, ParserConfigurationException, SAXException {
+        DelayTables reference = new DelayTables(lookupDumpFile);
+        reference.parse();
+
+        DelayTableGenerator.Calibration calibration = DelayTableGenerator.calibrate(this.architectureFile, reference);
+        DelayTableGenerator generator = new DelayTableGenerator(this.architectureFile, width, height, calibration);
+        this.delayTables.setTables(generator.generate());
+    }
+
+    public boolean loadDelayTablesFromCache(ArchitectureCache cache, File lookupDumpFile, int width, int height) throws IOException {
+        DelayTables cached = cache.loadDelayTables(this.architectureFile, lookupDumpFile, width, height);
+        if(cached == null) {
+            return false;
+        }
+
+        this.delayTables.setTables(cached);
+        return true;
+    }
+
+    public void storeDelayTablesInCache(ArchitectureCache cache, File lookupDumpFile, int width, int height) throws IOException {
+        cache.storeDelayTables(this.delayTables, this.architectureFile, lookupDumpFile, width, height);
+    }
+
     private void buildDelayTables(File lookupDumpFile) throws IOException, InvalidFileFormatException {
         // Parse the delay tables
         this.delayTables = new DelayTables(lookupDumpFile);
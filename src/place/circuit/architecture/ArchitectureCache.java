@@ -0,0 +1,164 @@
+package place.circuit.architecture;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Disk cache for parsed architectures. An entry contains the
+ * serialized Architecture, including the BlockTypeData and
+ * PortTypeData singletons and the delay tables. Entries are keyed
+ * by a hash of the architecture file and the lookup dump file, so
+ * an entry is never used for another device or another set of
+ * delay tables.
+ *
+ * Delay tables that are generated in-process have their own entries,
+ * keyed by a hash of the architecture file, the lookup dump file the
+ * model is calibrated on and the size of the grid.
+ */
+public class ArchitectureCache {
+
+    // Increase this when the serialized form of the architecture changes
+    private static final int VERSION = 2;
+    private static final String EXTENSION = ".place.arch";
+    private static final String DELAY_TABLES_EXTENSION = ".place.delays";
+
+    private final File directory;
+
+    public ArchitectureCache(File directory) {
+        this.directory = directory;
+    }
+
+
+    /**
+     * Returns the cached architecture for this combination of files,
+     * or null if there is no valid cache entry. Loading an entry
+     * replaces the BlockTypeData and PortTypeData singletons.
+     */
+    Architecture load(File architectureFile, File lookupDumpFile) throws IOException {
+        File entry = this.getEntry(architectureFile, lookupDumpFile);
+        if(!entry.exists()) {
+            return null;
+        }
+
+        try(ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(entry)))) {
+            return (Architecture) in.readObject();
+
+        } catch(ClassNotFoundException | ClassCastException | IOException error) {
+            // The entry was written by an incompatible version, or is corrupt
+            Files.deleteIfExists(entry.toPath());
+            return null;
+        }
+    }
+
+    void store(Architecture architecture, File architectureFile, File lookupDumpFile) throws IOException {
+        this.store(architecture, this.getEntry(architectureFile, lookupDumpFile));
+    }
+
+
+    /**
+     * Returns the cached generated delay tables for this architecture,
+     * calibration and grid size, or null if there is no valid cache
+     * entry.
+     */
+    DelayTables loadDelayTables(File architectureFile, File lookupDumpFile, int width, int height) throws IOException {
+        File entry = this.getDelayTablesEntry(architectureFile, lookupDumpFile, width, height);
+        if(!entry.exists()) {
+            return null;
+        }
+
+        try(ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(entry)))) {
+            return (DelayTables) in.readObject();
+
+        } catch(ClassNotFoundException | ClassCastException | IOException error) {
+            Files.deleteIfExists(entry.toPath());
+            return null;
+        }
+    }
+
+    void storeDelayTables(DelayTables delayTables, File architectureFile, File lookupDumpFile, int width, int height) throws IOException {
+        this.store(delayTables, this.getDelayTablesEntry(architectureFile, lookupDumpFile, width, height));
+    }
+
+
+    private void store(Object object, File entry) throws IOException {
+        if(!this.directory.exists()) {
+            Files.createDirectories(this.directory.toPath());
+        }
+
+        // Write to a temporary file first, so that concurrent runs
+        // never see a partially written entry
+        File tmpEntry = File.createTempFile("arch", ".tmp", this.directory);
+
+        try(ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmpEntry)))) {
+            out.writeObject(object);
+        }
+
+        Files.move(tmpEntry.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+
+    private File getEntry(File architectureFile, File lookupDumpFile) throws IOException {
+        MessageDigest digest = this.newDigest(architectureFile);
+
+        if(lookupDumpFile == null) {
+            digest.update("no delay tables\n".getBytes(StandardCharsets.US_ASCII));
+        } else {
+            digest.update("delay tables\n".getBytes(StandardCharsets.US_ASCII));
+            this.update(digest, lookupDumpFile);
+        }
+
+        return new File(this.directory, this.toHex(digest) + EXTENSION);
+    }
+
+    private File getDelayTablesEntry(File architectureFile, File lookupDumpFile, int width, int height) throws IOException {
+        MessageDigest digest = this.newDigest(architectureFile);
+        digest.update(("generated delay tables " + width + "x" + height + "\n").getBytes(StandardCharsets.US_ASCII));
+        this.update(digest, lookupDumpFile);
+
+        return new File(this.directory, this.toHex(digest) + DELAY_TABLES_EXTENSION);
+    }
+
+    private MessageDigest newDigest(File architectureFile) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch(NoSuchAlgorithmException error) {
+            throw new IOException(error);
+        }
+
+        digest.update(("version " + VERSION + "\n").getBytes(StandardCharsets.US_ASCII));
+        this.update(digest, architectureFile);
+
+        return digest;
+    }
+
+    private String toHex(MessageDigest digest) {
+        StringBuilder hash = new StringBuilder();
+        for(byte b : digest.digest()) {
+            hash.append(String.format("%02x", b));
+        }
+        return hash.toString();
+    }
+
+    private void update(MessageDigest digest, File file) throws IOException {
+        byte[] buffer = new byte[1 << 16];
+        try(InputStream in = new FileInputStream(file)) {
+            int read;
+            while((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+    }
+}
@@ -110,6 +110,9 @@ public class BlockType implements Serializable, Comparable<BlockType> {
     public int[] getChildRange(BlockType blockType) {
         return BlockTypeData.getInstance().getChildRange(this.typeIndex, this.modeIndex, blockType.typeIndex);
     }
+    public List<BlockType> getChildTypes() {
+        return BlockTypeData.getInstance().getChildTypes(this.typeIndex, this.modeIndex);
+    }
 
 
 
@@ -3,6 +3,7 @@ package place.circuit.architecture;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -254,4 +255,29 @@ class BlockTypeData implements Serializable {
         int[] childRange = {childStart, childEnd};
         return childRange;
     }
+
+    /**
+     * Returns the child types of a block type in a mode, without a mode,
+     * in the order of their child ranges.
+     */
+    List<BlockType> getChildTypes(int typeIndex, int modeIndex) {
+        final List<Integer> modeChildStarts = this.childStarts.get(typeIndex).get(modeIndex);
+
+        List<BlockType> childTypes = new ArrayList<BlockType>();
+        int numTypes = this.types.size();
+        for(int childTypeIndex = 0; childTypeIndex < numTypes; childTypeIndex++) {
+            if(modeChildStarts.get(childTypeIndex) != null) {
+                childTypes.add(new BlockType(childTypeIndex));
+            }
+        }
+
+        Collections.sort(childTypes, new Comparator<BlockType>() {
+            @Override
+            public int compare(BlockType type1, BlockType type2) {
+                return modeChildStarts.get(type1.getTypeIndex()).compareTo(modeChildStarts.get(type2.getTypeIndex()));
+            }
+        });
+
+        return childTypes;
+    }
 }
@@ -0,0 +1,141 @@
+package place.circuit.architecture;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.xml.sax.SAXException;
+
+import place.circuit.exceptions.InvalidFileFormatException;
+import place.interfaces.Logger;
+
+/**
+ * Compares the delay tables of DelayTableGenerator with the tables in
+ * a lookup dump of vpr, on the grid size of the dump. The relative
+ * error of every entry that is in both tables is calculated. The entry
+ * at distance (0, 0) is skipped, because DelayTables never looks it
+ * up, and so are entries with a reference delay of 0. The maximal and
+ * mean relative error are reported per table and over all tables.
+ *
+ * The comparison runs twice. The first time, the model is calibrated
+ * on the whole dump. The second time, it is only calibrated on the
+ * entries of the dump within half the distance in x and y, so the
+ * other entries show how well the model extrapolates to larger
+ * distances and grids. The check fails if the mean relative error
+ * over all tables is larger than the tolerance in either run.
+ */
+public class DelayTableCheck {
+
+    private static final BlockCategory[] CATEGORIES = {BlockCategory.CLB, BlockCategory.IO};
+
+    private final File architectureFile, lookupDumpFile;
+    private final Logger logger;
+
+    private double maxError, errorSum;
+    private int numEntries;
+
+    public DelayTableCheck(File architectureFile, File lookupDumpFile, Logger logger) {
+        this.architectureFile = architectureFile;
+        this.lookupDumpFile = lookupDumpFile;
+        this.logger = logger;
+    }
+
+    public boolean run(double tolerance) throws IOException, InvalidFileFormatException, ParserConfigurationException, SAXException {
+        DelayTables reference = new DelayTables(this.lookupDumpFile);
+        reference.parse();
+
+        List<List<Double>> clbToClb = reference.getTable(BlockCategory.CLB, BlockCategory.CLB);
+        int width = clbToClb.get(0).size() - 1;
+        int height = clbToClb.size() - 1;
+
+        boolean passed = true;
+        passed &= this.run("whole dump", reference, reference, width, height, tolerance);
+        passed &= this.run("half the distance", crop(reference, (width + 1) / 2, (height + 1) / 2), reference, width, height, tolerance);
+        return passed;
+    }
+
+    private boolean run(String calibrationName, DelayTables calibrationReference, DelayTables reference, int width, int height, double tolerance) throws IOException, InvalidFileFormatException, ParserConfigurationException, SAXException {
+        long start = System.nanoTime();
+        DelayTableGenerator.Calibration calibration = DelayTableGenerator.calibrate(this.architectureFile, calibrationReference);
+        DelayTables generated = new DelayTableGenerator(this.architectureFile, width, height, calibration).generate();
+        double runtime = (System.nanoTime() - start) * 1e-9;
+
+        this.maxError = 0;
+        this.errorSum = 0;
+        this.numEntries = 0;
+
+        this.logger.printf("Delay table check: %dx%d grid, calibrated on the %s in %.3f s\n", width, height, calibrationName, runtime);
+        this.logger.printf("wire load %.3g F per tile, pin delays %.3g %.3g %.3g %.3g s\n",
+                calibration.wireLoad,
+                calibration.pinDelays[0][0], calibration.pinDelays[1][0], calibration.pinDelays[0][1], calibration.pinDelays[1][1]);
+        this.logger.printf("%-10s | %7s | %9s | %10s | %s\n", "table", "entries", "max error", "mean error", "max at (dx, dy)");
+        for(BlockCategory fromCategory : CATEGORIES) {
+            for(BlockCategory toCategory : CATEGORIES) {
+                this.compare(
+                        fromCategory, toCategory,
+                        reference.getTable(fromCategory, toCategory),
+                        generated.getTable(fromCategory, toCategory));
+            }
+        }
+
+        double meanError = this.errorSum / Math.max(1, this.numEntries);
+        this.logger.printf("%-10s | %7d | %9.3g | %10.3g | (tolerance %.3g on the mean)\n\n", "all", this.numEntries, this.maxError, meanError, tolerance);
+
+        return this.numEntries > 0 && meanError <= tolerance;
+    }
+
+    private static DelayTables crop(DelayTables tables, int maxDeltaX, int maxDeltaY) {
+        return new DelayTables(
+                crop(tables.getTable(BlockCategory.IO, BlockCategory.IO), maxDeltaX, maxDeltaY),
+                crop(tables.getTable(BlockCategory.IO, BlockCategory.CLB), maxDeltaX, maxDeltaY),
+                crop(tables.getTable(BlockCategory.CLB, BlockCategory.IO), maxDeltaX, maxDeltaY),
+                crop(tables.getTable(BlockCategory.CLB, BlockCategory.CLB), maxDeltaX, maxDeltaY));
+    }
+
+    private static List<List<Double>> crop(List<List<Double>> table, int maxDeltaX, int maxDeltaY) {
+        List<List<Double>> cropped = new ArrayList<>();
+        for(List<Double> row : table.subList(0, Math.min(table.size(), maxDeltaY + 1))) {
+            cropped.add(new ArrayList<>(row.subList(0, Math.min(row.size(), maxDeltaX + 1))));
+        }
+        return cropped;
+    }
+
+    private void compare(BlockCategory fromCategory, BlockCategory toCategory, List<List<Double>> reference, List<List<Double>> generated) {
+        double maxError = 0, errorSum = 0;
+        int numEntries = 0, maxDeltaX = 0, maxDeltaY = 0;
+
+        int numRows = Math.min(reference.size(), generated.size());
+        for(int deltaY = 0; deltaY < numRows; deltaY++) {
+            List<Double> referenceRow = reference.get(deltaY);
+            List<Double> generatedRow = generated.get(deltaY);
+
+            int numColumns = Math.min(referenceRow.size(), generatedRow.size());
+            for(int deltaX = 0; deltaX < numColumns; deltaX++) {
+                double referenceDelay = referenceRow.get(deltaX);
+                if(deltaX == 0 && deltaY == 0 || referenceDelay <= 0) {
+                    continue;
+                }
+
+                double error = Math.abs(generatedRow.get(deltaX) - referenceDelay) / referenceDelay;
+                errorSum += error;
+                numEntries++;
+
+                if(error > maxError) {
+                    maxError = error;
+                    maxDeltaX = deltaX;
+                    maxDeltaY = deltaY;
+                }
+            }
+        }
+
+        String name = fromCategory.toString().toLowerCase() + "_to_" + toCategory.toString().toLowerCase();
+        this.logger.printf("%-10s | %7d | %9.3g | %10.3g | (%d, %d)\n", name, numEntries, maxError, errorSum / Math.max(1, numEntries), maxDeltaX, maxDeltaY);
+
+        this.maxError = Math.max(this.maxError, maxError);
+        this.errorSum += errorSum;
+        this.numEntries += numEntries;
+    }
+}
@@ -0,0 +1,522 @@
+package place.circuit.architecture;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import place.circuit.exceptions.InvalidFileFormatException;
+
+/**
+ * Builds the delay tables in-process, for the grid size of the circuit,
+ * from a model of the routing that is calibrated on a lookup dump of
+ * vpr. One dump per architecture is enough: the model extrapolates to
+ * other grid sizes, where the tables of the dump would be clamped.
+ *
+ * The routing resources are modelled on the level of tiles: a wire
+ * segment of length L that is driven in a tile reaches the tiles at
+ * distance 1..L in one direction. Turns and new wires are possible at
+ * the switch points of the segment (the sb pattern), input pins can be
+ * reached where the cb pattern allows it. Wires are cut off at the
+ * edge of the grid. The delay of a wire is the Elmore delay of its
+ * driving switch and the wire itself, the delay of the input
+ * connection block is added at the sink.
+ *
+ * Two parts of the delay depend on the channel width and the Fc values
+ * vpr routed with, which are not in the architecture file: the input
+ * capacitance of the switches that every tile of a wire drives, and
+ * the delay from the block to the routing and back. They are the
+ * Calibration. Without one, the model only counts the metal of the
+ * wires and underestimates the delays by about a factor 2.
+ *
+ * A wave expansion (Dijkstra) from one CLB and one IO tile gives the
+ * delay to every tile in the grid. As in vpr, the tables are indexed
+ * by the distance to that source. The fabric is homogeneous in this
+ * model, so the IO-to-IO and CLB-to-IO tables are the IO-to-CLB and
+ * CLB-to-CLB tables, apart from the pin delays of the calibration. The
+ * two expansions run in parallel.
+ *
+ * ASM: the architecture has a switchlist and a segmentlist in the
+ * format of vpr 7. A switch that has no Tdel attribute uses the
+ * largest delay of its Tdel children.
+ */
+class DelayTableGenerator {
+
+    // The tables, in the order of the pin delays of a calibration
+    private static final BlockCategory[] CATEGORIES = {BlockCategory.CLB, BlockCategory.IO};
+
+    // The range of the wire load in the calibration, relative to the
+    // largest metal capacitance per tile of the segments
+    private static final double MAX_RELATIVE_WIRE_LOAD = 20;
+    private static final int CALIBRATION_SCAN_STEPS = 40, CALIBRATION_REFINE_STEPS = 30;
+
+    private final File architectureFile;
+    private final int gridWidth, gridHeight;
+    private final Calibration calibration;
+
+    private final List<Segment> segments = new ArrayList<>();
+    private double inputPinDelay;
+
+    /**
+     * width and height are the size of the circuit without the IO ring.
+     */
+    DelayTableGenerator(File architectureFile, int width, int height, Calibration calibration) {
+        this.architectureFile = architectureFile;
+        this.gridWidth = width + 2;
+        this.gridHeight = height + 2;
+        this.calibration = calibration;
+    }
+
+
+    DelayTables generate() throws IOException, InvalidFileFormatException, ParserConfigurationException, SAXException {
+        this.parseRouting();
+
+        double[][][] tables = this.expand(this.calibration.wireLoad);
+        double[][] pinDelays = this.calibration.pinDelays;
+
+        return new DelayTables(
+                toMatrix(tables[1], pinDelays[1][1]),
+                toMatrix(tables[1], pinDelays[1][0]),
+                toMatrix(tables[0], pinDelays[0][1]),
+                toMatrix(tables[0], pinDelays[0][0]));
+    }
+
+    /**
+     * Returns the tables of the CLB and the IO source, without the pin
+     * delays. The two expansions run in parallel.
+     */
+    private double[][][] expand(double wireLoad) throws IOException {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        Future<double[][]> clbTable = pool.submit(new Expansion(1, 1, wireLoad));
+        Future<double[][]> ioTable = pool.submit(new Expansion(0, 1, wireLoad));
+
+        try {
+            return new double[][][] {clbTable.get(), ioTable.get()};
+
+        } catch(InterruptedException | ExecutionException error) {
+            throw new IOException("Failed to generate the delay tables", error);
+        }
+    }
+
+    private static List<List<Double>> toMatrix(double[][] table, double pinDelay) {
+        List<List<Double>> matrix = new ArrayList<>(table.length);
+        for(int deltaY = 0; deltaY < table.length; deltaY++) {
+            List<Double> matrixRow = new ArrayList<>(table[deltaY].length);
+            for(int deltaX = 0; deltaX < table[deltaY].length; deltaX++) {
+                // The delay to the source tile itself is never looked up
+                matrixRow.add(deltaX == 0 && deltaY == 0 ? 0 : table[deltaY][deltaX] + pinDelay);
+            }
+            matrix.add(matrixRow);
+        }
+        return matrix;
+    }
+
+
+    /********************************************
+     * Calibration of the model on a vpr dump   *
+     ********************************************/
+
+    /**
+     * The parameters of the model that are not in the architecture
+     * file. wireLoad is the capacitance that every tile of a wire
+     * drives, on top of its metal. pinDelays[source][sink] is the delay
+     * from the source block to the routing and from the routing to the
+     * sink block, on top of the input connection block, for CLBs (0)
+     * and IOs (1). The pin delays also absorb the constant part of the
+     * error of the model, so they can be negative.
+     */
+    static class Calibration implements Serializable {
+        private static final long serialVersionUID = 4186227398451022035L;
+
+        final double wireLoad;
+        final double[][] pinDelays;
+        final double meanError;
+
+        Calibration(double wireLoad, double[][] pinDelays, double meanError) {
+            this.wireLoad = wireLoad;
+            this.pinDelays = pinDelays;
+            this.meanError = meanError;
+        }
+    }
+
+    /**
+     * Fit the calibration on the tables of a vpr lookup dump. The grid
+     * size is derived from the size of the CLB-to-CLB table. For a
+     * given wire load, the best pin delays are the mean differences
+     * between the tables of the dump and of the model. The wire load
+     * that gives the smallest mean relative error is found by a scan
+     * over a range of loads, followed by a golden section search
+     * around the best load of the scan.
+     */
+    static Calibration calibrate(File architectureFile, DelayTables reference) throws IOException, InvalidFileFormatException, ParserConfigurationException, SAXException {
+        List<List<Double>> clbToClb = reference.getTable(BlockCategory.CLB, BlockCategory.CLB);
+        int width = clbToClb.get(0).size() - 1;
+        int height = clbToClb.size() - 1;
+
+        DelayTableGenerator generator = new DelayTableGenerator(architectureFile, width, height, null);
+        generator.parseRouting();
+
+        double maxMetal = 0;
+        for(Segment segment : generator.segments) {
+            maxMetal = Math.max(maxMetal, segment.capacitance);
+        }
+        double maxLoad = MAX_RELATIVE_WIRE_LOAD * maxMetal;
+        double step = maxLoad / CALIBRATION_SCAN_STEPS;
+
+        Calibration best = null;
+        for(int i = 0; i <= CALIBRATION_SCAN_STEPS; i++) {
+            Calibration calibration = generator.fit(reference, i * step);
+            if(best == null || calibration.meanError < best.meanError) {
+                best = calibration;
+            }
+        }
+
+        double ratio = (Math.sqrt(5) - 1) / 2;
+        double low = Math.max(0, best.wireLoad - step), high = Math.min(maxLoad, best.wireLoad + step);
+        Calibration left = generator.fit(reference, high - ratio * (high - low));
+        Calibration right = generator.fit(reference, low + ratio * (high - low));
+        for(int i = 0; i < CALIBRATION_REFINE_STEPS; i++) {
+            if(left.meanError < right.meanError) {
+                high = right.wireLoad;
+                right = left;
+                left = generator.fit(reference, high - ratio * (high - low));
+            } else {
+                low = left.wireLoad;
+                left = right;
+                right = generator.fit(reference, low + ratio * (high - low));
+            }
+        }
+
+        for(Calibration calibration : new Calibration[] {left, right}) {
+            if(calibration.meanError < best.meanError) {
+                best = calibration;
+            }
+        }
+        return best;
+    }
+
+    private Calibration fit(DelayTables reference, double wireLoad) throws IOException {
+        double[][][] tables = this.expand(wireLoad);
+
+        double[][] pinDelays = new double[2][2];
+        double errorSum = 0;
+        int numEntries = 0;
+
+        for(int source = 0; source < 2; source++) {
+            for(int sink = 0; sink < 2; sink++) {
+                List<List<Double>> referenceTable = reference.getTable(CATEGORIES[source], CATEGORIES[sink]);
+                double[][] table = tables[source];
+
+                // The pin delay that minimizes the squared error
+                double differenceSum = 0;
+                int numTableEntries = 0;
+                for(int deltaY = 0; deltaY < Math.min(table.length, referenceTable.size()); deltaY++) {
+                    List<Double> referenceRow = referenceTable.get(deltaY);
+                    for(int deltaX = 0; deltaX < Math.min(table[deltaY].length, referenceRow.size()); deltaX++) {
+                        if(deltaX != 0 || deltaY != 0) {
+                            differenceSum += referenceRow.get(deltaX) - table[deltaY][deltaX];
+                            numTableEntries++;
+                        }
+                    }
+                }
+                double pinDelay = differenceSum / Math.max(1, numTableEntries);
+                pinDelays[source][sink] = pinDelay;
+
+                for(int deltaY = 0; deltaY < Math.min(table.length, referenceTable.size()); deltaY++) {
+                    List<Double> referenceRow = referenceTable.get(deltaY);
+                    for(int deltaX = 0; deltaX < Math.min(table[deltaY].length, referenceRow.size()); deltaX++) {
+                        double referenceDelay = referenceRow.get(deltaX);
+                        if((deltaX != 0 || deltaY != 0) && referenceDelay > 0) {
+                            errorSum += Math.abs(table[deltaY][deltaX] + pinDelay - referenceDelay) / referenceDelay;
+                            numEntries++;
+                        }
+                    }
+                }
+            }
+        }
+
+        return new Calibration(wireLoad, pinDelays, errorSum / Math.max(1, numEntries));
+    }
+
+
+    /********************************************
+     * Read the switches and segments of the    *
+     * routing architecture                     *
+     ********************************************/
+
+    private void parseRouting() throws IOException, InvalidFileFormatException, ParserConfigurationException, SAXException {
+        if(!this.segments.isEmpty()) {
+            return;
+        }
+
+        Element root = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(this.architectureFile).getDocumentElement();
+
+        Element switchList = getFirstChild(root, "switchlist");
+        Element segmentList = getFirstChild(root, "segmentlist");
+        if(switchList == null || segmentList == null) {
+            throw new InvalidFileFormatException("The architecture has no switchlist or segmentlist");
+        }
+
+        Map<String, Switch> switches = new HashMap<>();
+        for(Element switchElement : getChildElements(switchList, "switch")) {
+            Switch routingSwitch = new Switch(switchElement);
+            switches.put(switchElement.getAttribute("name"), routingSwitch);
+        }
+
+        // The switch between a routing wire and an input pin
+        String inputSwitchName = "ipin_cblock";
+        Element device = getFirstChild(root, "device");
+        Element connectionBlock = device == null ? null : getFirstChild(device, "connection_block");
+        if(connectionBlock != null && connectionBlock.hasAttribute("input_switch_name")) {
+            inputSwitchName = connectionBlock.getAttribute("input_switch_name");
+        }
+        Switch inputSwitch = switches.get(inputSwitchName);
+        this.inputPinDelay = inputSwitch == null ? 0 : inputSwitch.delay;
+
+        for(Element segmentElement : getChildElements(segmentList, "segment")) {
+            if(segmentElement.hasAttribute("freq") && Double.parseDouble(segmentElement.getAttribute("freq")) <= 0) {
+                continue;
+            }
+
+            // Unidirectional segments are driven by a mux, bidirectional segments by their wire switch
+            Element driverElement = getFirstChild(segmentElement, "mux");
+            if(driverElement == null) {
+                driverElement = getFirstChild(segmentElement, "wire_switch");
+            }
+            Switch driver = driverElement == null ? null : switches.get(driverElement.getAttribute("name"));
+            if(driver == null) {
+                throw new InvalidFileFormatException("Segment without a known driving switch in " + this.architectureFile);
+            }
+
+            this.segments.add(new Segment(segmentElement, driver));
+        }
+
+        if(this.segments.isEmpty()) {
+            throw new InvalidFileFormatException("The architecture has no routing segments");
+        }
+    }
+
+    private static Element getFirstChild(Element element, String tagName) {
+        List<Element> children = getChildElements(element, tagName);
+        return children.isEmpty() ? null : children.get(0);
+    }
+    private static List<Element> getChildElements(Element element, String tagName) {
+        List<Element> childElements = new ArrayList<>();
+
+        NodeList childNodes = element.getChildNodes();
+        for(int i = 0; i < childNodes.getLength(); i++) {
+            Node childNode = childNodes.item(i);
+            if(childNode.getNodeType() == Node.ELEMENT_NODE && ((Element) childNode).getTagName().equals(tagName)) {
+                childElements.add((Element) childNode);
+            }
+        }
+
+        return childElements;
+    }
+
+    private static double getDouble(Element element, String attribute) {
+        return element.hasAttribute(attribute) ? Double.parseDouble(element.getAttribute(attribute)) : 0;
+    }
+
+    private static boolean[] parsePattern(Element segmentElement, String tagName, int length) {
+        boolean[] pattern = new boolean[length];
+        Arrays.fill(pattern, true);
+
+        Element patternElement = getFirstChild(segmentElement, tagName);
+        if(patternElement != null && "pattern".equals(patternElement.getAttribute("type"))) {
+            String[] values = patternElement.getTextContent().trim().split("\\s+");
+            for(int i = 0; i < length && i < values.length; i++) {
+                pattern[i] = values[i].equals("1");
+            }
+        }
+
+        return pattern;
+    }
+
+
+    private static class Switch {
+        final double delay, resistance, outputCapacitance;
+
+        Switch(Element switchElement) {
+            double delay = getDouble(switchElement, "Tdel");
+            for(Element delayElement : getChildElements(switchElement, "Tdel")) {
+                delay = Math.max(delay, getDouble(delayElement, "delay"));
+            }
+
+            this.delay = delay;
+            this.resistance = getDouble(switchElement, "R");
+            this.outputCapacitance = getDouble(switchElement, "Cout");
+        }
+    }
+
+    private static class Segment {
+        final int length;
+        final double resistance, capacitance;
+        final Switch driver;
+
+        // Switch points are 0..length, connection points are the tiles 1..length
+        final boolean[] switchPoints, connectionPoints;
+
+        Segment(Element segmentElement, Switch driver) {
+            this.length = Math.max(1, (int) getDouble(segmentElement, "length"));
+            this.resistance = getDouble(segmentElement, "Rmetal");
+            this.capacitance = getDouble(segmentElement, "Cmetal");
+            this.driver = driver;
+
+            this.switchPoints = parsePattern(segmentElement, "sb", this.length + 1);
+            this.connectionPoints = parsePattern(segmentElement, "cb", this.length);
+        }
+
+        /**
+         * The Elmore delay from the driver of a wire of the given length
+         * to the tile at the given offset along the wire. Every tile
+         * of the wire has its metal capacitance plus the wire load.
+         */
+        double getDelay(int length, int offset, double wireLoad) {
+            double tileCapacitance = this.capacitance + wireLoad;
+            double wireCapacitance = tileCapacitance * length;
+
+            // The wire resistance up to the offset drives the capacitance downstream of it
+            double wireDelay = this.resistance * tileCapacitance * (offset * length - 0.5 * offset * offset);
+
+            return this.driver.delay
+                    + this.driver.resistance * (this.driver.outputCapacitance + wireCapacitance)
+                    + wireDelay;
+        }
+    }
+
+
+    /********************************************
+     * The wave expansion from one source tile  *
+     ********************************************/
+
+    private class Expansion implements Callable<double[][]> {
+
+        private final int sourceX, sourceY;
+        private final double wireLoad;
+
+        Expansion(int sourceX, int sourceY, double wireLoad) {
+            this.sourceX = sourceX;
+            this.sourceY = sourceY;
+            this.wireLoad = wireLoad;
+        }
+
+        @Override
+        public double[][] call() {
+            int width = DelayTableGenerator.this.gridWidth;
+            int height = DelayTableGenerator.this.gridHeight;
+
+            // The time at which a wire can be driven in a tile, and
+            // the time at which an input pin in a tile can be reached
+            double[] driveTimes = new double[width * height];
+            double[] sinkTimes = new double[width * height];
+            Arrays.fill(driveTimes, Double.MAX_VALUE);
+            Arrays.fill(sinkTimes, Double.MAX_VALUE);
+
+            PriorityQueue<QueueEntry> queue = new PriorityQueue<>();
+            int source = this.sourceY * width + this.sourceX;
+            driveTimes[source] = 0;
+            sinkTimes[source] = 0;
+            queue.add(new QueueEntry(source, 0));
+
+            int[][] directions = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}};
+
+            while(!queue.isEmpty()) {
+                QueueEntry entry = queue.poll();
+                if(entry.time > driveTimes[entry.tile]) {
+                    continue;
+                }
+
+                int x = entry.tile % width, y = entry.tile / width;
+                for(Segment segment : DelayTableGenerator.this.segments) {
+                    for(int[] direction : directions) {
+
+                        // The wire is cut off at the edge of the grid
+                        int length = segment.length;
+                        while(length > 0 && !inGrid(x + length * direction[0], y + length * direction[1], width, height)) {
+                            length--;
+                        }
+                        if(length == 0) {
+                            continue;
+                        }
+
+                        for(int offset = 1; offset <= length; offset++) {
+                            int tile = (y + offset * direction[1]) * width + x + offset * direction[0];
+
+                            double time = entry.time + segment.getDelay(length, offset, this.wireLoad);
+                            double sinkTime = time + DelayTableGenerator.this.inputPinDelay;
+
+                            if(segment.connectionPoints[offset - 1] && sinkTime < sinkTimes[tile]) {
+                                sinkTimes[tile] = sinkTime;
+                            }
+
+                            boolean switchPoint = offset == length || segment.switchPoints[offset];
+                            if(switchPoint && time < driveTimes[tile]) {
+                                driveTimes[tile] = time;
+                                queue.add(new QueueEntry(tile, time));
+                            }
+                        }
+                    }
+                }
+            }
+
+
+            // table[dy][dx] is the delay to the tile at that distance from the source
+            int maxDeltaX = Math.max(this.sourceX, width - 1 - this.sourceX);
+            int maxDeltaY = Math.max(this.sourceY, height - 1 - this.sourceY);
+            double[][] table = new double[maxDeltaY + 1][maxDeltaX + 1];
+            for(int deltaY = 0; deltaY <= maxDeltaY; deltaY++) {
+                for(int deltaX = 0; deltaX <= maxDeltaX; deltaX++) {
+                    table[deltaY][deltaX] = this.getSinkTime(sinkTimes, deltaX, deltaY, width, height);
+                }
+            }
+
+            return table;
+        }
+
+        private double getSinkTime(double[] sinkTimes, int deltaX, int deltaY, int width, int height) {
+            // Look on the side of the source where the grid is large enough
+            int x = this.sourceX + deltaX < width ? this.sourceX + deltaX : this.sourceX - deltaX;
+            int y = this.sourceY + deltaY < height ? this.sourceY + deltaY : this.sourceY - deltaY;
+
+            double time = sinkTimes[y * width + x];
+            return time == Double.MAX_VALUE ? 0 : time;
+        }
+
+        private boolean inGrid(int x, int y, int width, int height) {
+            return x >= 0 && x < width && y >= 0 && y < height;
+        }
+    }
+
+    private static class QueueEntry implements Comparable<QueueEntry> {
+        final int tile;
+        final double time;
+
+        QueueEntry(int tile, double time) {
+            this.tile = tile;
+            this.time = time;
+        }
+
+        @Override
+        public int compareTo(QueueEntry other) {
+            return Double.compare(this.time, other.time);
+        }
+    }
+}
@@ -4,6 +4,8 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -17,7 +19,7 @@ public class DelayTables implements Serializable {
 
     private boolean dummyTables = false;
     private transient File file;
-    private List<List<Double>>
+    private transient List<List<Double>>
             ioToIo = new ArrayList<>(),
             ioToClb = new ArrayList<>(),
             clbToIo = new ArrayList<>(),
@@ -31,6 +33,32 @@ public class DelayTables implements Serializable {
         this.file = file;
     }
 
+    DelayTables(
+            List<List<Double>> ioToIo,
+            List<List<Double>> ioToClb,
+            List<List<Double>> clbToIo,
+            List<List<Double>> clbToClb) {
+
+        this.ioToIo = ioToIo;
+        this.ioToClb = ioToClb;
+        this.clbToIo = clbToIo;
+        this.clbToClb = clbToClb;
+    }
+
+    /**
+     * Replace the tables by those of other. The timing edges keep a
+     * reference to the delay tables of the architecture, so tables that
+     * are built after the circuit has been loaded are copied into them.
+     */
+    void setTables(DelayTables other) {
+        this.dummyTables = other.dummyTables;
+
+        this.ioToIo = other.ioToIo;
+        this.ioToClb = other.ioToClb;
+        this.clbToIo = other.clbToIo;
+        this.clbToClb = other.clbToClb;
+    }
+
     public void parse() throws IOException, InvalidFileFormatException {
         BufferedReader reader = null;
         reader = new BufferedReader(new FileReader(this.file));
@@ -94,7 +122,48 @@ public class DelayTables implements Serializable {
     }
 
 
-    private List<List<Double>> getTable(BlockCategory fromCategory, BlockCategory toCategory) {
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+
+        this.writeMatrix(out, this.clbToClb);
+        this.writeMatrix(out, this.ioToClb);
+        this.writeMatrix(out, this.clbToIo);
+        this.writeMatrix(out, this.ioToIo);
+    }
+    private void writeMatrix(ObjectOutputStream out, List<List<Double>> matrix) throws IOException {
+        out.writeInt(matrix.size());
+        for(List<Double> row : matrix) {
+            out.writeInt(row.size());
+            for(Double delay : row) {
+                out.writeDouble(delay);
+            }
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws ClassNotFoundException, IOException {
+        in.defaultReadObject();
+
+        this.clbToClb = this.readMatrix(in);
+        this.ioToClb = this.readMatrix(in);
+        this.clbToIo = this.readMatrix(in);
+        this.ioToIo = this.readMatrix(in);
+    }
+    private List<List<Double>> readMatrix(ObjectInputStream in) throws IOException {
+        int numRows = in.readInt();
+        List<List<Double>> matrix = new ArrayList<>(numRows);
+        for(int y = 0; y < numRows; y++) {
+            int numColumns = in.readInt();
+            List<Double> row = new ArrayList<>(numColumns);
+            for(int x = 0; x < numColumns; x++) {
+                row.add(in.readDouble());
+            }
+            matrix.add(row);
+        }
+        return matrix;
+    }
+
+
+    List<List<Double>> getTable(BlockCategory fromCategory, BlockCategory toCategory) {
         if(fromCategory == BlockCategory.IO) {
             if(toCategory == BlockCategory.IO) {
                 return this.ioToIo;
@@ -1,10 +1,10 @@
 package place.circuit.block;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.List;
 import java.util.Random;
-import java.util.Set;
 
 import place.circuit.architecture.BlockType;
 import place.circuit.exceptions.FullSiteException;
@@ -16,12 +16,14 @@ import place.circuit.exceptions.InvalidBlockException;
 public class IOSite extends AbstractSite {
 
     private int capacity;
-    private Set<GlobalBlock> blocks;
+
+    // Sorted on block index, so the order doesn't depend on the order in which the blocks were added
+    private List<GlobalBlock> blocks;
 
     public IOSite(int x, int y, BlockType blockType, int capacity) {
         super(x, y, blockType);
         this.capacity = capacity;
-        this.blocks = new HashSet<GlobalBlock>(capacity);
+        this.blocks = new ArrayList<GlobalBlock>(capacity);
     }
 
 
@@ -33,13 +35,7 @@ public class IOSite extends AbstractSite {
             return null;
         }
 
-        int index = random.nextInt(size);
-        Iterator<GlobalBlock> iter = this.blocks.iterator();
-        for(int i = 0; i < index; i++) {
-            iter.next();
-        }
-
-        return iter.next();
+        return this.blocks.get(random.nextInt(size));
     }
 
     @Override
@@ -48,7 +44,11 @@ public class IOSite extends AbstractSite {
             throw new FullSiteException();
         }
 
-        this.blocks.add(block);
+        int index = Collections.binarySearch(this.blocks, block);
+        if(index < 0) {
+            index = -index - 1;
+        }
+        this.blocks.add(index, block);
     }
 
     @Override
@@ -0,0 +1,326 @@
+package place.circuit.io;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import place.circuit.Circuit;
+import place.circuit.architecture.Architecture;
+import place.circuit.architecture.BlockType;
+import place.circuit.block.AbstractBlock;
+import place.circuit.block.GlobalBlock;
+import place.circuit.block.LeafBlock;
+import place.circuit.block.LocalBlock;
+import place.circuit.pin.AbstractPin;
+import place.circuit.pin.GlobalPin;
+
+/**
+ * Binary snapshot of a parsed circuit: the blocks, the connections
+ * between their pins, the net names and the topology of the timing
+ * graph. Loading a snapshot replaces parsing the net file and
+ * traversing the netlist to build the timing graph. The file is
+ * memory-mapped while it is read.
+ *
+ * The architecture is not part of the snapshot, it has to be loaded
+ * first (the architecture cache makes that fast as well). The site
+ * grid and the macros are derived from the architecture and the block
+ * counts, they are rebuilt by Circuit.initializeData().
+ *
+ * A snapshot is only used if the architecture file and the net file
+ * have the same size and modification time as when the snapshot was
+ * written. Otherwise read() throws an IOException, and the circuit
+ * has to be parsed again.
+ */
+public class CircuitSnapshot {
+
+    // Increase this when the format of the snapshot changes
+    private static final int MAGIC = 0x504c4353, VERSION = 1;
+
+    private final File file, architectureFile, netFile;
+
+    public CircuitSnapshot(File file, File architectureFile, File netFile) {
+        this.file = file;
+        this.architectureFile = architectureFile;
+        this.netFile = netFile;
+    }
+
+
+    public Circuit read(Architecture architecture, String circuitName) throws IOException {
+        ByteBuffer input;
+        try(RandomAccessFile randomAccessFile = new RandomAccessFile(this.file, "r")) {
+            FileChannel channel = randomAccessFile.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            input = buffer;
+        }
+
+        try {
+            return this.read(input, architecture, circuitName);
+
+        } catch(BufferUnderflowException | IndexOutOfBoundsException error) {
+            throw new IOException("The circuit snapshot is corrupt", error);
+        }
+    }
+
+    private Circuit read(ByteBuffer input, Architecture architecture, String circuitName) throws IOException {
+        if(input.remaining() < 8 || input.getInt() != MAGIC || input.getInt() != VERSION) {
+            throw new IOException("Not a circuit snapshot, or written by another version: " + this.file);
+        }
+        if(input.getLong() != this.architectureFile.length()
+                || input.getLong() != this.architectureFile.lastModified()
+                || input.getLong() != this.netFile.length()
+                || input.getLong() != this.netFile.lastModified()) {
+            throw new IOException("The circuit snapshot is out of date");
+        }
+        if(input.getInt() != BlockType.getBlockTypes().size()) {
+            throw new IOException("The circuit snapshot was written for another architecture");
+        }
+
+
+        // Strings
+        int numStrings = input.getInt();
+        String[] strings = new String[numStrings];
+        for(int i = 0; i < numStrings; i++) {
+            byte[] bytes = new byte[input.getInt()];
+            input.get(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+
+        // Blocks
+        int numBlocks = input.getInt();
+        BlockRecord[] records = new BlockRecord[numBlocks];
+        for(int i = 0; i < numBlocks; i++) {
+            records[i] = new BlockRecord(
+                    strings[input.getInt()],
+                    strings[input.getInt()],
+                    strings[input.getInt()],
+                    input.getInt(),
+                    input.getInt());
+        }
+
+        AbstractBlock[] blocks = new AbstractBlock[numBlocks];
+        Map<BlockType, List<AbstractBlock>> blocksPerType = new HashMap<>();
+        for(int i = 0; i < numBlocks; i++) {
+            AbstractBlock block = this.createBlock(i, records, blocks);
+
+            AbstractBlock parent = block.getParent();
+            BlockType emptyModeType = new BlockType(parent == null ? null : parent.getType(), block.getType().getName());
+            if(!blocksPerType.containsKey(emptyModeType)) {
+                blocksPerType.put(emptyModeType, new ArrayList<AbstractBlock>());
+            }
+            blocksPerType.get(emptyModeType).add(block);
+        }
+
+
+        // Pins and connections
+        int numPins = input.getInt();
+        List<AbstractPin> pins = new ArrayList<>(numPins);
+        for(AbstractBlock block : blocks) {
+            pins.addAll(block.getPins());
+        }
+        if(pins.size() != numPins) {
+            throw new IOException("The circuit snapshot was written for another architecture");
+        }
+
+        for(AbstractPin pin : pins) {
+            int sourceIndex = input.getInt();
+            if(sourceIndex >= 0) {
+                pin.setSource(pins.get(sourceIndex));
+            }
+
+            int numSinks = input.getInt();
+            for(int i = 0; i < numSinks; i++) {
+                pin.addSink(pins.get(input.getInt()));
+            }
+
+            int netNameIndex = input.getInt();
+            if(netNameIndex >= 0) {
+                ((GlobalPin) pin).setNetName(strings[netNameIndex]);
+            }
+        }
+
+
+        Circuit circuit = new Circuit(circuitName, architecture, blocksPerType);
+        circuit.initializeData(input, pins);
+
+        return circuit;
+    }
+
+    private AbstractBlock createBlock(int blockIndex, BlockRecord[] records, AbstractBlock[] blocks) {
+        if(blocks[blockIndex] != null) {
+            return blocks[blockIndex];
+        }
+
+        // The parent has to exist before its children
+        BlockRecord record = records[blockIndex];
+        AbstractBlock parent = record.parentIndex < 0 ? null : this.createBlock(record.parentIndex, records, blocks);
+        BlockType parentBlockType = parent == null ? null : parent.getType();
+        BlockType blockType = new BlockType(parentBlockType, record.typeName, record.modeName);
+
+        AbstractBlock block;
+        if(blockType.isGlobal()) {
+            block = new GlobalBlock(record.name, blockType, record.index);
+
+        } else if(blockType.isLeaf()) {
+            AbstractBlock globalParent = parent;
+            while(globalParent.getParent() != null) {
+                globalParent = globalParent.getParent();
+            }
+            block = new LeafBlock(record.name, blockType, record.index, parent, (GlobalBlock) globalParent);
+
+        } else {
+            block = new LocalBlock(record.name, blockType, record.index, parent);
+        }
+
+        blocks[blockIndex] = block;
+        return block;
+    }
+
+    private static class BlockRecord {
+        final String name, typeName, modeName;
+        final int index, parentIndex;
+
+        BlockRecord(String name, String typeName, String modeName, int index, int parentIndex) {
+            this.name = name;
+            this.typeName = typeName;
+            this.modeName = modeName;
+            this.index = index;
+            this.parentIndex = parentIndex;
+        }
+    }
+
+
+    /**
+     * Write the snapshot of a circuit that has just been parsed. The
+     * timing graph must not have been used yet.
+     */
+    public void write(Circuit circuit) throws IOException {
+        File directory = this.file.getAbsoluteFile().getParentFile();
+        if(directory != null && !directory.exists()) {
+            Files.createDirectories(directory.toPath());
+        }
+
+        // Write to a temporary file first, so a run that reads the
+        // snapshot never sees a partially written file
+        File tmpFile = new File(this.file.getPath() + ".tmp");
+
+        try(DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), 1 << 16))) {
+            this.write(output, circuit);
+        }
+
+        Files.move(tmpFile.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void write(DataOutputStream output, Circuit circuit) throws IOException {
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+
+        output.writeLong(this.architectureFile.length());
+        output.writeLong(this.architectureFile.lastModified());
+        output.writeLong(this.netFile.length());
+        output.writeLong(this.netFile.lastModified());
+
+        List<BlockType> blockTypes = BlockType.getBlockTypes();
+        output.writeInt(blockTypes.size());
+
+
+        // The blocks are written in the order of the block lists in the
+        // circuit, so the lists are the same after reading them back
+        List<AbstractBlock> blocks = new ArrayList<>();
+        Map<AbstractBlock, Integer> blockIndexes = new IdentityHashMap<>();
+        for(BlockType blockType : blockTypes) {
+            for(AbstractBlock block : circuit.getBlocks(blockType)) {
+                blockIndexes.put(block, blocks.size());
+                blocks.add(block);
+            }
+        }
+
+        List<AbstractPin> pins = new ArrayList<>();
+        Map<AbstractPin, Integer> pinIndexes = new IdentityHashMap<>();
+        for(AbstractBlock block : blocks) {
+            for(AbstractPin pin : block.getPins()) {
+                pinIndexes.put(pin, pins.size());
+                pins.add(pin);
+            }
+        }
+
+
+        // Strings
+        List<String> strings = new ArrayList<>();
+        Map<String, Integer> stringIndexes = new HashMap<>();
+        for(AbstractBlock block : blocks) {
+            this.addString(block.getName(), strings, stringIndexes);
+            this.addString(block.getType().getName(), strings, stringIndexes);
+            this.addString(block.getType().getModeName(), strings, stringIndexes);
+        }
+        for(AbstractPin pin : pins) {
+            if(pin instanceof GlobalPin && ((GlobalPin) pin).getNetName() != null) {
+                this.addString(((GlobalPin) pin).getNetName(), strings, stringIndexes);
+            }
+        }
+
+        output.writeInt(strings.size());
+        for(String string : strings) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        }
+
+
+        // Blocks
+        output.writeInt(blocks.size());
+        for(AbstractBlock block : blocks) {
+            AbstractBlock parent = block.getParent();
+
+            output.writeInt(stringIndexes.get(block.getName()));
+            output.writeInt(stringIndexes.get(block.getType().getName()));
+            output.writeInt(stringIndexes.get(block.getType().getModeName()));
+            output.writeInt(block.getIndex());
+            output.writeInt(parent == null ? -1 : blockIndexes.get(parent));
+        }
+
+
+        // Pins and connections
+        output.writeInt(pins.size());
+        for(AbstractPin pin : pins) {
+            AbstractPin source = pin.getSource();
+            output.writeInt(source == null ? -1 : pinIndexes.get(source));
+
+            // The sinks of a global input pin are local pins, so
+            // GlobalPin.getSink() can't be used here
+            List<AbstractPin> sinks = pin.getSinks();
+            output.writeInt(sinks.size());
+            for(AbstractPin sink : sinks) {
+                output.writeInt(pinIndexes.get(sink));
+            }
+
+            String netName = pin instanceof GlobalPin ? ((GlobalPin) pin).getNetName() : null;
+            output.writeInt(netName == null ? -1 : stringIndexes.get(netName));
+        }
+
+
+        circuit.getTimingGraph().write(output, pinIndexes);
+    }
+
+    private void addString(String string, List<String> strings, Map<String, Integer> stringIndexes) {
+        if(!stringIndexes.containsKey(string)) {
+            stringIndexes.put(string, strings.size());
+            strings.add(string);
+        }
+    }
+}
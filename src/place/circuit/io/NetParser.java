@@ -1,10 +1,9 @@
 package place.circuit.io;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -20,6 +19,8 @@ import place.circuit.block.AbstractBlock;
 import place.circuit.block.GlobalBlock;
 import place.circuit.block.LeafBlock;
 import place.circuit.block.LocalBlock;
+import place.circuit.io.NetTokenizer.Symbol;
+import place.circuit.io.NetTokenizer.Token;
 import place.circuit.pin.AbstractPin;
 import place.circuit.pin.GlobalPin;
 
@@ -28,18 +29,21 @@ public class NetParser {
     //private Circuit circuit;
     private Architecture architecture;
     private String circuitName;
-    private BufferedReader reader;
+    private NetTokenizer tokenizer;
 
     private Map<BlockType, List<AbstractBlock>> blocks;
 
     // blockStack is a LinkedList because we want to be able to peekLast()
     private LinkedList<AbstractBlock> blockStack;
     private Stack<TupleBlockMap> inputsStack;
-    private Stack<Map<String, String>> outputsStack;
-    private Stack<Map<String, String>> clocksStack;
+    private Stack<Map<String, PortNets>> outputsStack;
+    private Stack<Map<String, PortNets>> clocksStack;
 
     private Map<String, AbstractPin> sourcePins;
 
+    // The port types of every block type, indexed by the id of the port name symbol
+    private Map<BlockType, PortType[]> portTypes;
+
     private enum PortDirection {INPUT, OUTPUT, CLOCK};
     private PortDirection currentPortType;
 
@@ -47,7 +51,7 @@ public class NetParser {
     public NetParser(Architecture architecture, String circuitName, File file) throws FileNotFoundException {
         this.architecture = architecture;
         this.circuitName = circuitName;
-        this.reader = new BufferedReader(new FileReader(file));
+        this.tokenizer = new NetTokenizer(file);
     }
 
 
@@ -62,8 +66,8 @@ public class NetParser {
         // processed.
         this.blockStack = new LinkedList<AbstractBlock>();
         this.inputsStack = new Stack<TupleBlockMap>();
-        this.outputsStack = new Stack<Map<String, String>>();
-        this.clocksStack = new Stack<Map<String, String>>();
+        this.outputsStack = new Stack<Map<String, PortNets>>();
+        this.clocksStack = new Stack<Map<String, PortNets>>();
 
 
         // sourcePins contains the names of the outputs of leaf blocks and
@@ -72,61 +76,43 @@ public class NetParser {
         // block is given for these nets.
         this.sourcePins = new HashMap<String, AbstractPin>();
 
-
-        String line, multiLine = "";
-
-        while ((line = this.reader.readLine()) != null) {
-            String trimmedLine = line.trim();
-
-            // Add the current line to the multiLine
-            if(multiLine.length() > 0) {
-                multiLine += " ";
-            }
-            multiLine += trimmedLine;
-
-            if(!this.isCompleteLine(multiLine)) {
-                continue;
-            }
-
+        this.portTypes = new HashMap<BlockType, PortType[]>();
 
 
-            String lineStart = multiLine.substring(0, 5);
-
-            switch(lineStart) {
-            case "<inpu":
-                this.processInputLine(multiLine);
+        Token token;
+        while((token = this.tokenizer.next()) != Token.EOF) {
+            switch(token) {
+            case INPUTS:
+                this.currentPortType = PortDirection.INPUT;
                 break;
 
-
-            case "<outp":
-                this.processOutputLine(multiLine);
+            case OUTPUTS:
+                this.currentPortType = PortDirection.OUTPUT;
                 break;
 
-            case "<cloc":
-                this.processClockLine(multiLine);
+            case CLOCKS:
+                this.currentPortType = PortDirection.CLOCK;
                 break;
 
-
-            case "<port":
-                this.processPortLine(multiLine);
+            case PORT:
+                this.processPort();
                 break;
 
-
-            case "<bloc":
-                if(!multiLine.substring(multiLine.length() - 2).equals("/>")) {
-                    this.processBlockLine(multiLine);
-                }
+            case BLOCK_START:
+                this.processBlock();
                 break;
 
-
-            case "</blo":
+            case BLOCK_END:
                 this.processBlockEndLine();
                 break;
-            }
 
-            multiLine = "";
+            default:
+                break;
+            }
         }
 
+        this.tokenizer.close();
+
 
         Circuit circuit = new Circuit(this.circuitName, this.architecture, this.blocks);
         circuit.initializeData();
@@ -135,103 +121,48 @@ public class NetParser {
     }
 
 
-    private boolean isCompleteLine(String line) {
-        int lineLength = line.length();
-
-        // The line is empty
-        if(lineLength == 0) {
-            return false;
-        }
-
-
-        // The line doesn't end with a ">" character
-        if(!line.substring(lineLength - 1).equals(">")) {
-            return false;
-        }
-
-        // The line is a port line, but not all ports are on this line
-        if(lineLength >= 7
-                && line.substring(0, 5).equals("<port")
-                && !line.substring(lineLength - 7).equals("</port>")) {
-            return false;
-        }
-
-        return true;
-    }
-
-
-
-    @SuppressWarnings("unused")
-    private void processInputLine(String line) {
-        this.currentPortType = PortDirection.INPUT;
-    }
-
-    @SuppressWarnings("unused")
-    private void processOutputLine(String line) {
-        this.currentPortType = PortDirection.OUTPUT;
-    }
-
-    @SuppressWarnings("unused")
-    private void processClockLine(String line) {
-        this.currentPortType = PortDirection.CLOCK;
-    }
-
-
-    private void processPortLine(String line) {
+    private void processPort() {
 
         // This is a clock port
         if(this.currentPortType == null) {
             return;
         }
 
-        int nameStart = 12;
-        int nameEnd = line.indexOf("\"", 12);
-        String name = line.substring(nameStart, nameEnd);
-
-        int portsStart = nameEnd + 2;
-        int portsEnd = line.length() - 7;
-        String ports = line.substring(portsStart, portsEnd);
+        // The port belongs to the block that is currently open
+        Symbol name = this.tokenizer.getPortName();
+        PortType portType = this.getPortType(this.blockStack.peek().getType(), name);
+        PortNets nets = new PortNets(portType, this.tokenizer.getNets());
 
         switch(this.currentPortType) {
             case INPUT:
-                this.inputsStack.peek().getMap().put(name, ports);
+                this.inputsStack.peek().getMap().put(name.getValue(), nets);
                 break;
 
             case OUTPUT:
-                this.outputsStack.peek().put(name, ports);
+                this.outputsStack.peek().put(name.getValue(), nets);
                 break;
 
             case CLOCK:
-                this.clocksStack.peek().put(name, ports);
+                this.clocksStack.peek().put(name.getValue(), nets);
                 break;
         }
     }
 
 
-    private void processBlockLine(String line) {
+    private void processBlock() {
 
-        int nameStart = 13;
-        int nameEnd = line.indexOf("\"", nameStart);
-        String name = line.substring(nameStart, nameEnd);
-
-        int typeStart = nameEnd + 12;
-        int typeEnd = line.indexOf("[", typeStart);
-        String type = line.substring(typeStart, typeEnd);
+        String name = this.tokenizer.getBlockName();
+        String type = this.tokenizer.getBlockType().getValue();
 
         // Ignore the top-level block
         if(type.equals("FPGA_packed_netlist")) {
             return;
         }
 
+        int index = this.tokenizer.getBlockIndex();
 
-        int indexStart = typeEnd + 1;
-        int indexEnd = line.indexOf("]", indexStart);
-        int index = Integer.parseInt(line.substring(indexStart, indexEnd));
-
-
-        int modeStart = indexEnd + 9;
-        int modeEnd = line.length() - 2;
-        String mode = modeStart < modeEnd ? line.substring(modeStart, modeEnd) : null;
+        Symbol modeSymbol = this.tokenizer.getBlockMode();
+        String mode = modeSymbol == null ? null : modeSymbol.getValue();
 
 
         BlockType parentBlockType = this.blockStack.isEmpty() ? null : this.blockStack.peek().getType();
@@ -257,8 +188,8 @@ public class NetParser {
 
         this.blockStack.push(newBlock);
         this.inputsStack.push(new TupleBlockMap(newBlock));
-        this.outputsStack.push(new HashMap<String, String>());
-        this.clocksStack.push(new HashMap<String, String>());
+        this.outputsStack.push(new HashMap<String, PortNets>());
+        this.clocksStack.push(new HashMap<String, PortNets>());
 
 
         if(!this.blocks.containsKey(blockType)) {
@@ -277,10 +208,10 @@ public class NetParser {
                 TupleBlockMap globalTuple = this.inputsStack.pop();
                 AbstractBlock globalBlock = globalTuple.getBlock();
 
-                Map<String, String> inputs = globalTuple.getMap();
+                Map<String, PortNets> inputs = globalTuple.getMap();
                 processPortsHashMap(globalBlock, inputs);
 
-                Map<String, String> clocks = this.clocksStack.pop();
+                Map<String, PortNets> clocks = this.clocksStack.pop();
                 processPortsHashMap(globalBlock, clocks);
             }
 
@@ -289,7 +220,7 @@ public class NetParser {
             // Remove this block and its outputs from the stacks
             AbstractBlock block = this.blockStack.pop();
 
-            Map<String, String> outputs = this.outputsStack.pop();
+            Map<String, PortNets> outputs = this.outputsStack.pop();
             processPortsHashMap(block, outputs);
 
             // Process the inputs of all the children of this block, but
@@ -299,75 +230,65 @@ public class NetParser {
                 TupleBlockMap childTuple = this.inputsStack.pop();
                 AbstractBlock childBlock = childTuple.getBlock();
 
-                Map<String, String> inputs = childTuple.getMap();
+                Map<String, PortNets> inputs = childTuple.getMap();
                 processPortsHashMap(childBlock, inputs);
 
-                Map<String, String> clocks = this.clocksStack.pop();
+                Map<String, PortNets> clocks = this.clocksStack.pop();
                 processPortsHashMap(childBlock, clocks);
             }
         }
     }
 
-    private void processPortsHashMap(AbstractBlock block, Map<String, String> ports) {
-        for(Map.Entry<String, String> portEntry : ports.entrySet()) {
-            String portName = portEntry.getKey();
-            PortType portType = new PortType(block.getType(), portName);
-            List<AbstractPin> pins = block.getPins(portType);
+    private void processPortsHashMap(AbstractBlock block, Map<String, PortNets> ports) {
+        for(PortNets portNets : ports.values()) {
+            List<AbstractPin> pins = block.getPins(portNets.portType);
+            this.addNets(pins, portNets.nets);
+        }
+    }
 
-            String nets = portEntry.getValue();
+    private PortType getPortType(BlockType blockType, Symbol portName) {
+        PortType[] blockPortTypes = this.portTypes.get(blockType);
 
-            this.addNets(pins, nets);
+        int id = portName.getId();
+        if(blockPortTypes == null || id >= blockPortTypes.length) {
+            int length = Math.max(id + 1, this.tokenizer.getNumPortNames());
+            blockPortTypes = blockPortTypes == null ? new PortType[length] : Arrays.copyOf(blockPortTypes, length);
+            this.portTypes.put(blockType, blockPortTypes);
+        }
+
+        PortType portType = blockPortTypes[id];
+        if(portType == null) {
+            portType = new PortType(blockType, portName.getValue());
+            blockPortTypes[id] = portType;
         }
-    }
 
+        return portType;
+    }
 
-    private void addNets(List<AbstractPin> sinkPins, String netsString) {
-        //TODO: no regex?
-        String[] nets = netsString.trim().split("\\s+");
 
+    private void addNets(List<AbstractPin> sinkPins, Symbol[] nets) {
         for(int sinkPinIndex = 0; sinkPinIndex < nets.length; sinkPinIndex++) {
             AbstractPin sinkPin = sinkPins.get(sinkPinIndex);
-            String net = nets[sinkPinIndex];
+            Symbol net = nets[sinkPinIndex];
 
             this.addNet(sinkPin, net);
         }
     }
 
 
-    private void addNet(AbstractPin sinkPin, String net) {
-        if(net.equals("open")) {
+    private void addNet(AbstractPin sinkPin, Symbol netSymbol) {
+        if(netSymbol.isOpen()) {
             return;
         }
 
         AbstractBlock sinkBlock = sinkPin.getOwner();
+        String net = netSymbol.getValue();
 
-        int separator = net.lastIndexOf("->");
-
-        if(separator != -1) {
-            int pinIndexEnd = separator - 1;
-            int pinIndexStart = net.lastIndexOf("[", pinIndexEnd) + 1;
-            int sourcePinIndex = Integer.parseInt(net.substring(pinIndexStart, pinIndexEnd));
-
-            int portEnd = pinIndexStart - 1;
-            int portStart = net.lastIndexOf(".", portEnd) + 1;
-            String sourcePortName = net.substring(portStart, portEnd);
-
-
-            int blockIndexEnd = portStart - 2;
-            int blockIndexStart = portStart;
-            int sourceBlockIndex = -1;
-
-            if(net.charAt(blockIndexEnd) == ']') {
-                blockIndexStart = net.lastIndexOf("[", blockIndexEnd) + 1;
-                sourceBlockIndex = Integer.parseInt(net.substring(blockIndexStart, blockIndexEnd));
-            }
-
-            int typeEnd = blockIndexStart - 1;
-            int typeStart = 0;
-            String sourceBlockName = net.substring(typeStart, typeEnd);
-
-            //BlockType sourceBlockType = new BlockType(sourceBlockName);
-            //PortType sourcePortType = new PortType(sourceBlockType, sourcePortName);
+        if(netSymbol.isReference()) {
+            int sourcePinIndex = netSymbol.getSourcePinIndex();
+            Symbol sourcePortName = netSymbol.getSourcePort();
+            int sourceBlockIndex = netSymbol.getSourceBlockIndex();
+            String sourceBlockName = netSymbol.getSourceBlockName();
 
             // Determine the source block
             AbstractBlock sourceBlock;
@@ -393,7 +314,7 @@ public class NetParser {
                 sourceBlock = sinkBlock.getChild(sourceBlockType, sourceBlockIndex);
             }
 
-            PortType sourcePortType = new PortType(sourceBlock.getType(), sourcePortName);
+            PortType sourcePortType = this.getPortType(sourceBlock.getType(), sourcePortName);
             AbstractPin sourcePin = sourceBlock.getPin(sourcePortType, sourcePinIndex);
             sourcePin.addSink(sinkPin);
             sinkPin.setSource(sourcePin);
@@ -442,4 +363,15 @@ public class NetParser {
             netSink.setNetName(net);
         }
     }
+
+
+    static class PortNets {
+        private final PortType portType;
+        private final Symbol[] nets;
+
+        PortNets(PortType portType, Symbol[] nets) {
+            this.portType = portType;
+            this.nets = nets;
+        }
+    }
 }
@@ -0,0 +1,1110 @@
+package place.circuit.io;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import place.circuit.architecture.BlockCategory;
+import place.circuit.architecture.BlockType;
+import place.circuit.architecture.PortType;
+import place.circuit.io.NetlistTemplate.Block;
+import place.circuit.io.NetlistTemplate.Direction;
+import place.interfaces.Logger;
+import place.interfaces.Options;
+
+/**
+ * Generates a synthetic packed netlist for the architecture that has
+ * been parsed, with a net file and a hierarchy file that can be given
+ * to the placers directly. The architecture must be parsed first.
+ *
+ * The blocks are put in a random order, and the order is split in two
+ * recursively until the parts are smaller than the leaf group size.
+ * These parts are the leaf nodes of the hierarchy file. The sinks of a
+ * net are chosen in this tree: from the leaf node of the source, every
+ * level up is taken with probability 2^(p-1), where p is the Rent
+ * exponent, and the sink is a random block in the other half of the
+ * highest node. This way the number of nets that leave a part of N
+ * blocks grows like N^p. The number of io blocks follows Rent's rule
+ * as well, unless it is given.
+ *
+ * Every block of a type has the same internal structure, see
+ * NetlistTemplate. The fanout of the nets follows a power law. Carry
+ * chains are consecutive clbs in the order of the blocks, and the clock
+ * domains are consecutive parts of the order.
+ *
+ * Every block gets a random logic level. Nets that are driven by a
+ * leaf that isn't clocked only have sinks in blocks with a higher
+ * level, so there are no combinational loops, and the length of the
+ * combinational paths is limited.
+ */
+public class NetlistGenerator {
+
+    private static final String
+        O_LOGIC_BLOCKS = "generator logic blocks",
+        O_HARDBLOCK_FRACTION = "generator hardblock fraction",
+        O_BLOCK_MIX = "generator block mix",
+        O_IO_BLOCKS = "generator io blocks",
+        O_RENT_EXPONENT = "generator rent exponent",
+        O_TERMINALS_PER_BLOCK = "generator terminals per block",
+        O_FANOUT_EXPONENT = "generator fanout exponent",
+        O_MAX_FANOUT = "generator max fanout",
+        O_CLOCKS = "generator clocks",
+        O_CARRY_CHAIN_FRACTION = "generator carry chain fraction",
+        O_CARRY_CHAIN_LENGTH = "generator carry chain length",
+        O_LOGIC_DEPTH = "generator logic depth",
+        O_CLB_FILL = "generator clb fill",
+        O_LEAF_GROUP_SIZE = "generator leaf group size";
+
+    public static void initOptions(Options options) {
+        options.add(
+                O_LOGIC_BLOCKS,
+                "number of clbs and hardblocks",
+                new Integer(1000));
+
+        options.add(
+                O_HARDBLOCK_FRACTION,
+                "fraction of the logic blocks of every hardblock type",
+                new Double(0.02));
+
+        options.add(
+                O_BLOCK_MIX,
+                "fractions of the logic blocks per hardblock type, e.g. \"mult_36:0.05,memory:0.01\" (overrides the hardblock fraction)",
+                "");
+
+        options.add(
+                O_IO_BLOCKS,
+                "number of io blocks, -1 to use Rent's rule",
+                new Integer(-1));
+
+        options.add(
+                O_RENT_EXPONENT,
+                "Rent exponent of the connectivity",
+                new Double(0.65));
+
+        options.add(
+                O_TERMINALS_PER_BLOCK,
+                "Rent coefficient, only used for the number of io blocks",
+                new Double(1.0));
+
+        options.add(
+                O_FANOUT_EXPONENT,
+                "exponent of the power law of the net fanouts",
+                new Double(2.2));
+
+        options.add(
+                O_MAX_FANOUT,
+                "maximal number of sinks of a net",
+                new Integer(200));
+
+        options.add(
+                O_CLOCKS,
+                "number of clock domains",
+                new Integer(1));
+
+        options.add(
+                O_CARRY_CHAIN_FRACTION,
+                "fraction of the clbs that are part of a carry chain",
+                new Double(0.1));
+
+        options.add(
+                O_CARRY_CHAIN_LENGTH,
+                "maximal length of a carry chain",
+                new Integer(8));
+
+        options.add(
+                O_LOGIC_DEPTH,
+                "number of logic levels of the combinational paths",
+                new Integer(8));
+
+        options.add(
+                O_CLB_FILL,
+                "fraction of the children of a clb that is used",
+                new Double(0.9));
+
+        options.add(
+                O_LEAF_GROUP_SIZE,
+                "maximal number of blocks in a leaf node of the hierarchy",
+                new Integer(64));
+    }
+
+
+    private static final int MAX_TRIES = 8;
+
+    private static final int INPUT = 0, OUTPUT = 1, CLOCK = 2, CLB = 3;
+
+    private static final byte UNKNOWN = 0, ACTIVE = 1, INACTIVE = 2;
+
+    private final Logger logger;
+    private final Random random;
+
+    private final int numLogicBlocks, numIoBlocks, numClocks;
+    private final double hardblockFraction;
+    private final String blockMix;
+    private final double rentExponent, rentProbability, terminalsPerBlock;
+    private final int maxFanout;
+    private final double[] fanoutDistribution;
+    private final double carryChainFraction;
+    private final int carryChainLength;
+    private final int logicDepth;
+    private final double clbFill;
+    private final long fillSeed;
+    private final int leafGroupSize;
+
+    private List<NetlistTemplate> templates;
+
+    // Per block
+    private int numBlocks;
+    private int[] template, sinkStart, netStart, numInputNets;
+    private byte[] level;
+
+    // Per sink slot and per net
+    private int[] sinkNet;
+    private BitSet netUsed;
+    private long numSinks;
+
+    // The bisection tree, node 0 is the root
+    private int numNodes, maxDepth;
+    private int[] nodeStart, nodeEnd, nodeLeft, nodeRight;
+    private int[] path;
+
+    private boolean[] clockUsed;
+
+    // The state of the block that is being written
+    private int currentBlock;
+    private NetlistTemplate currentTemplate;
+    private byte[] pinState;
+    private boolean[] live, clocked;
+    private int[] globalPinNets, slotGlobalPins;
+
+
+    public NetlistGenerator(Options options, long randomSeed, Logger logger) {
+        this.logger = logger;
+        this.random = new Random(randomSeed);
+        this.fillSeed = this.random.nextLong();
+
+        this.numLogicBlocks = options.getInteger(O_LOGIC_BLOCKS);
+        this.hardblockFraction = options.getDouble(O_HARDBLOCK_FRACTION);
+        this.blockMix = options.getString(O_BLOCK_MIX);
+        this.numIoBlocks = options.getInteger(O_IO_BLOCKS);
+        this.numClocks = Math.max(1, options.getInteger(O_CLOCKS));
+
+        this.rentExponent = options.getDouble(O_RENT_EXPONENT);
+        this.rentProbability = Math.pow(2, this.rentExponent - 1);
+        this.terminalsPerBlock = options.getDouble(O_TERMINALS_PER_BLOCK);
+
+        this.maxFanout = Math.max(1, options.getInteger(O_MAX_FANOUT));
+        this.fanoutDistribution = this.fanoutDistribution(options.getDouble(O_FANOUT_EXPONENT));
+
+        this.carryChainFraction = options.getDouble(O_CARRY_CHAIN_FRACTION);
+        this.carryChainLength = Math.max(2, options.getInteger(O_CARRY_CHAIN_LENGTH));
+        this.logicDepth = Math.max(1, Math.min(Byte.MAX_VALUE, options.getInteger(O_LOGIC_DEPTH)));
+        this.clbFill = options.getDouble(O_CLB_FILL);
+        this.leafGroupSize = Math.max(1, options.getInteger(O_LEAF_GROUP_SIZE));
+    }
+
+    private double[] fanoutDistribution(double exponent) {
+        double[] distribution = new double[this.maxFanout];
+
+        double sum = 0;
+        for(int fanout = 1; fanout <= this.maxFanout; fanout++) {
+            sum += Math.pow(fanout, -exponent);
+            distribution[fanout - 1] = sum;
+        }
+        for(int i = 0; i < this.maxFanout; i++) {
+            distribution[i] /= sum;
+        }
+
+        return distribution;
+    }
+
+
+    public void generate(String circuitName, File netFile, File hierarchyFile, File blifFile) throws IOException {
+        this.buildTemplates();
+        this.buildBlocks();
+        this.buildTree();
+        this.buildClocks();
+        this.buildNets();
+        this.connectOutputs();
+
+        BitSet written = this.writeNetFile(netFile);
+        this.writeHierarchyFile(hierarchyFile, written);
+        this.writeBlifFile(blifFile, circuitName, written);
+
+        this.printStatistics(written);
+    }
+
+
+    private void buildTemplates() {
+        this.templates = new ArrayList<>();
+
+        List<BlockType> ioTypes = BlockType.getBlockTypes(BlockCategory.IO);
+        List<BlockType> clbTypes = BlockType.getBlockTypes(BlockCategory.CLB);
+        if(ioTypes.size() == 0 || clbTypes.size() == 0) {
+            this.logger.raise("The architecture needs an io and a clb block type");
+        }
+
+        this.templates.add(new NetlistTemplate(ioTypes.get(0), Direction.INPUT));
+        this.templates.add(new NetlistTemplate(ioTypes.get(0), Direction.OUTPUT));
+        this.templates.add(new NetlistTemplate(ioTypes.get(0), Direction.INPUT));
+        this.templates.add(new NetlistTemplate(clbTypes.get(0), Direction.ANY));
+
+        for(BlockType hardblockType : BlockType.getBlockTypes(BlockCategory.HARDBLOCK)) {
+            this.templates.add(new NetlistTemplate(hardblockType, Direction.ANY));
+        }
+    }
+
+    private double[] getHardblockFractions() {
+        int numTypes = this.templates.size();
+        double[] fractions = new double[numTypes];
+
+        if(this.blockMix.length() == 0) {
+            for(int type = CLB + 1; type < numTypes; type++) {
+                fractions[type] = this.hardblockFraction;
+            }
+            return fractions;
+        }
+
+        Map<String, Integer> typeIndexes = new HashMap<>();
+        for(int type = CLB + 1; type < numTypes; type++) {
+            typeIndexes.put(this.templates.get(type).getGlobalType().getName(), type);
+        }
+
+        for(String entry : this.blockMix.split(",")) {
+            String[] parts = entry.trim().split(":");
+            Integer type = typeIndexes.get(parts[0]);
+
+            if(parts.length != 2 || type == null) {
+                this.logger.raise("Invalid entry in the block mix: \"" + entry + "\"");
+            }
+            fractions[type] = Double.parseDouble(parts[1]);
+        }
+
+        return fractions;
+    }
+
+
+    /**
+     * Create all blocks in a random order. The blocks of a carry chain
+     * stay together.
+     */
+    private void buildBlocks() {
+        int numTypes = this.templates.size();
+        int[] numBlocksPerType = new int[numTypes];
+
+        double[] hardblockFractions = this.getHardblockFractions();
+        int numHardblocks = 0;
+        for(int type = CLB + 1; type < numTypes; type++) {
+            numBlocksPerType[type] = (int) Math.round(hardblockFractions[type] * this.numLogicBlocks);
+            numHardblocks += numBlocksPerType[type];
+        }
+
+        numBlocksPerType[CLB] = this.numLogicBlocks - numHardblocks;
+        if(numBlocksPerType[CLB] < 0) {
+            this.logger.raise("The hardblocks don't fit in the number of logic blocks");
+        }
+
+        int numIos = this.numIoBlocks;
+        if(numIos < 0) {
+            numIos = (int) Math.round(this.terminalsPerBlock * Math.pow(this.numLogicBlocks, this.rentExponent));
+        }
+        numBlocksPerType[INPUT] = Math.max(1, (numIos + 1) / 2);
+        numBlocksPerType[OUTPUT] = Math.max(1, numIos / 2);
+        numBlocksPerType[CLOCK] = this.numClocks;
+
+
+        // A unit is a single block, or a carry chain
+        List<Integer> unitTypes = new ArrayList<>();
+        List<Integer> unitLengths = new ArrayList<>();
+
+        NetlistTemplate clbTemplate = this.templates.get(CLB);
+        int numChainBlocks = 0;
+        if(clbTemplate.carrySinkSlot != -1) {
+            numChainBlocks = (int) Math.round(this.carryChainFraction * numBlocksPerType[CLB]);
+        }
+
+        int remaining = numChainBlocks;
+        while(remaining >= 2) {
+            int length = Math.min(remaining, 2 + this.random.nextInt(this.carryChainLength - 1));
+            unitTypes.add(CLB);
+            unitLengths.add(length);
+            remaining -= length;
+        }
+        numBlocksPerType[CLB] -= numChainBlocks - remaining;
+
+        for(int type = 0; type < numTypes; type++) {
+            for(int i = 0; i < numBlocksPerType[type]; i++) {
+                unitTypes.add(type);
+                unitLengths.add(1);
+            }
+        }
+
+        int numUnits = unitTypes.size();
+        int[] order = new int[numUnits];
+        for(int i = 0; i < numUnits; i++) {
+            order[i] = i;
+        }
+        for(int i = numUnits - 1; i > 0; i--) {
+            int j = this.random.nextInt(i + 1);
+            int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+
+        this.numBlocks = 0;
+        for(int length : unitLengths) {
+            this.numBlocks += length;
+        }
+
+        this.template = new int[this.numBlocks];
+        this.sinkStart = new int[this.numBlocks + 1];
+        this.netStart = new int[this.numBlocks + 1];
+        this.numInputNets = new int[this.numBlocks];
+        this.level = new byte[this.numBlocks];
+
+        int block = 0;
+        for(int unit : order) {
+            int type = unitTypes.get(unit);
+            int length = unitLengths.get(unit);
+
+            // The levels don't decrease along a carry chain
+            int level = this.random.nextInt(this.logicDepth);
+
+            for(int i = 0; i < length; i++) {
+                NetlistTemplate template = this.templates.get(type);
+                this.template[block] = type;
+                this.level[block] = (byte) Math.min(this.logicDepth - 1, level + i);
+                this.sinkStart[block + 1] = this.sinkStart[block] + template.numSinkSlots;
+                this.netStart[block + 1] = this.netStart[block] + template.numSourceSlots;
+                block++;
+            }
+        }
+
+        this.sinkNet = new int[this.sinkStart[this.numBlocks]];
+        Arrays.fill(this.sinkNet, -1);
+        this.netUsed = new BitSet(this.netStart[this.numBlocks]);
+
+        // Connect the carry chains: the carry output of every block
+        // drives the carry input of the next block in the chain
+        block = 0;
+        for(int unit : order) {
+            int length = unitLengths.get(unit);
+
+            for(int i = 1; i < length; i++) {
+                int sink = block + i;
+                int net = this.netStart[sink - 1] + clbTemplate.carrySourceSlot;
+
+                this.sinkNet[this.sinkStart[sink] + clbTemplate.carrySinkSlot] = net;
+                this.netUsed.set(net);
+                this.numSinks++;
+            }
+
+            block += length;
+        }
+    }
+
+
+    /**
+     * Split the order of the blocks in two recursively. The root is
+     * always split, because the hierarchy parser expects a binary tree.
+     */
+    private void buildTree() {
+        int capacity = 4 * (this.numBlocks / this.leafGroupSize + 2);
+        this.nodeStart = new int[capacity];
+        this.nodeEnd = new int[capacity];
+        this.nodeLeft = new int[capacity];
+        this.nodeRight = new int[capacity];
+
+        this.numNodes = 0;
+        this.maxDepth = 0;
+        this.addNode(0, this.numBlocks, 0);
+
+        this.path = new int[this.maxDepth + 1];
+    }
+
+    private int addNode(int start, int end, int depth) {
+        int node = this.numNodes++;
+        this.nodeStart[node] = start;
+        this.nodeEnd[node] = end;
+        this.maxDepth = Math.max(this.maxDepth, depth);
+
+        if(end - start > this.leafGroupSize || depth == 0 && end - start > 1) {
+            int middle = (start + end) / 2;
+            this.nodeLeft[node] = this.addNode(start, middle, depth + 1);
+            this.nodeRight[node] = this.addNode(middle, end, depth + 1);
+
+        } else {
+            this.nodeLeft[node] = -1;
+            this.nodeRight[node] = -1;
+        }
+
+        return node;
+    }
+
+    private int sampleSink(int source) {
+        int depth = 0;
+        int node = 0;
+        while(this.nodeLeft[node] != -1) {
+            this.path[depth++] = node;
+
+            int left = this.nodeLeft[node];
+            node = source < this.nodeEnd[left] ? left : this.nodeRight[node];
+        }
+        this.path[depth] = node;
+
+        int level = 0;
+        while(level < depth && this.random.nextDouble() < this.rentProbability) {
+            level++;
+        }
+
+        int subtree = node;
+        if(level > 0) {
+            int ancestor = this.path[depth - level];
+            int child = this.path[depth - level + 1];
+            subtree = this.nodeLeft[ancestor] == child ? this.nodeRight[ancestor] : this.nodeLeft[ancestor];
+        }
+
+        return this.nodeStart[subtree] + this.random.nextInt(this.nodeEnd[subtree] - this.nodeStart[subtree]);
+    }
+
+
+    private int getClockDomain(int block) {
+        return (int) ((long) block * this.numClocks / this.numBlocks);
+    }
+
+    /**
+     * A clock is used if its part of the order contains a block type
+     * with clocked leaves. The clock inputs are used in the order of
+     * the blocks: the first one is clock 0.
+     */
+    private void buildClocks() {
+        this.clockUsed = new boolean[this.numClocks];
+        for(int block = 0; block < this.numBlocks; block++) {
+            NetlistTemplate template = this.templates.get(this.template[block]);
+            if(template.getCategory() != BlockCategory.IO && template.clocked) {
+                this.clockUsed[this.getClockDomain(block)] = true;
+            }
+        }
+
+        int clock = 0;
+        for(int block = 0; block < this.numBlocks; block++) {
+            if(this.template[block] == CLOCK) {
+                if(this.clockUsed[clock]) {
+                    this.netUsed.set(this.netStart[block]);
+                }
+                clock++;
+            }
+        }
+    }
+
+
+    /**
+     * Give every exported net a number of sinks. The nets are visited
+     * in a pseudo random order, so the nets that come last, when the
+     * inputs of the blocks are filling up, are spread over the circuit.
+     */
+    private void buildNets() {
+        long numNets = this.netStart[this.numBlocks];
+        if(numNets == 0) {
+            return;
+        }
+
+        long step;
+        do {
+            step = 1 + (long) (this.random.nextDouble() * (numNets - 1));
+        } while(this.gcd(step, numNets) != 1);
+        long offset = (long) (this.random.nextDouble() * numNets);
+
+        for(long i = 0; i < numNets; i++) {
+            int net = (int) ((offset + i * step) % numNets);
+
+            int source = this.getSourceBlock(net);
+            NetlistTemplate template = this.templates.get(this.template[source]);
+            int slot = net - this.netStart[source];
+
+            if(this.template[source] == CLOCK || !template.exported[slot] || !this.isUsed(source, template, template.sourceSlotChild[slot])) {
+                continue;
+            }
+
+            boolean combinational = template.combinational[slot];
+
+            int fanout = this.sampleFanout();
+            for(int sink = 0; sink < fanout; sink++) {
+                for(int tries = 0; tries < MAX_TRIES; tries++) {
+                    int block = this.sampleSink(source);
+                    if(combinational && this.level[block] <= this.level[source]) {
+                        continue;
+                    }
+
+                    if(this.connect(net, block)) {
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    private long gcd(long a, long b) {
+        while(b != 0) {
+            long c = a % b;
+            a = b;
+            b = c;
+        }
+        return a;
+    }
+
+    private int getSourceBlock(int net) {
+        // The last block with netStart <= net and at least one net
+        int low = 0, high = this.numBlocks - 1;
+        while(low < high) {
+            int middle = (low + high + 1) / 2;
+            if(this.netStart[middle] <= net) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    private int sampleFanout() {
+        int index = Arrays.binarySearch(this.fanoutDistribution, this.random.nextDouble());
+        if(index < 0) {
+            index = -index - 1;
+        }
+        return Math.min(index, this.maxFanout - 1) + 1;
+    }
+
+    /**
+     * Connect a net to a free sink slot of a block. This fails if the
+     * block has no free slot, or if the net would need a global input
+     * pin and all of them are taken.
+     */
+    private boolean connect(int net, int block) {
+        NetlistTemplate template = this.templates.get(this.template[block]);
+
+        int start = this.sinkStart[block];
+        int numSlots = this.sinkStart[block + 1] - start;
+        if(numSlots == 0) {
+            return false;
+        }
+
+        boolean present = false;
+        for(int slot = 0; slot < numSlots; slot++) {
+            if(this.sinkNet[start + slot] == net) {
+                present = true;
+                break;
+            }
+        }
+
+        if(!present && this.numInputNets[block] >= template.numRegularInputs) {
+            return false;
+        }
+
+        int firstSlot = this.random.nextInt(numSlots);
+        for(int i = 0; i < numSlots; i++) {
+            int slot = (firstSlot + i) % numSlots;
+
+            if(this.sinkNet[start + slot] == -1 && slot != template.carrySinkSlot && this.isUsed(block, template, template.sinkSlotChild[slot])) {
+                this.sinkNet[start + slot] = net;
+                this.netUsed.set(net);
+                this.numSinks++;
+
+                if(!present) {
+                    this.numInputNets[block]++;
+                }
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Only a part of the children of a clb is used, the other children
+     * are left empty. This is a hash of the block and the child, so it
+     * doesn't have to be stored.
+     */
+    private boolean isUsed(int block, NetlistTemplate template, int child) {
+        if(template.getCategory() != BlockCategory.CLB || this.clbFill >= 1) {
+            return true;
+        }
+
+        long hash = this.fillSeed ^ (block * 0x9E3779B97F4A7C15L) ^ (child * 0xC2B2AE3D27D4EB4FL);
+        hash = (hash ^ (hash >>> 31)) * 0xBF58476D1CE4E5B9L;
+        hash = (hash ^ (hash >>> 29)) * 0x94D049BB133111EBL;
+        hash ^= hash >>> 32;
+
+        return (hash >>> 11) * 0x1.0p-53 < this.clbFill;
+    }
+
+    /**
+     * The outputs get a source near them, if they didn't get a net
+     * while the nets were built.
+     */
+    private void connectOutputs() {
+        for(int block = 0; block < this.numBlocks; block++) {
+            if(this.template[block] != OUTPUT || this.sinkNet[this.sinkStart[block]] != -1) {
+                continue;
+            }
+
+            for(int tries = 0; tries < MAX_TRIES; tries++) {
+                int source = this.sampleSink(block);
+                NetlistTemplate template = this.templates.get(this.template[source]);
+                int numSlots = template.numSourceSlots;
+
+                if(this.template[source] == CLOCK || numSlots == 0) {
+                    continue;
+                }
+
+                int slot = this.random.nextInt(numSlots);
+                if(template.exported[slot] && this.isUsed(source, template, template.sourceSlotChild[slot])) {
+                    this.connect(this.netStart[source] + slot, block);
+                    break;
+                }
+            }
+        }
+    }
+
+
+
+    private String getNetName(int net) {
+        return "n" + net;
+    }
+    private String getClockName(int clock) {
+        return "clk" + clock;
+    }
+
+    private String getBlockName(int block, int clock) {
+        switch(this.template[block]) {
+            case INPUT:
+                return this.getNetName(this.netStart[block]);
+
+            case OUTPUT:
+                return "out" + block;
+
+            case CLOCK:
+                return this.getClockName(clock);
+
+            default:
+                return this.templates.get(this.template[block]).getGlobalType().getName() + block;
+        }
+    }
+
+
+    private BitSet writeNetFile(File netFile) throws IOException {
+        BitSet written = new BitSet(this.numBlocks);
+
+        Writer writer = new BufferedWriter(new FileWriter(netFile));
+        writer.write(String.format("<block name=\"%s\" instance=\"FPGA_packed_netlist[0]\">\n", netFile.getName()));
+
+        // The circuit inputs, outputs and clocks
+        StringBuilder inputs = new StringBuilder();
+        StringBuilder outputs = new StringBuilder();
+        StringBuilder clocks = new StringBuilder();
+
+        int clock = 0;
+        for(int block = 0; block < this.numBlocks; block++) {
+            int type = this.template[block];
+
+            if(type == INPUT && this.netUsed.get(this.netStart[block])) {
+                inputs.append(this.getBlockName(block, -1)).append(' ');
+
+            } else if(type == OUTPUT && this.sinkNet[this.sinkStart[block]] != -1) {
+                outputs.append(this.getBlockName(block, -1)).append(' ');
+
+            } else if(type == CLOCK) {
+                if(this.clockUsed[clock]) {
+                    clocks.append(this.getClockName(clock)).append(' ');
+                }
+                clock++;
+            }
+        }
+
+        writer.write("\t<inputs>\n\t\t" + inputs.toString().trim() + "\n\t</inputs>\n\n");
+        writer.write("\t<outputs>\n\t\t" + outputs.toString().trim() + "\n\t</outputs>\n\n");
+        writer.write("\t<clocks>\n\t\t" + clocks.toString().trim() + "\n\t</clocks>\n\n");
+
+
+        int maxPins = 0, maxBlocks = 0, maxSlots = 0, maxInputs = 0;
+        for(NetlistTemplate template : this.templates) {
+            maxPins = Math.max(maxPins, template.numPins);
+            maxBlocks = Math.max(maxBlocks, template.blocks.size());
+            maxSlots = Math.max(maxSlots, template.numSinkSlots);
+            maxInputs = Math.max(maxInputs, template.getGlobalType().getNumPins());
+        }
+        this.pinState = new byte[maxPins];
+        this.live = new boolean[maxBlocks];
+        this.clocked = new boolean[maxBlocks];
+        this.slotGlobalPins = new int[maxSlots];
+        this.globalPinNets = new int[maxInputs];
+
+        StringBuilder builder = new StringBuilder();
+        int globalIndex = 0;
+        clock = 0;
+        for(int block = 0; block < this.numBlocks; block++) {
+            int blockClock = this.template[block] == CLOCK ? clock++ : this.getClockDomain(block);
+
+            builder.setLength(0);
+            if(this.buildBlock(builder, block, blockClock, globalIndex)) {
+                writer.write(builder.toString());
+                written.set(block);
+                globalIndex++;
+            }
+        }
+
+        writer.write("</block>\n");
+        writer.close();
+
+        return written;
+    }
+
+    /**
+     * Append a block to the builder. Returns false if none of the leaves
+     * of the block is used: the block is left out.
+     */
+    private boolean buildBlock(StringBuilder builder, int block, int clock, int globalIndex) {
+        NetlistTemplate template = this.templates.get(this.template[block]);
+        this.currentBlock = block;
+        this.currentTemplate = template;
+
+        Arrays.fill(this.pinState, 0, template.numPins, UNKNOWN);
+
+        // Find which blocks are used, children come after their parent
+        for(int id = template.blocks.size() - 1; id >= 0; id--) {
+            Block templateBlock = template.blocks.get(id);
+
+            if(templateBlock.isLeaf()) {
+                this.live[id] = this.isLive(templateBlock);
+                this.clocked[id] = this.live[id] && templateBlock.blockType.isClocked() && templateBlock.clockConnected;
+
+            } else {
+                this.live[id] = false;
+                this.clocked[id] = false;
+                for(Block child : templateBlock.children) {
+                    this.live[id] |= this.live[child.id];
+                    this.clocked[id] |= this.clocked[child.id];
+                }
+            }
+        }
+
+        if(!this.live[0]) {
+            return false;
+        }
+
+        // The nets on the global input pins
+        int globalPinStart = template.blocks.get(0).pinOffset;
+        Arrays.fill(this.globalPinNets, -1);
+        int numGlobalPins = 0;
+        for(int slot = 0; slot < template.numSinkSlots; slot++) {
+            int net = this.sinkNet[this.sinkStart[block] + slot];
+            if(net == -1 || slot == template.carrySinkSlot) {
+                continue;
+            }
+
+            int globalPin = -1;
+            for(int i = 0; i < numGlobalPins; i++) {
+                int pin = template.regularInputPins[i];
+                if(this.globalPinNets[pin] == net) {
+                    globalPin = pin;
+                    break;
+                }
+            }
+
+            if(globalPin == -1) {
+                globalPin = template.regularInputPins[numGlobalPins++];
+                this.globalPinNets[globalPin] = net;
+            }
+            this.slotGlobalPins[slot] = globalPinStart + globalPin;
+        }
+
+        String name = this.getBlockName(block, clock);
+        this.buildBlock(builder, template.blocks.get(0), name, globalIndex, clock, 1);
+        return true;
+    }
+
+    private void buildBlock(StringBuilder builder, Block templateBlock, String name, int index, int clock, int indent) {
+        NetlistTemplate template = this.currentTemplate;
+        BlockType blockType = templateBlock.blockType;
+
+        this.indent(builder, indent);
+        if(!this.live[templateBlock.id]) {
+            builder.append(String.format("<block name=\"open\" instance=\"%s[%d]\"/>\n", blockType.getName(), index));
+            return;
+        }
+
+        // Leaves are named after their first output net
+        String blockName = name;
+        if(templateBlock.isLeaf() && templateBlock.depth > 0) {
+            int[] outputRange = blockType.getOutputPortRange();
+            for(int blockPin = outputRange[0]; blockPin < outputRange[1]; blockPin++) {
+                int slot = template.sourceSlot[templateBlock.pinOffset + blockPin];
+                if(slot != -1 && this.template[this.currentBlock] != CLOCK && this.template[this.currentBlock] != INPUT) {
+                    blockName = this.getNetName(this.netStart[this.currentBlock] + slot);
+                    break;
+                }
+            }
+        }
+
+        builder.append(String.format("<block name=\"%s\" instance=\"%s[%d]\"", blockName, blockType.getName(), index));
+        if(!templateBlock.isLeaf()) {
+            builder.append(String.format(" mode=\"%s\"", blockType.getModeName()));
+        }
+        builder.append(">\n");
+
+        String[] sections = {"inputs", "outputs", "clocks"};
+        for(int section = 0; section < sections.length; section++) {
+            this.indent(builder, indent + 1);
+            builder.append('<').append(sections[section]).append(">\n");
+
+            for(PortType portType : blockType.getPortTypes()) {
+                int[] range = portType.getRange();
+                int firstPin = templateBlock.pinOffset + range[0];
+                boolean inSection = section == 0 ? portType.isInput() : section == 1 ? portType.isOutput() : portType.isClock();
+
+                // Ports that can't be found by their name are left out
+                if(!inSection || range[1] == range[0] || template.getPortType(firstPin) == null) {
+                    continue;
+                }
+
+                this.indent(builder, indent + 2);
+                builder.append("<port name=\"").append(portType.getName()).append("\">");
+                for(int pin = firstPin; pin < templateBlock.pinOffset + range[1]; pin++) {
+                    if(pin > firstPin) {
+                        builder.append(' ');
+                    }
+                    builder.append(this.getPinValue(templateBlock, pin, clock));
+                }
+                builder.append("</port>\n");
+            }
+
+            this.indent(builder, indent + 1);
+            builder.append("</").append(sections[section]).append(">\n");
+        }
+
+        for(Block child : templateBlock.children) {
+            this.buildBlock(builder, child, name, child.index, clock, indent + 1);
+        }
+
+        this.indent(builder, indent);
+        builder.append("</block>\n");
+    }
+
+    private void indent(StringBuilder builder, int indent) {
+        for(int i = 0; i < indent; i++) {
+            builder.append('\t');
+        }
+    }
+
+    private String getPinValue(Block templateBlock, int pin, int clock) {
+        NetlistTemplate template = this.currentTemplate;
+        int block = this.currentBlock;
+        PortType portType = template.getPortType(pin);
+
+        if(portType.isClock()) {
+            if(pin != templateBlock.clockPin || !this.clocked[templateBlock.id]) {
+                return "open";
+            }
+            return templateBlock.depth == 0 ? this.getClockName(clock) : template.reference[pin];
+
+        } else if(portType.isInput() && templateBlock.depth == 0) {
+            int globalPin = pin - templateBlock.pinOffset;
+            int net = this.globalPinNets[globalPin];
+
+            // The carry input
+            if(net == -1 && template.carrySinkSlot != -1 && template.source[template.sinkSlotPin[template.carrySinkSlot]] == pin) {
+                net = this.sinkNet[this.sinkStart[block] + template.carrySinkSlot];
+            }
+            return net == -1 ? "open" : this.getNetName(net);
+
+        } else if(portType.isInput()) {
+            int slot = template.sinkSlot[pin];
+            if(slot != -1 && slot != template.carrySinkSlot) {
+                int net = this.sinkNet[this.sinkStart[block] + slot];
+                return net == -1 ? "open" : template.getParentReference(this.slotGlobalPins[slot]);
+            }
+            return this.isActive(pin) ? template.reference[pin] : "open";
+
+        } else if(templateBlock.isLeaf()) {
+            int slot = template.sourceSlot[pin];
+            if(slot == -1) {
+                return "open";
+            }
+            return this.template[block] == CLOCK ? this.getClockName(clock) : this.getNetName(this.netStart[block] + slot);
+
+        } else {
+            return this.isActive(pin) ? template.reference[pin] : "open";
+        }
+    }
+
+    private boolean isLive(Block leaf) {
+        NetlistTemplate template = this.currentTemplate;
+
+        int[] inputRange = leaf.blockType.getInputPortRange();
+        for(int blockPin = inputRange[0]; blockPin < inputRange[1]; blockPin++) {
+            int pin = leaf.pinOffset + blockPin;
+            if(template.isInput(pin) && this.isActive(pin)) {
+                return true;
+            }
+        }
+
+        int[] outputRange = leaf.blockType.getOutputPortRange();
+        for(int blockPin = outputRange[0]; blockPin < outputRange[1]; blockPin++) {
+            int slot = template.sourceSlot[leaf.pinOffset + blockPin];
+            if(slot != -1 && this.netUsed.get(this.netStart[this.currentBlock] + slot)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private boolean isActive(int pin) {
+        byte state = this.pinState[pin];
+        if(state != UNKNOWN) {
+            return state == ACTIVE;
+        }
+
+        // This breaks loops, if there would be any
+        this.pinState[pin] = INACTIVE;
+
+        NetlistTemplate template = this.currentTemplate;
+        Block block = template.getBlock(pin);
+
+        boolean active;
+        if(template.isOutput(pin) && block.isLeaf()) {
+            active = this.isLive(block);
+
+        } else if(template.sinkSlot[pin] != -1) {
+            active = this.sinkNet[this.sinkStart[this.currentBlock] + template.sinkSlot[pin]] != -1;
+
+        } else if(template.source[pin] != -1) {
+            active = this.isActive(template.source[pin]);
+
+        } else {
+            active = false;
+        }
+
+        this.pinState[pin] = active ? ACTIVE : INACTIVE;
+        return active;
+    }
+
+
+    /**
+     * Every leaf node of the bisection tree is a leaf node in the
+     * hierarchy file. The identifier is the path from the root, with 0
+     * for the left child and 1 for the right child.
+     */
+    private void writeHierarchyFile(File hierarchyFile, BitSet written) throws IOException {
+        Writer writer = new BufferedWriter(new FileWriter(hierarchyFile));
+
+        int[] globalIndex = {0};
+        this.writeHierarchyNode(writer, 0, "", written, globalIndex);
+
+        writer.close();
+    }
+
+    private void writeHierarchyNode(Writer writer, int node, String identifier, BitSet written, int[] globalIndex) throws IOException {
+        if(this.nodeLeft[node] != -1) {
+            this.writeHierarchyNode(writer, this.nodeLeft[node], identifier + "0", written, globalIndex);
+            this.writeHierarchyNode(writer, this.nodeRight[node], identifier + "1", written, globalIndex);
+            return;
+        }
+
+        int start = this.nodeStart[node], end = this.nodeEnd[node];
+        int numWritten = written.get(start, end).cardinality();
+
+        writer.write(String.format("Leaf Node: %s (%d lb) [Color: (%d,%d,%d)]\n",
+                identifier, numWritten,
+                this.random.nextInt(255), this.random.nextInt(255), this.random.nextInt(255)));
+
+        for(int block = written.nextSetBit(start); block != -1 && block < end; block = written.nextSetBit(block + 1)) {
+            NetlistTemplate template = this.templates.get(this.template[block]);
+            BlockType globalType = template.blocks.get(0).blockType;
+
+            writer.write(String.format("\t<block name=\"%s\" instance=\"%s[%d]\" mode=\"%s\">\n",
+                    this.getBlockName(block, this.getClock(block)),
+                    globalType.getName(), globalIndex[0], globalType.getModeName()));
+            globalIndex[0]++;
+        }
+    }
+
+    private int getClock(int block) {
+        if(this.template[block] != CLOCK) {
+            return this.getClockDomain(block);
+        }
+
+        int clock = 0;
+        for(int i = 0; i < block; i++) {
+            if(this.template[i] == CLOCK) {
+                clock++;
+            }
+        }
+        return clock;
+    }
+
+
+    /**
+     * Main needs a blif file for the circuit name. It only contains the
+     * inputs and outputs, so vpr can't be run on it: use generated
+     * delay tables or a lookup dump file.
+     */
+    private void writeBlifFile(File blifFile, String circuitName, BitSet written) throws IOException {
+        Writer writer = new BufferedWriter(new FileWriter(blifFile));
+        writer.write(".model " + circuitName + "\n");
+
+        String[] sections = {".inputs", ".outputs"};
+        for(String section : sections) {
+            writer.write(section);
+
+            int numNames = 0;
+            for(int block = written.nextSetBit(0); block != -1; block = written.nextSetBit(block + 1)) {
+                int type = this.template[block];
+                boolean input = type == INPUT || type == CLOCK;
+                if(type == OUTPUT || input) {
+                    if(input == section.equals(".inputs")) {
+                        if(numNames > 0 && numNames % 8 == 0) {
+                            writer.write(" \\\n");
+                        }
+                        writer.write(" " + this.getBlockName(block, this.getClock(block)));
+                        numNames++;
+                    }
+                }
+            }
+
+            writer.write("\n");
+        }
+
+        writer.write(".end\n");
+        writer.close();
+    }
+
+
+    private void printStatistics(BitSet written) {
+        int numTypes = this.templates.size();
+        int[] numBlocksPerType = new int[numTypes];
+        for(int block = written.nextSetBit(0); block != -1; block = written.nextSetBit(block + 1)) {
+            numBlocksPerType[this.template[block]]++;
+        }
+
+        this.logger.println("Generated blocks:");
+        this.logger.printf("  %-12s %d\n", "inputs", numBlocksPerType[INPUT]);
+        this.logger.printf("  %-12s %d\n", "outputs", numBlocksPerType[OUTPUT]);
+        this.logger.printf("  %-12s %d\n", "clocks", numBlocksPerType[CLOCK]);
+        for(int type = CLB; type < numTypes; type++) {
+            this.logger.printf("  %-12s %d\n", this.templates.get(type).getGlobalType().getName(), numBlocksPerType[type]);
+        }
+
+        int numNets = this.netUsed.cardinality();
+        this.logger.printf("Generated nets: %d, sinks: %d, average fanout: %.2f\n\n",
+                numNets, this.numSinks, numNets == 0 ? 0.0 : (double) this.numSinks / numNets);
+    }
+}
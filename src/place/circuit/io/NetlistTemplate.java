@@ -0,0 +1,637 @@
+package place.circuit.io;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import place.circuit.architecture.BlockCategory;
+import place.circuit.architecture.BlockType;
+import place.circuit.architecture.PortType;
+
+/**
+ * The fixed internal structure of the generated blocks of one global
+ * block type. Every block of the type is a full instance of the same
+ * tree of blocks, with the same connections between the pins. Only
+ * the nets on the global pins differ between blocks.
+ *
+ * The connections are built once:
+ *   - every leaf output gets a path to the output pins of its parents,
+ *     as high as there are free output pins. The leaf outputs are the
+ *     source slots of the template, the ones that reach the global
+ *     block are exported.
+ *   - the input pins of the children of the global block are the sink
+ *     slots. Deeper input pins get the pin of their parent with the
+ *     same name, or a free input pin of their parent, or the output of
+ *     a sibling (like a lut that drives a flipflop).
+ *   - clock pins get the first clock pin of their parent.
+ *
+ * The interconnect of the architecture is not used: the parser doesn't
+ * check it either.
+ */
+class NetlistTemplate {
+
+    static final String INTERCONNECT = "generated";
+
+    enum Direction {INPUT, OUTPUT, ANY};
+
+    static class Block {
+        final BlockType blockType;
+        final int index;
+        final Block parent;
+        final int depth, pinOffset;
+        final List<Block> children = new ArrayList<>();
+
+        // The index of this block in the list of blocks of the template
+        int id;
+
+        // The child of the global block this block is part of
+        int depth1Child = -1;
+        int clockPin = -1;
+        boolean clockConnected;
+
+        boolean siblingSourced, siblingSource;
+
+        Block(BlockType blockType, int index, Block parent, int pinOffset) {
+            this.blockType = blockType;
+            this.index = index;
+            this.parent = parent;
+            this.depth = parent == null ? 0 : parent.depth + 1;
+            this.pinOffset = pinOffset;
+        }
+
+        boolean isLeaf() {
+            return this.blockType.isLeaf();
+        }
+    }
+
+
+    private final BlockType globalType;
+    private final Direction direction;
+
+    final List<Block> blocks = new ArrayList<>();
+    int numPins;
+
+    // Per template pin
+    private List<PortType> pinPortTypes = new ArrayList<>();
+    private List<Integer> pinIndexes = new ArrayList<>();
+    private List<Block> pinBlocks = new ArrayList<>();
+    int[] source, sinkSlot, sourceSlot;
+    boolean[] used;
+    String[] reference;
+
+    // Per sink slot and per source slot
+    int numSinkSlots, numSourceSlots;
+    int[] sinkSlotPin, sinkSlotChild, sourceSlotPin, sourceSlotChild;
+    boolean[] exported, combinational;
+
+    int carrySinkSlot = -1, carrySourceSlot = -1;
+
+    // The global input pins that can carry a net
+    int numRegularInputs;
+    int[] regularInputPins;
+
+    boolean clocked;
+
+
+    NetlistTemplate(BlockType globalType, Direction direction) {
+        this.globalType = globalType;
+        this.direction = direction;
+
+        this.buildBlocks();
+        this.buildPins();
+
+        this.buildOutputPaths();
+        this.buildInputPaths(this.blocks.get(0));
+        this.buildClockPaths();
+        this.buildCarry();
+
+        this.buildReferences();
+    }
+
+    BlockType getGlobalType() {
+        return this.globalType;
+    }
+    BlockCategory getCategory() {
+        return this.globalType.getCategory();
+    }
+
+    Block getBlock(int pin) {
+        return this.pinBlocks.get(pin);
+    }
+    PortType getPortType(int pin) {
+        return this.pinPortTypes.get(pin);
+    }
+
+    boolean isInput(int pin) {
+        PortType portType = this.pinPortTypes.get(pin);
+        return portType != null && portType.isInput();
+    }
+    boolean isOutput(int pin) {
+        PortType portType = this.pinPortTypes.get(pin);
+        return portType != null && portType.isOutput();
+    }
+
+    /**
+     * The reference to a pin, as it is written in the net file when the
+     * pin is the source of a sibling input or of a parent output.
+     */
+    String getChildReference(int pin) {
+        Block block = this.pinBlocks.get(pin);
+        return String.format("%s[%d].%s[%d]->%s",
+                block.blockType.getName(), block.index,
+                this.pinPortTypes.get(pin).getName(), this.pinIndexes.get(pin),
+                INTERCONNECT);
+    }
+    /**
+     * The reference to an input pin, as it is written in the net file
+     * when the pin is the source of an input of a child.
+     */
+    String getParentReference(int pin) {
+        Block block = this.pinBlocks.get(pin);
+        return String.format("%s.%s[%d]->%s",
+                block.blockType.getName(),
+                this.pinPortTypes.get(pin).getName(), this.pinIndexes.get(pin),
+                INTERCONNECT);
+    }
+
+
+
+    private void buildBlocks() {
+        BlockType globalTypeWithMode = this.chooseMode(this.globalType, null, this.direction);
+        Block globalBlock = new Block(globalTypeWithMode, 0, null, 0);
+        this.addBlock(globalBlock);
+    }
+
+    private void addBlock(Block block) {
+        block.id = this.blocks.size();
+        this.blocks.add(block);
+        this.numPins += block.blockType.getNumPins();
+
+        if(block.depth == 1) {
+            block.depth1Child = block.index + block.parent.blockType.getChildRange(block.blockType)[0];
+        } else if(block.depth > 1) {
+            block.depth1Child = block.parent.depth1Child;
+        }
+
+        if(block.isLeaf()) {
+            return;
+        }
+
+        for(BlockType childType : block.blockType.getChildTypes()) {
+            BlockType childTypeWithMode = this.chooseMode(childType, block.blockType, Direction.ANY);
+
+            int[] childRange = block.blockType.getChildRange(childType);
+            for(int index = 0; index < childRange[1] - childRange[0]; index++) {
+                Block child = new Block(childTypeWithMode, index, block, this.numPins);
+                block.children.add(child);
+                this.addBlock(child);
+            }
+        }
+    }
+
+    /**
+     * Leaves have one unnamed mode. For other blocks the first mode that
+     * has children is used, or for io blocks the first mode with a leaf
+     * in the right direction.
+     */
+    private BlockType chooseMode(BlockType blockType, BlockType parentType, Direction direction) {
+        if(blockType.isLeaf()) {
+            return new BlockType(parentType, blockType.getName(), "");
+        }
+
+        for(BlockType typeWithMode : BlockType.getBlockTypesWithModes()) {
+            if(typeWithMode.equals(blockType) && typeWithMode.getNumChildren() > 0 && this.hasLeaf(typeWithMode, direction)) {
+                return typeWithMode;
+            }
+        }
+
+        throw new IllegalArgumentException("No usable mode for block type " + blockType.getName());
+    }
+
+    private boolean hasLeaf(BlockType typeWithMode, Direction direction) {
+        for(BlockType childType : typeWithMode.getChildTypes()) {
+            if(childType.isLeaf()) {
+                boolean hasInputs = childType.getInputPortRange()[1] > childType.getInputPortRange()[0];
+                boolean hasOutputs = childType.getOutputPortRange()[1] > childType.getOutputPortRange()[0];
+
+                if(direction == Direction.ANY
+                        || direction == Direction.INPUT && hasOutputs && !hasInputs
+                        || direction == Direction.OUTPUT && hasInputs && !hasOutputs) {
+                    return true;
+                }
+
+            } else {
+                for(BlockType childTypeWithMode : BlockType.getBlockTypesWithModes()) {
+                    if(childTypeWithMode.equals(childType) && this.hasLeaf(childTypeWithMode, direction)) {
+                        return true;
+                    }
+                }
+            }
+        }
+
+        return false;
+    }
+
+
+    private void buildPins() {
+        this.source = new int[this.numPins];
+        this.sinkSlot = new int[this.numPins];
+        this.sourceSlot = new int[this.numPins];
+        this.used = new boolean[this.numPins];
+        this.reference = new String[this.numPins];
+
+        for(int pin = 0; pin < this.numPins; pin++) {
+            this.source[pin] = -1;
+            this.sinkSlot[pin] = -1;
+            this.sourceSlot[pin] = -1;
+            this.pinPortTypes.add(null);
+            this.pinIndexes.add(-1);
+            this.pinBlocks.add(null);
+        }
+
+        for(Block block : this.blocks) {
+            for(PortType portType : block.blockType.getPortTypes()) {
+                int[] range = portType.getRange();
+
+                // Ports that can't be found by their name can't be
+                // written to the net file
+                PortType namedPortType = new PortType(block.blockType, portType.getName());
+                boolean named = namedPortType.getRange()[0] == range[0];
+
+                for(int index = 0; index < range[1] - range[0]; index++) {
+                    int pin = block.pinOffset + range[0] + index;
+                    this.pinBlocks.set(pin, block);
+
+                    if(named) {
+                        this.pinPortTypes.set(pin, portType);
+                        this.pinIndexes.set(pin, index);
+                    }
+                }
+            }
+        }
+
+        Block globalBlock = this.blocks.get(0);
+        PortType carryToPort = this.globalType.getCarryToPort();
+        int[] inputRange = this.globalType.getInputPortRange();
+
+        List<Integer> regularInputs = new ArrayList<>();
+        for(int pin = inputRange[0]; pin < inputRange[1]; pin++) {
+            PortType portType = this.pinPortTypes.get(globalBlock.pinOffset + pin);
+            if(portType != null && (carryToPort == null || !portType.getName().equals(carryToPort.getName()))) {
+                regularInputs.add(pin);
+            }
+        }
+
+        this.numRegularInputs = regularInputs.size();
+        this.regularInputPins = new int[this.numRegularInputs];
+        for(int i = 0; i < this.numRegularInputs; i++) {
+            this.regularInputPins[i] = regularInputs.get(i);
+        }
+    }
+
+
+    private void buildOutputPaths() {
+        List<Integer> sourceSlotPins = new ArrayList<>();
+        List<Boolean> exportedSlots = new ArrayList<>();
+
+        PortType carryFromPort = this.globalType.getCarryFromPort();
+
+        for(Block block : this.blocks) {
+            if(!block.isLeaf()) {
+                continue;
+            }
+
+            int[] outputRange = block.blockType.getOutputPortRange();
+            for(int blockPin = outputRange[0]; blockPin < outputRange[1]; blockPin++) {
+                int pin = block.pinOffset + blockPin;
+                if(this.pinPortTypes.get(pin) == null) {
+                    continue;
+                }
+
+                this.sourceSlot[pin] = sourceSlotPins.size();
+                sourceSlotPins.add(pin);
+
+                int current = pin;
+                while(this.pinBlocks.get(current).parent != null) {
+                    Block parent = this.pinBlocks.get(current).parent;
+                    String excludedPort = parent.depth == 0 && carryFromPort != null ? carryFromPort.getName() : null;
+
+                    int parentPin = this.findParentPin(current, parent, true, excludedPort);
+                    if(parentPin == -1) {
+                        break;
+                    }
+
+                    this.source[parentPin] = current;
+                    this.used[parentPin] = true;
+                    current = parentPin;
+                }
+
+                exportedSlots.add(this.pinBlocks.get(current).depth == 0);
+            }
+        }
+
+        this.numSourceSlots = sourceSlotPins.size();
+        this.sourceSlotPin = new int[this.numSourceSlots];
+        this.sourceSlotChild = new int[this.numSourceSlots];
+        this.exported = new boolean[this.numSourceSlots];
+        this.combinational = new boolean[this.numSourceSlots];
+        for(int slot = 0; slot < this.numSourceSlots; slot++) {
+            Block leaf = this.pinBlocks.get(sourceSlotPins.get(slot));
+
+            this.sourceSlotPin[slot] = sourceSlotPins.get(slot);
+            this.sourceSlotChild[slot] = leaf.depth1Child;
+            this.exported[slot] = exportedSlots.get(slot);
+            this.combinational[slot] = !leaf.blockType.isClocked();
+        }
+    }
+
+    /**
+     * Find the pin of the parent that belongs to a pin of a child.
+     * The parent pin has the same port name, and the same index, or the
+     * index of the pin when the ports of all siblings are concatenated.
+     * If there is no such pin, or if it is used and exclusive is true,
+     * another free pin of the parent is used.
+     */
+    private int findParentPin(int pin, Block parent, boolean exclusive, String excludedPort) {
+        Block block = this.pinBlocks.get(pin);
+        PortType portType = this.pinPortTypes.get(pin);
+        boolean input = portType.isInput();
+
+        int[] parentRange = input ? parent.blockType.getInputPortRange() : parent.blockType.getOutputPortRange();
+
+        for(int parentBlockPin = parentRange[0]; parentBlockPin < parentRange[1]; parentBlockPin++) {
+            int parentPin = parent.pinOffset + parentBlockPin;
+            PortType parentPortType = this.pinPortTypes.get(parentPin);
+
+            if(parentPortType != null && parentPortType.getName().equals(portType.getName()) && !parentPortType.getName().equals(excludedPort)) {
+                int width = portType.getRange()[1] - portType.getRange()[0];
+                int parentWidth = parentPortType.getRange()[1] - parentPortType.getRange()[0];
+                int numSiblings = parent.blockType.getChildRange(block.blockType)[1] - parent.blockType.getChildRange(block.blockType)[0];
+
+                int index = this.pinIndexes.get(pin);
+                if(parentWidth > width && parentWidth >= numSiblings * width) {
+                    index += block.index * width;
+                }
+
+                if(index < parentWidth) {
+                    int namedPin = parentPin + index;
+                    if(!(exclusive && this.used[namedPin]) && (input || this.source[namedPin] == -1)) {
+                        return namedPin;
+                    }
+                }
+                break;
+            }
+        }
+
+        for(int parentBlockPin = parentRange[0]; parentBlockPin < parentRange[1]; parentBlockPin++) {
+            int parentPin = parent.pinOffset + parentBlockPin;
+            PortType parentPortType = this.pinPortTypes.get(parentPin);
+
+            if(parentPortType != null && !this.used[parentPin] && !parentPortType.getName().equals(excludedPort)) {
+                if(input && parent.depth > 0 && this.source[parentPin] == -1 && this.sinkSlot[parentPin] == -1) {
+                    continue;
+                }
+                return parentPin;
+            }
+        }
+
+        return -1;
+    }
+
+
+    private void buildInputPaths(Block parent) {
+        if(parent.isLeaf()) {
+            return;
+        }
+
+        List<Integer> sinkSlotPins = new ArrayList<>();
+
+        // The inputs of the children of the global block are sink slots
+        if(parent.depth == 0) {
+            for(Block child : parent.children) {
+                int[] inputRange = child.blockType.getInputPortRange();
+                for(int blockPin = inputRange[0]; blockPin < inputRange[1]; blockPin++) {
+                    int pin = child.pinOffset + blockPin;
+                    if(this.pinPortTypes.get(pin) != null) {
+                        this.sinkSlot[pin] = sinkSlotPins.size();
+                        sinkSlotPins.add(pin);
+                    }
+                }
+            }
+
+            this.numSinkSlots = sinkSlotPins.size();
+            this.sinkSlotPin = new int[this.numSinkSlots];
+            this.sinkSlotChild = new int[this.numSinkSlots];
+            for(int slot = 0; slot < this.numSinkSlots; slot++) {
+                this.sinkSlotPin[slot] = sinkSlotPins.get(slot);
+                this.sinkSlotChild[slot] = this.pinBlocks.get(sinkSlotPins.get(slot)).depth1Child;
+            }
+
+        } else {
+            // First try to connect every input to the parent
+            List<Integer> unconnectedPins = new ArrayList<>();
+            for(Block child : parent.children) {
+                int[] inputRange = child.blockType.getInputPortRange();
+                for(int blockPin = inputRange[0]; blockPin < inputRange[1]; blockPin++) {
+                    int pin = child.pinOffset + blockPin;
+                    if(this.pinPortTypes.get(pin) == null) {
+                        continue;
+                    }
+
+                    int parentPin = this.findParentPin(pin, parent, false, null);
+                    if(parentPin == -1) {
+                        unconnectedPins.add(pin);
+
+                    } else {
+                        this.source[pin] = parentPin;
+                        this.used[parentPin] = true;
+                    }
+                }
+            }
+
+            // The remaining inputs get the output of a sibling. A
+            // sibling that is the source of another sibling never gets
+            // a sibling as source itself, so there are no loops.
+            for(int pin : unconnectedPins) {
+                Block child = this.pinBlocks.get(pin);
+                if(child.siblingSource) {
+                    continue;
+                }
+
+                int siblingPin = this.findSiblingPin(child);
+                if(siblingPin != -1) {
+                    this.source[pin] = siblingPin;
+                    this.used[siblingPin] = true;
+
+                    this.pinBlocks.get(siblingPin).siblingSource = true;
+                    child.siblingSourced = true;
+                }
+            }
+        }
+
+        for(Block child : parent.children) {
+            this.buildInputPaths(child);
+        }
+    }
+
+    private int findSiblingPin(Block block) {
+        int firstPin = -1;
+
+        for(Block sibling : block.parent.children) {
+            if(sibling == block || sibling.siblingSourced) {
+                continue;
+            }
+
+            int[] outputRange = sibling.blockType.getOutputPortRange();
+            for(int blockPin = outputRange[0]; blockPin < outputRange[1]; blockPin++) {
+                int pin = sibling.pinOffset + blockPin;
+                if(this.pinPortTypes.get(pin) == null || !sibling.isLeaf() && this.source[pin] == -1) {
+                    continue;
+                }
+
+                // Prefer an output that doesn't drive a sibling yet
+                boolean drivesSibling = sibling.siblingSource && this.used[pin] && this.drivesSibling(pin);
+                if(!drivesSibling) {
+                    return pin;
+
+                } else if(firstPin == -1) {
+                    firstPin = pin;
+                }
+            }
+        }
+
+        return firstPin;
+    }
+
+    private boolean drivesSibling(int siblingPin) {
+        Block parent = this.pinBlocks.get(siblingPin).parent;
+        for(Block child : parent.children) {
+            int[] inputRange = child.blockType.getInputPortRange();
+            for(int blockPin = inputRange[0]; blockPin < inputRange[1]; blockPin++) {
+                if(this.source[child.pinOffset + blockPin] == siblingPin) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+
+    private void buildClockPaths() {
+        for(Block block : this.blocks) {
+            int[] clockRange = block.blockType.getClockPortRange();
+            if(clockRange[1] > clockRange[0] && this.pinPortTypes.get(block.pinOffset + clockRange[0]) != null) {
+                block.clockPin = block.pinOffset + clockRange[0];
+            }
+
+            if(block.parent == null) {
+                block.clockConnected = block.clockPin != -1;
+
+            } else if(block.clockPin != -1 && block.parent.clockConnected) {
+                this.source[block.clockPin] = block.parent.clockPin;
+                block.clockConnected = true;
+            }
+
+            if(block.isLeaf() && block.blockType.isClocked() && block.clockConnected) {
+                this.clocked = true;
+            }
+        }
+    }
+
+
+    /**
+     * A carry chain needs a leaf output that drives the carry output of
+     * the global block, and a sink slot that is driven by the carry
+     * input. If the template has no unused leaf output that reaches a
+     * child of the global block, the last exported output is used.
+     */
+    private void buildCarry() {
+        PortType carryFromPort = this.globalType.getCarryFromPort();
+        PortType carryToPort = this.globalType.getCarryToPort();
+        if(carryFromPort == null || this.numSinkSlots < 2) {
+            return;
+        }
+
+        Block globalBlock = this.blocks.get(0);
+        int carryFromPin = globalBlock.pinOffset + carryFromPort.getRange()[0];
+        int carryToPin = globalBlock.pinOffset + carryToPort.getRange()[0];
+
+        int carrySource = -1, stolenSource = -1;
+        for(int slot = 0; slot < this.numSourceSlots; slot++) {
+            int top = this.getTopPin(this.sourceSlotPin[slot]);
+
+            if(this.pinBlocks.get(top).depth == 1) {
+                carrySource = slot;
+                break;
+
+            } else if(this.exported[slot]) {
+                stolenSource = slot;
+            }
+        }
+
+        if(carrySource == -1 && stolenSource != -1) {
+            carrySource = stolenSource;
+
+            int globalPin = this.getTopPin(this.sourceSlotPin[carrySource]);
+            this.source[globalPin] = -1;
+            this.used[globalPin] = false;
+            this.exported[carrySource] = false;
+        }
+
+        if(carrySource == -1) {
+            return;
+        }
+
+        int top = this.getTopPin(this.sourceSlotPin[carrySource]);
+        this.source[carryFromPin] = top;
+        this.used[carryFromPin] = true;
+
+        this.carrySourceSlot = carrySource;
+        this.carrySinkSlot = this.numSinkSlots - 1;
+        this.source[this.sinkSlotPin[this.carrySinkSlot]] = carryToPin;
+    }
+
+    private int getTopPin(int leafPin) {
+        int top = leafPin;
+        boolean found = true;
+        while(found) {
+            found = false;
+
+            Block parent = this.pinBlocks.get(top).parent;
+            if(parent == null) {
+                break;
+            }
+
+            int[] outputRange = parent.blockType.getOutputPortRange();
+            for(int blockPin = outputRange[0]; blockPin < outputRange[1]; blockPin++) {
+                if(this.source[parent.pinOffset + blockPin] == top) {
+                    top = parent.pinOffset + blockPin;
+                    found = true;
+                    break;
+                }
+            }
+        }
+
+        return top;
+    }
+
+
+    private void buildReferences() {
+        for(int pin = 0; pin < this.numPins; pin++) {
+            int sourcePin = this.source[pin];
+            if(sourcePin == -1) {
+                continue;
+            }
+
+            Block block = this.pinBlocks.get(pin);
+            Block sourceBlock = this.pinBlocks.get(sourcePin);
+
+            // The source is the parent, or a child or sibling
+            if(sourceBlock == block.parent) {
+                this.reference[pin] = this.getParentReference(sourcePin);
+            } else {
+                this.reference[pin] = this.getChildReference(sourcePin);
+            }
+        }
+    }
+}
@@ -12,6 +12,7 @@ import java.util.regex.Pattern;
 import place.circuit.Circuit;
 import place.circuit.block.AbstractSite;
 import place.circuit.block.GlobalBlock;
+import place.circuit.block.Macro;
 import place.circuit.exceptions.PlacementException;
 
 public class PlaceParser {
@@ -93,6 +94,76 @@ public class PlaceParser {
         reader.close();
     }
 
+    /**
+     * Read a placement of a previous version of the netlist. Blocks are
+     * matched by name. A block keeps its position if its site still
+     * exists, has the same type and is free. All other blocks, and
+     * macros of which not all blocks could keep their relative
+     * position, are left unplaced. Returns the number of blocks that
+     * kept their position.
+     */
+    public int ecoParse() throws IOException, PlacementException, IllegalSizeException {
+
+        BufferedReader reader = new BufferedReader(new FileReader(this.file));
+
+        // Read all the coordinates and store them
+        this.coordinates = new HashMap<String, int[]>();
+
+        String line;
+        while((line = reader.readLine()) != null) {
+            this.processLine(line);
+        }
+        reader.close();
+
+        int width = this.circuit.getWidth(), height = this.circuit.getHeight();
+
+        int numPlacedBlocks = 0;
+        for(GlobalBlock block : this.circuit.getGlobalBlocks()) {
+            int[] coordinate = this.coordinates.get(block.getName());
+            if(coordinate == null) {
+                continue;
+            }
+
+            int x = coordinate[0], y = coordinate[1];
+            if(x > width + 1 || y > height + 1) {
+                continue;
+            }
+
+            AbstractSite site = this.circuit.getSite(x, y, true);
+            if(site != null && site.getType().equals(block.getType()) && !site.isFull()) {
+                block.setSite(site);
+                numPlacedBlocks++;
+            }
+        }
+
+        // Macros are kept or placed again as a whole
+        for(Macro macro : this.circuit.getMacros()) {
+            GlobalBlock firstBlock = macro.getBlock(0);
+
+            boolean intact = true;
+            for(GlobalBlock block : macro.getBlocks()) {
+                if(block.getSite() == null
+                        || firstBlock.getSite() == null
+                        || block.getColumn() != firstBlock.getColumn()
+                        || block.getRow() != firstBlock.getRow() + block.getMacroOffsetY()) {
+                    intact = false;
+                    break;
+                }
+            }
+
+            if(!intact) {
+                for(GlobalBlock block : macro.getBlocks()) {
+                    if(block.getSite() != null) {
+                        block.removeSite();
+                        numPlacedBlocks--;
+                    }
+                }
+            }
+        }
+
+        return numPlacedBlocks;
+    }
+
     private void processLine(String line) throws IllegalSizeException {
         Matcher sizeMatcher = sizePattern.matcher(line);
         boolean sizeMatches = sizeMatcher.matches();
@@ -0,0 +1,112 @@
+package place.circuit.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import place.circuit.Circuit;
+import place.circuit.architecture.Architecture;
+import place.circuit.exceptions.PlacementException;
+import place.interfaces.Logger;
+import place.interfaces.Options;
+import place.placers.Placer;
+import place.placers.random.RandomPlacer;
+import place.placers.simulatedannealing.SimulatedAnnealingPlacerTD;
+import place.placers.simulatedannealing.SimulatedAnnealingPlacerWLD;
+import place.visual.PlacementVisualizer;
+
+/**
+ * Checks that a circuit that is read from a snapshot is placed in the
+ * same way as a circuit that is parsed from the net file. The net file
+ * is parsed, a snapshot of the parsed circuit is written to a temporary
+ * file and read back. Both circuits get a random placement, followed by
+ * the wirelength driven and the timing driven annealer, with the same
+ * random seed. The annealers use the connections and the timing graph,
+ * so any difference in those leads to another placement. The timing
+ * driven annealer only moves blocks if the delay tables are loaded.
+ * The place files must be identical.
+ *
+ * The circuit of the run itself is not used or changed.
+ */
+public class SnapshotCheck {
+
+    // Option of the annealers
+    private static final String O_EFFORT_LEVEL = "effort level";
+
+    private final Architecture architecture;
+    private final String circuitName;
+    private final File architectureFile, netFile;
+    private final long randomSeed;
+    private final Logger logger;
+    private final PlacementVisualizer visualizer;
+
+    public SnapshotCheck(Circuit circuit, File architectureFile, File netFile, long randomSeed, Logger logger, PlacementVisualizer visualizer) {
+        this.architecture = circuit.getArchitecture();
+        this.circuitName = circuit.getName();
+        this.architectureFile = architectureFile;
+        this.netFile = netFile;
+        this.randomSeed = randomSeed;
+        this.logger = logger;
+        this.visualizer = visualizer;
+    }
+
+    public boolean run(double effortLevel) throws IOException, PlacementException {
+        File snapshotFile = File.createTempFile("circuit", ".snapshot");
+        File parsedPlaceFile = File.createTempFile("parsed", ".place");
+        File loadedPlaceFile = File.createTempFile("snapshot", ".place");
+
+        try {
+            Circuit parsed = new NetParser(this.architecture, this.circuitName, this.netFile).parse();
+
+            CircuitSnapshot snapshot = new CircuitSnapshot(snapshotFile, this.architectureFile, this.netFile);
+            snapshot.write(parsed);
+            Circuit loaded = snapshot.read(this.architecture, this.circuitName);
+
+            this.place(parsed, effortLevel, parsedPlaceFile);
+            this.place(loaded, effortLevel, loadedPlaceFile);
+
+            byte[] parsedPlacement = Files.readAllBytes(parsedPlaceFile.toPath());
+            byte[] loadedPlacement = Files.readAllBytes(loadedPlaceFile.toPath());
+            boolean identical = Arrays.equals(parsedPlacement, loadedPlacement);
+
+            this.logger.printf("Circuit snapshot check: %d blocks, snapshot of %d bytes\n", parsed.getNumGlobalBlocks(), snapshotFile.length());
+            this.logger.printf("place files | %s\n\n", identical ? "identical" : "different");
+
+            return identical;
+
+        } finally {
+            snapshotFile.delete();
+            parsedPlaceFile.delete();
+            loadedPlaceFile.delete();
+        }
+    }
+
+    private void place(Circuit circuit, double effortLevel, File placeFile) throws IOException, PlacementException {
+        Random random = new Random(this.randomSeed);
+
+        Options randomOptions = new Options(this.logger);
+        RandomPlacer.initOptions(randomOptions);
+        Placer randomPlacer = new RandomPlacer(circuit, randomOptions, random, this.logger, this.visualizer);
+        randomPlacer.initializeData();
+        randomPlacer.place();
+
+        Options wldOptions = new Options(this.logger);
+        SimulatedAnnealingPlacerWLD.initOptions(wldOptions);
+        wldOptions.set(O_EFFORT_LEVEL, effortLevel);
+        Placer wldPlacer = new SimulatedAnnealingPlacerWLD(circuit, wldOptions, random, this.logger, this.visualizer);
+        wldPlacer.initializeData();
+        wldPlacer.place();
+
+        Options tdOptions = new Options(this.logger);
+        SimulatedAnnealingPlacerTD.initOptions(tdOptions);
+        tdOptions.set(O_EFFORT_LEVEL, effortLevel);
+        Placer tdPlacer = new SimulatedAnnealingPlacerTD(circuit, tdOptions, random, this.logger, this.visualizer);
+        tdPlacer.initializeData();
+        tdPlacer.place();
+        circuit.getTimingGraph().stopThreads();
+
+        new PlaceDumper(circuit, this.netFile, placeFile, this.architectureFile).dump();
+    }
+}
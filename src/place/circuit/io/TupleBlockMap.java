@@ -4,18 +4,19 @@ import java.util.HashMap;
 import java.util.Map;
 
 import place.circuit.block.AbstractBlock;
+import place.circuit.io.NetParser.PortNets;
 
 
 class TupleBlockMap {
 
     private AbstractBlock block;
-    private Map<String, String> map;
+    private Map<String, PortNets> map;
 
     TupleBlockMap(AbstractBlock block) {
-        this(block, new HashMap<String, String>());
+        this(block, new HashMap<String, PortNets>());
     }
 
-    TupleBlockMap(AbstractBlock block, Map<String, String> map) {
+    TupleBlockMap(AbstractBlock block, Map<String, PortNets> map) {
         this.block = block;
         this.map = map;
     }
@@ -24,7 +25,7 @@ class TupleBlockMap {
         return this.block;
     }
 
-    Map<String, String> getMap() {
+    Map<String, PortNets> getMap() {
         return this.map;
     }
 }
@@ -0,0 +1,283 @@
+package place.circuit.timing;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Full arrival and required time passes that are spread over
+ * multiple threads. The nodes of a traversal are sorted by level:
+ * all the sources (sinks) of a node are on a lower level, so the
+ * nodes within one level can be updated in parallel.
+ *
+ * Nodes and edges are numbered, the graph is stored in compressed
+ * rows and the times and delays in double arrays. The nodes are
+ * updated in the same way as TimingNode.updateArrivalTime() and
+ * updateRequiredTime(), so the results are identical to the serial
+ * passes. At the end of a pass the times are copied to the nodes.
+ */
+class ParallelTimingAnalysis {
+
+    // Levels or loops with less work than this are not split
+    private static final int MIN_CHUNK_SIZE = 512;
+
+    private final ForkJoinPool pool;
+    private final int numThreads;
+
+    private final TimingNode[] nodes;
+    private final TimingEdge[] edges;
+
+    private final int[] leafNodes;
+    private final int[] arrivalOrder, arrivalLevelStart;
+    private final int[] requiredOrder, requiredLevelStart;
+
+    private final int[] sourceStart, sourceNodes, sourceEdges;
+    private final int[] sinkStart, sinkNodes, sinkEdges;
+
+    private final double[] edgeDelays;
+    private final double[] arrivalTimes, requiredTimes;
+
+    ParallelTimingAnalysis(
+            List<TimingNode> timingNodes,
+            List<TimingEdge> timingEdges,
+            List<TimingNode> leafNodes,
+            List<TimingNode> arrivalTraversal,
+            List<TimingNode> requiredTraversal,
+            int numThreads) {
+
+        this.numThreads = numThreads;
+        this.pool = new ForkJoinPool(numThreads);
+
+        int numNodes = timingNodes.size();
+        int numEdges = timingEdges.size();
+
+        this.nodes = timingNodes.toArray(new TimingNode[numNodes]);
+        this.edges = timingEdges.toArray(new TimingEdge[numEdges]);
+
+        Map<TimingNode, Integer> nodeIds = new IdentityHashMap<>(numNodes);
+        for(int i = 0; i < numNodes; i++) {
+            nodeIds.put(this.nodes[i], i);
+        }
+        Map<TimingEdge, Integer> edgeIds = new IdentityHashMap<>(numEdges);
+        for(int i = 0; i < numEdges; i++) {
+            edgeIds.put(this.edges[i], i);
+        }
+
+        this.leafNodes = new int[leafNodes.size()];
+        for(int i = 0; i < this.leafNodes.length; i++) {
+            this.leafNodes[i] = nodeIds.get(leafNodes.get(i));
+        }
+
+        this.sourceStart = new int[numNodes + 1];
+        this.sinkStart = new int[numNodes + 1];
+        for(int i = 0; i < numNodes; i++) {
+            this.sourceStart[i + 1] = this.sourceStart[i] + this.nodes[i].getNumSources();
+            this.sinkStart[i + 1] = this.sinkStart[i] + this.nodes[i].getNumSinks();
+        }
+
+        this.sourceNodes = new int[this.sourceStart[numNodes]];
+        this.sourceEdges = new int[this.sourceStart[numNodes]];
+        this.sinkNodes = new int[this.sinkStart[numNodes]];
+        this.sinkEdges = new int[this.sinkStart[numNodes]];
+        for(int i = 0; i < numNodes; i++) {
+            TimingNode node = this.nodes[i];
+
+            // Keep the order of the edges, so the results are the same as in the serial passes
+            int position = this.sourceStart[i];
+            for(TimingEdge edge : node.getSources()) {
+                this.sourceNodes[position] = nodeIds.get(edge.getSource());
+                this.sourceEdges[position] = edgeIds.get(edge);
+                position++;
+            }
+
+            position = this.sinkStart[i];
+            for(TimingEdge edge : node.getSinks()) {
+                this.sinkNodes[position] = nodeIds.get(edge.getSink());
+                this.sinkEdges[position] = edgeIds.get(edge);
+                position++;
+            }
+        }
+
+        this.arrivalOrder = new int[arrivalTraversal.size()];
+        this.arrivalLevelStart = sortByLevel(arrivalTraversal, nodeIds, this.arrivalOrder, true);
+        this.requiredOrder = new int[requiredTraversal.size()];
+        this.requiredLevelStart = sortByLevel(requiredTraversal, nodeIds, this.requiredOrder, false);
+
+        this.edgeDelays = new double[numEdges];
+        this.arrivalTimes = new double[numNodes];
+        this.requiredTimes = new double[numNodes];
+    }
+
+    /**
+     * Counting sort of the nodes in a traversal by their level. Returns
+     * the start of every level in order, with an extra element at the end.
+     */
+    private static int[] sortByLevel(List<TimingNode> traversal, Map<TimingNode, Integer> nodeIds, int[] order, boolean arrival) {
+        int maxLevel = 0;
+        for(TimingNode node : traversal) {
+            maxLevel = Math.max(maxLevel, level(node, arrival));
+        }
+
+        int[] levelStart = new int[maxLevel + 2];
+        for(TimingNode node : traversal) {
+            levelStart[level(node, arrival) + 1]++;
+        }
+        for(int level = 0; level <= maxLevel; level++) {
+            levelStart[level + 1] += levelStart[level];
+        }
+
+        int[] position = levelStart.clone();
+        for(TimingNode node : traversal) {
+            order[position[level(node, arrival)]++] = nodeIds.get(node);
+        }
+
+        return levelStart;
+    }
+    private static int level(TimingNode node, boolean arrival) {
+        return arrival ? node.getArrivalLevel() : node.getRequiredLevel();
+    }
+
+
+    /**
+     * The arrival times of all root nodes should be 0.
+     */
+    void calculateArrivalTimes() {
+        this.loadEdgeDelays();
+
+        // Only the root nodes are read before they are calculated
+        Arrays.fill(this.arrivalTimes, 0);
+
+        int numLevels = this.arrivalLevelStart.length - 1;
+        for(int level = 0; level < numLevels; level++) {
+            this.forRange(this.arrivalLevelStart[level], this.arrivalLevelStart[level + 1], this::updateArrivalTimes);
+        }
+
+        this.forRange(0, this.arrivalOrder.length, (start, end) -> {
+            for(int i = start; i < end; i++) {
+                int node = this.arrivalOrder[i];
+                this.nodes[node].setArrivalTime(this.arrivalTimes[node]);
+            }
+        });
+    }
+
+    private void updateArrivalTimes(int start, int end) {
+        for(int i = start; i < end; i++) {
+            int node = this.arrivalOrder[i];
+
+            double arrivalTime = Double.MIN_VALUE;
+            for(int j = this.sourceStart[node]; j < this.sourceStart[node + 1]; j++) {
+                double localArrivalTime = this.arrivalTimes[this.sourceNodes[j]] + this.edgeDelays[this.sourceEdges[j]];
+                if(localArrivalTime > arrivalTime) {
+                    arrivalTime = localArrivalTime;
+                }
+            }
+            this.arrivalTimes[node] = arrivalTime;
+        }
+    }
+
+
+    /**
+     * The required times of the leaf nodes should already be set in the nodes.
+     */
+    void calculateRequiredTimes() {
+        this.loadEdgeDelays();
+
+        for(int leafNode : this.leafNodes) {
+            this.requiredTimes[leafNode] = this.nodes[leafNode].getRequiredTime();
+        }
+
+        int numLevels = this.requiredLevelStart.length - 1;
+        for(int level = 0; level < numLevels; level++) {
+            this.forRange(this.requiredLevelStart[level], this.requiredLevelStart[level + 1], this::updateRequiredTimes);
+        }
+
+        this.forRange(0, this.requiredOrder.length, (start, end) -> {
+            for(int i = start; i < end; i++) {
+                int node = this.requiredOrder[i];
+                this.nodes[node].setRequiredTime(this.requiredTimes[node]);
+            }
+        });
+    }
+
+    private void updateRequiredTimes(int start, int end) {
+        for(int i = start; i < end; i++) {
+            int node = this.requiredOrder[i];
+
+            double requiredTime = Double.MAX_VALUE;
+            for(int j = this.sinkStart[node]; j < this.sinkStart[node + 1]; j++) {
+                double localRequiredTime = this.requiredTimes[this.sinkNodes[j]] - this.edgeDelays[this.sinkEdges[j]];
+                if(localRequiredTime < requiredTime) {
+                    requiredTime = localRequiredTime;
+                }
+            }
+            this.requiredTimes[node] = requiredTime;
+        }
+    }
+
+
+    private void loadEdgeDelays() {
+        this.forRange(0, this.edges.length, (start, end) -> {
+            for(int i = start; i < end; i++) {
+                this.edgeDelays[i] = this.edges[i].getTotalDelay();
+            }
+        });
+    }
+
+
+    /**
+     * Stop the threads of the pool. The analysis can't be used anymore.
+     */
+    void shutdown() {
+        this.pool.shutdown();
+    }
+
+
+    interface RangeTask {
+        void run(int start, int end);
+    }
+
+    /**
+     * Run the task on the range [start, end), split in chunks that
+     * are spread over the threads of the pool.
+     */
+    void forRange(int start, int end, RangeTask task) {
+        int size = end - start;
+        if(size <= MIN_CHUNK_SIZE) {
+            task.run(start, end);
+
+        } else {
+            int chunkSize = Math.max(MIN_CHUNK_SIZE, size / (4 * this.numThreads));
+            this.pool.invoke(new RangeAction(start, end, chunkSize, task));
+        }
+    }
+
+    private static class RangeAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int start, end, chunkSize;
+        private final RangeTask task;
+
+        RangeAction(int start, int end, int chunkSize, RangeTask task) {
+            this.start = start;
+            this.end = end;
+            this.chunkSize = chunkSize;
+            this.task = task;
+        }
+
+        @Override
+        protected void compute() {
+            if(this.end - this.start <= this.chunkSize) {
+                this.task.run(this.start, this.end);
+
+            } else {
+                int middle = (this.start + this.end) >>> 1;
+                invokeAll(
+                        new RangeAction(this.start, middle, this.chunkSize, this.task),
+                        new RangeAction(middle, this.end, this.chunkSize, this.task));
+            }
+        }
+    }
+}
@@ -12,20 +12,28 @@ public class TimingEdge {
 
 	private double stagedWireDelay;
 
-    TimingEdge(double fixedDelay, TimingNode source, TimingNode sink, DelayTables delayTables){
+	// Incremental timing analysis
+	private final TimingGraph timingGraph;
+	private boolean dirty = false, global = false;
+
+    TimingEdge(double fixedDelay, TimingNode source, TimingNode sink, DelayTables delayTables, TimingGraph timingGraph){
         this.fixedDelay = fixedDelay;
         
         this.source = source;
         this.sink = sink;
         
         this.delayTables = delayTables;
+        this.timingGraph = timingGraph;
     }
 
     public double getFixedDelay(){
         return this.fixedDelay;
     }
     void setFixedDelay(double fixedDelay){
-        this.fixedDelay = fixedDelay;
+        if(fixedDelay != this.fixedDelay) {
+            this.fixedDelay = fixedDelay;
+            this.markDirty();
+        }
     }
 
     public double calculateWireDelay(){
@@ -38,7 +46,27 @@ public class TimingEdge {
         return this.delayTables.getDelay(fromCategory, toCategory, deltaX, deltaY);
     }
     public void setWireDelay(double wireDelay){
-        this.wireDelay = wireDelay;
+        if(wireDelay != this.wireDelay) {
+            this.wireDelay = wireDelay;
+            this.markDirty();
+        }
+    }
+
+    private void markDirty() {
+        if(!this.dirty) {
+            this.dirty = true;
+            this.timingGraph.addDirtyEdge(this);
+        }
+    }
+    void clearDirty() {
+        this.dirty = false;
+    }
+
+    void setGlobal(boolean global) {
+        this.global = global;
+    }
+    boolean isGlobal() {
+        return this.global;
     }
 
     public double getTotalDelay(){
@@ -75,7 +103,7 @@ public class TimingEdge {
     }
     
     void pushThrough(){
-    	this.wireDelay = this.stagedWireDelay;
+    	this.setWireDelay(this.stagedWireDelay);
     }
     
     double getDeltaCost(){
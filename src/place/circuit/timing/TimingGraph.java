@@ -1,8 +1,13 @@
 package place.circuit.timing;
 
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -49,6 +54,24 @@ public class TimingGraph {
     private double maxDelay;
 
     private double[] criticalityLookupTable = new double[21];
+
+    // Incremental timing analysis. The edges whose delay has changed
+    // since the last analysis are kept in dirtyEdges. When the
+    // previous results are still valid, arrival and required times
+    // are only propagated through the cones of these edges. If more
+    // than 1 / MAX_DIRTY_FRACTION of the edges is dirty, the full
+    // passes are faster.
+    private static final int MAX_DIRTY_FRACTION = 16;
+    private List<TimingEdge> dirtyEdges = new ArrayList<>();
+    private boolean arrivalTimesValid = false, requiredTimesValid = false, criticalitiesValid = false;
+    // The max delay that the required times of the leaves are based on
+    private double requiredMaxDelay;
+    private List<List<TimingNode>> arrivalLevels, requiredLevels;
+    private List<TimingNode> changedArrivalNodes = new ArrayList<>(), changedRequiredNodes = new ArrayList<>();
+
+    // The full passes are spread over multiple threads if numThreads > 1
+    private int numThreads = 1;
+    private ParallelTimingAnalysis parallelAnalysis;
     
     //Tarjan's strongly connected components algorithm
     private int index;
@@ -74,16 +97,154 @@ public class TimingGraph {
     public void build() {
 
         this.buildGraph();
-        
+
+        this.finishBuild();
+    }
+    private void finishBuild() {
         this.setRootAndLeafNodes();
         
         this.cutCombLoop();
         
         this.buildTraversals();
+
+        this.buildLevels();
         
         this.setGlobalTimingEdges();
     }
 
+
+    /**
+     * Write the topology of the timing graph to a circuit snapshot:
+     * the clock domains, the nodes and the edges with their fixed
+     * delay. Pins are referred to by their index in the snapshot.
+     * Edges that were cut to break a combinational loop are only
+     * part of the timing nets, they are written separately.
+     */
+    public void write(DataOutputStream output, Map<AbstractPin, Integer> pinIndexes) throws IOException {
+        output.writeInt(this.clockNamesToDomains.size());
+        for(Map.Entry<String, Integer> clockDomain : this.clockNamesToDomains.entrySet()) {
+            byte[] clockName = clockDomain.getKey().getBytes(StandardCharsets.UTF_8);
+            output.writeInt(clockName.length);
+            output.write(clockName);
+            output.writeInt(clockDomain.getValue());
+        }
+
+        Map<TimingNode, Integer> nodeIndexes = new IdentityHashMap<>();
+        output.writeInt(this.timingNodes.size());
+        for(TimingNode node : this.timingNodes) {
+            nodeIndexes.put(node, nodeIndexes.size());
+
+            output.writeInt(pinIndexes.get(node.getPin()));
+            output.writeByte(node.getPosition().ordinal());
+            output.writeInt(node.getClockDomain());
+            output.writeDouble(node.getClockDelay());
+        }
+
+        Map<TimingEdge, Integer> edgeIndexes = new IdentityHashMap<>();
+        for(TimingEdge edge : this.timingEdges) {
+            edgeIndexes.put(edge, edgeIndexes.size());
+        }
+        List<TimingEdge> cutEdges = new ArrayList<>();
+        for(List<TimingEdge> timingNet : this.timingNets) {
+            for(TimingEdge edge : timingNet) {
+                if(!edgeIndexes.containsKey(edge)) {
+                    edgeIndexes.put(edge, edgeIndexes.size());
+                    cutEdges.add(edge);
+                }
+            }
+        }
+
+        output.writeInt(this.timingEdges.size());
+        output.writeInt(cutEdges.size());
+        for(TimingEdge edge : this.timingEdges) {
+            this.writeEdge(output, edge, nodeIndexes);
+        }
+        for(TimingEdge edge : cutEdges) {
+            this.writeEdge(output, edge, nodeIndexes);
+        }
+
+        output.writeInt(this.timingNets.size());
+        for(List<TimingEdge> timingNet : this.timingNets) {
+            output.writeInt(timingNet.size());
+            for(TimingEdge edge : timingNet) {
+                output.writeInt(edgeIndexes.get(edge));
+            }
+        }
+    }
+    private void writeEdge(DataOutputStream output, TimingEdge edge, Map<TimingNode, Integer> nodeIndexes) throws IOException {
+        output.writeInt(nodeIndexes.get(edge.getSource()));
+        output.writeInt(nodeIndexes.get(edge.getSink()));
+        output.writeDouble(edge.getFixedDelay());
+    }
+
+    /**
+     * Build the timing graph from the topology in a circuit snapshot,
+     * instead of traversing the netlist. The edges are added in the
+     * same order as in the graph that was written, so the result is
+     * identical to build().
+     */
+    public void read(ByteBuffer input, List<AbstractPin> pins) throws IOException {
+        int numClockDomains = input.getInt();
+        for(int i = 0; i < numClockDomains; i++) {
+            byte[] clockName = new byte[input.getInt()];
+            input.get(clockName);
+            this.clockNamesToDomains.put(new String(clockName, StandardCharsets.UTF_8), input.getInt());
+        }
+        this.numClockDomains = numClockDomains;
+
+        Position[] positions = Position.values();
+        int numNodes = input.getInt();
+        for(int i = 0; i < numNodes; i++) {
+            AbstractPin pin = pins.get(input.getInt());
+            if(!(pin instanceof LeafPin)) {
+                throw new IOException("Timing node on a pin that is not a leaf pin: " + pin);
+            }
+
+            LeafPin leafPin = (LeafPin) pin;
+            Position position = positions[input.get()];
+            int clockDomain = input.getInt();
+            double clockDelay = input.getDouble();
+
+            TimingNode node = new TimingNode(leafPin.getOwner(), leafPin, position, clockDomain, clockDelay);
+            leafPin.setTimingNode(node);
+            this.timingNodes.add(node);
+        }
+
+        int numEdges = input.getInt();
+        int numCutEdges = input.getInt();
+        List<TimingEdge> edges = new ArrayList<>(numEdges + numCutEdges);
+        for(int i = 0; i < numEdges + numCutEdges; i++) {
+            TimingNode source = this.timingNodes.get(input.getInt());
+            TimingNode sink = this.timingNodes.get(input.getInt());
+            double fixedDelay = input.getDouble();
+
+            TimingEdge edge;
+            if(i < numEdges) {
+                edge = source.addSink(sink, fixedDelay, this.delayTables, this);
+                this.timingEdges.add(edge);
+            } else {
+                edge = new TimingEdge(fixedDelay, source, sink, this.delayTables, this);
+            }
+            edges.add(edge);
+        }
+
+        int numTimingNets = input.getInt();
+        for(int i = 0; i < numTimingNets; i++) {
+            int netSize = input.getInt();
+            List<TimingEdge> timingNet = new ArrayList<>(netSize);
+            for(int j = 0; j < netSize; j++) {
+                timingNet.add(edges.get(input.getInt()));
+            }
+            this.timingNets.add(timingNet);
+        }
+
+        for(TimingNode node : this.timingNodes) {
+            node.compact();
+        }
+
+        this.finishBuild();
+    }
+
     private void buildGraph() {
 
         List<Double> clockDelays = new ArrayList<Double>();
@@ -237,7 +398,7 @@ public class TimingGraph {
                 // If pathSinkNode is null, this sinkPin doesn't have any sinks
                 // so isn't used in the timing graph
                 if(pathSinkNode != null) {
-                    TimingEdge edge = pathSourceNode.addSink(pathSinkNode, delay, this.delayTables);
+                    TimingEdge edge = pathSourceNode.addSink(pathSinkNode, delay, this.delayTables, this);
                     this.timingEdges.add(edge);
 
                     GlobalBlock pathSinkBlock = pathSinkNode.getGlobalBlock();
@@ -325,11 +486,45 @@ public class TimingGraph {
     	}
     	System.out.printf("Build traversals took %.2fs\n\n", (System.nanoTime() - start) * 1e-9);
     }
+    private void buildLevels() {
+    	// The traversals are in topological order, so the levels
+    	// of all the sources (sinks) of a node are known before
+    	// the node itself is visited
+    	this.arrivalLevels = new ArrayList<>();
+    	for(TimingNode node : this.arrivalTraversal) {
+    		int level = 0;
+    		for(TimingEdge edge : node.getSources()) {
+    			level = Math.max(level, Math.max(edge.getSource().getArrivalLevel(), 0) + 1);
+    		}
+    		node.setArrivalLevel(level);
+    		addToLevel(this.arrivalLevels, level, null);
+    	}
+
+    	this.requiredLevels = new ArrayList<>();
+    	for(TimingNode node : this.requiredTraversal) {
+    		int level = 0;
+    		for(TimingEdge edge : node.getSinks()) {
+    			level = Math.max(level, Math.max(edge.getSink().getRequiredLevel(), 0) + 1);
+    		}
+    		node.setRequiredLevel(level);
+    		addToLevel(this.requiredLevels, level, null);
+    	}
+    }
+    private static void addToLevel(List<List<TimingNode>> levels, int level, TimingNode node) {
+    	while(levels.size() <= level) {
+    		levels.add(new ArrayList<TimingNode>());
+    	}
+    	if(node != null) {
+    		levels.get(level).add(node);
+    	}
+    }
+
     private void setGlobalTimingEdges() {
     	this.globalTimingEdges = new ArrayList<>();
     	for(TimingEdge edge : this.timingEdges) {
     		if(edge.getSource().getGlobalBlock().getIndex() != edge.getSink().getGlobalBlock().getIndex()) {
     			this.globalTimingEdges.add(edge);
+    			edge.setGlobal(true);
     		}
     	}
     }
@@ -457,6 +652,51 @@ public class TimingGraph {
         for(int i = 0; i <= 20; i++) {
             this.criticalityLookupTable[i] = Math.pow(i * 0.05, criticalityExponent);
         }
+
+        this.criticalitiesValid = false;
+    }
+
+    /**
+     * Use multiple threads for the full timing analysis passes. The
+     * results are identical to the single threaded analysis.
+     */
+    public void setNumThreads(int numThreads) {
+        this.stopThreads();
+        this.numThreads = Math.max(1, numThreads);
+    }
+
+    /**
+     * Stop the threads of the full timing analysis passes. They are
+     * started again by the next full pass.
+     */
+    public void stopThreads() {
+        if(this.parallelAnalysis != null) {
+            this.parallelAnalysis.shutdown();
+            this.parallelAnalysis = null;
+        }
+    }
+    private ParallelTimingAnalysis getParallelAnalysis() {
+        if(this.numThreads > 1 && this.parallelAnalysis == null) {
+            this.parallelAnalysis = new ParallelTimingAnalysis(
+                    this.timingNodes,
+                    this.timingEdges,
+                    this.leafNodes,
+                    this.arrivalTraversal,
+                    this.requiredTraversal,
+                    this.numThreads);
+        }
+        return this.parallelAnalysis;
+    }
+
+    void addDirtyEdge(TimingEdge edge) {
+        this.dirtyEdges.add(edge);
+    }
+    private void clearDirtyEdges() {
+        int numEdges = this.dirtyEdges.size();
+        for(int i = 0; i < numEdges; i++) {
+            this.dirtyEdges.get(i).clearDirty();
+        }
+        this.dirtyEdges.clear();
     }
 
     public double getMaxDelay() {
@@ -479,43 +719,226 @@ public class TimingGraph {
     }
 
     private void calculateArrivalTimesAndCriticalities(boolean calculateCriticalities) {
+        double previousMaxDelay = this.maxDelay;
+        boolean incremental = this.dirtyEdges.size() * MAX_DIRTY_FRACTION < this.timingEdges.size();
+
+        //ARRIVAL TIME
+        if(this.arrivalTimesValid && incremental) {
+            this.updateArrivalTimes();
+        } else {
+            this.calculateArrivalTimes();
+        }
+
         //GLOBAL MAX DELAY
-    	this.maxDelay = 0;
+        this.maxDelay = 0;
+        for(TimingNode leafNode: this.leafNodes){
+        	this.maxDelay = Math.max(this.maxDelay, (leafNode.getArrivalTime() - leafNode.getClockDelay()));
+        }
+
+        if(calculateCriticalities) {
+            //REQUIRED TIME
+            // The required time of every leaf depends on the max delay.
+            // Shifting the required times by the change of the max delay
+            // would round differently than the full pass.
+            boolean updateRequired = this.requiredTimesValid && incremental && this.maxDelay == this.requiredMaxDelay;
+            if(updateRequired) {
+                this.queueRequiredTimes();
+                this.updateRequiredTimes();
+            } else {
+                this.calculateRequiredTimes();
+            }
+
+            //CRITICALITIES
+            // The slack of every edge is relative to the max delay
+            boolean updateAll = !updateRequired || !this.criticalitiesValid || this.maxDelay != previousMaxDelay;
+            if(updateAll) {
+                ParallelTimingAnalysis parallelAnalysis = this.getParallelAnalysis();
+                if(parallelAnalysis != null) {
+                    List<TimingEdge> globalTimingEdges = this.globalTimingEdges;
+                    parallelAnalysis.forRange(0, globalTimingEdges.size(), (start, end) -> {
+                        for(int i = start; i < end; i++) {
+                            this.calculateCriticality(globalTimingEdges.get(i));
+                        }
+                    });
+
+                } else {
+                    for(TimingEdge edge:this.globalTimingEdges){
+                        this.calculateCriticality(edge);
+                    }
+                }
+
+            } else {
+                this.updateCriticalities(this.dirtyEdges);
+                for(TimingNode node : this.changedArrivalNodes) {
+                    this.updateCriticalities(node.getSinks());
+                }
+                for(TimingNode node : this.changedRequiredNodes) {
+                    this.updateCriticalities(node.getSources());
+                }
+            }
 
-    	//ARRIVAL TIME
+            this.requiredTimesValid = true;
+            this.criticalitiesValid = true;
+
+        } else {
+            // The fanin cones of the dirty edges are updated by the next
+            // call that calculates the criticalities
+            if(incremental) {
+                this.queueRequiredTimes();
+            } else {
+                this.requiredTimesValid = false;
+            }
+            this.criticalitiesValid = false;
+        }
+
+        this.arrivalTimesValid = true;
+        this.clearDirtyEdges();
+    }
+
+    private void calculateArrivalTimes() {
         for(TimingNode rootNode: this.rootNodes){
         	rootNode.setArrivalTime(0);
         }
-        for(TimingNode node : this.arrivalTraversal) {
-        	node.updateArrivalTime();
+
+        ParallelTimingAnalysis parallelAnalysis = this.getParallelAnalysis();
+        if(parallelAnalysis != null) {
+            parallelAnalysis.calculateArrivalTimes();
+
+        } else {
+            for(TimingNode node : this.arrivalTraversal) {
+                node.updateArrivalTime();
+            }
         }
-        for(TimingNode leafNode: this.leafNodes){
-        	this.maxDelay = Math.max(this.maxDelay, (leafNode.getArrivalTime() - leafNode.getClockDelay()));
+    }
+    private void calculateRequiredTimes() {
+    	for(TimingNode leafNode: this.leafNodes) {
+    		leafNode.setRequiredTime(this.maxDelay + leafNode.getClockDelay());
+    	}
+        this.requiredMaxDelay = this.maxDelay;
+
+        // Nothing queued for an incremental update remains
+        for(List<TimingNode> level : this.requiredLevels) {
+            for(TimingNode node : level) {
+                node.setRequiredQueued(false);
+            }
+            level.clear();
         }
 
-        if(calculateCriticalities) {
-        	//REQUIRED TIME
-        	for(TimingNode leafNode: this.leafNodes) {
-        		leafNode.setRequiredTime(this.maxDelay + leafNode.getClockDelay());
-        	}
+        ParallelTimingAnalysis parallelAnalysis = this.getParallelAnalysis();
+        if(parallelAnalysis != null) {
+            parallelAnalysis.calculateRequiredTimes();
+
+        } else {
             for(TimingNode node: this.requiredTraversal) {
-            	node.updateRequiredTime();
+                node.updateRequiredTime();
             }
-            for(TimingEdge edge:this.globalTimingEdges){
-            	double slack = edge.getSink().getRequiredTime() - edge.getSource().getArrivalTime() - edge.getTotalDelay();
-            	slack = Math.min(slack,	this.maxDelay);
-            	slack = Math.max(slack,	0);
-            	
-                double val = (1 - slack/this.maxDelay) * 20;
-                int i = Math.min(19, (int) val);
-                double linearInterpolation = val - i;
-
-                edge.setCriticality(
-                        (1 - linearInterpolation) * this.criticalityLookupTable[i]
-                        + linearInterpolation * this.criticalityLookupTable[i+1]);
+        }
+    }
+
+    /**
+     * Only recalculate the arrival times in the fanout cones of the
+     * dirty edges. The nodes are visited level by level, so every
+     * node is updated after all of its sources. A node whose arrival
+     * time doesn't change stops the propagation.
+     */
+    private void updateArrivalTimes() {
+        this.changedArrivalNodes.clear();
+
+        for(TimingEdge edge : this.dirtyEdges) {
+            this.queueArrivalTime(edge.getSink());
+        }
+
+        for(List<TimingNode> level : this.arrivalLevels) {
+            for(TimingNode node : level) {
+                node.setArrivalQueued(false);
+
+                double arrivalTime = node.getArrivalTime();
+                node.updateArrivalTime();
+
+                if(node.getArrivalTime() != arrivalTime) {
+                    this.changedArrivalNodes.add(node);
+                    for(TimingEdge edge : node.getSinks()) {
+                        this.queueArrivalTime(edge.getSink());
+                    }
+                }
             }
+            level.clear();
+        }
+    }
+
+    /**
+     * The same as updateArrivalTimes(), for the fanin cones of the
+     * dirty edges. This is only valid if the max delay hasn't changed
+     * since the last full pass. The sources of the dirty edges are
+     * queued by queueRequiredTimes(), so the dirty edges of calls that
+     * only calculate the max delay are included.
+     */
+    private void queueRequiredTimes() {
+        for(TimingEdge edge : this.dirtyEdges) {
+            this.queueRequiredTime(edge.getSource());
         }
     }
+    private void updateRequiredTimes() {
+        this.changedRequiredNodes.clear();
+
+        for(List<TimingNode> level : this.requiredLevels) {
+            for(TimingNode node : level) {
+                node.setRequiredQueued(false);
+
+                double requiredTime = node.getRequiredTime();
+                node.updateRequiredTime();
+
+                if(node.getRequiredTime() != requiredTime) {
+                    this.changedRequiredNodes.add(node);
+                    for(TimingEdge edge : node.getSources()) {
+                        this.queueRequiredTime(edge.getSource());
+                    }
+                }
+            }
+            level.clear();
+        }
+    }
+
+    // Nodes with level -1 are not in the traversal, nodes with
+    // level 0 (roots or leaves) have fixed times
+    private void queueArrivalTime(TimingNode node) {
+        int level = node.getArrivalLevel();
+        if(level > 0 && !node.isArrivalQueued()) {
+            node.setArrivalQueued(true);
+            this.arrivalLevels.get(level).add(node);
+        }
+    }
+    private void queueRequiredTime(TimingNode node) {
+        int level = node.getRequiredLevel();
+        if(level > 0 && !node.isRequiredQueued()) {
+            node.setRequiredQueued(true);
+            this.requiredLevels.get(level).add(node);
+        }
+    }
+
+    private void updateCriticalities(List<TimingEdge> edges) {
+        int numEdges = edges.size();
+        for(int i = 0; i < numEdges; i++) {
+            TimingEdge edge = edges.get(i);
+            if(edge.isGlobal()) {
+                this.calculateCriticality(edge);
+            }
+        }
+    }
+
+    private void calculateCriticality(TimingEdge edge) {
+    	double slack = edge.getSink().getRequiredTime() - edge.getSource().getArrivalTime() - edge.getTotalDelay();
+    	slack = Math.min(slack,	this.maxDelay);
+    	slack = Math.max(slack,	0);
+
+        double val = (1 - slack/this.maxDelay) * 20;
+        int i = Math.min(19, (int) val);
+        double linearInterpolation = val - i;
+
+        edge.setCriticality(
+                (1 - linearInterpolation) * this.criticalityLookupTable[i]
+                + linearInterpolation * this.criticalityLookupTable[i+1]);
+    }
 
     public void calculateWireDelays() {
     	for(TimingEdge edge:this.timingEdges){
@@ -652,10 +1075,13 @@ public class TimingGraph {
 
     private double calculateDeltaCost(GlobalBlock block1, GlobalBlock block2) {
     	List<TimingNode> nodes1 = block1.getTimingNodes();
-    	this.affectedNodes.addAll(nodes1);
 
+    	// Add the nodes one by one: addAll() copies the list to an array
     	double cost = 0;
-    	for(TimingNode node : nodes1) {
+    	int numNodes = nodes1.size();
+    	for(int i = 0; i < numNodes; i++) {
+    		TimingNode node = nodes1.get(i);
+    		this.affectedNodes.add(node);
     		cost += node.calculateDeltaCost(block2);
     	}
 
@@ -663,8 +1089,9 @@ public class TimingGraph {
     }
 
     public void pushThrough() {
-    	for(TimingNode node : this.affectedNodes) {
-    		node.pushThrough();
+    	int numNodes = this.affectedNodes.size();
+    	for(int i = 0; i < numNodes; i++) {
+    		this.affectedNodes.get(i).pushThrough();
     	}
     }
 
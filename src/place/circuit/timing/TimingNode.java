@@ -25,6 +25,12 @@ public class TimingNode {
 
     private double arrivalTime, requiredTime;
 
+    // Incremental timing analysis: the length of the longest path
+    // from a root (arrival) or to a leaf (required). A level of -1
+    // means that the node is not part of that traversal.
+    private int arrivalLevel = -1, requiredLevel = -1;
+    private boolean arrivalQueued = false, requiredQueued = false;
+
     //Tarjan's strongly connected components algorithm
     private int index;
     private int lowLink;
@@ -68,8 +74,8 @@ public class TimingNode {
         this.sourceEdges.add(edge);
         this.numSources++;
     }
-    TimingEdge addSink(TimingNode sink, double delay, DelayTables delayTables) {
-        TimingEdge edge = new TimingEdge(delay, this, sink, delayTables);
+    TimingEdge addSink(TimingNode sink, double delay, DelayTables delayTables, TimingGraph timingGraph) {
+        TimingEdge edge = new TimingEdge(delay, this, sink, delayTables, timingGraph);
 
         this.sinkEdges.add(edge);
         this.numSinks++;
@@ -145,6 +151,31 @@ public class TimingNode {
 		traversal.add(this);
 	}
 
+	int getArrivalLevel() {
+		return this.arrivalLevel;
+	}
+	void setArrivalLevel(int arrivalLevel) {
+		this.arrivalLevel = arrivalLevel;
+	}
+	int getRequiredLevel() {
+		return this.requiredLevel;
+	}
+	void setRequiredLevel(int requiredLevel) {
+		this.requiredLevel = requiredLevel;
+	}
+	boolean isArrivalQueued() {
+		return this.arrivalQueued;
+	}
+	void setArrivalQueued(boolean queued) {
+		this.arrivalQueued = queued;
+	}
+	boolean isRequiredQueued() {
+		return this.requiredQueued;
+	}
+	void setRequiredQueued(boolean queued) {
+		this.requiredQueued = queued;
+	}
+
 	//Required time
     void setRequiredTime(double value) {
     	this.requiredTime = value;
@@ -255,11 +286,11 @@ public class TimingNode {
     }
 
     void pushThrough(){
-    	for(TimingEdge edge : this.sinkEdges){
-    		edge.pushThrough();
+    	for(int sinkIndex = 0; sinkIndex < this.numSinks; sinkIndex++) {
+    		this.sinkEdges.get(sinkIndex).pushThrough();
     	}
-    	for(TimingEdge edge : this.sourceEdges){
-    		edge.pushThrough();
+    	for(int sourceIndex = 0; sourceIndex < this.numSources; sourceIndex++) {
+    		this.sourceEdges.get(sourceIndex).pushThrough();
     	}
     }
 
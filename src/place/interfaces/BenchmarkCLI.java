@@ -0,0 +1,59 @@
+package place.interfaces;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import place.benchmark.Benchmark;
+import place.benchmark.BenchmarkRunner;
+import place.benchmark.CGSolverBenchmark;
+import place.circuit.Circuit;
+import place.main.Main;
+import place.mathtools.CGSolver;
+import place.placers.analytical.AnalyticalBenchmarks;
+import place.placers.simulatedannealing.AnnealingBenchmarks;
+import place.visual.PlacementVisualizer;
+
+/**
+ * Runs the benchmarks of the placement kernels. The arguments are the
+ * same as for the CLI, with the options of the BenchmarkRunner. The
+ * circuit is loaded and placed with the given placers first, the
+ * benchmarks run on the resulting placement.
+ */
+public class BenchmarkCLI {
+
+    private static final String O_SOLVER_SIZE = "benchmark solver size";
+
+    private static final long RANDOM_SEED = 1;
+
+    public static void main(String[] args) {
+
+        Logger logger = new Logger();
+        CLIOptions options = new CLIOptions(logger);
+
+        Options mainOptions = options.getMainOptions();
+        BenchmarkRunner.initOptions(mainOptions);
+        mainOptions.add(O_SOLVER_SIZE, "number of rows and columns of the grid in the CGSolver benchmark", new Integer(200));
+
+        options.parseArguments(args);
+
+        Main main = new Main(options);
+        main.runPlacement();
+        Circuit circuit = main.getCircuit();
+
+
+        Random random = new Random(RANDOM_SEED);
+        PlacementVisualizer visualizer = new PlacementVisualizer(logger);
+
+        List<Benchmark> benchmarks = new ArrayList<>();
+        benchmarks.addAll(new AnnealingBenchmarks(circuit, random, logger, visualizer).getBenchmarks());
+        benchmarks.addAll(new AnalyticalBenchmarks(circuit, random, logger, visualizer).getBenchmarks());
+
+        int solverSize = mainOptions.getInteger(O_SOLVER_SIZE);
+        benchmarks.add(new CGSolverBenchmark(solverSize, CGSolver.Preconditioner.JACOBI, random));
+        benchmarks.add(new CGSolverBenchmark(solverSize, CGSolver.Preconditioner.INCOMPLETE_CHOLESKY, random));
+
+        BenchmarkRunner runner = new BenchmarkRunner(mainOptions, logger);
+        runner.run(benchmarks);
+    }
+}
@@ -0,0 +1,95 @@
+package place.interfaces;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.xml.sax.SAXException;
+
+import place.circuit.Circuit;
+import place.circuit.architecture.DelayTableCheck;
+import place.circuit.exceptions.InvalidFileFormatException;
+import place.circuit.exceptions.PlacementException;
+import place.circuit.io.SnapshotCheck;
+import place.main.Main;
+import place.placers.simulatedannealing.BoundingBoxCostCheck;
+import place.visual.PlacementVisualizer;
+
+/**
+ * Runs the consistency checks of the placement kernels that have an
+ * alternative implementation. The arguments are the same as for the
+ * CLI. The circuit is loaded and placed with the given placers first,
+ * the checks run on the resulting placement. The exit code is 1 if a
+ * check fails.
+ */
+public class CheckCLI {
+
+    private static final String
+        O_CHECK_FILTER = "check filter",
+        O_CHECK_SWAPS = "check swaps",
+        O_CHECK_ACCEPT_RATE = "check accept rate",
+        O_CHECK_SNAPSHOT_EFFORT_LEVEL = "check snapshot effort level",
+        O_CHECK_DELAY_TABLE_TOLERANCE = "check delay table tolerance";
+
+    private static final String
+        BOUNDING_BOX_CHECK = "bounding box cost",
+        SNAPSHOT_CHECK = "circuit snapshot",
+        DELAY_TABLE_CHECK = "delay tables";
+
+    private static final long RANDOM_SEED = 1;
+
+    public static void main(String[] args) {
+
+        Logger logger = new Logger();
+        CLIOptions options = new CLIOptions(logger);
+
+        Options mainOptions = options.getMainOptions();
+        mainOptions.add(O_CHECK_FILTER, "only run the checks whose name contains a match of this regex", "");
+        mainOptions.add(O_CHECK_SWAPS, "number of random swaps in the bounding box cost check", new Integer(1000000));
+        mainOptions.add(O_CHECK_ACCEPT_RATE, "fraction of the swaps that is accepted in the bounding box cost check", new Double(0.5));
+        mainOptions.add(O_CHECK_SNAPSHOT_EFFORT_LEVEL, "effort level of the annealer in the circuit snapshot check", new Double(0.1));
+        mainOptions.add(O_CHECK_DELAY_TABLE_TOLERANCE, "maximal mean relative error of the generated delay tables, compared to the lookup dump file", new Double(0.1));
+
+        options.parseArguments(args);
+
+        Main main = new Main(options);
+        main.runPlacement();
+        Circuit circuit = main.getCircuit();
+
+
+        Random random = new Random(RANDOM_SEED);
+        PlacementVisualizer visualizer = new PlacementVisualizer(logger);
+        Pattern filter = Pattern.compile(mainOptions.getString(O_CHECK_FILTER));
+
+        boolean passed = true;
+        try {
+            if(filter.matcher(SNAPSHOT_CHECK).find()) {
+                SnapshotCheck snapshotCheck = new SnapshotCheck(circuit, main.getArchitectureFile(), main.getNetFile(), RANDOM_SEED, logger, visualizer);
+                passed &= snapshotCheck.run(mainOptions.getDouble(O_CHECK_SNAPSHOT_EFFORT_LEVEL));
+            }
+
+            if(filter.matcher(DELAY_TABLE_CHECK).find()) {
+                if(main.getLookupDumpFile() == null) {
+                    logger.println("Delay table check skipped: it needs a lookup dump file\n");
+                } else {
+                    DelayTableCheck delayTableCheck = new DelayTableCheck(main.getArchitectureFile(), main.getLookupDumpFile(), logger);
+                    passed &= delayTableCheck.run(mainOptions.getDouble(O_CHECK_DELAY_TABLE_TOLERANCE));
+                }
+            }
+
+            // The bounding box check changes the placement, so it runs last
+            if(filter.matcher(BOUNDING_BOX_CHECK).find()) {
+                BoundingBoxCostCheck bbCheck = new BoundingBoxCostCheck(circuit, random, logger, visualizer);
+                passed &= bbCheck.run(mainOptions.getInteger(O_CHECK_SWAPS), mainOptions.getDouble(O_CHECK_ACCEPT_RATE));
+            }
+
+        } catch(PlacementException | IOException | InvalidFileFormatException | ParserConfigurationException | SAXException error) {
+            logger.raise(error);
+        }
+
+        logger.println(passed ? "All checks passed" : "Some checks failed");
+        System.exit(passed ? 0 : 1);
+    }
+}
@@ -0,0 +1,70 @@
+package place.interfaces;
+
+import java.io.File;
+import java.io.IOException;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.xml.sax.SAXException;
+
+import place.circuit.architecture.Architecture;
+import place.circuit.architecture.ParseException;
+import place.circuit.exceptions.InvalidFileFormatException;
+import place.circuit.io.NetlistGenerator;
+import place.main.Main;
+
+/**
+ * Generates a synthetic circuit for an architecture. The arguments are
+ * the same as for the CLI, with the options of the NetlistGenerator.
+ * The blif file is written, with the net file and the input hierarchy
+ * file next to it if they are not given. Afterwards the CLI can be run
+ * with the same arguments.
+ */
+public class GeneratorCLI {
+
+    public static void main(String[] args) {
+
+        Logger logger = new Logger();
+        CLIOptions options = new CLIOptions(logger);
+
+        Options mainOptions = options.getMainOptions();
+        NetlistGenerator.initOptions(mainOptions);
+
+        options.parseArguments(args);
+
+
+        File architectureFile = mainOptions.getFile(Main.O_ARCHITECTURE);
+        File blifFile = mainOptions.getFile(Main.O_BLIF_FILE);
+        File netFile = mainOptions.getFile(Main.O_NET_FILE);
+        File hierarchyFile = mainOptions.getFile(Main.O_INPUT_HIERARCHY_FILE);
+
+        File outputFolder = blifFile.getAbsoluteFile().getParentFile();
+        String circuitName = blifFile.getName().replaceFirst("(.+)\\.blif", "$1");
+
+        if(netFile == null) {
+            netFile = new File(outputFolder, circuitName + ".net");
+        }
+        if(hierarchyFile == null) {
+            hierarchyFile = new File(outputFolder, circuitName + ".multipart.hierarchy");
+        }
+
+        outputFolder.mkdirs();
+
+
+        Architecture architecture = new Architecture(circuitName, architectureFile, blifFile, netFile);
+        try {
+            architecture.parse();
+        } catch(IOException | InvalidFileFormatException | InterruptedException | ParseException | ParserConfigurationException | SAXException error) {
+            logger.raise("Failed to parse architecture file", error);
+        }
+
+        NetlistGenerator generator = new NetlistGenerator(mainOptions, mainOptions.getLong(Main.O_RANDOM_SEED), logger);
+        try {
+            generator.generate(circuitName, netFile, hierarchyFile, blifFile);
+        } catch(IOException error) {
+            logger.raise("Failed to write the generated circuit", error);
+        }
+
+        logger.printf("Wrote %s, %s and %s\n", blifFile, netFile, hierarchyFile);
+    }
+}
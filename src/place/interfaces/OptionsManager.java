@@ -63,6 +63,11 @@ public abstract class OptionsManager {
         this.addPlacer(0, placerName, this.getDefaultOptions(placerName));
     }
 
+    public void insertEcoPlacer() {
+        String placerName = "eco";
+        this.addPlacer(0, placerName, this.getDefaultOptions(placerName));
+    }
+
     public void addPlacer(String placerName, Options options) {
         this.addPlacer(this.getNumPlacers(), placerName, options);
     }
@@ -21,6 +21,7 @@ class PlacerFactory {
 
         PlacerFactory.placers.put("wld_sa", "place.placers.simulatedannealing.SimulatedAnnealingPlacerWLD");
         PlacerFactory.placers.put("td_sa", "place.placers.simulatedannealing.SimulatedAnnealingPlacerTD");
+        PlacerFactory.placers.put("eco", "place.placers.simulatedannealing.EcoPlacer");
 
         PlacerFactory.placers.put("wld_gp", "place.placers.analytical.GradientPlacerWLD");
         PlacerFactory.placers.put("td_gp", "place.placers.analytical.GradientPlacerTD");
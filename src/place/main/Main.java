@@ -2,6 +2,7 @@ package place.main;
 
 import place.circuit.Circuit;
 import place.circuit.architecture.Architecture;
+import place.circuit.architecture.ArchitectureCache;
 import place.circuit.architecture.BlockCategory;
 import place.circuit.architecture.BlockType;
 import place.circuit.architecture.ParseException;
@@ -9,6 +10,7 @@ import place.circuit.block.GlobalBlock;
 import place.circuit.exceptions.InvalidFileFormatException;
 import place.circuit.exceptions.PlacementException;
 import place.circuit.io.BlockNotFoundException;
+import place.circuit.io.CircuitSnapshot;
 import place.circuit.io.HierarchyParser;
 import place.circuit.io.IllegalSizeException;
 import place.circuit.io.NetParser;
@@ -19,6 +21,7 @@ import place.interfaces.Logger;
 import place.interfaces.Options;
 import place.interfaces.OptionsManager;
 import place.interfaces.Options.Required;
+import place.placers.Checkpoint;
 import place.placers.Placer;
 import place.placers.simulatedannealing.EfficientBoundingBoxNetCC;
 import place.util.Timer;
@@ -44,14 +47,26 @@ public class Main {
     private long randomSeed;
 
     private String circuitName;
-    private File blifFile, netFile, inputPlaceFile, inputHierarchyFile, partialPlaceFile, outputPlaceFile;
+    private File blifFile, netFile, inputPlaceFile, inputHierarchyFile, partialPlaceFile, ecoPlaceFile, outputPlaceFile;
     private File architectureFile;
 
     private boolean useVprTiming;
     private String vprCommand;
     private File lookupDumpFile;
+    private boolean generateDelayTables;
+
+    private File architectureCacheDirectory;
+    private File circuitSnapshotFile;
+
+    private File checkpointFile;
+    private int checkpointInterval;
+    private boolean resume;
+    private Checkpoint checkpoint;
+
+    private int timingThreads;
 
     private boolean visual;
+    private File visualImageFolder, visualTraceFile;
 
     private Logger logger;
     private OptionsManager options;
@@ -63,18 +78,28 @@ public class Main {
     private Circuit circuit;
 
 
-    private static final String
+    public static final String
         O_ARCHITECTURE = "architecture.xml",
         O_BLIF_FILE = "blif file",
         O_NET_FILE = "net file",
         O_INPUT_PLACE_FILE = "input place file",
         O_INPUT_HIERARCHY_FILE = "input hierarchy file",
         O_PARTIAL_PLACE_FILE = "partial place file",
+        O_ECO_PLACE_FILE = "eco place file",
         O_OUTPUT_PLACE_FILE = "output place file",
         O_VPR_TIMING = "vpr timing",
         O_VPR_COMMAND = "vpr command",
         O_LOOKUP_DUMP_FILE = "lookup dump file",
+        O_GENERATE_DELAY_TABLES = "generate delay tables",
+        O_ARCHITECTURE_CACHE = "architecture cache",
+        O_CIRCUIT_SNAPSHOT = "circuit snapshot",
+        O_TIMING_THREADS = "timing threads",
+        O_CHECKPOINT_FILE = "checkpoint file",
+        O_CHECKPOINT_INTERVAL = "checkpoint interval",
+        O_RESUME = "resume",
         O_VISUAL = "visual",
+        O_VISUAL_IMAGE_FOLDER = "visual image folder",
+        O_VISUAL_TRACE_FILE = "visual trace file",
         O_RANDOM_SEED = "random seed";
 
 
@@ -86,13 +111,25 @@ public class Main {
         options.add(O_INPUT_PLACE_FILE, "if omitted the initial placement is random", File.class, Required.FALSE);
         options.add(O_INPUT_HIERARCHY_FILE, "if omitted no hierarchy information is used", File.class, Required.FALSE);
         options.add(O_PARTIAL_PLACE_FILE, "placement of a part of the blocks", File.class, Required.FALSE);
+        options.add(O_ECO_PLACE_FILE, "placement of a previous version of the netlist, only the changes are placed", File.class, Required.FALSE);
         options.add(O_OUTPUT_PLACE_FILE, "(default: based on the blif file)", File.class, Required.FALSE);
 
         options.add(O_VPR_TIMING, "Use vpr timing information", Boolean.TRUE);
         options.add(O_VPR_COMMAND, "Path to vpr executable", "./vpr");
         options.add(O_LOOKUP_DUMP_FILE, "Path to a vpr lookup_dump.echo file", File.class, Required.FALSE);
+        options.add(O_GENERATE_DELAY_TABLES, "build the delay tables in-process for the size of the circuit, from a routing model that is calibrated on the lookup dump file", Boolean.FALSE);
+        options.add(O_ARCHITECTURE_CACHE, "directory to cache the parsed architecture and delay tables", File.class, Required.FALSE);
+        options.add(O_CIRCUIT_SNAPSHOT, "binary snapshot of the parsed circuit, written if it doesn't exist or is out of date", File.class, Required.FALSE);
+
+        options.add(O_TIMING_THREADS, "number of threads for the full timing analysis passes", new Integer(1));
+
+        options.add(O_CHECKPOINT_FILE, "if omitted no checkpoints are written", File.class, Required.FALSE);
+        options.add(O_CHECKPOINT_INTERVAL, "minimal number of seconds between two checkpoints", new Integer(600));
+        options.add(O_RESUME, "continue from the checkpoint file if it exists", Boolean.FALSE);
 
         options.add(O_VISUAL, "show the placed circuit in a GUI", Boolean.FALSE);
+        options.add(O_VISUAL_IMAGE_FOLDER, "write every placement of the visualizer to a PNG image in this folder, no display needed", File.class, Required.FALSE);
+        options.add(O_VISUAL_TRACE_FILE, "write every placement of the visualizer to this binary trace file", File.class, Required.FALSE);
         options.add(O_RANDOM_SEED, "seed for randomization", new Long(1));
     }
 
@@ -111,6 +148,7 @@ public class Main {
         this.inputPlaceFile = options.getFile(O_INPUT_PLACE_FILE);
         this.inputHierarchyFile = options.getFile(O_INPUT_HIERARCHY_FILE);
         this.partialPlaceFile = options.getFile(O_PARTIAL_PLACE_FILE);
+        this.ecoPlaceFile = options.getFile(O_ECO_PLACE_FILE);
 
         this.blifFile = options.getFile(O_BLIF_FILE);
         this.netFile = options.getFile(O_NET_FILE);
@@ -132,7 +170,23 @@ public class Main {
         this.vprCommand = options.getString(O_VPR_COMMAND);
         this.lookupDumpFile = options.getFile(O_LOOKUP_DUMP_FILE);
 
+        // The routing model is calibrated on a lookup dump of vpr
+        this.generateDelayTables = this.useVprTiming && options.getBoolean(O_GENERATE_DELAY_TABLES);
+        if(this.generateDelayTables && this.lookupDumpFile == null) {
+            this.logger.raise("Generated delay tables need a lookup dump file to calibrate on");
+        }
+        this.architectureCacheDirectory = options.getFile(O_ARCHITECTURE_CACHE);
+        this.circuitSnapshotFile = options.getFile(O_CIRCUIT_SNAPSHOT);
+
+        this.timingThreads = options.getInteger(O_TIMING_THREADS);
+
+        this.checkpointFile = options.getFile(O_CHECKPOINT_FILE);
+        this.checkpointInterval = options.getInteger(O_CHECKPOINT_INTERVAL);
+        this.resume = options.getBoolean(O_RESUME);
+
         this.visual = options.getBoolean(O_VISUAL);
+        this.visualImageFolder = options.getFile(O_VISUAL_IMAGE_FOLDER);
+        this.visualTraceFile = options.getFile(O_VISUAL_TRACE_FILE);
 
 
         // Check if all input files exist
@@ -140,6 +194,7 @@ public class Main {
         this.checkFileExistence("Net file", this.netFile);
         this.checkFileExistence("Input place file", this.inputPlaceFile);
         this.checkFileExistence("Partial place file", this.partialPlaceFile);
+        this.checkFileExistence("ECO place file", this.ecoPlaceFile);
 
         this.checkFileExistence("Architecture file", this.architectureFile);
     }
@@ -172,7 +227,7 @@ public class Main {
 
         // Enable the visualizer
         this.visualizer = new PlacementVisualizer(this.logger);
-        if(this.visual) {
+        if(this.visual || this.visualImageFolder != null || this.visualTraceFile != null) {
             this.visualizer.setCircuit(this.circuit);
         }
 
@@ -186,6 +241,18 @@ public class Main {
                 this.logger.raise("Something went wrong while parsing the partial place file", error);
             }
             this.options.insertRandomPlacer();
+        }else if(this.ecoPlaceFile != null){
+            this.startTimer("Placement parser");
+            PlaceParser placeParser = new PlaceParser(this.circuit, this.ecoPlaceFile);
+            int numPlacedBlocks = 0;
+            try {
+                numPlacedBlocks = placeParser.ecoParse();
+            } catch(IOException | PlacementException | IllegalSizeException error) {
+                this.logger.raise("Something went wrong while parsing the ECO place file", error);
+            }
+            this.stopTimer();
+            this.logger.printf("ECO placement: %d of %d blocks keep their position\n\n", numPlacedBlocks, this.circuit.getNumGlobalBlocks());
+            this.options.insertEcoPlacer();
         }else if(this.inputPlaceFile != null){
             this.startTimer("Placement parser");
             PlaceParser placeParser = new PlaceParser(this.circuit, this.inputPlaceFile);
@@ -212,11 +279,33 @@ public class Main {
         //Garbage collection
         System.gc();
 
+        // Continue from the last checkpoint
+        int firstPlacerIndex = 0;
+        if(this.checkpointFile != null) {
+            this.checkpoint = new Checkpoint(this.checkpointFile, this.checkpointInterval, this.logger);
+
+            if(this.resume && this.checkpointFile.exists()) {
+                try {
+                    this.checkpoint.read(this.circuit);
+                    this.checkpoint.restorePlacement(this.circuit);
+                } catch(IOException | PlacementException error) {
+                    this.logger.raise("Something went wrong while reading the checkpoint", error);
+                }
+
+                firstPlacerIndex = this.checkpoint.getResumePlacerIndex();
+                this.logger.printf("Resuming placer %d from checkpoint %s\n\n", firstPlacerIndex, this.checkpointFile);
+
+            } else if(this.resume) {
+                this.logger.printf("No checkpoint %s, starting from the beginning\n\n", this.checkpointFile);
+            }
+        }
+
         // Loop through the placers
         int numPlacers = this.options.getNumPlacers();
-        for(int placerIndex = 0; placerIndex < numPlacers; placerIndex++) {
+        for(int placerIndex = firstPlacerIndex; placerIndex < numPlacers; placerIndex++) {
             this.timePlacement(placerIndex);
         }
+        this.circuit.getTimingGraph().stopThreads();
 
 
         if(numPlacers > 0) {
@@ -242,7 +331,26 @@ public class Main {
 
         this.printGCStats();
 
-        this.visualizer.createAndDrawGUI();
+        this.visualizer.exportPlacements(this.visualImageFolder, this.visualTraceFile);
+        if(this.visual) {
+            this.visualizer.createAndDrawGUI();
+        }
+    }
+
+    /**
+     * The circuit, after runPlacement().
+     */
+    public Circuit getCircuit() {
+        return this.circuit;
+    }
+    public File getArchitectureFile() {
+        return this.architectureFile;
+    }
+    public File getNetFile() {
+        return this.netFile;
+    }
+    public File getLookupDumpFile() {
+        return this.lookupDumpFile;
     }
 
     private void loadCircuit() {
@@ -254,37 +362,132 @@ public class Main {
                 this.blifFile,
                 this.netFile);
 
-        try {
-            architecture.parse();
-        } catch(IOException | InvalidFileFormatException | InterruptedException | ParseException | ParserConfigurationException | SAXException error) {
-            this.logger.raise("Failed to parse architecture file or delay tables", error);
+        // The delay tables that vpr dumps while it runs can't be
+        // identified up front, so they are never cached. Generated
+        // delay tables are cached separately, by grid size.
+        ArchitectureCache cache = null;
+        File cachedLookupDumpFile = this.useVprTiming && !this.generateDelayTables ? this.lookupDumpFile : null;
+        if(this.architectureCacheDirectory != null && (!this.useVprTiming || this.lookupDumpFile != null)) {
+            cache = new ArchitectureCache(this.architectureCacheDirectory);
         }
 
-        if(this.useVprTiming) {
+        boolean cached = false;
+        if(cache != null) {
             try {
-                if(this.lookupDumpFile == null) {
-                    architecture.getVprTiming(this.vprCommand);
-                } else {
-                    architecture.getVprTiming(this.lookupDumpFile);
+                cached = architecture.loadFromCache(cache, cachedLookupDumpFile);
+            } catch(IOException error) {
+                this.logger.println(Logger.Stream.ERR, "Failed to read the architecture cache: " + error.getMessage());
+            }
+        }
+
+        if(!cached) {
+            try {
+                architecture.parse();
+            } catch(IOException | InvalidFileFormatException | InterruptedException | ParseException | ParserConfigurationException | SAXException error) {
+                this.logger.raise("Failed to parse architecture file or delay tables", error);
+            }
+
+            if(this.useVprTiming && !this.generateDelayTables) {
+                try {
+                    if(this.lookupDumpFile == null) {
+                        architecture.getVprTiming(this.vprCommand);
+                    } else {
+                        architecture.getVprTiming(this.lookupDumpFile);
+                    }
+
+                } catch(IOException | InterruptedException | InvalidFileFormatException error) {
+                    this.logger.raise("Failed to get vpr delays", error);
                 }
+            }
 
-            } catch(IOException | InterruptedException | InvalidFileFormatException error) {
-                this.logger.raise("Failed to get vpr delays", error);
+            if(cache != null) {
+                try {
+                    architecture.storeInCache(cache, cachedLookupDumpFile);
+                } catch(IOException error) {
+                    this.logger.println(Logger.Stream.ERR, "Failed to write the architecture cache: " + error.getMessage());
+                }
             }
         }
 
         this.stopAndPrintTimer();
 
+        // Load the circuit snapshot, if it is still valid
+        CircuitSnapshot snapshot = null;
+        if(this.circuitSnapshotFile != null) {
+            snapshot = new CircuitSnapshot(this.circuitSnapshotFile, this.architectureFile, this.netFile);
+
+            if(this.circuitSnapshotFile.exists()) {
+                this.startTimer("Circuit snapshot loading");
+                try {
+                    this.circuit = snapshot.read(architecture, this.circuitName);
+                } catch(IOException error) {
+                    this.logger.println(Logger.Stream.ERR, "Failed to read the circuit snapshot: " + error.getMessage());
+                }
+                this.stopAndPrintTimer();
+            }
+        }
+
         // Parse net file
-        this.startTimer("Net file parsing");
-        try {
-            NetParser netParser = new NetParser(architecture, this.circuitName, this.netFile);
-            this.circuit = netParser.parse();
-            this.logger.println(this.circuit.stats());
+        if(this.circuit == null) {
+            this.startTimer("Net file parsing");
+            try {
+                NetParser netParser = new NetParser(architecture, this.circuitName, this.netFile);
+                this.circuit = netParser.parse();
+
+            } catch(IOException error) {
+                this.logger.raise("Failed to read net file", error);
+            }
+            this.stopAndPrintTimer();
+
+            if(snapshot != null) {
+                try {
+                    snapshot.write(this.circuit);
+                } catch(IOException error) {
+                    this.logger.println(Logger.Stream.ERR, "Failed to write the circuit snapshot: " + error.getMessage());
+                }
+            }
+        }
+
+        this.circuit.getTimingGraph().setNumThreads(this.timingThreads);
+        this.logger.println(this.circuit.stats());
+
+        if(this.generateDelayTables) {
+            this.loadDelayTables(architecture, cache);
+        }
+    }
 
-        } catch(IOException error) {
-            this.logger.raise("Failed to read net file", error);
+    private void loadDelayTables(Architecture architecture, ArchitectureCache cache) {
+        // The tables depend on the size of the grid, which is only
+        // known after the circuit has been loaded
+        int width = this.circuit.getWidth(), height = this.circuit.getHeight();
+
+        this.startTimer("Delay table generation");
+
+        boolean cached = false;
+        if(cache != null) {
+            try {
+                cached = architecture.loadDelayTablesFromCache(cache, this.lookupDumpFile, width, height);
+            } catch(IOException error) {
+                this.logger.println(Logger.Stream.ERR, "Failed to read the delay tables from the cache: " + error.getMessage());
+            }
+        }
+
+        if(!cached) {
+            try {
+                architecture.generateDelayTables(this.lookupDumpFile, width, height);
+            } catch(IOException | InvalidFileFormatException | ParserConfigurationException | SAXException error) {
+                this.logger.raise("Failed to generate the delay tables", error);
+            }
+
+            if(cache != null) {
+                try {
+                    architecture.storeDelayTablesInCache(cache, this.lookupDumpFile, width, height);
+                } catch(IOException error) {
+                    this.logger.println(Logger.Stream.ERR, "Failed to write the delay tables to the cache: " + error.getMessage());
+                }
+            }
         }
+
         this.stopAndPrintTimer();
     }
 
@@ -355,6 +558,15 @@ public class Main {
         Placer placer = this.options.getPlacer(placerIndex, this.circuit, random, this.visualizer);
         String placerName = placer.getName();
 
+        if(this.checkpoint != null) {
+            try {
+                this.checkpoint.startPlacer(placerIndex, placerName);
+            } catch(IOException error) {
+                this.logger.raise(error);
+            }
+            placer.setCheckpoint(this.checkpoint);
+        }
+
         this.startTimer(placerName);
         placer.initializeData();
         try {
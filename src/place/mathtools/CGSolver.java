@@ -1,26 +1,85 @@
 package place.mathtools;
 
-import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /*
  * Solves a linear system using the conjugate gradient method
- * Uses a Jacobi preconditioner
+ * Uses a Jacobi or an incomplete Cholesky (IC0) preconditioner
+ *
+ * If a pool is given, the matrix vector product, the dot products
+ * and the vector updates are split in a fixed number of chunks. The
+ * partial sums of the dot products are added in the order of the
+ * chunks, so the result doesn't depend on the thread scheduling.
  */
 public class CGSolver {
 
-    private final List<Double> val;
-    private final List<Integer> columnIndexes, rowPointers;
+    public enum Preconditioner {JACOBI, INCOMPLETE_CHOLESKY};
+
+    // Vectors shorter than this are not split
+    private static final int MIN_CHUNK_SIZE = 4096;
+
+    private final double[] val;
+    private final int[] columnIndexes, rowPointers;
     private final double[] vector;
+    private final int dimensions;
+
+    private final Preconditioner preconditioner;
+
+    // Jacobi
+    private double[] jacobi;
+
+    // Incomplete Cholesky: the lower triangle of the factor, in the
+    // same rows as the matrix. The diagonal is the last element of a row.
+    private int[] choleskyEnd;
+    private double[] cholesky;
+
+    private final ForkJoinPool pool;
+    private final int numChunks;
+    private final double[] partialSums;
 
     public CGSolver(Csr crs, double[] vector) {
+        this(crs, vector, Preconditioner.JACOBI, null);
+    }
+    public CGSolver(Csr crs, double[] vector, Preconditioner preconditioner, ForkJoinPool pool) {
         this.val = crs.getVal();
         this.columnIndexes = crs.getColumnIndexes();
         this.rowPointers = crs.getRowPointers();
         this.vector = vector;
+        this.dimensions = vector.length;
+
+        this.pool = pool;
+        if(pool == null) {
+            this.numChunks = 1;
+        } else {
+            this.numChunks = Math.max(1, Math.min(4 * pool.getParallelism(), this.dimensions / MIN_CHUNK_SIZE));
+        }
+        this.partialSums = new double[this.numChunks];
+
+        if(preconditioner == Preconditioner.INCOMPLETE_CHOLESKY && this.constructIncompleteCholesky()) {
+            this.preconditioner = Preconditioner.INCOMPLETE_CHOLESKY;
+        } else {
+            // The incomplete factorization can break down, Jacobi always works
+            this.preconditioner = Preconditioner.JACOBI;
+            this.jacobi = this.constructJacobi();
+        }
+    }
+
+    public Preconditioner getPreconditioner() {
+        return this.preconditioner;
     }
 
     public double[] solve(double epsilon) {
-        int dimensions = this.vector.length;
+        return this.solve(epsilon, null);
+    }
+
+    /*
+     * initialSolution can be null, in which case the solver starts from 0.
+     * The stopping criterion is relative to the residual of the zero
+     * solution, so a warm start doesn't make the solver more strict.
+     */
+    public double[] solve(double epsilon, double[] initialSolution) {
+        int dimensions = this.dimensions;
 
         double deltaNew;
         double deltaFirst;
@@ -32,98 +91,239 @@ public class CGSolver {
         // Initialize everything
         double[] x = new double[dimensions];
         double[] r = new double[dimensions];
-        for(int i = 0; i < dimensions; i++) {
-            x[i] = 0.0;
-            r[i] = this.vector[i];
-        }
+        double[] s = new double[dimensions];
 
-        double[] m = constructJacobi();
+        this.precondition(this.vector, s);
+        deltaFirst = this.dotProduct(s, this.vector);
 
-        double[] s = new double[dimensions];
-        elementWiseProduct(m, r, s);
+        if(initialSolution == null) {
+            System.arraycopy(this.vector, 0, r, 0, dimensions);
 
-        double[] d = new double[dimensions];
-        for(int i = 0; i < dimensions; i++) {
-            d[i] = s[i];
+        } else {
+            System.arraycopy(initialSolution, 0, x, 0, dimensions);
+
+            // r = b - A x
+            this.sparseMatrixVectorProduct(x, r);
+            this.vectorUpdate(this.vector, r, -1, r);
+            this.precondition(r, s);
         }
 
-        deltaNew = dotProduct(s, r);
-        deltaFirst = deltaNew;
+        double[] d = new double[dimensions];
+        System.arraycopy(s, 0, d, 0, dimensions);
+
+        deltaNew = this.dotProduct(s, r);
 
         // Main loop of the algorithm
         double[] q = new double[dimensions];
         while(deltaNew > epsilon * epsilon * deltaFirst) {
-            sparseMatrixVectorProduct(d, q);
-            temp = dotProduct(d, q);
+            this.sparseMatrixVectorProduct(d, q);
+            temp = this.dotProduct(d, q);
             alpha = deltaNew / temp;
 
-            vectorUpdate(x, d, alpha, x);
-            vectorUpdate(r, q, -alpha, r);
-            elementWiseProduct(m, r, s);
+            this.vectorUpdate(x, d, alpha, x);
+            this.vectorUpdate(r, q, -alpha, r);
+            this.precondition(r, s);
 
             deltaOld = deltaNew;
-            deltaNew = dotProduct(s, r);
+            deltaNew = this.dotProduct(s, r);
             beta = deltaNew / deltaOld;
 
-            vectorUpdate(s, d, beta, d);
+            this.vectorUpdate(s, d, beta, d);
         }
 
         return x;
     }
 
+
     private double[] constructJacobi() {
-        int dimension = this.vector.length;
+        int dimension = this.dimensions;
         double[] jacobi = new double[dimension];
-        int index;
 
         for(int row = 0; row < dimension; row++) {
-            // TODO: binary search
-            index = this.rowPointers.get(row);
-            // We suppose the diagonal elements are always non-zero
-            while(this.columnIndexes.get(index) != row) {
-                index++;
+            jacobi[row] = 1.0 / this.val[this.diagonalIndex(row)];
+        }
+        return jacobi;
+    }
+
+    private int diagonalIndex(int row) {
+        // We suppose the diagonal elements are always non-zero
+        int index = this.rowPointers[row];
+        while(this.columnIndexes[index] != row) {
+            index++;
+        }
+        return index;
+    }
+
+    /*
+     * Zero fill-in incomplete Cholesky factorization A ~ L L^T.
+     * Returns false if the factorization breaks down.
+     */
+    private boolean constructIncompleteCholesky() {
+        int dimension = this.dimensions;
+
+        this.choleskyEnd = new int[dimension];
+        this.cholesky = new double[this.val.length];
+
+        for(int row = 0; row < dimension; row++) {
+            int start = this.rowPointers[row];
+            int diagonal = this.diagonalIndex(row);
+            this.choleskyEnd[row] = diagonal + 1;
+
+            for(int index = start; index < diagonal; index++) {
+                int column = this.columnIndexes[index];
+
+                // The sparse dot product of the parts of both rows that are left of column
+                double sum = this.val[index];
+                int i = start, j = this.rowPointers[column];
+                int jEnd = this.choleskyEnd[column] - 1;
+                while(i < index && j < jEnd) {
+                    int columnI = this.columnIndexes[i];
+                    int columnJ = this.columnIndexes[j];
+                    if(columnI == columnJ) {
+                        sum -= this.cholesky[i] * this.cholesky[j];
+                        i++;
+                        j++;
+                    } else if(columnI < columnJ) {
+                        i++;
+                    } else {
+                        j++;
+                    }
+                }
+
+                this.cholesky[index] = sum / this.cholesky[jEnd];
+            }
+
+            double sum = this.val[diagonal];
+            for(int index = start; index < diagonal; index++) {
+                sum -= this.cholesky[index] * this.cholesky[index];
+            }
+            if(!(sum > 0)) {
+                this.cholesky = null;
+                this.choleskyEnd = null;
+                return false;
             }
 
-            jacobi[row] = 1.0 / this.val.get(index);
+            this.cholesky[diagonal] = Math.sqrt(sum);
         }
-        return jacobi;
+
+        return true;
     }
 
-    private void elementWiseProduct(double[] a, double[] b, double[] result) {
-        for(int i = 0; i < a.length; i++) {
-            result[i] = a[i] * b[i];
+    private void precondition(double[] r, double[] s) {
+        if(this.preconditioner == Preconditioner.JACOBI) {
+            this.elementWiseProduct(this.jacobi, r, s);
+
+        } else {
+            // Solve L y = r
+            for(int row = 0; row < this.dimensions; row++) {
+                int diagonal = this.choleskyEnd[row] - 1;
+                double sum = r[row];
+                for(int index = this.rowPointers[row]; index < diagonal; index++) {
+                    sum -= this.cholesky[index] * s[this.columnIndexes[index]];
+                }
+                s[row] = sum / this.cholesky[diagonal];
+            }
+
+            // Solve L^T s = y, column by column
+            for(int row = this.dimensions - 1; row >= 0; row--) {
+                int diagonal = this.choleskyEnd[row] - 1;
+                double value = s[row] / this.cholesky[diagonal];
+                s[row] = value;
+                for(int index = this.rowPointers[row]; index < diagonal; index++) {
+                    s[this.columnIndexes[index]] -= this.cholesky[index] * value;
+                }
+            }
         }
     }
 
+
+    private void elementWiseProduct(double[] a, double[] b, double[] result) {
+        this.forChunks((chunk, start, end) -> {
+            for(int i = start; i < end; i++) {
+                result[i] = a[i] * b[i];
+            }
+        });
+    }
+
     private double dotProduct(double[] a, double[] b) {
-        double sum = 0.0;
+        this.forChunks((chunk, start, end) -> {
+            double sum = 0.0;
+            for(int i = start; i < end; i++) {
+                sum += a[i] * b[i];
+            }
+            this.partialSums[chunk] = sum;
+        });
 
-        for(int i = 0; i < a.length; i++) {
-            sum += a[i] * b[i];
+        double sum = 0.0;
+        for(double partialSum : this.partialSums) {
+            sum += partialSum;
         }
-
         return sum;
     }
 
     private void vectorUpdate(double[] a, double[] b, double constant, double[] result) {
-        for(int i = 0; i < a.length; i++) {
-            result[i] = a[i] + constant * b[i];
-        }
+        this.forChunks((chunk, start, end) -> {
+            for(int i = start; i < end; i++) {
+                result[i] = a[i] + constant * b[i];
+            }
+        });
     }
 
     private void sparseMatrixVectorProduct(double[] vector, double[] result) {
-        int index = 0;
-        for(int row = 0; row < this.vector.length; row++) {
-            // TODO: binary search
-            double sum = 0.0;
-            int nextRow = row + 1;
-            int maxIndex = this.rowPointers.get(nextRow);
-            while(index < maxIndex) {
-                sum += this.val.get(index) * vector[this.columnIndexes.get(index)];
-                index++;
+        this.forChunks((chunk, start, end) -> {
+            int index = this.rowPointers[start];
+            for(int row = start; row < end; row++) {
+                double sum = 0.0;
+                int maxIndex = this.rowPointers[row + 1];
+                while(index < maxIndex) {
+                    sum += this.val[index] * vector[this.columnIndexes[index]];
+                    index++;
+                }
+                result[row] = sum;
             }
-            result[row] = sum;
+        });
+    }
+
+
+    private interface ChunkTask {
+        void run(int chunk, int start, int end);
+    }
+
+    private int chunkStart(int chunk) {
+        return (int) ((long) chunk * this.dimensions / this.numChunks);
+    }
+
+    private void forChunks(ChunkTask task) {
+        if(this.numChunks == 1) {
+            task.run(0, 0, this.dimensions);
+        } else {
+            this.pool.invoke(new ChunkAction(0, this.numChunks, task));
         }
     }
 
+    private class ChunkAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int firstChunk, lastChunk;
+        private final ChunkTask task;
+
+        ChunkAction(int firstChunk, int lastChunk, ChunkTask task) {
+            this.firstChunk = firstChunk;
+            this.lastChunk = lastChunk;
+            this.task = task;
+        }
+
+        @Override
+        protected void compute() {
+            if(this.lastChunk - this.firstChunk == 1) {
+                this.task.run(this.firstChunk, chunkStart(this.firstChunk), chunkStart(this.lastChunk));
+
+            } else {
+                int middle = (this.firstChunk + this.lastChunk) >>> 1;
+                invokeAll(
+                        new ChunkAction(this.firstChunk, middle, this.task),
+                        new ChunkAction(middle, this.lastChunk, this.task));
+            }
+        }
+    }
 }
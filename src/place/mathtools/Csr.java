@@ -1,99 +1,147 @@
 package place.mathtools;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-
+import java.util.Arrays;
+
+/*
+ * A sparse matrix in compressed sparse row format. The elements are
+ * collected in primitive arrays as unsorted (row, column, value)
+ * triples, and sorted with two stable counting sorts when the
+ * arrays are prepared: first on column, then on row. Duplicate
+ * elements are summed in the order in which they were added, with
+ * the diagonal element last.
+ */
 public class Csr {
 
     private int numRows;
-    private List<Double> selfValues;
-    private List<List<CsrTuple>> values;
+    private double[] selfValues;
+
+    private int numElements;
+    private int[] elementRows, elementColumns;
+    private double[] elementValues;
 
-    private ArrayList<Integer> indexArray, rowPointers;
-    private ArrayList<Double> valueArray;
+    private int[] indexArray, rowPointers;
+    private double[] valueArray;
 
     public Csr(int numRows) {
         this.numRows = numRows;
 
-        this.selfValues = new ArrayList<>(numRows);
-        this.values = new ArrayList<>(numRows);
-        for(int i = 0; i < numRows; i++) {
-            this.selfValues.add(0.0);
-            this.values.add(new ArrayList<CsrTuple>());
-        }
+        this.selfValues = new double[numRows];
+
+        int capacity = Math.max(16, 4 * numRows);
+        this.elementRows = new int[capacity];
+        this.elementColumns = new int[capacity];
+        this.elementValues = new double[capacity];
     }
 
 
+    public int getNumRows() {
+        return this.numRows;
+    }
 
     public void addElement(int row, int column, double value) {
         if(row == column) {
-            this.selfValues.set(row, value + this.selfValues.get(row));
+            this.selfValues[row] += value;
 
         } else {
-            CsrTuple entry = new CsrTuple(column, value);
-            this.values.get(row).add(entry);
+            if(this.numElements == this.elementRows.length) {
+                int capacity = 2 * this.numElements;
+                this.elementRows = Arrays.copyOf(this.elementRows, capacity);
+                this.elementColumns = Arrays.copyOf(this.elementColumns, capacity);
+                this.elementValues = Arrays.copyOf(this.elementValues, capacity);
+            }
+
+            this.elementRows[this.numElements] = row;
+            this.elementColumns[this.numElements] = column;
+            this.elementValues[this.numElements] = value;
+            this.numElements++;
         }
     }
 
     public void prepareArrays() {
-        this.indexArray = new ArrayList<>(10 * this.numRows);
-        this.valueArray = new ArrayList<>(10 * this.numRows);
-        this.rowPointers = new ArrayList<>(this.numRows + 1);
+        int numRows = this.numRows;
+        int numElements = this.numElements + numRows;
+
+        // The diagonal elements are added after all other elements
+        int[] rows = Arrays.copyOf(this.elementRows, numElements);
+        int[] columns = Arrays.copyOf(this.elementColumns, numElements);
+        double[] values = Arrays.copyOf(this.elementValues, numElements);
+        for(int row = 0; row < numRows; row++) {
+            rows[this.numElements + row] = row;
+            columns[this.numElements + row] = row;
+            values[this.numElements + row] = this.selfValues[row];
+        }
+
+        // Stable sort on column, then on row
+        int[] byColumn = countingSort(columns, null, numElements, numRows);
+        int[] order = countingSort(rows, byColumn, numElements, numRows);
+
+
+        // Sum the duplicate elements
+        this.rowPointers = new int[numRows + 1];
+        this.indexArray = new int[numElements];
+        this.valueArray = new double[numElements];
 
         int totalIndex = 0;
-        for(int rowIndex = 0; rowIndex < this.numRows; rowIndex++) {
-            this.rowPointers.add(totalIndex);
-
-            List<CsrTuple> row = this.values.get(rowIndex);
-            CsrTuple selfTuple = new CsrTuple(rowIndex, this.selfValues.get(rowIndex));
-            row.add(selfTuple);
-            Collections.sort(row);
-
-            CsrTuple initialEntry = row.get(0);
-            int previousColumnIndex = initialEntry.getIndex();
-            double summedValue = initialEntry.getValue();
-
-            int numValues = row.size();
-            int valueIndex = 1;
-            while(valueIndex < numValues) {
-                CsrTuple entry = row.get(valueIndex);
-                int columnIndex = entry.getIndex();
-                double value = entry.getValue();
-
-                if(columnIndex == previousColumnIndex) {
-                    summedValue += value;
-
-                } else {
-                    this.indexArray.add(previousColumnIndex);
-                    this.valueArray.add(summedValue);
-                    totalIndex++;
-                    summedValue = value;
-                }
-
-                previousColumnIndex = columnIndex;
-                valueIndex++;
+        int previousRow = -1, previousColumn = -1;
+        for(int i = 0; i < numElements; i++) {
+            int element = order[i];
+            int row = rows[element];
+            int column = columns[element];
+
+            if(row == previousRow && column == previousColumn) {
+                this.valueArray[totalIndex - 1] += values[element];
+
+            } else {
+                this.indexArray[totalIndex] = column;
+                this.valueArray[totalIndex] = values[element];
+                totalIndex++;
+
+                this.rowPointers[row + 1] = totalIndex;
+                previousRow = row;
+                previousColumn = column;
             }
-
-            this.indexArray.add(previousColumnIndex);
-            this.valueArray.add(summedValue);
-            totalIndex++;
         }
 
-        this.rowPointers.add(totalIndex);
+        // Every row contains at least its diagonal element, so all row pointers have been set
+        this.indexArray = Arrays.copyOf(this.indexArray, totalIndex);
+        this.valueArray = Arrays.copyOf(this.valueArray, totalIndex);
+
+        // The element arrays are not needed anymore
+        this.elementRows = null;
+        this.elementColumns = null;
+        this.elementValues = null;
+    }
 
+    /**
+     * Stable counting sort of the elements in order on their key.
+     * If order is null, the elements are taken in the order in
+     * which they were added.
+     */
+    private static int[] countingSort(int[] keys, int[] order, int numElements, int numKeys) {
+        int[] start = new int[numKeys + 1];
+        for(int i = 0; i < numElements; i++) {
+            start[keys[i] + 1]++;
+        }
+        for(int key = 0; key < numKeys; key++) {
+            start[key + 1] += start[key];
+        }
+
+        int[] sorted = new int[numElements];
+        for(int i = 0; i < numElements; i++) {
+            int element = order == null ? i : order[i];
+            sorted[start[keys[element]]++] = element;
+        }
 
-        this.indexArray.trimToSize();
-        this.valueArray.trimToSize();
+        return sorted;
     }
 
-    public List<Integer> getColumnIndexes() {
+    public int[] getColumnIndexes() {
         return this.indexArray;
     }
-    public List<Double> getVal() {
+    public double[] getVal() {
         return this.valueArray;
     }
-    public List<Integer> getRowPointers() {
+    public int[] getRowPointers() {
         return this.rowPointers;
     }
 }
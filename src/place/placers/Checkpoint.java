@@ -0,0 +1,283 @@
+package place.placers;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Random;
+
+import place.circuit.Circuit;
+import place.circuit.block.GlobalBlock;
+import place.circuit.exceptions.PlacementException;
+import place.interfaces.Logger;
+
+/**
+ * A checkpoint of the placer chain, in a compact binary file. It holds
+ * the index of the placer that was running, the positions of all global
+ * blocks, the random state of the placer and the iteration state that
+ * the placer writes itself.
+ *
+ * Placers write a checkpoint between iterations, at most once per
+ * interval. A placer that is resumed from a checkpoint continues with
+ * exactly the same state, so the result is the same as the result of
+ * an uninterrupted run with the same options.
+ */
+public class Checkpoint {
+
+    private static final int MAGIC = 0x504c4350, VERSION = 2;
+
+    private final File file;
+    private final long interval;
+    private final Logger logger;
+
+    private int placerIndex = -1;
+    private long lastWriteTime;
+
+    // The checkpoint that was read from the file, until it has been restored
+    private int resumePlacerIndex = -1;
+    private String resumePlacerName;
+    private int[] resumeColumns, resumeRows;
+    private byte[] resumeRandom, resumeState;
+
+    public Checkpoint(File file, int intervalSeconds, Logger logger) {
+        this.file = file;
+        this.interval = intervalSeconds * 1000000000L;
+        this.logger = logger;
+    }
+
+
+    public void read(Circuit circuit) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(this.file)));
+
+        try {
+            if(input.readInt() != MAGIC || input.readInt() != VERSION) {
+                throw new IOException("Not a checkpoint file: " + this.file);
+            }
+
+            this.resumePlacerIndex = input.readInt();
+            this.resumePlacerName = input.readUTF();
+
+            List<GlobalBlock> blocks = circuit.getGlobalBlocks();
+            int numBlocks = input.readInt();
+            if(numBlocks != blocks.size() || input.readInt() != Checkpoint.hashNames(blocks)) {
+                throw new IOException("The checkpoint was written for another circuit");
+            }
+
+            this.resumeColumns = new int[numBlocks];
+            this.resumeRows = new int[numBlocks];
+            for(int i = 0; i < numBlocks; i++) {
+                this.resumeColumns[i] = input.readInt();
+                this.resumeRows[i] = input.readInt();
+            }
+
+            this.resumeRandom = new byte[input.readInt()];
+            input.readFully(this.resumeRandom);
+
+            this.resumeState = new byte[input.readInt()];
+            input.readFully(this.resumeState);
+
+        } finally {
+            input.close();
+        }
+    }
+
+    public int getResumePlacerIndex() {
+        return this.resumePlacerIndex;
+    }
+
+    /**
+     * Put all global blocks on the site they had when the checkpoint
+     * was written.
+     */
+    public void restorePlacement(Circuit circuit) throws PlacementException {
+        List<GlobalBlock> blocks = circuit.getGlobalBlocks();
+
+        for(GlobalBlock block : blocks) {
+            if(block.getSite() != null) {
+                block.removeSite();
+            }
+        }
+
+        for(int i = 0; i < blocks.size(); i++) {
+            if(this.resumeColumns[i] >= 0) {
+                blocks.get(i).setSite(circuit.getSite(this.resumeColumns[i], this.resumeRows[i], true));
+            }
+        }
+    }
+
+    /**
+     * Called before every placer in the chain is started.
+     */
+    public void startPlacer(int placerIndex, String placerName) throws IOException {
+        if(placerIndex == this.resumePlacerIndex && !placerName.equals(this.resumePlacerName)) {
+            throw new IOException("The checkpoint was written by " + this.resumePlacerName + ", not by " + placerName);
+        }
+
+        this.placerIndex = placerIndex;
+        this.lastWriteTime = System.nanoTime();
+    }
+
+
+    boolean resume(Placer placer) {
+        if(this.resumeState == null || this.placerIndex != this.resumePlacerIndex) {
+            return false;
+        }
+
+        try {
+            placer.random = Checkpoint.readRandom(this.resumeRandom);
+
+            DataInputStream input = new DataInputStream(new ByteArrayInputStream(this.resumeState));
+            placer.readState(input);
+
+        } catch(IOException error) {
+            this.logger.raise("Something went wrong while resuming from the checkpoint", error);
+        }
+
+        this.resumeRandom = null;
+        this.resumeState = null;
+
+        return true;
+    }
+
+    void write(Placer placer) {
+        long time = System.nanoTime();
+        if(time - this.lastWriteTime < this.interval) {
+            return;
+        }
+        this.lastWriteTime = time;
+
+        // Write to a temporary file first, so a crash while writing doesn't destroy the previous checkpoint
+        File temporaryFile = new File(this.file.getPath() + ".tmp");
+        try {
+            ByteArrayOutputStream stateBytes = new ByteArrayOutputStream();
+            DataOutputStream stateOutput = new DataOutputStream(stateBytes);
+            placer.writeState(stateOutput);
+            stateOutput.flush();
+
+            byte[] randomBytes = Checkpoint.writeRandom(placer.random);
+
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)));
+            try {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+
+                output.writeInt(this.placerIndex);
+                output.writeUTF(placer.getName());
+
+                List<GlobalBlock> blocks = placer.circuit.getGlobalBlocks();
+                output.writeInt(blocks.size());
+                output.writeInt(Checkpoint.hashNames(blocks));
+                for(GlobalBlock block : blocks) {
+                    if(block.getSite() == null) {
+                        output.writeInt(-1);
+                        output.writeInt(-1);
+                    } else {
+                        output.writeInt(block.getColumn());
+                        output.writeInt(block.getRow());
+                    }
+                }
+
+                output.writeInt(randomBytes.length);
+                output.write(randomBytes);
+
+                output.writeInt(stateBytes.size());
+                stateBytes.writeTo(output);
+
+            } finally {
+                output.close();
+            }
+
+            Files.move(temporaryFile.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        } catch(IOException error) {
+            // A failed checkpoint is no reason to stop the placement
+            this.logger.printf("Failed to write checkpoint %s: %s\n", this.file, error.getMessage());
+        }
+    }
+
+    private static int hashNames(List<GlobalBlock> blocks) {
+        int hash = 0;
+        for(GlobalBlock block : blocks) {
+            hash = 31 * hash + block.getName().hashCode();
+        }
+        return hash;
+    }
+
+
+    /*
+     * Helpers for the state of the placers
+     */
+    public static void writeRandom(DataOutputStream output, Random random) throws IOException {
+        byte[] bytes = Checkpoint.writeRandom(random);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+    public static Random readRandom(DataInputStream input) throws IOException {
+        byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        return Checkpoint.readRandom(bytes);
+    }
+
+    private static byte[] writeRandom(Random random) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream output = new ObjectOutputStream(bytes);
+        output.writeObject(random);
+        output.close();
+
+        return bytes.toByteArray();
+    }
+    private static Random readRandom(byte[] bytes) throws IOException {
+        ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes));
+        try {
+            return (Random) input.readObject();
+        } catch(ClassNotFoundException | ClassCastException error) {
+            throw new IOException("Invalid random state in checkpoint", error);
+        } finally {
+            input.close();
+        }
+    }
+
+    public static void writeArray(DataOutputStream output, double[] array) throws IOException {
+        output.writeInt(array.length);
+        for(double value : array) {
+            output.writeDouble(value);
+        }
+    }
+    public static void readArray(DataInputStream input, double[] array) throws IOException {
+        Checkpoint.checkLength(input, array.length);
+        for(int i = 0; i < array.length; i++) {
+            array[i] = input.readDouble();
+        }
+    }
+
+    public static void writeArray(DataOutputStream output, int[] array) throws IOException {
+        output.writeInt(array.length);
+        for(int value : array) {
+            output.writeInt(value);
+        }
+    }
+    public static void readArray(DataInputStream input, int[] array) throws IOException {
+        Checkpoint.checkLength(input, array.length);
+        for(int i = 0; i < array.length; i++) {
+            array[i] = input.readInt();
+        }
+    }
+
+    private static void checkLength(DataInputStream input, int length) throws IOException {
+        int storedLength = input.readInt();
+        if(storedLength != length) {
+            throw new IOException("Array of length " + storedLength + " in checkpoint, expected " + length);
+        }
+    }
+}
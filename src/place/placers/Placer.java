@@ -7,6 +7,9 @@ import place.interfaces.Options;
 import place.util.Timer;
 import place.visual.PlacementVisualizer;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedHashMap;
@@ -32,6 +35,8 @@ public abstract class Placer {
     private int numStats;
     private static int statSpaces = 3;
 
+    private Checkpoint checkpoint;
+
 
     protected Placer(Circuit circuit, Options options, Random random, Logger logger, PlacementVisualizer visualizer) {
         this.circuit = circuit;
@@ -49,6 +54,48 @@ public abstract class Placer {
     protected abstract void addStatTitles(List<String> titles);
 
 
+    public void setCheckpoint(Checkpoint checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * Placers that return true write their iteration state to the
+     * checkpoint with writeState(), and read it back with readState()
+     * when they are resumed. The random state and the positions of
+     * the blocks in the circuit are stored by the checkpoint itself.
+     */
+    protected boolean supportsCheckpoints() {
+        return false;
+    }
+
+    @SuppressWarnings("unused")
+    protected void writeState(DataOutputStream output) throws IOException {
+        // Do nothing
+    }
+    @SuppressWarnings("unused")
+    protected void readState(DataInputStream input) throws IOException {
+        // Do nothing
+    }
+
+    /**
+     * Write a checkpoint if one is due. This should be called between
+     * two iterations.
+     */
+    protected final void checkpoint() {
+        if(this.checkpoint != null && this.supportsCheckpoints()) {
+            this.checkpoint.write(this);
+        }
+    }
+
+    /**
+     * Returns true if the state of this placer has been restored from
+     * a checkpoint.
+     */
+    protected final boolean resumeFromCheckpoint() {
+        return this.checkpoint != null && this.checkpoint.resume(this);
+    }
+
+
     public void place() throws PlacementException {
         this.statTitles = new ArrayList<>();
         this.statLengths = new ArrayList<>();
@@ -14,9 +14,13 @@ import place.circuit.timing.TimingNode;
 import place.circuit.timing.TimingNode.Position;
 import place.interfaces.Logger;
 import place.interfaces.Options;
+import place.placers.Checkpoint;
 import place.placers.Placer;
 import place.visual.PlacementVisualizer;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -25,6 +29,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import pack.util.ErrorLog;
 
@@ -57,17 +66,39 @@ public abstract class AnalyticalAndGradientPlacer extends Placer {
     protected List<TimingNet> timingNets;
 
     private boolean[] solveSeparate;
+
+    // The iteration from which a checkpoint continues
+    private int checkpointIteration;
     
-    private final boolean hasHierarchyInformation;
+    protected final boolean hasHierarchyInformation;
+
+    // Solves the y dimension while the x dimension is solved on the placer thread
+    private final boolean concurrentDimensions;
+    protected ExecutorService dimensionExecutor;
+
+    // Null if the legalizer runs on the placer thread
+    protected final ForkJoinPool legalizerPool;
 
     private static final String
-        O_CRIT_LEARNING_RATE = "crit learning rate";
+        O_CRIT_LEARNING_RATE = "crit learning rate",
+        O_CONCURRENT_DIMENSIONS = "concurrent dimensions",
+        O_LEGALIZER_THREADS = "legalizer threads";
 
     public static void initOptions(Options options) {
         options.add(
                 O_CRIT_LEARNING_RATE,
                 "criticality learning rate of the critical connections in sparce placement",
                 new Double(0.7));
+
+        options.add(
+                O_CONCURRENT_DIMENSIONS,
+                "solve the x and y dimension of the linear system concurrently",
+                Boolean.FALSE);
+
+        options.add(
+                O_LEGALIZER_THREADS,
+                "number of threads for the legalizer",
+                new Integer(1));
     }
 
     protected final static String
@@ -83,15 +114,15 @@ public abstract class AnalyticalAndGradientPlacer extends Placer {
         super(circuit, options, random, logger, visualizer);
 
         this.criticalityLearningRate = options.getDouble(O_CRIT_LEARNING_RATE);
+        this.concurrentDimensions = options.getBoolean(O_CONCURRENT_DIMENSIONS);
+
+        int legalizerThreads = options.getInteger(O_LEGALIZER_THREADS);
+        this.legalizerPool = legalizerThreads > 1 ? new ForkJoinPool(legalizerThreads) : null;
         
         //Check if a hierarchy input file is available.
         //If the file is available, then each node should have a hierarchy leaf node.
         //If the file is not available, then no hierarchy information is used in Liquid.
-        boolean flag = false;
-        for(GlobalBlock block:this.circuit.getGlobalBlocks()){
-        	if(block.hasLeafNode()) flag = true;
-        }
-        if(flag){
+        if(hasLeafNodes(this.circuit)){
             for(GlobalBlock block:this.circuit.getGlobalBlocks()){
             	if(!block.hasLeafNode()){
             		ErrorLog.print("Liquid includes hierarchy information but global block " + block + " has no leaf node");
@@ -103,6 +134,18 @@ public abstract class AnalyticalAndGradientPlacer extends Placer {
         }
     }
 
+    /**
+     * True if a hierarchy file has been read for the circuit.
+     */
+    static boolean hasLeafNodes(Circuit circuit) {
+        for(GlobalBlock block : circuit.getGlobalBlocks()) {
+            if(block.hasLeafNode()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     protected abstract boolean isTimingDriven();
 
     protected abstract void initializeIteration(int iteration);
@@ -381,9 +424,17 @@ public abstract class AnalyticalAndGradientPlacer extends Placer {
     @Override
     protected void doPlacement() {
 
+        if(this.concurrentDimensions) {
+            this.dimensionExecutor = Executors.newSingleThreadExecutor();
+        }
+
         int iteration = 0;
         boolean isLastIteration = false;
 
+        if(this.resumeFromCheckpoint()) {
+            iteration = this.checkpointIteration;
+        }
+
         while(!isLastIteration) {
             double timerBegin = System.nanoTime();
 
@@ -420,6 +471,16 @@ public abstract class AnalyticalAndGradientPlacer extends Placer {
             isLastIteration = this.stopCondition(iteration);
             
             iteration++;
+
+            if(!isLastIteration) {
+                this.checkpointIteration = iteration;
+                this.checkpoint();
+            }
+        }
+
+        if(this.dimensionExecutor != null) {
+            this.dimensionExecutor.shutdown();
+            this.dimensionExecutor = null;
         }
         
         //////////// Final legalization of the LABs ////////////
@@ -449,6 +510,39 @@ public abstract class AnalyticalAndGradientPlacer extends Placer {
         //Print Critical Path Delay
         //this.logger.println(this.circuit.getTimingGraph().criticalPathToString());
     }
+
+    @Override
+    protected void writeState(DataOutputStream output) throws IOException {
+        output.writeInt(this.checkpointIteration);
+
+        Checkpoint.writeArray(output, this.linearX);
+        Checkpoint.writeArray(output, this.linearY);
+        Checkpoint.writeArray(output, this.legalX);
+        Checkpoint.writeArray(output, this.legalY);
+        Checkpoint.writeArray(output, this.bestLinearX);
+        Checkpoint.writeArray(output, this.bestLinearY);
+        Checkpoint.writeArray(output, this.bestLegalX);
+        Checkpoint.writeArray(output, this.bestLegalY);
+
+        output.writeDouble(this.bestCost);
+    }
+
+    @Override
+    protected void readState(DataInputStream input) throws IOException {
+        this.checkpointIteration = input.readInt();
+
+        Checkpoint.readArray(input, this.linearX);
+        Checkpoint.readArray(input, this.linearY);
+        Checkpoint.readArray(input, this.legalX);
+        Checkpoint.readArray(input, this.legalY);
+        Checkpoint.readArray(input, this.bestLinearX);
+        Checkpoint.readArray(input, this.bestLinearY);
+        Checkpoint.readArray(input, this.bestLegalX);
+        Checkpoint.readArray(input, this.bestLegalY);
+
+        this.bestCost = input.readDouble();
+    }
+
     private void addLinearPlacement(int iteration){
         this.visualizer.addPlacement(
                 String.format("iteration %d: linear", iteration),
@@ -496,6 +590,35 @@ public abstract class AnalyticalAndGradientPlacer extends Placer {
     }
 
 
+    /**
+     * Run solveX on the current thread and solveY on the executor.
+     * The dimensions don't share any data, so the result is the same
+     * as when they are solved one after the other. If executor is
+     * null, both are solved on the current thread.
+     */
+    static void solveDimensions(ExecutorService executor, Runnable solveX, Runnable solveY) {
+        if(executor == null) {
+            solveX.run();
+            solveY.run();
+            return;
+        }
+
+        Future<?> futureY = executor.submit(solveY);
+        solveX.run();
+
+        try {
+            futureY.get();
+
+        } catch(InterruptedException error) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while solving the y dimension", error);
+
+        } catch(ExecutionException error) {
+            throw new IllegalStateException("Failed to solve the y dimension", error.getCause());
+        }
+    }
+
+
     public static double getWeight(int size) {
         switch (size) {
             case 1:
@@ -635,6 +758,10 @@ public abstract class AnalyticalAndGradientPlacer extends Placer {
             this.blocks[1] = block;
         }
 
+        Net(NetBlock[] blocks) {
+            this.blocks = blocks;
+        }
+
         Net(TimingNet timingNet) {
             Set<NetBlock> netBlocks = new HashSet<>();
             netBlocks.add(timingNet.source);
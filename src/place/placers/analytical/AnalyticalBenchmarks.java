@@ -0,0 +1,118 @@
+package place.placers.analytical;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import place.benchmark.Benchmark;
+import place.circuit.Circuit;
+import place.circuit.architecture.BlockCategory;
+import place.circuit.architecture.BlockType;
+import place.interfaces.Logger;
+import place.interfaces.Options;
+import place.visual.PlacementVisualizer;
+
+/**
+ * Benchmarks for the kernels of the gradient placer, on the current
+ * placement of a circuit. The set up solves the linear system once, so
+ * the legalizers start from an overlapping placement like they do in
+ * the first iteration of the placer. The HeapLegalizer is always
+ * measured. The GradientLegalizer is only measured on the circuits
+ * for which the placer uses it: sparse circuits with hierarchy
+ * information. It fails on the other circuits. None of the benchmarks
+ * changes the placement of the circuit.
+ */
+public class AnalyticalBenchmarks {
+
+    private final Circuit circuit;
+    private final Random random;
+    private final Logger logger;
+    private final PlacementVisualizer visualizer;
+
+    private GradientPlacerWLD placer;
+    private boolean[] allNets;
+
+    public AnalyticalBenchmarks(Circuit circuit, Random random, Logger logger, PlacementVisualizer visualizer) {
+        this.circuit = circuit;
+        this.random = random;
+        this.logger = logger;
+        this.visualizer = visualizer;
+    }
+
+    private void initialize() {
+        if(this.placer != null) {
+            return;
+        }
+
+        Options options = new Options(this.logger);
+        GradientPlacerWLD.initOptions(options);
+
+        this.placer = new GradientPlacerWLD(this.circuit, options, this.random, this.logger, this.visualizer);
+        this.placer.initializeData();
+
+        this.placer.initializeIteration(0);
+        this.placer.solveLinear(0);
+
+        this.allNets = new boolean[this.placer.numRealNets];
+        Arrays.fill(this.allNets, true);
+    }
+
+
+    public List<Benchmark> getBenchmarks() {
+        List<Benchmark> benchmarks = new ArrayList<>();
+
+        benchmarks.add(new Benchmark("LinearSolverGradient.processNets") {
+            @Override
+            public void setUp() {
+                AnalyticalBenchmarks.this.initialize();
+            }
+
+            @Override
+            public double run() {
+                GradientPlacer placer = AnalyticalBenchmarks.this.placer;
+                placer.solver.initializeIteration(placer.anchorWeight, placer.learningRate);
+                placer.processNets(AnalyticalBenchmarks.this.allNets);
+                return placer.numRealNets;
+            }
+        });
+
+        benchmarks.add(new LegalizerBenchmark("HeapLegalizer.legalize", true));
+        if(GradientPlacer.usesGradientLegalizer(this.circuit)) {
+            benchmarks.add(new LegalizerBenchmark("GradientLegalizer.legalize", false));
+        }
+
+        return benchmarks;
+    }
+
+    private class LegalizerBenchmark extends Benchmark {
+        private final boolean heap;
+        private Legalizer legalizer;
+
+        LegalizerBenchmark(String name, boolean heap) {
+            super(name);
+            this.heap = heap;
+        }
+
+        @Override
+        public void setUp() {
+            AnalyticalBenchmarks.this.initialize();
+
+            GradientPlacer placer = AnalyticalBenchmarks.this.placer;
+            this.legalizer = this.heap ? placer.createHeapLegalizer() : placer.createGradientLegalizer();
+            this.legalizer.setThreadPool(placer.legalizerPool);
+        }
+
+        @Override
+        public double run() {
+            for(BlockType blockType : BlockType.getBlockTypes(BlockCategory.CLB)) {
+                this.legalizer.legalize(blockType, false);
+            }
+            for(BlockType blockType : BlockType.getBlockTypes(BlockCategory.HARDBLOCK)) {
+                this.legalizer.legalize(blockType, false);
+            }
+
+            return AnalyticalBenchmarks.this.placer.legalX[0];
+        }
+    }
+}
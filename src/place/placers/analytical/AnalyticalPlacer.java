@@ -6,6 +6,7 @@ import place.circuit.architecture.BlockType;
 import place.circuit.block.GlobalBlock;
 import place.interfaces.Logger;
 import place.interfaces.Options;
+import place.mathtools.CGSolver.Preconditioner;
 import place.visual.PlacementVisualizer;
 
 import java.util.ArrayList;
@@ -14,6 +15,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 public abstract class AnalyticalPlacer extends AnalyticalAndGradientPlacer {
 
@@ -23,7 +25,14 @@ public abstract class AnalyticalPlacer extends AnalyticalAndGradientPlacer {
     	O_ANCHOR_WEIGHT = "anchor weight",
     	O_ANCHOR_WEIGHT_MULTIPLIER = "anchor weight multiplier",
 
-    	O_OUTER_EFFORT_LEVEL = "outer effort level";
+    	O_OUTER_EFFORT_LEVEL = "outer effort level",
+
+    	O_INCOMPLETE_CHOLESKY = "incomplete cholesky",
+    	O_SOLVER_THREADS = "solver threads",
+
+    	O_MULTILEVEL = "multilevel";
+
+    private static final String T_MULTILEVEL = "multilevel start";
 
     public static void initOptions(Options options) {
         AnalyticalAndGradientPlacer.initOptions(options);
@@ -42,6 +51,21 @@ public abstract class AnalyticalPlacer extends AnalyticalAndGradientPlacer {
                 O_OUTER_EFFORT_LEVEL,
                 "number of solve-legalize iterations",
                 new Integer(40));
+
+        options.add(
+                O_INCOMPLETE_CHOLESKY,
+                "use an incomplete cholesky preconditioner instead of jacobi",
+                Boolean.FALSE);
+
+        options.add(
+                O_SOLVER_THREADS,
+                "number of threads for the linear solver",
+                new Integer(1));
+
+        options.add(
+                O_MULTILEVEL,
+                "experimental: start from a multilevel placement along the pack hierarchy, if a hierarchy file is given; slower than a flat start at the same outer effort level",
+                Boolean.FALSE);
     }
 
     protected double anchorWeight;
@@ -51,6 +75,13 @@ public abstract class AnalyticalPlacer extends AnalyticalAndGradientPlacer {
 
     protected int numIterations;
 
+    private final Preconditioner preconditioner;
+    private final ForkJoinPool solverPool;
+
+    // The anchors of the first iteration, null if there is no multilevel start
+    private final boolean multilevel;
+    private double[] multilevelX, multilevelY;
+
     // This is only used by AnalyticalPlacerTD
     protected double tradeOff;
     protected List<CritConn> criticalConnections;
@@ -79,8 +110,22 @@ public abstract class AnalyticalPlacer extends AnalyticalAndGradientPlacer {
         this.anchorWeight = this.options.getDouble(O_ANCHOR_WEIGHT);
         this.anchorWeightMultiplier = this.options.getDouble(O_ANCHOR_WEIGHT_MULTIPLIER);
 
+        this.multilevel = this.options.getBoolean(O_MULTILEVEL) && this.hasHierarchyInformation;
+        if(this.options.getBoolean(O_MULTILEVEL) && !this.hasHierarchyInformation) {
+            this.logger.println("No hierarchy information is available, the multilevel start is skipped\n");
+        }
+
         this.numIterations = this.options.getInteger(O_OUTER_EFFORT_LEVEL) + 1;
 
+        if(this.options.getBoolean(O_INCOMPLETE_CHOLESKY)) {
+            this.preconditioner = Preconditioner.INCOMPLETE_CHOLESKY;
+        } else {
+            this.preconditioner = Preconditioner.JACOBI;
+        }
+
+        int solverThreads = this.options.getInteger(O_SOLVER_THREADS);
+        this.solverPool = solverThreads > 1 ? new ForkJoinPool(solverThreads) : null;
+
         this.latestCost = Double.MAX_VALUE;
         this.minCost = Double.MAX_VALUE;
 
@@ -113,6 +158,7 @@ public abstract class AnalyticalPlacer extends AnalyticalAndGradientPlacer {
                 this.netBlocks,
                 this.logger);
         this.legalizer.addSetting("anneal_quality", 0.1, 0.001);
+        this.legalizer.setThreadPool(this.legalizerPool);
 
         //Make a list of all the nets for each blockType
         this.allTrue = new boolean[this.numRealNets];
@@ -147,6 +193,55 @@ public abstract class AnalyticalPlacer extends AnalyticalAndGradientPlacer {
     	this.costCalculator = new CostCalculator(this.nets);
 
         this.stopTimer(T_INITIALIZE_DATA);
+
+        if(this.multilevel) {
+            this.startTimer(T_MULTILEVEL);
+            this.placeMultilevel();
+            this.stopTimer(T_MULTILEVEL);
+        }
+    }
+
+    private void placeMultilevel() {
+        int numBlocks = this.linearX.length;
+
+        String[] identifiers = new String[numBlocks];
+        for(Map.Entry<GlobalBlock, NetBlock> entry : this.netBlocks.entrySet()) {
+            GlobalBlock block = entry.getKey();
+            int blockIndex = entry.getValue().getBlockIndex();
+            if(identifiers[blockIndex] == null && block.hasLeafNode() && !block.getLeafNode().isFloating()) {
+                identifiers[blockIndex] = block.getLeafNode().getIdentifier();
+            }
+        }
+
+        MultilevelPlacement multilevelPlacement = new MultilevelPlacement(
+                this,
+                this.circuit.getWidth(),
+                this.circuit.getHeight(),
+                this.numIOBlocks,
+                this.nets,
+                identifiers,
+                this.heights,
+                this.anchorWeight,
+                AnalyticalPlacer.EPSILON,
+                this.preconditioner,
+                this.solverPool);
+
+        this.multilevelX = new double[numBlocks];
+        this.multilevelY = new double[numBlocks];
+        for(int i = 0; i < numBlocks; i++) {
+            boolean isIO = i < this.numIOBlocks;
+            this.multilevelX[i] = isIO ? this.legalX[i] : this.linearX[i];
+            this.multilevelY[i] = isIO ? this.legalY[i] : this.linearY[i];
+        }
+
+        multilevelPlacement.place(this.multilevelX, this.multilevelY);
+
+        for(int i = this.numIOBlocks; i < numBlocks; i++) {
+            this.linearX[i] = this.multilevelX[i];
+            this.linearY[i] = this.multilevelY[i];
+        }
+
+        this.logger.println("Multilevel start with " + multilevelPlacement.getDepth() + " hierarchy levels\n");
     }
 
     @Override
@@ -208,6 +303,8 @@ public abstract class AnalyticalPlacer extends AnalyticalAndGradientPlacer {
                     this.coordinatesY,
                     this.anchorWeight,
                     AnalyticalPlacer.EPSILON,
+                    this.preconditioner,
+                    this.solverPool,
                     this.fixed);
             this.solveLinearIteration(processNets, iteration);
         }
@@ -233,13 +330,17 @@ public abstract class AnalyticalPlacer extends AnalyticalAndGradientPlacer {
             // this.legalX and this.legalY store the solution with the lowest cost
             // For anchors, the last (possibly suboptimal) solution usually works better
             this.solver.addPseudoConnections(this.legalX, this.legalY);
+
+        } else if(this.multilevelX != null) {
+            // Keep the first iteration close to the multilevel placement
+            this.solver.addPseudoConnections(this.multilevelX, this.multilevelY);
         }
 
         this.stopTimer(T_BUILD_LINEAR);
 
         // Solve and save result
         this.startTimer(T_SOLVE_LINEAR);
-        this.solver.solve();
+        this.solver.solve(this.dimensionExecutor);
         this.stopTimer(T_SOLVE_LINEAR);
     }
 
@@ -283,8 +384,22 @@ public abstract class AnalyticalPlacer extends AnalyticalAndGradientPlacer {
     	this.linearCost = this.costCalculator.calculate(this.linearX, this.linearY);
         this.legalCost = this.costCalculator.calculate(this.legalX, this.legalY);
     	
+    	this.latestCost = this.legalCost;
+
     	if(this.isTimingDriven()){
     		this.calculateTimingCost();
+    		this.latestCost *= this.timingCost;
+    	}
+
+    	// The final legalization starts from the best solution
+    	if(this.latestCost < this.minCost){
+    		this.minCost = this.latestCost;
+    		for(int i = 0; i < this.linearX.length; i++){
+    			this.bestLinearX[i] = this.linearX[i];
+    			this.bestLinearY[i] = this.linearY[i];
+    			this.bestLegalX[i] = this.legalX[i];
+    			this.bestLegalY[i] = this.legalY[i];
+    		}
     	}
 
     	this.stopTimer(T_UPDATE_CIRCUIT);
@@ -2,8 +2,10 @@ package place.placers.analytical;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 import place.mathtools.CGSolver;
+import place.mathtools.CGSolver.Preconditioner;
 import place.mathtools.Csr;
 
 class DimensionSolverAnalytical {
@@ -14,16 +16,27 @@ class DimensionSolverAnalytical {
 
     private final double pseudoWeight;
     private final double epsilon;
+    private final Preconditioner preconditioner;
+    private final ForkJoinPool pool;
 
     private boolean[] fixed;
     private Map<Integer,Integer> forwardIndexMap;
     private Map<Integer,Integer> backwardIndexMap;
 
-    DimensionSolverAnalytical(double[] coordinates, double pseudoWeight, double epsilon, boolean[] fixed) {
+    DimensionSolverAnalytical(
+            double[] coordinates,
+            double pseudoWeight,
+            double epsilon,
+            Preconditioner preconditioner,
+            ForkJoinPool pool,
+            boolean[] fixed) {
+
         this.coordinates = coordinates;
 
         this.pseudoWeight = pseudoWeight;
         this.epsilon = epsilon;
+        this.preconditioner = preconditioner;
+        this.pool = pool;
 
         this.fixed = fixed;
 
@@ -87,8 +100,15 @@ class DimensionSolverAnalytical {
 
     void solve() {
         this.matrix.prepareArrays();
-        CGSolver solver = new CGSolver(this.matrix, this.vector);
-        double[] solution = solver.solve(this.epsilon);
+        CGSolver solver = new CGSolver(this.matrix, this.vector, this.preconditioner, this.pool);
+
+        // Start from the current coordinates, which are usually close to the solution
+        double[] initialSolution = new double[this.vector.length];
+        for(int index:this.backwardIndexMap.keySet()){
+        	initialSolution[index] = this.coordinates[this.backwardIndexMap.get(index)];
+        }
+
+        double[] solution = solver.solve(this.epsilon, initialSolution);
 
         for(int index:this.backwardIndexMap.keySet()){
         	this.coordinates[this.backwardIndexMap.get(index)] = solution[index];
@@ -1,13 +1,16 @@
 package place.placers.analytical;
 
-import java.util.Arrays;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import place.placers.Checkpoint;
 
 class DimensionSolverGradient {
 
     private final double[] coordinates;
 
-    private final double[] directions, totalPositiveNetSize, totalNegativeNetSize;
-    private final double[] numPositiveNets, numNegativeNets;
+    private final GradientForces forces;
     private final double halfMaxConnectionLength;
 
     private double stepSize;
@@ -21,7 +24,7 @@ class DimensionSolverGradient {
     private double pseudoWeight = 0;
     private boolean legalIsSet = false;
     private double[] legalCoordinates;
-    
+
     private final boolean[] fixed;
 
     DimensionSolverGradient(double[] coordinates, double maxConnectionLength, boolean[] fixed, double beta1, double beta2, double eps) {
@@ -37,26 +40,36 @@ class DimensionSolverGradient {
         this.beta2 = beta2;
         this.eps = eps;
 
-        this.directions = new double[numBlocks];
-        this.numPositiveNets = new double[numBlocks];
-        this.numNegativeNets = new double[numBlocks];
-        this.totalPositiveNetSize = new double[numBlocks];
-        this.totalNegativeNetSize = new double[numBlocks];
+        this.forces = this.newForces();
 
         this.fixed = fixed;
     }
 
+    /**
+     * Forces that can be used to process nets on another thread. They
+     * have to be added to the forces of this solver before solve().
+     */
+    GradientForces newForces() {
+        return new GradientForces(this.coordinates.length, this.halfMaxConnectionLength);
+    }
+    GradientForces getForces() {
+        return this.forces;
+    }
+
     void initializeIteration(double pseudoWeight, double learningRate) {
         this.pseudoWeight = pseudoWeight;
         this.stepSize = learningRate;
 
-        Arrays.fill(this.directions, 0.0);
-
-        Arrays.fill(this.numPositiveNets, 0);
-        Arrays.fill(this.numNegativeNets, 0);
+        this.forces.clear();
+    }
 
-        Arrays.fill(this.totalPositiveNetSize, 0.0);
-        Arrays.fill(this.totalNegativeNetSize, 0.0);
+    void writeState(DataOutputStream output) throws IOException {
+        Checkpoint.writeArray(output, this.momentum);
+        Checkpoint.writeArray(output, this.speeds);
+    }
+    void readState(DataInputStream input) throws IOException {
+        Checkpoint.readArray(input, this.momentum);
+        Checkpoint.readArray(input, this.speeds);
     }
 
     void setLegal(double[] legal) {
@@ -66,47 +79,28 @@ class DimensionSolverGradient {
 
 
     void processConnection(int firstIndex, int secondIndex, double coorDifference, double weight, boolean critical) {
-    	if(coorDifference > 0.0){
-    		this.addConnection(firstIndex, secondIndex, coorDifference, weight, critical);
-    	}else if(coorDifference < 0.0){
-    		this.addConnection(secondIndex, firstIndex, -coorDifference, weight, critical);
-    	}
-    }
-    private void addConnection(int minIndex, int maxIndex, double coorDifference, double weight, boolean critical) {
-    	double netSize;
-    	if(critical){
-            netSize = 2 * (5 * this.halfMaxConnectionLength) * coorDifference / ((5 * this.halfMaxConnectionLength) + coorDifference);
-    	}else{
-            netSize = 2 * this.halfMaxConnectionLength * coorDifference / (this.halfMaxConnectionLength + coorDifference);
-    	}
-
-        this.totalPositiveNetSize[minIndex] += weight * netSize;
-        this.numPositiveNets[minIndex] += weight;
-        this.directions[minIndex] += weight;
-
-        this.totalNegativeNetSize[maxIndex] += weight * netSize;
-        this.numNegativeNets[maxIndex] += weight;
-        this.directions[maxIndex] -= weight;
+        this.forces.processConnection(firstIndex, secondIndex, coorDifference, weight, critical);
     }
 
     void solve() {
-        int numBlocks = this.coordinates.length;
-
-        for(int i = 0; i < numBlocks; i++) {
+        this.solve(0, this.coordinates.length);
+    }
+    void solve(int start, int end) {
+        for(int i = start; i < end; i++) {
         	if(!this.fixed[i]){
         		this.doSolve(i);
         	}
         }
     }
     void doSolve(int i){
-    	double direction = this.directions[i];
+    	double direction = this.forces.directions[i];
     	double currentCoordinate = this.coordinates[i];
 
     	double gradient;
     	if(direction > 0) {
-    		gradient = this.totalPositiveNetSize[i] / this.numPositiveNets[i];
+    		gradient = this.forces.totalPositiveNetSize[i] / this.forces.numPositiveNets[i];
     	} else if(direction < 0) {
-    		gradient = - this.totalNegativeNetSize[i] / this.numNegativeNets[i];
+    		gradient = - this.forces.totalNegativeNetSize[i] / this.forces.numNegativeNets[i];
     	} else {
     		return;
     	}
@@ -0,0 +1,75 @@
+package place.placers.analytical;
+
+import java.util.Arrays;
+
+/**
+ * The net forces on every block in one dimension, accumulated by
+ * the connections of an iteration of the gradient placer. Nets can
+ * be processed by multiple threads, each with its own forces. The
+ * forces are then added together in a fixed order.
+ */
+class GradientForces {
+
+    final double[] directions, totalPositiveNetSize, totalNegativeNetSize;
+    final double[] numPositiveNets, numNegativeNets;
+
+    private final double halfMaxConnectionLength;
+
+    GradientForces(int numBlocks, double halfMaxConnectionLength) {
+        this.halfMaxConnectionLength = halfMaxConnectionLength;
+
+        this.directions = new double[numBlocks];
+        this.numPositiveNets = new double[numBlocks];
+        this.numNegativeNets = new double[numBlocks];
+        this.totalPositiveNetSize = new double[numBlocks];
+        this.totalNegativeNetSize = new double[numBlocks];
+    }
+
+    void clear() {
+        Arrays.fill(this.directions, 0.0);
+
+        Arrays.fill(this.numPositiveNets, 0);
+        Arrays.fill(this.numNegativeNets, 0);
+
+        Arrays.fill(this.totalPositiveNetSize, 0.0);
+        Arrays.fill(this.totalNegativeNetSize, 0.0);
+    }
+
+    /**
+     * Add the forces of other to these forces, for the blocks in [start, end).
+     */
+    void add(GradientForces other, int start, int end) {
+        for(int i = start; i < end; i++) {
+            this.directions[i] += other.directions[i];
+            this.numPositiveNets[i] += other.numPositiveNets[i];
+            this.numNegativeNets[i] += other.numNegativeNets[i];
+            this.totalPositiveNetSize[i] += other.totalPositiveNetSize[i];
+            this.totalNegativeNetSize[i] += other.totalNegativeNetSize[i];
+        }
+    }
+
+
+    void processConnection(int firstIndex, int secondIndex, double coorDifference, double weight, boolean critical) {
+    	if(coorDifference > 0.0){
+    		this.addConnection(firstIndex, secondIndex, coorDifference, weight, critical);
+    	}else if(coorDifference < 0.0){
+    		this.addConnection(secondIndex, firstIndex, -coorDifference, weight, critical);
+    	}
+    }
+    private void addConnection(int minIndex, int maxIndex, double coorDifference, double weight, boolean critical) {
+    	double netSize;
+    	if(critical){
+            netSize = 2 * (5 * this.halfMaxConnectionLength) * coorDifference / ((5 * this.halfMaxConnectionLength) + coorDifference);
+    	}else{
+            netSize = 2 * this.halfMaxConnectionLength * coorDifference / (this.halfMaxConnectionLength + coorDifference);
+    	}
+
+        this.totalPositiveNetSize[minIndex] += weight * netSize;
+        this.numPositiveNets[minIndex] += weight;
+        this.directions[minIndex] += weight;
+
+        this.totalNegativeNetSize[maxIndex] += weight * netSize;
+        this.numNegativeNets[maxIndex] += weight;
+        this.directions[maxIndex] -= weight;
+    }
+}
@@ -103,6 +103,12 @@ class GradientLegalizer extends Legalizer {
     	}
     }
 
+    @Override
+    boolean supportsCheckpoints(){
+    	//The blocks and clusters are kept between the iterations
+    	return false;
+    }
+
     protected void legalizeBlockType(int blocksStart, int blocksEnd) {
     	double stepSize = this.getSettingValue("step_size");
     	
@@ -527,33 +533,83 @@ class GradientLegalizer extends Legalizer {
     class MassMap {
     	private final int gridWidth, gridHeight;
         private final double[][] massMap;
+
+        // The map is divided in tiles of 2^TILE_SHIFT x 2^TILE_SHIFT cells.
+        // A tile is dirty if a block has been added to it since the last
+        // reset, all the cells of the other tiles are 0. reset() and
+        // overlap() only visit the dirty tiles, so their cost scales with
+        // the area that is covered by the blocks instead of the grid area.
+        private static final int TILE_SHIFT = 3;
+        private final int numTileRows;
+        private final boolean[] dirtyTiles;
+        private final int[] dirtyTileList;
+        private int numDirtyTiles;
         
         public MassMap(int width, int height){
         	this.gridWidth = (width + 2) * 2;
         	this.gridHeight = (height + 2) * 2;
 
         	this.massMap = new double[this.gridWidth][this.gridHeight];
-        	
-        	this.reset();
+
+        	int numTileColumns = ((this.gridWidth - 1) >> TILE_SHIFT) + 1;
+        	this.numTileRows = ((this.gridHeight - 1) >> TILE_SHIFT) + 1;
+        	this.dirtyTiles = new boolean[numTileColumns * this.numTileRows];
+        	this.dirtyTileList = new int[numTileColumns * this.numTileRows];
+        	this.numDirtyTiles = 0;
         }
         public void reset(){
-        	for(int x = 0; x < this.gridWidth; x++){
-        		for(int y = 0; y < this.gridHeight; y++){
-        			this.massMap[x][y] = 0.0;
+        	for(int i = 0; i < this.numDirtyTiles; i++){
+        		int tile = this.dirtyTileList[i];
+        		int tileColumn = tile / this.numTileRows;
+        		int tileRow = tile % this.numTileRows;
+
+        		int xEnd = Math.min(this.gridWidth, (tileColumn + 1) << TILE_SHIFT);
+        		int yEnd = Math.min(this.gridHeight, (tileRow + 1) << TILE_SHIFT);
+        		for(int x = tileColumn << TILE_SHIFT; x < xEnd; x++){
+        			for(int y = tileRow << TILE_SHIFT; y < yEnd; y++){
+        				this.massMap[x][y] = 0.0;
+        			}
         		}
+
+        		this.dirtyTiles[tile] = false;
         	}
+        	this.numDirtyTiles = 0;
         }
         public double overlap(){
+        	// The cells are visited in the same order as a scan of the full
+        	// grid, so the sum is the same
         	double overlap = 0.0;
         	for(int i = 0; i < this.gridWidth; i++){
-        		for(int j = 0; j < this.gridHeight; j++){
-        			if(this.massMap[i][j] > 0.25){
-        				overlap += this.massMap[i][j] - 0.25;
+        		int tile = (i >> TILE_SHIFT) * this.numTileRows;
+        		for(int tileRow = 0; tileRow < this.numTileRows; tileRow++, tile++){
+        			if(this.dirtyTiles[tile]){
+        				int jEnd = Math.min(this.gridHeight, (tileRow + 1) << TILE_SHIFT);
+        				for(int j = tileRow << TILE_SHIFT; j < jEnd; j++){
+        					if(this.massMap[i][j] > 0.25){
+        						overlap += this.massMap[i][j] - 0.25;
+        					}
+        				}
         			}
         		}
         	}
         	return overlap;
         }
+        private void markDirty(Block block){
+        	int minTileColumn = (block.ceilx - 1) >> TILE_SHIFT;
+        	int maxTileColumn = (block.ceilx + 1) >> TILE_SHIFT;
+        	int minTileRow = (block.ceily - 1) >> TILE_SHIFT;
+        	int maxTileRow = (block.ceily + 2 * block.height - 1) >> TILE_SHIFT;
+
+        	for(int tileColumn = minTileColumn; tileColumn <= maxTileColumn; tileColumn++){
+        		for(int tileRow = minTileRow; tileRow <= maxTileRow; tileRow++){
+        			int tile = tileColumn * this.numTileRows + tileRow;
+        			if(!this.dirtyTiles[tile]){
+        				this.dirtyTiles[tile] = true;
+        				this.dirtyTileList[this.numDirtyTiles++] = tile;
+        			}
+        		}
+        	}
+        }
         public void printToFile(String name, int iteration){
         	if(doVisual){
         		if(iteration == 1){
@@ -643,6 +699,8 @@ class GradientLegalizer extends Legalizer {
     		}
         }
         public void add(Block block){
+        	this.markDirty(block);
+
     		int x = block.ceilx;
     		int y = block.ceily;
 
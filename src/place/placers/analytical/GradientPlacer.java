@@ -8,12 +8,16 @@ import place.interfaces.Logger;
 import place.interfaces.Options;
 import place.visual.PlacementVisualizer;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 public abstract class GradientPlacer extends AnalyticalAndGradientPlacer {
 
@@ -45,7 +49,9 @@ public abstract class GradientPlacer extends AnalyticalAndGradientPlacer {
         O_SPREAD_BLOCK_ITERATIONS = "spread block iterations",
         		
         O_STEP_SIZE_START = "step size start",
-        O_STEP_SIZE_STOP = "step size stop";
+        O_STEP_SIZE_STOP = "step size stop",
+
+        O_SOLVER_THREADS = "solver threads";
 
     public static void initOptions(Options options) {
         AnalyticalAndGradientPlacer.initOptions(options);
@@ -129,6 +135,11 @@ public abstract class GradientPlacer extends AnalyticalAndGradientPlacer {
                 O_STEP_SIZE_STOP,
                 "final step size in gradient cluster legalizer",
                 new Double(0.05));
+
+        options.add(
+                O_SOLVER_THREADS,
+                "number of threads to process the nets and take the gradient steps",
+                new Integer(1));
     }
 
     protected double anchorWeight;
@@ -138,6 +149,8 @@ public abstract class GradientPlacer extends AnalyticalAndGradientPlacer {
     protected double learningRate, learningRateMultiplier;
     private final double beta1, beta2, eps;
 
+    private final ForkJoinPool solverPool;
+
     protected final int numIterations;
     protected int effortLevel;
     protected final int effortLevelStart, effortLevelStop;
@@ -203,6 +216,9 @@ public abstract class GradientPlacer extends AnalyticalAndGradientPlacer {
         }
 
         this.criticalConnections = new ArrayList<>();
+
+        int solverThreads = this.options.getInteger(O_SOLVER_THREADS);
+        this.solverPool = solverThreads > 1 ? new ForkJoinPool(solverThreads) : null;
     }
 
     protected abstract void initializeIteration(int iteration);
@@ -214,63 +230,12 @@ public abstract class GradientPlacer extends AnalyticalAndGradientPlacer {
         
         this.startTimer(T_INITIALIZE_DATA);
 
-        if(this.circuit.ratioUsedCLB() > 0.8){
-        	this.legalizer = new HeapLegalizer(
-        			this.circuit,
-        			this.blockTypes,
-        			this.blockTypeIndexStarts,
-        			this.numIterations,
-        			this.linearX,
-        			this.linearY,
-        			this.legalX,
-        			this.legalY,
-        			this.heights,
-        			this.leafNode,
-        			this.visualizer,
-        			this.nets,
-        			this.netBlocks,
-        			this.logger);
-        	this.legalizer.addSetting("anneal_quality", 0.1,  0.001);
+        if(usesGradientLegalizer(this.circuit)){
+        	this.legalizer = this.createGradientLegalizer();
         }else{
-	        double widthFactor = Math.pow((1.0 * this.circuit.getWidth()) / 100.0, 1.3);
-	        this.logger.println("------------------");
-	        this.logger.println("Circuit width: " + this.circuit.getWidth());
-	        this.logger.println("Width factor: " + String.format("%.2f", widthFactor));
-	        this.logger.println("------------------\n");
-	        
-	        this.legalizer = new GradientLegalizer(
-	                this.circuit,
-	                this.blockTypes,
-	                this.blockTypeIndexStarts,
-	                this.numIterations,
-	                this.linearX,
-	                this.linearY,
-	                this.legalX,
-	                this.legalY,
-	                this.heights,
-	                this.leafNode,
-	                this.visualizer,
-	                this.nets,
-	                this.netBlocks,
-	                this.logger);
-	        this.legalizer.addSetting(
-	        		"anneal_quality", 
-	        		0.1,
-	        		0.001);
-	        this.legalizer.addSetting(
-	        		"step_size", 
-	        		widthFactor * this.options.getDouble(O_STEP_SIZE_START),  
-	        		widthFactor * this.options.getDouble(O_STEP_SIZE_STOP));
-	        this.legalizer.addSetting(
-	        		"interpolation", 
-	        		this.options.getDouble(O_INTERPOLATION_FACTOR));
-	        this.legalizer.addSetting(
-	        		"cluster_scaling",
-	        		this.options.getDouble(O_CLUSTER_SCALING_FACTOR));
-	        this.legalizer.addSetting(
-	        		"block_spreading",
-	        		this.options.getInteger(O_SPREAD_BLOCK_ITERATIONS));
+        	this.legalizer = this.createHeapLegalizer();
         }
+        this.legalizer.setThreadPool(this.legalizerPool);
 
 
         // Juggling with objects is too slow (I profiled this,
@@ -326,13 +291,87 @@ public abstract class GradientPlacer extends AnalyticalAndGradientPlacer {
                 this.fixed,
                 this.beta1, 
                 this.beta2, 
-                this.eps);
+                this.eps,
+                this.solverPool);
 
         this.costCalculator = new CostCalculator(this.nets);
 
         this.stopTimer(T_INITIALIZE_DATA);
     }
 
+    /**
+     * The GradientLegalizer spreads the blocks cluster by cluster, so it
+     * needs the hierarchy information. It is only used for sparse
+     * designs, dense designs use the HeapLegalizer.
+     */
+    static boolean usesGradientLegalizer(Circuit circuit) {
+        return circuit.ratioUsedCLB() <= 0.8 && hasLeafNodes(circuit);
+    }
+
+    Legalizer createHeapLegalizer() {
+        Legalizer legalizer = new HeapLegalizer(
+                this.circuit,
+                this.blockTypes,
+                this.blockTypeIndexStarts,
+                this.numIterations,
+                this.linearX,
+                this.linearY,
+                this.legalX,
+                this.legalY,
+                this.heights,
+                this.leafNode,
+                this.visualizer,
+                this.nets,
+                this.netBlocks,
+                this.logger);
+        legalizer.addSetting("anneal_quality", 0.1,  0.001);
+
+        return legalizer;
+    }
+
+    Legalizer createGradientLegalizer() {
+        double widthFactor = Math.pow((1.0 * this.circuit.getWidth()) / 100.0, 1.3);
+        this.logger.println("------------------");
+        this.logger.println("Circuit width: " + this.circuit.getWidth());
+        this.logger.println("Width factor: " + String.format("%.2f", widthFactor));
+        this.logger.println("------------------\n");
+
+        Legalizer legalizer = new GradientLegalizer(
+                this.circuit,
+                this.blockTypes,
+                this.blockTypeIndexStarts,
+                this.numIterations,
+                this.linearX,
+                this.linearY,
+                this.legalX,
+                this.legalY,
+                this.heights,
+                this.leafNode,
+                this.visualizer,
+                this.nets,
+                this.netBlocks,
+                this.logger);
+        legalizer.addSetting(
+                "anneal_quality",
+                0.1,
+                0.001);
+        legalizer.addSetting(
+                "step_size",
+                widthFactor * this.options.getDouble(O_STEP_SIZE_START),
+                widthFactor * this.options.getDouble(O_STEP_SIZE_STOP));
+        legalizer.addSetting(
+                "interpolation",
+                this.options.getDouble(O_INTERPOLATION_FACTOR));
+        legalizer.addSetting(
+                "cluster_scaling",
+                this.options.getDouble(O_CLUSTER_SCALING_FACTOR));
+        legalizer.addSetting(
+                "block_spreading",
+                this.options.getInteger(O_SPREAD_BLOCK_ITERATIONS));
+
+        return legalizer;
+    }
+
     @Override
     protected void solveLinear(int iteration) {
     	Arrays.fill(this.fixed, false);
@@ -421,17 +460,12 @@ public abstract class GradientPlacer extends AnalyticalAndGradientPlacer {
 
         // Solve and save result
         this.startTimer(T_SOLVE_LINEAR);
-        this.solver.solve();
+        this.solver.solve(this.dimensionExecutor);
         this.stopTimer(T_SOLVE_LINEAR);
     }
 
     protected void processNets(boolean[] processNets) {
-    	int numNets = this.netEnds.length;
-    	for(int netIndex = 0; netIndex < numNets; netIndex++) {
-    		if(processNets[netIndex]){
-    			this.solver.processNet(this.netStarts[netIndex], this.netEnds[netIndex]);
-    		}
-    	}
+    	this.solver.processNets(this.netStarts, this.netEnds, processNets);
     }
 
     @Override
@@ -557,6 +591,38 @@ public abstract class GradientPlacer extends AnalyticalAndGradientPlacer {
         this.printStats(stats.toArray(new String[0]));
     }
 
+    /**
+     * The legalizer must be able to store its state as well.
+     */
+    @Override
+    protected boolean supportsCheckpoints() {
+        return this.legalizer.supportsCheckpoints();
+    }
+
+    @Override
+    protected void writeState(DataOutputStream output) throws IOException {
+        super.writeState(output);
+
+        output.writeDouble(this.anchorWeight);
+        output.writeDouble(this.learningRate);
+        output.writeInt(this.effortLevel);
+
+        this.solver.writeState(output);
+        this.legalizer.writeState(output);
+    }
+
+    @Override
+    protected void readState(DataInputStream input) throws IOException {
+        super.readState(input);
+
+        this.anchorWeight = input.readDouble();
+        this.learningRate = input.readDouble();
+        this.effortLevel = input.readInt();
+
+        this.solver.readState(input);
+        this.legalizer.readState(input);
+    }
+
     @Override
     protected int numIterations() {
     	return this.numIterations;
@@ -6,6 +6,9 @@ import place.interfaces.Logger;
 import place.interfaces.Options;
 import place.visual.PlacementVisualizer;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -150,6 +153,31 @@ public class GradientPlacerTD extends GradientPlacer {
         }
     }
 
+    @Override
+    protected void writeState(DataOutputStream output) throws IOException {
+        super.writeState(output);
+
+        for(TimingNet net : this.timingNets) {
+            for(TimingNetBlock sink : net.sinks) {
+                output.writeDouble(sink.criticality);
+            }
+        }
+    }
+
+    @Override
+    protected void readState(DataInputStream input) throws IOException {
+        super.readState(input);
+
+        for(TimingNet net : this.timingNets) {
+            for(TimingNetBlock sink : net.sinks) {
+                sink.criticality = input.readDouble();
+            }
+        }
+
+        // The timing graph is updated with the legal placement at the end of every iteration
+        this.calculateTimingCost();
+    }
+
     @Override
     protected void calculateTimingCost() {
         this.timingCost = this.criticalityCalculator.calculate(this.legalX, this.legalY);
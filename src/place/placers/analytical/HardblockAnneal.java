@@ -1,11 +1,15 @@
 package place.placers.analytical;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.Random;
 import java.util.Set;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 
+import place.placers.Checkpoint;
 import place.placers.analytical.HardblockConnectionLegalizer.Block;
 import place.placers.analytical.HardblockConnectionLegalizer.Column;
 import place.placers.analytical.HardblockConnectionLegalizer.Crit;
@@ -28,11 +32,19 @@ public class HardblockAnneal {
 	private double cost, minimumCost;
 	private List<Double> costHistory;
 	
-	private final Random random;
+	private Random random;
 	
 	HardblockAnneal(int seed){
 		this.random = new Random(seed);
 	}
+
+	void writeState(DataOutputStream output) throws IOException{
+		Checkpoint.writeRandom(output, this.random);
+	}
+	void readState(DataInputStream input) throws IOException{
+		this.random = Checkpoint.readRandom(input);
+	}
+
 	public void doAnneal(Column[] columns, double quality){
 		int numBlocks = 0;
 		int numSites = 0;
@@ -1,16 +1,23 @@
 package place.placers.analytical;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import place.circuit.Circuit;
 import place.circuit.architecture.BlockType;
 import place.circuit.exceptions.OffsetException;
 import place.interfaces.Logger;
+import place.placers.Checkpoint;
 import place.placers.analytical.AnalyticalAndGradientPlacer.CritConn;
 import place.placers.analytical.AnalyticalAndGradientPlacer.NetBlock;
 
@@ -27,6 +34,10 @@ public class HardblockConnectionLegalizer{
 
     private final HardblockColumnSwap columnSwap;
     private final HardblockAnneal hardblockAnneal;
+
+    //Column groups are annealed concurrently if a pool is set, each with its own random stream
+    private ForkJoinPool pool;
+    private Random groupRandom;
     
     private final Map<BlockType, Block[]> blocksPerBlocktype;
     private final Map<BlockType, Net[]> netsPerBlocktype;
@@ -113,6 +124,20 @@ public class HardblockConnectionLegalizer{
 
 		this.columnSwap = new HardblockColumnSwap();
 		this.hardblockAnneal = new HardblockAnneal(100);
+		this.groupRandom = new Random(100);
+	}
+	void setThreadPool(ForkJoinPool pool){
+		this.pool = pool;
+	}
+
+	//The random streams are the only state that is kept between two iterations
+	void writeState(DataOutputStream output) throws IOException{
+		this.hardblockAnneal.writeState(output);
+		Checkpoint.writeRandom(output, this.groupRandom);
+	}
+	void readState(DataInputStream input) throws IOException{
+		this.hardblockAnneal.readState(input);
+		this.groupRandom = Checkpoint.readRandom(input);
 	}
 	private void makeNets(List<AnalyticalAndGradientPlacer.Net> placerNets, int maxFanout){
 		int l = 0;
@@ -263,16 +288,21 @@ public class HardblockConnectionLegalizer{
 		//Column swap
 		this.columnSwap.doSwap(columns);
 
-		//Column legalize
-		for(Column column:columns){
-			column.legalize();
-		}
+		if(this.pool == null){
+			//Column legalize
+			for(Column column:columns){
+				column.legalize();
+			}
 
-		//Column anneal
-		for(Column column:columns){
-			if(column.usedPos() > 0){
-				this.hardblockAnneal.doAnneal(column, quality);
+			//Column anneal
+			for(Column column:columns){
+				if(column.usedPos() > 0){
+					this.hardblockAnneal.doAnneal(column, quality);
+				}
 			}
+		}else{
+			List<ColumnGroup> groups = this.getColumnGroups(columns, legalizeNets);
+			this.pool.invoke(new ColumnGroupAction(groups, 0, groups.size(), quality));
 		}
 
 		//Finish
@@ -333,6 +363,79 @@ public class HardblockConnectionLegalizer{
 		this.updateLegal(legalizeBlocks);
 		this.cleanData();
 	}
+	/**
+	 * Split the columns in groups that don't share nets or critical
+	 * connections. The blocks of a group only change the cost of their
+	 * own nets, so the groups can be legalized and annealed concurrently.
+	 * The groups are ordered on their first column and get their random
+	 * seed in that order, so the result doesn't depend on the threads.
+	 */
+	private List<ColumnGroup> getColumnGroups(Column[] columns, Net[] legalizeNets){
+		int numColumns = columns.length;
+
+		Map<Block, Integer> blockColumns = new HashMap<>();
+		for(Column column:columns){
+			for(Block block:column.blocks){
+				blockColumns.put(block, column.index);
+			}
+		}
+
+		int[] parent = new int[numColumns];
+		for(int c = 0; c < numColumns; c++){
+			parent[c] = c;
+		}
+		for(Net net:legalizeNets){
+			int first = -1;
+			for(Block block:net.blocks){
+				Integer column = blockColumns.get(block);
+				if(column != null){
+					if(first == -1){
+						first = column;
+					}else{
+						union(parent, first, column);
+					}
+				}
+			}
+		}
+		for(Crit crit:this.crits){
+			Integer sourceColumn = blockColumns.get(crit.sourceBlock);
+			Integer sinkColumn = blockColumns.get(crit.sinkBlock);
+			if(sourceColumn != null && sinkColumn != null){
+				union(parent, sourceColumn, sinkColumn);
+			}
+		}
+
+		List<ColumnGroup> groups = new ArrayList<>();
+		Map<Integer, ColumnGroup> groupPerRoot = new HashMap<>();
+		for(int c = 0; c < numColumns; c++){
+			int root = find(parent, c);
+			ColumnGroup group = groupPerRoot.get(root);
+			if(group == null){
+				group = new ColumnGroup(this.groupRandom.nextInt());
+				groupPerRoot.put(root, group);
+				groups.add(group);
+			}
+			group.columns.add(columns[c]);
+		}
+		return groups;
+	}
+	private static int find(int[] parent, int c){
+		while(parent[c] != c){
+			parent[c] = parent[parent[c]];
+			c = parent[c];
+		}
+		return c;
+	}
+	private static void union(int[] parent, int c1, int c2){
+		int root1 = find(parent, c1);
+		int root2 = find(parent, c2);
+		if(root1 < root2){
+			parent[root2] = root1;
+		}else if(root2 < root1){
+			parent[root1] = root2;
+		}
+	}
+
 	private void initializeLegalization(Net[] legalizeNets){
         for(Block block:this.blocks){
         	block.legalX = (int) Math.round(this.legalX[block.index]);
@@ -359,6 +462,58 @@ public class HardblockConnectionLegalizer{
     	}
     }
 	
+    /////////////////////////////////////////////////////////////////////////////////
+    ////////////////////////////////// COLUMN GROUP /////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////////
+	private class ColumnGroup {
+		final List<Column> columns;
+		final int seed;
+
+		ColumnGroup(int seed){
+			this.columns = new ArrayList<>();
+			this.seed = seed;
+		}
+
+		void legalize(double quality){
+			for(Column column:this.columns){
+				column.legalize();
+			}
+
+			HardblockAnneal anneal = new HardblockAnneal(this.seed);
+			for(Column column:this.columns){
+				if(column.usedPos() > 0){
+					anneal.doAnneal(column, quality);
+				}
+			}
+		}
+	}
+	private class ColumnGroupAction extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final List<ColumnGroup> groups;
+		private final int start, end;
+		private final double quality;
+
+		ColumnGroupAction(List<ColumnGroup> groups, int start, int end, double quality){
+			this.groups = groups;
+			this.start = start;
+			this.end = end;
+			this.quality = quality;
+		}
+
+		@Override
+		protected void compute(){
+			if(this.end - this.start == 1){
+				this.groups.get(this.start).legalize(this.quality);
+			}else if(this.end > this.start){
+				int middle = (this.start + this.end) >>> 1;
+				invokeAll(
+						new ColumnGroupAction(this.groups, this.start, middle, this.quality),
+						new ColumnGroupAction(this.groups, middle, this.end, this.quality));
+			}
+		}
+	}
+
     /////////////////////////////////////////////////////////////////////////////////
     ////////////////////////////////////// BLOCK ////////////////////////////////////
     /////////////////////////////////////////////////////////////////////////////////
@@ -1,10 +1,12 @@
 package place.placers.analytical;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RecursiveAction;
 
 import place.circuit.Circuit;
 import place.circuit.architecture.BlockCategory;
@@ -21,12 +23,24 @@ import place.visual.PlacementVisualizer;
  * This is approximately the legalizer as proposed in
  * Heterogeneous Analytical Placement (HeAP).
  *
+ * The areas are grown and merged on one thread. The resulting areas
+ * are disjoint, so they are legalized concurrently if a thread pool
+ * is set. An area that can't be split is grown further on the placer
+ * thread, in the order of the areas, so the result doesn't depend on
+ * the number of threads.
  */
 class HeapLegalizer extends Legalizer {
 
     // These are temporary data structures
     protected GrowingArea[][] areaPointers;
-    protected List<List<List<LegalizerBlock>>> blockMatrix;
+
+    // The blocks that are closest to each position, bucketed per
+    // position: the blocks at (column, row) are in cellBlocks, from
+    // cellStart[cell] to cellStart[cell + 1], with
+    // cell = column * (height + 2) + row
+    private final int[] cellStart;
+    private LegalizerBlock[] cellBlocks = new LegalizerBlock[0];
+    private int[] blockCells = new int[0];
 
     HeapLegalizer(
             Circuit circuit,
@@ -46,16 +60,7 @@ class HeapLegalizer extends Legalizer {
 
         super(circuit, blockTypes, blockTypeIndexStarts, numIterations,linearX, linearY, legalX, legalY, heights, leafNode, nets, visualizer, netBlocks, logger);
 
-
-        // Initialize the matrix to contain a linked list at each coordinate
-        this.blockMatrix = new ArrayList<List<List<LegalizerBlock>>>(this.width+2);
-        for(int column = 0; column < this.width + 2; column++) {
-            List<List<LegalizerBlock>> blockColumn = new ArrayList<>(this.height+2);
-            for(int row = 0; row < this.height + 2; row++) {
-                blockColumn.add(new ArrayList<LegalizerBlock>());
-            }
-            this.blockMatrix.add(blockColumn);
-        }
+        this.cellStart = new int[(this.width + 2) * (this.height + 2) + 1];
     }
 
 
@@ -69,23 +74,47 @@ class HeapLegalizer extends Legalizer {
         this.areaPointers = new GrowingArea[this.width+2][this.height+2];
         List<GrowingArea> areas = this.growAreas();
 
-        // Legalize all unabsorbed areas
+        List<GrowingArea> unabsorbedAreas = new ArrayList<>();
         for(GrowingArea area : areas) {
             if(!area.isAbsorbed()) {
+                unabsorbedAreas.add(area);
+            }
+        }
+
+        // Legalize all unabsorbed areas. The areas are disjoint,
+        // so they don't touch each others blocks.
+        int numAreas = unabsorbedAreas.size();
+        boolean[] success = new boolean[numAreas];
+        if(this.pool == null || numAreas < 2) {
+            for(int i = 0; i < numAreas; i++) {
+                success[i] = this.splitArea(unabsorbedAreas.get(i));
+            }
+        } else {
+            this.pool.invoke(new SplitAction(unabsorbedAreas, success, 0, numAreas));
+        }
+
+        // Growing an area can absorb other areas, this is done sequentially
+        for(int i = 0; i < numAreas; i++) {
+            GrowingArea area = unabsorbedAreas.get(i);
+            if(!success[i] && !area.isAbsorbed()) {
                 this.legalizeArea(area);
             }
         }
     }
 
     private void initializeBlockMatrix(int blocksStart, int blocksEnd) {
-        // Clear the block matrix
-        for(int column = 0; column < this.width + 2; column++) {
-            for(int row = 0; row < this.height + 2; row++) {
-                this.blockMatrix.get(column).get(row).clear();
-            }
+        int numEntries = 0;
+        for(int index = blocksStart; index < blocksEnd; index++) {
+            numEntries += this.heights[index];
+        }
+        if(this.cellBlocks.length < numEntries) {
+            this.cellBlocks = new LegalizerBlock[numEntries];
+            this.blockCells = new int[numEntries];
         }
 
-        // Loop through all the blocks of the correct block type and add them to their closest position
+        // Find the closest position of all the blocks of the correct block type
+        Arrays.fill(this.cellStart, 0);
+        int entry = 0;
         for(int index = blocksStart; index < blocksEnd; index++) {
             double x = this.linearX[index],
                    y = this.linearY[index];
@@ -93,15 +122,37 @@ class HeapLegalizer extends Legalizer {
 
             for(int offset = (1 - height) / 2; offset <= height / 2; offset++) {
                 AbstractSite site = this.getClosestSite(x, y + offset);
-                int column = site.getColumn();
-                int row = site.getRow();
+                int cell = this.cell(site.getColumn(), site.getRow());
+
+                this.blockCells[entry] = cell;
+                this.cellStart[cell + 1]++;
+                entry++;
+            }
+        }
 
-                LegalizerBlock newBlock = new LegalizerBlock(index, offset, height);
-                this.blockMatrix.get(column).get(row).add(newBlock);
+        // Bucket the blocks per position, in the order in which they were found
+        int numCells = this.cellStart.length - 1;
+        for(int cell = 0; cell < numCells; cell++) {
+            this.cellStart[cell + 1] += this.cellStart[cell];
+        }
+
+        int[] position = Arrays.copyOf(this.cellStart, numCells);
+        entry = 0;
+        for(int index = blocksStart; index < blocksEnd; index++) {
+            int height = this.heights[index];
+
+            for(int offset = (1 - height) / 2; offset <= height / 2; offset++) {
+                int cell = this.blockCells[entry];
+                this.cellBlocks[position[cell]++] = new LegalizerBlock(index, offset, height);
+                entry++;
             }
         }
     }
 
+    private int cell(int column, int row) {
+        return column * (this.height + 2) + row;
+    }
+
 
     private AbstractSite getClosestSite(double x, double y) {
 
@@ -213,7 +264,8 @@ class HeapLegalizer extends Legalizer {
 
 
     private void tryNewArea(List<GrowingArea> areas, int column, int row) {
-        if(this.blockMatrix.get(column).get(row).size() >= 1
+        int cell = this.cell(column, row);
+        if(this.cellStart[cell + 1] > this.cellStart[cell]
                 && this.areaPointers[column][row] == null) {
             GrowingArea newArea = this.newArea(column, row);
             areas.add(newArea);
@@ -328,7 +380,10 @@ class HeapLegalizer extends Legalizer {
         if(site != null && site.getType().equals(this.blockType)) {
             area.incrementTiles();
 
-            for(LegalizerBlock block : this.blockMatrix.get(column).get(row)) {
+            int cell = this.cell(column, row);
+            for(int i = this.cellStart[cell]; i < this.cellStart[cell + 1]; i++) {
+                LegalizerBlock block = this.cellBlocks[i];
+
                 // Add this block to the area if it is the root of a macro
                 if(block.offset == 0) {
                     area.addBlock(block);
@@ -346,28 +401,60 @@ class HeapLegalizer extends Legalizer {
 
 
 
+    /**
+     * Grow an area that couldn't be split until it can be split.
+     */
     private void legalizeArea(GrowingArea area) {
-        boolean splitSuccess;
-        while(true) {
-            // Calculate the capacity of the area
-            int numTiles = 0;
-            int columnHeight = (area.top - area.bottom) / this.blockHeight + 1;
-            for(int column = area.left; column <= area.right; column += this.blockRepeat) {
-                if(this.circuit.getColumnType(column) == this.blockType) {
-                    numTiles += columnHeight;
-                }
+        do {
+            this.growAreaOneStep(area);
+        } while(!this.splitArea(area));
+    }
+
+    /**
+     * Legalize the blocks of an area without growing it. This only
+     * writes the legal positions of the blocks in the area.
+     */
+    private boolean splitArea(GrowingArea area) {
+        // Calculate the capacity of the area
+        int numTiles = 0;
+        int columnHeight = (area.top - area.bottom) / this.blockHeight + 1;
+        for(int column = area.left; column <= area.right; column += this.blockRepeat) {
+            if(this.circuit.getColumnType(column) == this.blockType) {
+                numTiles += columnHeight;
             }
+        }
 
-            TwoDimLinkedList blocks = area.getBlockIndexes();
-            SplittingArea splittingArea = new SplittingArea(area);
+        TwoDimLinkedList blocks = area.getBlockIndexes();
+        SplittingArea splittingArea = new SplittingArea(area);
 
-            splitSuccess = this.legalizeArea(splittingArea, numTiles, blocks);
+        return this.legalizeArea(splittingArea, numTiles, blocks);
+    }
 
-            if(splitSuccess) {
-                return;
-            }
+    private class SplitAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
 
-            this.growAreaOneStep(area);
+        private final List<GrowingArea> areas;
+        private final boolean[] success;
+        private final int start, end;
+
+        SplitAction(List<GrowingArea> areas, boolean[] success, int start, int end) {
+            this.areas = areas;
+            this.success = success;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if(this.end - this.start == 1) {
+                this.success[this.start] = splitArea(this.areas.get(this.start));
+
+            } else {
+                int middle = (this.start + this.end) >>> 1;
+                invokeAll(
+                        new SplitAction(this.areas, this.success, this.start, middle),
+                        new SplitAction(this.areas, this.success, middle, this.end));
+            }
         }
     }
 
@@ -1,9 +1,15 @@
 package place.placers.analytical;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import place.circuit.Circuit;
 import place.circuit.architecture.BlockCategory;
@@ -49,6 +55,9 @@ abstract class Legalizer {
     //Logger
     protected Logger logger;
 
+    //Threads that legalizers can use, null if the legalization is sequential
+    protected ForkJoinPool pool;
+
     //Legalization runtime for each blocktype
     private final Map<BlockType,Integer> legalizationRuntime;
 
@@ -145,6 +154,13 @@ abstract class Legalizer {
         }
     }
 
+    void setThreadPool(ForkJoinPool pool){
+    	this.pool = pool;
+    	if(this.hardblockLegalizer != null){
+    		this.hardblockLegalizer.setThreadPool(pool);
+    	}
+    }
+
     //Legalizer settings
     void addSetting(String parameter, double doubleValue){
     	this.legalizerSettings.put(parameter, new LegalizerSetting(doubleValue));
@@ -176,6 +192,45 @@ abstract class Legalizer {
     	return this.legalizerSettings.keySet();
     }
 
+    //Checkpoints
+    /**
+     * Legalizers that return true don't keep any state between two
+     * iterations, except for the settings and the random state of
+     * the hardblock legalizer.
+     */
+    boolean supportsCheckpoints(){
+    	return true;
+    }
+    void writeState(DataOutputStream output) throws IOException{
+    	List<String> parameters = new ArrayList<>(this.legalizerSettings.keySet());
+    	Collections.sort(parameters);
+
+    	output.writeInt(parameters.size());
+    	for(String parameter:parameters){
+    		output.writeUTF(parameter);
+    		output.writeDouble(this.legalizerSettings.get(parameter).getValue());
+    	}
+
+    	if(this.hardblockLegalizer != null){
+    		this.hardblockLegalizer.writeState(output);
+    	}
+    }
+    void readState(DataInputStream input) throws IOException{
+    	int numSettings = input.readInt();
+    	for(int i = 0; i < numSettings; i++){
+    		String parameter = input.readUTF();
+    		LegalizerSetting setting = this.legalizerSettings.get(parameter);
+    		if(setting == null){
+    			throw new IOException("Unknown legalizer setting in checkpoint: " + parameter);
+    		}
+    		setting.setValue(input.readDouble());
+    	}
+
+    	if(this.hardblockLegalizer != null){
+    		this.hardblockLegalizer.readState(input);
+    	}
+    }
+
     
     
     protected abstract void legalizeBlockType(int blocksStart, int blocksEnd);
@@ -47,6 +47,9 @@ public class LegalizerSetting {
     public double getValue(){
     	return this.value;
     }
+    public void setValue(double value){
+    	this.value = value;
+    }
     public boolean isInt(){
     	return this.isInt;
     }
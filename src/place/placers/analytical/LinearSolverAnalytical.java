@@ -1,5 +1,9 @@
 package place.placers.analytical;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+
+import place.mathtools.CGSolver.Preconditioner;
 import place.placers.analytical.AnalyticalAndGradientPlacer.CritConn;
 import place.placers.analytical.AnalyticalAndGradientPlacer.Net;
 import place.placers.analytical.AnalyticalAndGradientPlacer.NetBlock;
@@ -16,6 +20,8 @@ class LinearSolverAnalytical {
             double[] coordinatesY,
             double pseudoWeight,
             double epsilon,
+            Preconditioner preconditioner,
+            ForkJoinPool pool,
             boolean[] fixed) {
 
         this.coordinatesX = coordinatesX;
@@ -23,8 +29,8 @@ class LinearSolverAnalytical {
 
         this.fixed = fixed;
 
-        this.solverX = new DimensionSolverAnalytical(coordinatesX, pseudoWeight, epsilon, fixed);
-        this.solverY = new DimensionSolverAnalytical(coordinatesY, pseudoWeight, epsilon, fixed);
+        this.solverX = new DimensionSolverAnalytical(coordinatesX, pseudoWeight, epsilon, preconditioner, pool, fixed);
+        this.solverY = new DimensionSolverAnalytical(coordinatesY, pseudoWeight, epsilon, preconditioner, pool, fixed);
     }
 
 
@@ -170,8 +176,7 @@ class LinearSolverAnalytical {
         return this.fixed[blockIndex];
     }
 
-    void solve(){
-        this.solverX.solve();
-        this.solverY.solve();
+    void solve(ExecutorService executor){
+        AnalyticalAndGradientPlacer.solveDimensions(executor, this.solverX::solve, this.solverY::solve);
     }
 }
@@ -1,5 +1,12 @@
 package place.placers.analytical;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 class LinearSolverGradient {
 
     private double[] coordinatesX, coordinatesY;
@@ -8,6 +15,14 @@ class LinearSolverGradient {
 
     private DimensionSolverGradient solverX, solverY;
 
+    // Nets are processed in a fixed number of chunks. Every chunk
+    // except the first has its own forces, which are added to the
+    // forces of the solvers in the order of the chunks.
+    // A chunk contains at least MIN_CHUNK_SIZE nets or blocks.
+    private static final int MIN_CHUNK_SIZE = 1024;
+    private final ForkJoinPool pool;
+    private GradientForces[] chunkForcesX, chunkForcesY;
+
     LinearSolverGradient(
             double[] coordinatesX,
             double[] coordinatesY,
@@ -17,7 +32,8 @@ class LinearSolverGradient {
             boolean[] fixed,
             double beta1,
             double beta2,
-            double eps) {
+            double eps,
+            ForkJoinPool pool) {
 
         this.coordinatesX = coordinatesX;
         this.coordinatesY = coordinatesY;
@@ -27,6 +43,8 @@ class LinearSolverGradient {
 
         this.solverX = new DimensionSolverGradient(coordinatesX, maxConnectionLength, fixed, beta1, beta2, eps);
         this.solverY = new DimensionSolverGradient(coordinatesY, maxConnectionLength, fixed, beta1, beta2, eps);
+
+        this.pool = pool;
     }
 
     public void initializeIteration(double pseudoWeight, double learningRate) {
@@ -35,12 +53,79 @@ class LinearSolverGradient {
     }
 
 
+    /**
+     * The adam moments of both dimensions.
+     */
+    void writeState(DataOutputStream output) throws IOException {
+        this.solverX.writeState(output);
+        this.solverY.writeState(output);
+    }
+    void readState(DataInputStream input) throws IOException {
+        this.solverX.readState(input);
+        this.solverY.readState(input);
+    }
+
+
     void addPseudoConnections(double[] legalX, double[] legalY) {
         this.solverX.setLegal(legalX);
         this.solverY.setLegal(legalY);
     }
 
-    void processNet(int netStart, int netEnd) {
+    /**
+     * Process the nets for which processNets is true. If a pool is
+     * set, the nets are spread over its threads. The result only
+     * depends on the number of threads, not on the scheduling.
+     */
+    void processNets(int[] netStarts, int[] netEnds, boolean[] processNets) {
+        int numNets = netEnds.length;
+        int numChunks = this.pool == null ? 1 : Math.max(1, Math.min(this.pool.getParallelism(), numNets / MIN_CHUNK_SIZE));
+
+        if(numChunks == 1) {
+            this.processNets(netStarts, netEnds, processNets, 0, numNets, this.solverX.getForces(), this.solverY.getForces());
+            return;
+        }
+
+        if(this.chunkForcesX == null || this.chunkForcesX.length != numChunks) {
+            this.chunkForcesX = new GradientForces[numChunks];
+            this.chunkForcesY = new GradientForces[numChunks];
+            this.chunkForcesX[0] = this.solverX.getForces();
+            this.chunkForcesY[0] = this.solverY.getForces();
+            for(int chunk = 1; chunk < numChunks; chunk++) {
+                this.chunkForcesX[chunk] = this.solverX.newForces();
+                this.chunkForcesY[chunk] = this.solverY.newForces();
+            }
+        }
+
+        GradientForces[] forcesX = this.chunkForcesX, forcesY = this.chunkForcesY;
+        this.forChunks(numChunks, numNets, (chunk, start, end) -> {
+            if(chunk > 0) {
+                forcesX[chunk].clear();
+                forcesY[chunk].clear();
+            }
+            this.processNets(netStarts, netEnds, processNets, start, end, forcesX[chunk], forcesY[chunk]);
+        });
+
+        int numBlocks = this.coordinatesX.length;
+        this.forChunks(numChunks, numBlocks, (chunk, start, end) -> {
+            for(int i = 1; i < forcesX.length; i++) {
+                forcesX[0].add(forcesX[i], start, end);
+                forcesY[0].add(forcesY[i], start, end);
+            }
+        });
+    }
+    private void processNets(
+            int[] netStarts, int[] netEnds, boolean[] processNets,
+            int start, int end,
+            GradientForces forcesX, GradientForces forcesY) {
+
+        for(int netIndex = start; netIndex < end; netIndex++) {
+            if(processNets[netIndex]) {
+                this.processNet(netStarts[netIndex], netEnds[netIndex], forcesX, forcesY);
+            }
+        }
+    }
+
+    private void processNet(int netStart, int netEnd, GradientForces forcesX, GradientForces forcesY) {
         int numNetBlocks = netEnd - netStart;
         double weight = AnalyticalAndGradientPlacer.getWeight(numNetBlocks);
 
@@ -53,11 +138,11 @@ class LinearSolverGradient {
             
             coordinate1 = this.coordinatesY[blockIndex1] + this.netBlockOffsets[netStart];
             coordinate2 = this.coordinatesY[blockIndex2] + this.netBlockOffsets[netStart + 1];
-            this.solverY.processConnection(blockIndex1, blockIndex2, coordinate2 - coordinate1, weight, false);
+            forcesY.processConnection(blockIndex1, blockIndex2, coordinate2 - coordinate1, weight, false);
 
             coordinate1 = this.coordinatesX[blockIndex1];
             coordinate2 = this.coordinatesX[blockIndex2];
-            this.solverX.processConnection(blockIndex1, blockIndex2, coordinate2 - coordinate1, weight, false);
+            forcesX.processConnection(blockIndex1, blockIndex2, coordinate2 - coordinate1, weight, false);
 
             return;
         }
@@ -97,8 +182,8 @@ class LinearSolverGradient {
         }
 
         // Add connections between the min and max block
-        this.solverX.processConnection(minXIndex, maxXIndex, maxX - minX, weight, false);
-        this.solverY.processConnection(minYIndex, maxYIndex, maxY - minY, weight, false);
+        forcesX.processConnection(minXIndex, maxXIndex, maxX - minX, weight, false);
+        forcesY.processConnection(minYIndex, maxYIndex, maxY - minY, weight, false);
     }
 
     void processConnection(int blockIndex1, int blockIndex2, float offset, double weight, boolean critical) {
@@ -111,9 +196,19 @@ class LinearSolverGradient {
         this.solverY.processConnection(blockIndex1, blockIndex2, y2 - y1 + offset, weight, critical);
     }
 
-    void solve() {
-        this.solverX.solve();
-        this.solverY.solve();
+    void solve(ExecutorService executor) {
+        if(this.pool == null) {
+            AnalyticalAndGradientPlacer.solveDimensions(executor, this.solverX::solve, this.solverY::solve);
+
+        } else {
+            // The gradient steps of the blocks are independent
+            int numBlocks = this.coordinatesX.length;
+            int numChunks = Math.max(1, Math.min(this.pool.getParallelism(), numBlocks / MIN_CHUNK_SIZE));
+            this.forChunks(numChunks, numBlocks, (chunk, start, end) -> {
+                this.solverX.solve(start, end);
+                this.solverY.solve(start, end);
+            });
+        }
     }
     
     double[] getCoordinatesX(){
@@ -122,4 +217,52 @@ class LinearSolverGradient {
     double[] getCoordinatesY(){
     	return this.coordinatesY;
     }
-}
\ No newline at end of file
+
+
+    private interface ChunkTask {
+        void run(int chunk, int start, int end);
+    }
+
+    /**
+     * Split [0, size) in numChunks chunks with fixed boundaries and run them on the pool.
+     */
+    private void forChunks(int numChunks, int size, ChunkTask task) {
+        if(numChunks == 1) {
+            task.run(0, 0, size);
+        } else {
+            this.pool.invoke(new ChunkAction(0, numChunks, numChunks, size, task));
+        }
+    }
+
+    private static class ChunkAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int firstChunk, lastChunk, numChunks, size;
+        private final ChunkTask task;
+
+        ChunkAction(int firstChunk, int lastChunk, int numChunks, int size, ChunkTask task) {
+            this.firstChunk = firstChunk;
+            this.lastChunk = lastChunk;
+            this.numChunks = numChunks;
+            this.size = size;
+            this.task = task;
+        }
+
+        private int chunkStart(int chunk) {
+            return (int) ((long) chunk * this.size / this.numChunks);
+        }
+
+        @Override
+        protected void compute() {
+            if(this.lastChunk - this.firstChunk == 1) {
+                this.task.run(this.firstChunk, this.chunkStart(this.firstChunk), this.chunkStart(this.lastChunk));
+
+            } else {
+                int middle = (this.firstChunk + this.lastChunk) >>> 1;
+                invokeAll(
+                        new ChunkAction(this.firstChunk, middle, this.numChunks, this.size, this.task),
+                        new ChunkAction(middle, this.lastChunk, this.numChunks, this.size, this.task));
+            }
+        }
+    }
+}
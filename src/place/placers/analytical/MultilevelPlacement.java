@@ -0,0 +1,344 @@
+package place.placers.analytical;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import place.mathtools.CGSolver.Preconditioner;
+import place.placers.analytical.AnalyticalAndGradientPlacer.Net;
+import place.placers.analytical.AnalyticalAndGradientPlacer.NetBlock;
+
+/**
+ * A multilevel start for the analytical placer, driven by the partition
+ * tree that the packer writes out. A leaf of the tree is identified by
+ * its path from the root, e.g. "0110".
+ *
+ * The netlist is coarsened along the tree: on level l, all blocks with
+ * the same first l characters in their identifier form one super-block.
+ * Every level starts with a coarse analytical solve, in which each
+ * super-block is anchored to the region of its parent. The region of
+ * each parent is then split between its children, proportionally to
+ * their number of blocks and in the order of their solved positions.
+ * This is repeated until the leaves, whose blocks end up in the center
+ * of their region.
+ *
+ * Blocks without a leaf node (or in the floating leaf) are placed as
+ * single blocks on every level. IO blocks are fixed.
+ *
+ * The multilevel start is experimental. At the same outer effort level
+ * the placer is slower than with a flat start, and the BB cost is only
+ * lower on large circuits.
+ */
+class MultilevelPlacement {
+
+    // Number of bound2bound iterations per level
+    private static final int INNER_ITERATIONS = 3;
+
+    private final AnalyticalAndGradientPlacer placer;
+
+    private final int width, height;
+    private final int numBlocks, numIOBlocks;
+    private final List<Net> nets;
+    private final String[] identifiers;
+    private final int[] heights;
+
+    private final double anchorWeight, epsilon;
+    private final Preconditioner preconditioner;
+    private final ForkJoinPool pool;
+
+    private final Map<String, Cluster> clusters;
+    private int depth;
+
+    MultilevelPlacement(
+            AnalyticalAndGradientPlacer placer,
+            int width,
+            int height,
+            int numIOBlocks,
+            List<Net> nets,
+            String[] identifiers,
+            int[] heights,
+            double anchorWeight,
+            double epsilon,
+            Preconditioner preconditioner,
+            ForkJoinPool pool) {
+
+        this.placer = placer;
+
+        this.width = width;
+        this.height = height;
+        this.numBlocks = identifiers.length;
+        this.numIOBlocks = numIOBlocks;
+        this.nets = nets;
+        this.identifiers = identifiers;
+        this.heights = heights;
+
+        this.anchorWeight = anchorWeight;
+        this.epsilon = epsilon;
+        this.preconditioner = preconditioner;
+        this.pool = pool;
+
+        this.clusters = new HashMap<>();
+
+        Cluster root = new Cluster("", null);
+        root.setRegion(0.5, this.width + 0.5, 0.5, this.height + 0.5);
+        this.clusters.put("", root);
+
+        this.depth = 0;
+        for(int blockIndex = this.numIOBlocks; blockIndex < this.numBlocks; blockIndex++) {
+            String identifier = this.identifiers[blockIndex];
+            if(identifier != null) {
+                this.depth = Math.max(this.depth, identifier.length());
+            }
+        }
+    }
+
+    int getDepth() {
+        return this.depth;
+    }
+
+
+    /**
+     * coordinatesX and coordinatesY should contain the positions of the
+     * IO blocks and a starting position for the other blocks. The
+     * positions of all blocks that are not IO are overwritten.
+     */
+    void place(double[] coordinatesX, double[] coordinatesY) {
+        for(int level = 1; level <= this.depth; level++) {
+            this.placeLevel(level, coordinatesX, coordinatesY);
+        }
+
+        // Uncoarsen the last level: every block goes to the center of its leaf
+        for(int blockIndex = this.numIOBlocks; blockIndex < this.numBlocks; blockIndex++) {
+            String identifier = this.identifiers[blockIndex];
+            if(identifier != null) {
+                Cluster leaf = this.clusters.get(identifier);
+                coordinatesX[blockIndex] = leaf.centerX();
+                coordinatesY[blockIndex] = leaf.centerY();
+            }
+        }
+    }
+
+    private void placeLevel(int level, double[] coordinatesX, double[] coordinatesY) {
+
+        // The variables of the coarse system: first the fixed IO blocks,
+        // then the super-blocks and the single blocks of this level
+        int[] blockVariables = new int[this.numBlocks];
+        List<Cluster> levelClusters = new ArrayList<>();
+        List<Cluster> newClusters = new ArrayList<>();
+        List<Integer> singleBlocks = new ArrayList<>();
+
+        int numVariables = this.numIOBlocks;
+        for(int blockIndex = 0; blockIndex < this.numIOBlocks; blockIndex++) {
+            blockVariables[blockIndex] = blockIndex;
+        }
+
+        for(int blockIndex = this.numIOBlocks; blockIndex < this.numBlocks; blockIndex++) {
+            String identifier = this.identifiers[blockIndex];
+
+            if(identifier == null) {
+                blockVariables[blockIndex] = numVariables++;
+                singleBlocks.add(blockIndex);
+
+            } else {
+                String prefix = identifier.substring(0, Math.min(level, identifier.length()));
+                Cluster cluster = this.clusters.get(prefix);
+
+                if(cluster == null) {
+                    Cluster parent = this.clusters.get(prefix.substring(0, prefix.length() - 1));
+                    cluster = new Cluster(prefix, parent);
+                    parent.children.add(cluster);
+
+                    this.clusters.put(prefix, cluster);
+                    newClusters.add(cluster);
+                }
+
+                // Leaves of a previous level are carried over as they are
+                if(cluster.variableLevel != level) {
+                    cluster.variable = numVariables++;
+                    cluster.variableLevel = level;
+                    levelClusters.add(cluster);
+                }
+                if(cluster.level == level) {
+                    cluster.size += this.heights[blockIndex];
+                }
+                blockVariables[blockIndex] = cluster.variable;
+            }
+        }
+
+        if(newClusters.isEmpty()) {
+            return;
+        }
+
+
+        // Starting positions and anchors
+        double[] coarseX = new double[numVariables];
+        double[] coarseY = new double[numVariables];
+        boolean[] fixed = new boolean[numVariables];
+        for(int blockIndex = 0; blockIndex < this.numIOBlocks; blockIndex++) {
+            coarseX[blockIndex] = coordinatesX[blockIndex];
+            coarseY[blockIndex] = coordinatesY[blockIndex];
+            fixed[blockIndex] = true;
+        }
+        for(Cluster cluster : levelClusters) {
+            Cluster region = cluster.level == level ? cluster.parent : cluster;
+            coarseX[cluster.variable] = region.centerX();
+            coarseY[cluster.variable] = region.centerY();
+        }
+        for(int blockIndex : singleBlocks) {
+            coarseX[blockVariables[blockIndex]] = coordinatesX[blockIndex];
+            coarseY[blockVariables[blockIndex]] = coordinatesY[blockIndex];
+        }
+        double[] anchorX = Arrays.copyOf(coarseX, numVariables);
+        double[] anchorY = Arrays.copyOf(coarseY, numVariables);
+
+        List<Net> coarseNets = this.coarsenNets(blockVariables, numVariables);
+
+        for(int i = 0; i < INNER_ITERATIONS; i++) {
+            LinearSolverAnalytical solver = new LinearSolverAnalytical(
+                    coarseX,
+                    coarseY,
+                    this.anchorWeight,
+                    this.epsilon,
+                    this.preconditioner,
+                    this.pool,
+                    fixed);
+
+            for(Net net : coarseNets) {
+                solver.processNetWLD(net);
+            }
+            solver.addPseudoConnections(anchorX, anchorY);
+
+            solver.solve(null);
+        }
+
+        for(Cluster cluster : newClusters) {
+            cluster.solvedX = coarseX[cluster.variable];
+            cluster.solvedY = coarseY[cluster.variable];
+        }
+        for(int blockIndex : singleBlocks) {
+            coordinatesX[blockIndex] = coarseX[blockVariables[blockIndex]];
+            coordinatesY[blockIndex] = coarseY[blockVariables[blockIndex]];
+        }
+
+
+        // Split the region of every parent between its new children
+        List<Cluster> parents = new ArrayList<>();
+        for(Cluster cluster : newClusters) {
+            if(!parents.contains(cluster.parent)) {
+                parents.add(cluster.parent);
+            }
+        }
+        for(Cluster parent : parents) {
+            parent.splitRegion();
+        }
+    }
+
+    private List<Net> coarsenNets(int[] blockVariables, int numVariables) {
+        List<Net> coarseNets = new ArrayList<>();
+
+        int[] lastNet = new int[numVariables];
+        Arrays.fill(lastNet, -1);
+
+        List<NetBlock> netBlocks = new ArrayList<>();
+        for(int netIndex = 0; netIndex < this.nets.size(); netIndex++) {
+            Net net = this.nets.get(netIndex);
+
+            netBlocks.clear();
+            for(NetBlock block : net.blocks) {
+                int variable = blockVariables[block.blockIndex];
+                if(lastNet[variable] != netIndex) {
+                    lastNet[variable] = netIndex;
+                    netBlocks.add(this.placer.new NetBlock(variable, 0, block.blockType));
+                }
+            }
+
+            // Nets inside one super-block don't pull on anything
+            if(netBlocks.size() > 1) {
+                coarseNets.add(this.placer.new Net(netBlocks.toArray(new NetBlock[netBlocks.size()])));
+            }
+        }
+
+        return coarseNets;
+    }
+
+
+    private class Cluster {
+        final String identifier;
+        final int level;
+        final Cluster parent;
+        final List<Cluster> children;
+
+        int size;
+        int variable, variableLevel = -1;
+        double solvedX, solvedY;
+
+        double left, right, bottom, top;
+
+        Cluster(String identifier, Cluster parent) {
+            this.identifier = identifier;
+            this.level = identifier.length();
+            this.parent = parent;
+            this.children = new ArrayList<>();
+        }
+
+        void setRegion(double left, double right, double bottom, double top) {
+            this.left = left;
+            this.right = right;
+            this.bottom = bottom;
+            this.top = top;
+        }
+
+        double centerX() {
+            return (this.left + this.right) / 2;
+        }
+        double centerY() {
+            return (this.bottom + this.top) / 2;
+        }
+
+        /**
+         * Split the region along its longest side. The children get
+         * a part that is proportional to their size, in the order of
+         * their solved position along that side.
+         */
+        void splitRegion() {
+            final boolean horizontal = this.right - this.left >= this.top - this.bottom;
+
+            List<Cluster> sortedChildren = new ArrayList<>(this.children);
+            Collections.sort(sortedChildren, new Comparator<Cluster>() {
+                @Override
+                public int compare(Cluster cluster1, Cluster cluster2) {
+                    double position1 = horizontal ? cluster1.solvedX : cluster1.solvedY;
+                    double position2 = horizontal ? cluster2.solvedX : cluster2.solvedY;
+
+                    int result = Double.compare(position1, position2);
+                    return result != 0 ? result : cluster1.identifier.compareTo(cluster2.identifier);
+                }
+            });
+
+            int totalSize = 0;
+            for(Cluster child : sortedChildren) {
+                totalSize += child.size;
+            }
+
+            double start = horizontal ? this.left : this.bottom;
+            double length = horizontal ? this.right - this.left : this.top - this.bottom;
+            int cumulativeSize = 0;
+            for(Cluster child : sortedChildren) {
+                double childStart = start + length * cumulativeSize / totalSize;
+                cumulativeSize += child.size;
+                double childEnd = start + length * cumulativeSize / totalSize;
+
+                if(horizontal) {
+                    child.setRegion(childStart, childEnd, this.bottom, this.top);
+                } else {
+                    child.setRegion(this.left, this.right, childStart, childEnd);
+                }
+            }
+        }
+    }
+}
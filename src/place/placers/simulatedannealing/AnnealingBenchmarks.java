@@ -0,0 +1,122 @@
+package place.placers.simulatedannealing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import place.benchmark.Benchmark;
+import place.circuit.Circuit;
+import place.circuit.timing.TimingGraph;
+import place.interfaces.Logger;
+import place.interfaces.Options;
+import place.visual.PlacementVisualizer;
+
+/**
+ * Benchmarks for the inner loop of the simulated annealing placers, on
+ * the current placement of a circuit. The delta costs are calculated
+ * for a fixed set of swaps that are found with findSwap() in the set
+ * up, so they don't include the cost of finding the swaps. None of the
+ * benchmarks changes the placement.
+ */
+public class AnnealingBenchmarks {
+
+    private static final int NUM_SWAPS = 4096;
+
+    private final Circuit circuit;
+    private final Random random;
+    private final Logger logger;
+    private final PlacementVisualizer visualizer;
+
+    private SimulatedAnnealingPlacerWLD placer;
+    private int rlim;
+    private Swap[] swaps;
+
+    public AnnealingBenchmarks(Circuit circuit, Random random, Logger logger, PlacementVisualizer visualizer) {
+        this.circuit = circuit;
+        this.random = random;
+        this.logger = logger;
+        this.visualizer = visualizer;
+    }
+
+    private void initialize() {
+        if(this.placer != null) {
+            return;
+        }
+
+        Options options = new Options(this.logger);
+        SimulatedAnnealingPlacerWLD.initOptions(options);
+
+        this.placer = new SimulatedAnnealingPlacerWLD(this.circuit, options, this.random, this.logger, this.visualizer);
+        this.placer.initializeData();
+        this.rlim = (int) this.placer.rlim;
+
+        // findSwap() reuses the same swap object, copy the swaps
+        this.swaps = new Swap[NUM_SWAPS];
+        for(int i = 0; i < NUM_SWAPS; i++) {
+            Swap swap = this.placer.findSwap(this.rlim);
+            this.swaps[i] = new Swap(this.circuit, swap.getBlock1(0), swap.getSite2(0));
+        }
+    }
+
+
+    public List<Benchmark> getBenchmarks() {
+        List<Benchmark> benchmarks = new ArrayList<>();
+
+        benchmarks.add(new Benchmark("SimulatedAnnealingPlacer.findSwap") {
+            @Override
+            public void setUp() {
+                AnnealingBenchmarks.this.initialize();
+            }
+
+            @Override
+            public double run() {
+                return AnnealingBenchmarks.this.placer.findSwap(AnnealingBenchmarks.this.rlim).getNumBlocks();
+            }
+        });
+
+        benchmarks.add(new Benchmark("EfficientBoundingBoxNetCC.calculateDeltaCost") {
+            private EfficientBoundingBoxNetCC calculator;
+            private int swapIndex;
+
+            @Override
+            public void setUp() {
+                AnnealingBenchmarks.this.initialize();
+                this.calculator = new EfficientBoundingBoxNetCC(AnnealingBenchmarks.this.circuit);
+            }
+
+            @Override
+            public double run() {
+                Swap swap = AnnealingBenchmarks.this.swaps[this.swapIndex];
+                this.swapIndex = (this.swapIndex + 1) % NUM_SWAPS;
+
+                double deltaCost = this.calculator.calculateDeltaCost(swap);
+                this.calculator.revert();
+                return deltaCost;
+            }
+        });
+
+        benchmarks.add(new Benchmark("TimingGraph.calculateDeltaCost") {
+            private TimingGraph timingGraph;
+            private int swapIndex;
+
+            @Override
+            public void setUp() {
+                AnnealingBenchmarks.this.initialize();
+                this.timingGraph = AnnealingBenchmarks.this.circuit.getTimingGraph();
+                this.timingGraph.calculateCriticalities(true);
+            }
+
+            @Override
+            public double run() {
+                Swap swap = AnnealingBenchmarks.this.swaps[this.swapIndex];
+                this.swapIndex = (this.swapIndex + 1) % NUM_SWAPS;
+
+                double deltaCost = this.timingGraph.calculateDeltaCost(swap);
+                this.timingGraph.revert();
+                return deltaCost;
+            }
+        });
+
+        return benchmarks;
+    }
+}
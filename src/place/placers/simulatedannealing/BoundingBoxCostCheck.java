@@ -0,0 +1,124 @@
+package place.placers.simulatedannealing;
+
+import java.util.Random;
+
+import place.circuit.Circuit;
+import place.circuit.exceptions.PlacementException;
+import place.interfaces.Logger;
+import place.interfaces.Options;
+import place.visual.PlacementVisualizer;
+
+/**
+ * Checks that FlatBoundingBoxNetCC calculates the same costs as
+ * EfficientBoundingBoxNetCC. A random sequence of swaps is pushed
+ * through both cost calculators, every swap is accepted or reverted at
+ * random. The delta cost of every swap must be equal, and every
+ * CHECK_INTERVAL swaps the total costs must be equal.
+ *
+ * The incremental costs drift away from the costs of a calculator that
+ * is built from scratch: if a swap moves several blocks on the same
+ * net, as the swaps of macros do, and the bounding box of that net is
+ * recalculated for one of them, the other blocks are still at their
+ * old sites. The placers recalculate the costs from scratch at every
+ * temperature. The drift is reported, but it isn't an error.
+ *
+ * The accepted swaps are applied to the circuit, so the placement of
+ * the circuit changes.
+ */
+public class BoundingBoxCostCheck {
+
+    private static final int CHECK_INTERVAL = 10000;
+    private static final double TOLERANCE = 1e-9;
+
+    private final Circuit circuit;
+    private final Random random;
+    private final Logger logger;
+    private final PlacementVisualizer visualizer;
+
+    private double maxDeltaError, maxTotalError, maxDrift;
+    private int numErrors;
+
+    public BoundingBoxCostCheck(Circuit circuit, Random random, Logger logger, PlacementVisualizer visualizer) {
+        this.circuit = circuit;
+        this.random = random;
+        this.logger = logger;
+        this.visualizer = visualizer;
+    }
+
+    public boolean run(int numSwaps, double acceptRate) throws PlacementException {
+        Options options = new Options(this.logger);
+        SimulatedAnnealingPlacerWLD.initOptions(options);
+
+        SimulatedAnnealingPlacerWLD placer = new SimulatedAnnealingPlacerWLD(this.circuit, options, this.random, this.logger, this.visualizer);
+        placer.initializeData();
+        int rlim = (int) placer.rlim;
+
+        EfficientBoundingBoxNetCC efficient = new EfficientBoundingBoxNetCC(this.circuit);
+        FlatBoundingBoxNetCC flat = new FlatBoundingBoxNetCC(this.circuit);
+
+        this.maxDeltaError = 0;
+        this.maxTotalError = 0;
+        this.maxDrift = 0;
+        this.numErrors = 0;
+
+        int numAccepted = 0;
+        for(int i = 1; i <= numSwaps; i++) {
+            Swap swap = placer.findSwap(rlim);
+
+            double efficientDelta = efficient.calculateDeltaCost(swap);
+            double flatDelta = flat.calculateDeltaCost(swap);
+            if(this.compare(efficientDelta, flatDelta, false)) {
+                this.logger.printf("Swap %d: delta cost %f != %f\n", i, flatDelta, efficientDelta);
+            }
+
+            if(this.random.nextDouble() < acceptRate) {
+                swap.apply();
+                efficient.pushThrough();
+                flat.pushThrough();
+                numAccepted++;
+
+            } else {
+                efficient.revert();
+                flat.revert();
+            }
+
+            if(i % CHECK_INTERVAL == 0 || i == numSwaps) {
+                double efficientTotal = efficient.calculateTotalCost();
+                double flatTotal = flat.calculateTotalCost();
+                double scratchTotal = new EfficientBoundingBoxNetCC(this.circuit).calculateTotalCost();
+
+                if(this.compare(efficientTotal, flatTotal, true)) {
+                    this.logger.printf("Swap %d: total cost %f != %f\n", i, flatTotal, efficientTotal);
+                }
+                this.maxDrift = Math.max(this.maxDrift, Math.abs(flatTotal - scratchTotal) / scratchTotal);
+            }
+        }
+
+        this.logger.printf("Bounding box cost check: %d swaps, %d accepted\n", numSwaps, numAccepted);
+        this.logger.printf("max delta cost error | %.3g\n", this.maxDeltaError);
+        this.logger.printf("max total cost error | %.3g\n", this.maxTotalError);
+        this.logger.printf("mismatches           | %d\n", this.numErrors);
+        this.logger.printf("max drift            | %.3g (from scratch, not an error)\n\n", this.maxDrift);
+
+        return this.numErrors == 0;
+    }
+
+    /**
+     * Returns true if the costs differ by more than the tolerance,
+     * relative to the expected cost if it is larger than 1.
+     */
+    private boolean compare(double expected, double actual, boolean total) {
+        double error = Math.abs(actual - expected) / Math.max(1, Math.abs(expected));
+        if(total) {
+            this.maxTotalError = Math.max(this.maxTotalError, error);
+        } else {
+            this.maxDeltaError = Math.max(this.maxDeltaError, error);
+        }
+
+        if(error > TOLERANCE) {
+            this.numErrors++;
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,338 @@
+package place.placers.simulatedannealing;
+
+import place.circuit.Circuit;
+import place.circuit.architecture.BlockCategory;
+import place.circuit.architecture.BlockType;
+import place.circuit.block.AbstractSite;
+import place.circuit.block.GlobalBlock;
+import place.circuit.block.Macro;
+import place.circuit.exceptions.PlacementException;
+import place.circuit.pin.AbstractPin;
+import place.interfaces.Logger;
+import place.interfaces.Options;
+import place.visual.PlacementVisualizer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Incremental placement after a small change of the netlist. The blocks
+ * that were found in the previous placement keep their position. The new
+ * blocks are inserted close to the blocks they are connected to, with a
+ * few Gauss-Seidel iterations that move every new block to the weighted
+ * center of its neighbours. A low temperature anneal then repairs the
+ * region around the new blocks. Only blocks in that region are swapped,
+ * they can also be moved to a free site outside it. The other blocks,
+ * IO blocks and macros that are partly outside the region are not moved.
+ */
+public class EcoPlacer extends SimulatedAnnealingPlacerWLD {
+
+    private static final String
+        O_REGION_RADIUS = "region radius",
+        O_INSERT_ITERATIONS = "insert iterations";
+
+    public static void initOptions(Options options) {
+        SimulatedAnnealingPlacerWLD.initOptions(options);
+
+        options.add(
+                O_REGION_RADIUS,
+                "distance around the new blocks in which blocks can be moved",
+                new Integer(3));
+
+        options.add(
+                O_INSERT_ITERATIONS,
+                "number of iterations to find the positions of the new blocks",
+                new Integer(20));
+
+        // The existing placement is already good, don't destroy it
+        options.set(O_TEMPERATURE, new Double(0.1));
+    }
+
+
+    private static final String T_INSERT_BLOCKS = "insert new blocks";
+
+    // Nets with more blocks hardly pull on the new blocks
+    private static final int MAX_NET_SIZE = 100;
+
+    private final int regionRadius, insertIterations;
+
+    private List<GlobalBlock> movableBlocks;
+
+    public EcoPlacer(Circuit circuit, Options options, Random random, Logger logger, PlacementVisualizer visualizer) {
+        super(circuit, options, random, logger, visualizer);
+
+        this.regionRadius = this.options.getInteger(O_REGION_RADIUS);
+        this.insertIterations = this.options.getInteger(O_INSERT_ITERATIONS);
+
+        // Swaps never leave the region by much
+        this.setMaxRlim(Math.min(this.maxRlim, Math.max(this.regionRadius, 1)));
+        this.rlim = Math.min(this.rlim, this.maxRlim);
+    }
+
+    @Override
+    public String getName() {
+        return "ECO placer";
+    }
+
+    @Override
+    protected boolean supportsParallelSwaps() {
+        // The swap engines pick their blocks from the whole circuit
+        return false;
+    }
+
+    @Override
+    protected boolean supportsCheckpoints() {
+        // The region depends on the blocks that were unplaced at the start
+        return false;
+    }
+
+
+    @Override
+    public void initializeData() {
+        super.initializeData();
+
+        this.startTimer(T_INSERT_BLOCKS);
+
+        List<GlobalBlock> newBlocks = new ArrayList<>();
+        for(GlobalBlock block : this.circuit.getGlobalBlocks()) {
+            if(block.getSite() == null) {
+                newBlocks.add(block);
+            }
+        }
+
+        try {
+            this.insertBlocks(newBlocks);
+        } catch(PlacementException error) {
+            this.logger.raise(error);
+        }
+
+        this.movableBlocks = this.getRegionBlocks(newBlocks);
+        this.setMovableBlocks(this.movableBlocks);
+
+        this.stopTimer(T_INSERT_BLOCKS);
+
+        this.logger.printf("Inserted %d new blocks, %d blocks can be moved\n", newBlocks.size(), this.movableBlocks.size());
+        this.logger.printf("Swaps per iteration: %d\n\n", this.movesPerTemperature);
+
+        this.visualizer.addPlacement("ECO insertion");
+    }
+
+    @Override
+    protected void doPlacement() throws PlacementException {
+        if(this.movableBlocks.isEmpty()) {
+            this.logger.print("No blocks to move\n\n");
+            return;
+        }
+
+        super.doPlacement();
+    }
+
+
+    private void insertBlocks(List<GlobalBlock> newBlocks) throws PlacementException {
+
+        int numNewBlocks = newBlocks.size();
+        Map<GlobalBlock, Integer> newBlockIndexes = new HashMap<>();
+        for(int i = 0; i < numNewBlocks; i++) {
+            newBlockIndexes.put(newBlocks.get(i), i);
+        }
+
+        // The blocks that share a net with every new block
+        List<List<GlobalBlock>> neighbours = new ArrayList<>(numNewBlocks);
+        List<List<Double>> weights = new ArrayList<>(numNewBlocks);
+        for(GlobalBlock block : newBlocks) {
+            List<GlobalBlock> blockNeighbours = new ArrayList<>();
+            List<Double> blockWeights = new ArrayList<>();
+
+            for(AbstractPin pin : block.getOutputPins()) {
+                this.addNeighbours(block, pin, blockNeighbours, blockWeights);
+            }
+            for(AbstractPin pin : block.getInputPins()) {
+                AbstractPin source = pin.getSource();
+                if(source != null) {
+                    this.addNeighbours(block, source, blockNeighbours, blockWeights);
+                }
+            }
+
+            neighbours.add(blockNeighbours);
+            weights.add(blockWeights);
+        }
+
+
+        // Gauss-Seidel iterations, starting from the center of the circuit
+        double[] x = new double[numNewBlocks];
+        double[] y = new double[numNewBlocks];
+        for(int i = 0; i < numNewBlocks; i++) {
+            x[i] = (this.circuit.getWidth() + 1) / 2.0;
+            y[i] = (this.circuit.getHeight() + 1) / 2.0;
+        }
+
+        for(int iteration = 0; iteration < this.insertIterations; iteration++) {
+            for(int i = 0; i < numNewBlocks; i++) {
+                List<GlobalBlock> blockNeighbours = neighbours.get(i);
+                List<Double> blockWeights = weights.get(i);
+
+                double sumX = 0, sumY = 0, sumWeights = 0;
+                for(int n = 0; n < blockNeighbours.size(); n++) {
+                    GlobalBlock neighbour = blockNeighbours.get(n);
+                    double weight = blockWeights.get(n);
+
+                    if(neighbour.getSite() != null) {
+                        sumX += weight * neighbour.getColumn();
+                        sumY += weight * neighbour.getRow();
+                    } else {
+                        int neighbourIndex = newBlockIndexes.get(neighbour);
+                        sumX += weight * x[neighbourIndex];
+                        sumY += weight * y[neighbourIndex];
+                    }
+                    sumWeights += weight;
+                }
+
+                if(sumWeights > 0) {
+                    x[i] = sumX / sumWeights;
+                    y[i] = sumY / sumWeights;
+                }
+            }
+        }
+
+
+        // Put every block, or every macro, on the nearest free site
+        Map<BlockType, List<AbstractSite>> sites = new HashMap<>();
+        for(int i = 0; i < numNewBlocks; i++) {
+            GlobalBlock block = newBlocks.get(i);
+
+            // A macro is placed with its first block
+            if(block.isInMacro() && block.getMacro().getBlock(0) != block) {
+                continue;
+            }
+
+            BlockType blockType = block.getType();
+            if(!sites.containsKey(blockType)) {
+                sites.put(blockType, this.circuit.getSites(blockType));
+            }
+
+            this.placeOnNearestSite(block, sites.get(blockType), x[i], y[i]);
+        }
+    }
+
+    private void addNeighbours(GlobalBlock block, AbstractPin source, List<GlobalBlock> neighbours, List<Double> weights) {
+        int netSize = source.getNumSinks() + 1;
+        if(netSize < 2 || netSize > MAX_NET_SIZE) {
+            return;
+        }
+
+        // Clique model of the net
+        double weight = 1.0 / (netSize - 1);
+
+        GlobalBlock sourceBlock = (GlobalBlock) source.getOwner();
+        if(sourceBlock != block) {
+            neighbours.add(sourceBlock);
+            weights.add(weight);
+        }
+
+        for(AbstractPin sink : source.getSinks()) {
+            GlobalBlock sinkBlock = (GlobalBlock) sink.getOwner();
+            if(sinkBlock != block) {
+                neighbours.add(sinkBlock);
+                weights.add(weight);
+            }
+        }
+    }
+
+    private void placeOnNearestSite(GlobalBlock block, List<AbstractSite> sites, double x, double y) throws PlacementException {
+        BlockType blockType = block.getType();
+
+        int numBlocks = 1, blockSpace = 0;
+        if(block.isInMacro()) {
+            numBlocks = block.getMacro().getNumBlocks();
+            blockSpace = block.getMacro().getBlockSpace();
+        }
+
+        AbstractSite bestSite = null;
+        double bestDistance = Double.MAX_VALUE;
+        for(AbstractSite site : sites) {
+            double distance = Math.abs(site.getColumn() - x) + Math.abs(site.getRow() - y);
+            if(distance < bestDistance && this.isFree(blockType, site.getColumn(), site.getRow(), numBlocks, blockSpace)) {
+                bestSite = site;
+                bestDistance = distance;
+            }
+        }
+
+        if(bestSite == null) {
+            this.logger.raise("No free site left for block " + block.getName());
+        }
+
+        if(block.isInMacro()) {
+            Macro macro = block.getMacro();
+            for(int index = 0; index < numBlocks; index++) {
+                int row = bestSite.getRow() + blockSpace * index;
+                macro.getBlock(index).setSite(this.circuit.getSite(bestSite.getColumn(), row, true));
+            }
+
+        } else {
+            block.setSite(bestSite);
+        }
+    }
+
+    private boolean isFree(BlockType blockType, int column, int firstRow, int numBlocks, int blockSpace) {
+        for(int index = 0; index < numBlocks; index++) {
+            int row = firstRow + blockSpace * index;
+            if(row >= this.circuit.getHeight() + 2) {
+                return false;
+            }
+
+            AbstractSite site = this.circuit.getSite(column, row, true);
+            if(site == null || !site.getType().equals(blockType) || site.isFull()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+
+    private List<GlobalBlock> getRegionBlocks(List<GlobalBlock> newBlocks) {
+        int width = this.circuit.getWidth(), height = this.circuit.getHeight();
+        boolean[][] inRegion = new boolean[width + 2][height + 2];
+
+        for(GlobalBlock block : newBlocks) {
+            int minColumn = Math.max(0, block.getColumn() - this.regionRadius);
+            int maxColumn = Math.min(width + 1, block.getColumn() + this.regionRadius);
+            int minRow = Math.max(0, block.getRow() - this.regionRadius);
+            int maxRow = Math.min(height + 1, block.getRow() + this.regionRadius);
+
+            for(int column = minColumn; column <= maxColumn; column++) {
+                for(int row = minRow; row <= maxRow; row++) {
+                    inRegion[column][row] = true;
+                }
+            }
+        }
+
+        // A macro can only be moved if all its blocks are in the region
+        List<GlobalBlock> regionBlocks = new ArrayList<>();
+        for(GlobalBlock block : this.circuit.getGlobalBlocks()) {
+            if(block.getCategory() == BlockCategory.IO) {
+                continue;
+            }
+
+            boolean blockInRegion = true;
+            if(block.isInMacro()) {
+                Macro macro = block.getMacro();
+                for(int index = 0; index < macro.getNumBlocks(); index++) {
+                    GlobalBlock macroBlock = macro.getBlock(index);
+                    blockInRegion &= inRegion[macroBlock.getColumn()][macroBlock.getRow()];
+                }
+            } else {
+                blockInRegion = inRegion[block.getColumn()][block.getRow()];
+            }
+
+            if(blockInRegion) {
+                regionBlocks.add(block);
+            }
+        }
+
+        return regionBlocks;
+    }
+}
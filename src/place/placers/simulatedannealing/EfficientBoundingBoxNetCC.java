@@ -136,7 +136,9 @@ public class EfficientBoundingBoxNetCC {
 
         List<EfficientBoundingBoxData> bbDataList = this.bbDataMap.get(block);
         if(bbDataList != null) {
-            for(EfficientBoundingBoxData bbData: bbDataList) {
+            int numNets = bbDataList.size();
+            for(int i = 0; i < numNets; i++) {
+                EfficientBoundingBoxData bbData = bbDataList.get(i);
                 bbData.saveState();
                 deltaCost += bbData.calculateDeltaCost(block, site);
             }
@@ -154,11 +156,13 @@ public class EfficientBoundingBoxNetCC {
 
 
     public void revert() {
-        for(GlobalBlock block : this.toRevert) {
-            List<EfficientBoundingBoxData> bbDataList = this.bbDataMap.get(block);
+        int numBlocks = this.toRevert.size();
+        for(int i = 0; i < numBlocks; i++) {
+            List<EfficientBoundingBoxData> bbDataList = this.bbDataMap.get(this.toRevert.get(i));
             if(bbDataList != null) {
-                for(EfficientBoundingBoxData bbData: bbDataList) {
-                    bbData.revert();
+                int numNets = bbDataList.size();
+                for(int j = 0; j < numNets; j++) {
+                    bbDataList.get(j).revert();
                 }
             }
         }
@@ -166,11 +170,13 @@ public class EfficientBoundingBoxNetCC {
 
 
     public void pushThrough() {
-        for(GlobalBlock block : this.toRevert) {
-            List<EfficientBoundingBoxData> bbDataList = this.bbDataMap.get(block);
+        int numBlocks = this.toRevert.size();
+        for(int i = 0; i < numBlocks; i++) {
+            List<EfficientBoundingBoxData> bbDataList = this.bbDataMap.get(this.toRevert.get(i));
             if(bbDataList != null) {
-                for(EfficientBoundingBoxData bbData: bbDataList) {
-                    bbData.pushThrough();
+                int numNets = bbDataList.size();
+                for(int j = 0; j < numNets; j++) {
+                    bbDataList.get(j).pushThrough();
                 }
             }
         }
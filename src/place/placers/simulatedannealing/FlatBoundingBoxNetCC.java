@@ -0,0 +1,379 @@
+package place.placers.simulatedannealing;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import place.circuit.Circuit;
+import place.circuit.block.GlobalBlock;
+import place.circuit.block.Site;
+import place.placers.Checkpoint;
+
+/**
+ * Index based version of EfficientBoundingBoxNetCC, with the same
+ * incremental bounding box updates and therefore the same costs.
+ * Blocks and nets are ints, the nets of a block are found in the
+ * compressed rows of the SwapNetlist, and the bounding boxes are
+ * stored in parallel int arrays. Before a bounding box is changed
+ * for the first time during a move, its old state is pushed on an
+ * undo log, which is replayed by revert().
+ *
+ * The block positions are copied into int arrays as well. Just like
+ * the original class reads the sites of the blocks, the positions
+ * are only updated when a swap is pushed through.
+ */
+public class FlatBoundingBoxNetCC {
+
+    private static final int UNDO_SIZE = 9;
+
+    private final SwapNetlist netlist;
+    private final int numNets;
+
+    private final int[] column, row;
+
+    private final int[] minX, nbMinX, maxX, nbMaxX;
+    private final int[] minY, nbMinY, maxY, nbMaxY;
+    private final int[] boundingBox;
+
+    // Nets that have been saved during the current move have savedStamp[net] == stamp
+    private final int[] savedStamp;
+    private int stamp = 1;
+
+    private int[] undoNets = new int[16];
+    private int[] undoData = new int[16 * UNDO_SIZE];
+    private int undoSize = 0;
+
+    // The blocks that are moved by the current swap
+    private int[] movedBlocks = new int[4], movedColumns = new int[4], movedRows = new int[4];
+    private int numMovedBlocks = 0;
+
+    public FlatBoundingBoxNetCC(Circuit circuit) {
+        this(new SwapNetlist(circuit));
+    }
+
+    FlatBoundingBoxNetCC(SwapNetlist netlist) {
+        this.netlist = netlist;
+        this.numNets = netlist.numNets;
+
+        this.column = new int[netlist.numBlocks];
+        this.row = new int[netlist.numBlocks];
+
+        this.minX = new int[this.numNets];
+        this.nbMinX = new int[this.numNets];
+        this.maxX = new int[this.numNets];
+        this.nbMaxX = new int[this.numNets];
+        this.minY = new int[this.numNets];
+        this.nbMinY = new int[this.numNets];
+        this.maxY = new int[this.numNets];
+        this.nbMaxY = new int[this.numNets];
+        this.boundingBox = new int[this.numNets];
+
+        this.savedStamp = new int[this.numNets];
+
+        this.recalculateFromScratch();
+    }
+
+
+    public double calculateAverageNetCost() {
+        return this.calculateTotalCost() / this.numNets;
+    }
+
+    public double calculateTotalCost() {
+        double totalCost = 0.0;
+        for(int net = 0; net < this.numNets; net++) {
+            totalCost += this.boundingBox[net] * this.netlist.netWeight[net];
+        }
+        return totalCost;
+    }
+
+    public double calculateBlockCost(GlobalBlock block) {
+        int blockIndex = this.netlist.getIndex(block);
+
+        double cost = 0.0;
+        for(int i = this.netlist.blockNetStart[blockIndex]; i < this.netlist.blockNetStart[blockIndex + 1]; i++) {
+            int net = this.netlist.blockNets[i];
+            int numBlocks = this.netlist.netBlockStart[net + 1] - this.netlist.netBlockStart[net];
+            cost += this.boundingBox[net] * this.netlist.netWeight[net] / numBlocks;
+        }
+        return cost;
+    }
+
+
+    public void recalculateFromScratch() {
+        for(int block = 0; block < this.netlist.numBlocks; block++) {
+            GlobalBlock globalBlock = this.netlist.blocks[block];
+            this.column[block] = globalBlock.getColumn();
+            this.row[block] = globalBlock.getRow();
+        }
+
+        for(int net = 0; net < this.numNets; net++) {
+            this.calculateBoundingBoxFromScratch(net, -1, 0, 0);
+        }
+
+        this.stamp++;
+        this.undoSize = 0;
+        this.numMovedBlocks = 0;
+    }
+
+
+    /**
+     * The incremental bounding boxes are not always the ones that
+     * recalculateFromScratch() finds (see BoundingBoxCostCheck), so a
+     * placer that is resumed from a checkpoint needs them as they were.
+     */
+    void writeState(DataOutputStream output) throws IOException {
+        for(int[] array : this.stateArrays()) {
+            Checkpoint.writeArray(output, array);
+        }
+    }
+    void readState(DataInputStream input) throws IOException {
+        for(int[] array : this.stateArrays()) {
+            Checkpoint.readArray(input, array);
+        }
+
+        this.stamp++;
+        this.undoSize = 0;
+        this.numMovedBlocks = 0;
+    }
+    private int[][] stateArrays() {
+        return new int[][] {
+            this.column, this.row,
+            this.minX, this.nbMinX, this.maxX, this.nbMaxX,
+            this.minY, this.nbMinY, this.maxY, this.nbMaxY,
+            this.boundingBox};
+    }
+
+
+    public double calculateDeltaCost(Swap swap) {
+        this.stamp++;
+        this.undoSize = 0;
+        this.numMovedBlocks = 0;
+
+        double deltaCost = 0;
+
+        int numBlocks = swap.getNumBlocks();
+        for(int i = 0; i < numBlocks; i++) {
+            Site site1 = swap.getSite1(i);
+            GlobalBlock block1 = site1.getBlock();
+
+            Site site2 = swap.getSite2(i);
+            GlobalBlock block2 = site2.getBlock();
+
+            deltaCost += this.calculateDeltaCost(this.netlist.getIndex(block1), site2.getColumn(), site2.getRow());
+            if(block2 != null) {
+                deltaCost += this.calculateDeltaCost(this.netlist.getIndex(block2), site1.getColumn(), site1.getRow());
+            }
+        }
+
+        return deltaCost;
+    }
+
+    private double calculateDeltaCost(int block, int newColumn, int newRow) {
+        this.addMovedBlock(block, newColumn, newRow);
+
+        double deltaCost = 0;
+        for(int i = this.netlist.blockNetStart[block]; i < this.netlist.blockNetStart[block + 1]; i++) {
+            int net = this.netlist.blockNets[i];
+            this.saveState(net);
+            deltaCost += this.calculateDeltaCost(net, block, newColumn, newRow);
+        }
+
+        return deltaCost;
+    }
+
+    private double calculateDeltaCost(int net, int block, int newColumn, int newRow) {
+        int originalBB = this.boundingBox[net];
+
+        int oldColumn = this.column[block];
+        int oldRow = this.row[block];
+
+        int minX = this.minX[net], maxX = this.maxX[net];
+        int minY = this.minY[net], maxY = this.maxY[net];
+
+        if((oldColumn == minX && this.nbMinX[net] == 1 && newColumn > minX)
+                || (oldColumn == maxX && this.nbMaxX[net] == 1 && newColumn < maxX)
+                || (oldRow == minY && this.nbMinY[net] == 1 && newRow > minY)
+                || (oldRow == maxY && this.nbMaxY[net] == 1 && newRow < maxY)) {
+
+            this.calculateBoundingBoxFromScratch(net, block, newColumn, newRow);
+
+        } else {
+            if(newColumn < minX) {
+                this.minX[net] = newColumn;
+                this.nbMinX[net] = 1;
+            } else if(newColumn == minX && oldColumn != minX) {
+                this.nbMinX[net]++;
+            } else if(newColumn > minX && oldColumn == minX) {
+                this.nbMinX[net]--;
+            }
+
+            if(newColumn > maxX) {
+                this.maxX[net] = newColumn;
+                this.nbMaxX[net] = 1;
+            } else if(newColumn == maxX && oldColumn != maxX) {
+                this.nbMaxX[net]++;
+            } else if(newColumn < maxX && oldColumn == maxX) {
+                this.nbMaxX[net]--;
+            }
+
+            if(newRow < minY) {
+                this.minY[net] = newRow;
+                this.nbMinY[net] = 1;
+            } else if(newRow == minY && oldRow != minY) {
+                this.nbMinY[net]++;
+            } else if(newRow > minY && oldRow == minY) {
+                this.nbMinY[net]--;
+            }
+
+            if(newRow > maxY) {
+                this.maxY[net] = newRow;
+                this.nbMaxY[net] = 1;
+            } else if(newRow == maxY && oldRow != maxY) {
+                this.nbMaxY[net]++;
+            } else if(newRow < maxY && oldRow == maxY) {
+                this.nbMaxY[net]--;
+            }
+
+            this.boundingBox[net] = (this.maxX[net] - this.minX[net] + 1) + (this.maxY[net] - this.minY[net] + 1);
+        }
+
+        return this.netlist.netWeight[net] * (this.boundingBox[net] - originalBB);
+    }
+
+    /**
+     * Calculate the bounding box of a net from scratch. If block is
+     * not -1, that block is assumed to be at (newColumn, newRow).
+     */
+    private void calculateBoundingBoxFromScratch(int net, int block, int newColumn, int newRow) {
+        int minX = Integer.MAX_VALUE, nbMinX = 0;
+        int maxX = -1, nbMaxX = 0;
+        int minY = Integer.MAX_VALUE, nbMinY = 0;
+        int maxY = -1, nbMaxY = 0;
+
+        for(int i = this.netlist.netBlockStart[net]; i < this.netlist.netBlockStart[net + 1]; i++) {
+            int netBlock = this.netlist.netBlocks[i];
+
+            int x, y;
+            if(netBlock == block) {
+                x = newColumn;
+                y = newRow;
+            } else {
+                x = this.column[netBlock];
+                y = this.row[netBlock];
+            }
+
+            if(x < minX) {
+                minX = x;
+                nbMinX = 1;
+            } else if(x == minX) {
+                nbMinX++;
+            }
+
+            if(x > maxX) {
+                maxX = x;
+                nbMaxX = 1;
+            } else if(x == maxX) {
+                nbMaxX++;
+            }
+
+            if(y < minY) {
+                minY = y;
+                nbMinY = 1;
+            } else if(y == minY) {
+                nbMinY++;
+            }
+
+            if(y > maxY) {
+                maxY = y;
+                nbMaxY = 1;
+            } else if(y == maxY) {
+                nbMaxY++;
+            }
+        }
+
+        this.minX[net] = minX;
+        this.nbMinX[net] = nbMinX;
+        this.maxX[net] = maxX;
+        this.nbMaxX[net] = nbMaxX;
+        this.minY[net] = minY;
+        this.nbMinY[net] = nbMinY;
+        this.maxY[net] = maxY;
+        this.nbMaxY[net] = nbMaxY;
+        this.boundingBox[net] = (maxX - minX + 1) + (maxY - minY + 1);
+    }
+
+
+    private void saveState(int net) {
+        if(this.savedStamp[net] == this.stamp) {
+            return;
+        }
+        this.savedStamp[net] = this.stamp;
+
+        if(this.undoSize == this.undoNets.length) {
+            this.undoNets = Arrays.copyOf(this.undoNets, 2 * this.undoSize);
+            this.undoData = Arrays.copyOf(this.undoData, 2 * this.undoSize * UNDO_SIZE);
+        }
+
+        int offset = this.undoSize * UNDO_SIZE;
+        this.undoNets[this.undoSize] = net;
+        this.undoData[offset] = this.minX[net];
+        this.undoData[offset + 1] = this.nbMinX[net];
+        this.undoData[offset + 2] = this.maxX[net];
+        this.undoData[offset + 3] = this.nbMaxX[net];
+        this.undoData[offset + 4] = this.minY[net];
+        this.undoData[offset + 5] = this.nbMinY[net];
+        this.undoData[offset + 6] = this.maxY[net];
+        this.undoData[offset + 7] = this.nbMaxY[net];
+        this.undoData[offset + 8] = this.boundingBox[net];
+        this.undoSize++;
+    }
+
+    private void addMovedBlock(int block, int newColumn, int newRow) {
+        if(this.numMovedBlocks == this.movedBlocks.length) {
+            int length = 2 * this.numMovedBlocks;
+            this.movedBlocks = Arrays.copyOf(this.movedBlocks, length);
+            this.movedColumns = Arrays.copyOf(this.movedColumns, length);
+            this.movedRows = Arrays.copyOf(this.movedRows, length);
+        }
+
+        this.movedBlocks[this.numMovedBlocks] = block;
+        this.movedColumns[this.numMovedBlocks] = newColumn;
+        this.movedRows[this.numMovedBlocks] = newRow;
+        this.numMovedBlocks++;
+    }
+
+
+    public void revert() {
+        for(int i = this.undoSize - 1; i >= 0; i--) {
+            int net = this.undoNets[i];
+            int offset = i * UNDO_SIZE;
+
+            this.minX[net] = this.undoData[offset];
+            this.nbMinX[net] = this.undoData[offset + 1];
+            this.maxX[net] = this.undoData[offset + 2];
+            this.nbMaxX[net] = this.undoData[offset + 3];
+            this.minY[net] = this.undoData[offset + 4];
+            this.nbMinY[net] = this.undoData[offset + 5];
+            this.maxY[net] = this.undoData[offset + 6];
+            this.nbMaxY[net] = this.undoData[offset + 7];
+            this.boundingBox[net] = this.undoData[offset + 8];
+        }
+
+        this.undoSize = 0;
+        this.numMovedBlocks = 0;
+        this.stamp++;
+    }
+
+    public void pushThrough() {
+        for(int i = 0; i < this.numMovedBlocks; i++) {
+            int block = this.movedBlocks[i];
+            this.column[block] = this.movedColumns[i];
+            this.row[block] = this.movedRows[i];
+        }
+
+        this.undoSize = 0;
+        this.numMovedBlocks = 0;
+        this.stamp++;
+    }
+}
@@ -0,0 +1,166 @@
+package place.placers.simulatedannealing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import place.circuit.exceptions.PlacementException;
+
+/**
+ * Wirelength driven swap iterations that are spread over multiple
+ * threads. The columns of the fpga are divided in vertical strips,
+ * one strip per thread. A thread only moves blocks within its own
+ * strip, so the threads never compete for the same site. The strip
+ * boundaries shift after every round, so that blocks near a boundary
+ * can also be moved across it.
+ *
+ * A thread reads the positions of blocks in its own strip from the
+ * live position arrays, and the positions of all other blocks from a
+ * snapshot that is taken at the start of the round. The cost of a
+ * move therefore never depends on the progress of the other threads,
+ * and the placement after a swap iteration only depends on the seed.
+ *
+ * The circuit itself is only updated at the end of a swap iteration,
+ * the cost calculator of the placer has to be recalculated after that.
+ */
+class ParallelSwapEngine {
+
+    private static final int ROUNDS_PER_ITERATION = 4;
+
+    private final SwapNetlist netlist;
+    private final int numThreads;
+    private final long seed;
+
+    private final int[] snapshotColumn, snapshotRow;
+    private final int[] liveColumn, liveRow;
+    private final int[] occupation;
+
+    private final ExecutorService executor;
+    private final SwapWorker[] workers;
+
+    private int iteration = 0;
+
+    ParallelSwapEngine(SwapNetlist netlist, int numThreads, long seed) {
+        this.netlist = netlist;
+
+        // Every strip should be at least two columns wide
+        this.numThreads = Math.max(1, Math.min(numThreads, netlist.width / 2));
+        this.seed = seed;
+
+        int numBlocks = netlist.numBlocks;
+        this.snapshotColumn = new int[numBlocks];
+        this.snapshotRow = new int[numBlocks];
+        this.liveColumn = new int[numBlocks];
+        this.liveRow = new int[numBlocks];
+        this.occupation = new int[netlist.numSites()];
+
+        this.workers = new SwapWorker[this.numThreads];
+        for(int i = 0; i < this.numThreads; i++) {
+            this.workers[i] = new SwapWorker(
+                    netlist,
+                    this.liveColumn, this.liveRow, this.occupation,
+                    this.snapshotColumn, this.snapshotRow);
+        }
+
+        this.executor = Executors.newFixedThreadPool(this.numThreads);
+    }
+
+    int getNumThreads() {
+        return this.numThreads;
+    }
+
+    void shutdown() {
+        this.executor.shutdownNow();
+    }
+
+
+    /**
+     * Do one swap iteration at the given temperature. Returns the
+     * number of accepted swaps.
+     */
+    int doSwapIteration(int moves, double temperature, int rlim, boolean greedy) throws PlacementException {
+        this.netlist.loadPlacement(this.liveColumn, this.liveRow, this.occupation);
+
+        int numSwaps = 0;
+        int movesPerRound = moves / ROUNDS_PER_ITERATION;
+
+        for(int round = 0; round < ROUNDS_PER_ITERATION; round++) {
+            System.arraycopy(this.liveColumn, 0, this.snapshotColumn, 0, this.netlist.numBlocks);
+            System.arraycopy(this.liveRow, 0, this.snapshotRow, 0, this.netlist.numBlocks);
+
+            this.divideRegions(this.iteration * ROUNDS_PER_ITERATION + round);
+
+            int numMovable = 0;
+            for(SwapWorker worker : this.workers) {
+                numMovable += worker.getNumMovable();
+            }
+
+            List<Callable<Integer>> tasks = new ArrayList<>(this.numThreads);
+            for(int i = 0; i < this.numThreads; i++) {
+                SwapWorker worker = this.workers[i];
+
+                // Give every region a number of moves proportional to the number of blocks in it
+                int workerMoves = numMovable == 0 ? 0 : (int) ((long) movesPerRound * worker.getNumMovable() / numMovable);
+
+                long workerSeed = this.seed;
+                workerSeed = 31 * workerSeed + this.iteration;
+                workerSeed = 31 * workerSeed + round;
+                workerSeed = 31 * workerSeed + i;
+
+                worker.prepare(workerMoves, temperature, rlim, greedy, workerSeed);
+                tasks.add(worker);
+            }
+
+            for(int workerSwaps : invokeAll(this.executor, tasks)) {
+                numSwaps += workerSwaps;
+            }
+        }
+
+        this.netlist.storePlacement(this.liveColumn, this.liveRow);
+        this.iteration++;
+
+        return numSwaps;
+    }
+
+    private void divideRegions(int round) {
+        // Alternate the strip boundaries between two positions that
+        // are half a strip width apart
+        int width = this.netlist.width;
+        int stripWidth = (width + this.numThreads - 1) / this.numThreads;
+        int offset = (round % 2) * (stripWidth / 2);
+
+        for(int i = 0; i < this.numThreads; i++) {
+            int minColumn = i == 0 ? 1 : 1 + offset + i * stripWidth;
+            int maxColumn = i == this.numThreads - 1 ? width : offset + (i + 1) * stripWidth;
+
+            this.workers[i].setColumns(Math.min(minColumn, width + 1), Math.min(maxColumn, width));
+        }
+    }
+
+
+    /**
+     * Run the tasks and return their results, in the order of the tasks.
+     */
+    static int[] invokeAll(ExecutorService executor, List<Callable<Integer>> tasks) {
+        int[] results = new int[tasks.size()];
+        try {
+            List<Future<Integer>> futures = executor.invokeAll(tasks);
+            for(int i = 0; i < results.length; i++) {
+                results[i] = futures.get(i).get();
+            }
+
+        } catch(InterruptedException error) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted during a parallel swap iteration", error);
+
+        } catch(ExecutionException error) {
+            throw new IllegalStateException("A parallel swap thread failed", error.getCause());
+        }
+
+        return results;
+    }
+}
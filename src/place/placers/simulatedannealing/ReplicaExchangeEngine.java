@@ -0,0 +1,165 @@
+package place.placers.simulatedannealing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import place.circuit.exceptions.PlacementException;
+
+/**
+ * Parallel tempering for the wirelength driven annealer. Every
+ * replica is a complete placement that is annealed on its own thread.
+ * The replicas run at a ladder of temperatures: the coldest replica
+ * follows the temperature schedule of the placer, the others run at
+ * temperatures that are a constant ratio higher. After every swap
+ * iteration, neighbouring replicas exchange their temperatures with
+ * the Metropolis criterion.
+ *
+ * The replicas only store positions and site occupations, the netlist
+ * is shared between all of them. The best placement that any replica
+ * has reached is kept aside.
+ */
+class ReplicaExchangeEngine {
+
+    private final SwapNetlist netlist;
+    private final int numReplicas;
+    private final double temperatureRatio;
+    private final long seed;
+    private final Random random;
+
+    private final int[][] column, row, occupation;
+    private final double[] cost;
+    private final SwapWorker[] workers;
+
+    // replicaAt[i] is the replica that runs at the i'th temperature of the ladder
+    private final int[] replicaAt;
+
+    private final int[] bestColumn, bestRow;
+    private double bestCost;
+
+    private final ExecutorService executor;
+
+    private int iteration = 0;
+    private int numExchanges = 0, numExchangeAttempts = 0;
+
+    ReplicaExchangeEngine(SwapNetlist netlist, int numReplicas, double temperatureRatio, long seed) {
+        this.netlist = netlist;
+        this.numReplicas = numReplicas;
+        this.temperatureRatio = temperatureRatio;
+        this.seed = seed;
+        this.random = new Random(seed);
+
+        this.column = new int[numReplicas][netlist.numBlocks];
+        this.row = new int[numReplicas][netlist.numBlocks];
+        this.occupation = new int[numReplicas][netlist.numSites()];
+        this.cost = new double[numReplicas];
+        this.workers = new SwapWorker[numReplicas];
+        this.replicaAt = new int[numReplicas];
+
+        for(int replica = 0; replica < numReplicas; replica++) {
+            netlist.loadPlacement(this.column[replica], this.row[replica], this.occupation[replica]);
+            this.cost[replica] = netlist.totalCost(this.column[replica], this.row[replica]);
+            this.replicaAt[replica] = replica;
+
+            // A replica owns all its blocks, so the live arrays are also the snapshot
+            SwapWorker worker = new SwapWorker(
+                    netlist,
+                    this.column[replica], this.row[replica], this.occupation[replica],
+                    this.column[replica], this.row[replica]);
+            worker.setColumns(1, netlist.width);
+            this.workers[replica] = worker;
+        }
+
+        this.bestColumn = this.column[0].clone();
+        this.bestRow = this.row[0].clone();
+        this.bestCost = this.cost[0];
+
+        this.executor = Executors.newFixedThreadPool(numReplicas);
+    }
+
+    int getNumReplicas() {
+        return this.numReplicas;
+    }
+    int getNumExchanges() {
+        return this.numExchanges;
+    }
+    int getNumExchangeAttempts() {
+        return this.numExchangeAttempts;
+    }
+    double getBestCost() {
+        return this.bestCost;
+    }
+
+    void shutdown() {
+        this.executor.shutdownNow();
+    }
+
+
+    /**
+     * Do one swap iteration on every replica, and try to exchange
+     * neighbouring replicas. temperature is the temperature of the
+     * coldest replica. The placement of the coldest replica is stored
+     * in the circuit. Returns the number of accepted swaps in the
+     * coldest replica.
+     */
+    int doSwapIteration(int moves, double temperature, int rlim, boolean greedy) throws PlacementException {
+        double[] temperatures = new double[this.numReplicas];
+        List<Callable<Integer>> tasks = new ArrayList<>(this.numReplicas);
+        for(int i = 0; i < this.numReplicas; i++) {
+            temperatures[i] = temperature * Math.pow(this.temperatureRatio, i);
+
+            long workerSeed = this.seed;
+            workerSeed = 31 * workerSeed + this.iteration;
+            workerSeed = 31 * workerSeed + i;
+
+            int replica = this.replicaAt[i];
+            this.workers[replica].prepare(moves, temperatures[i], rlim, greedy, workerSeed);
+            tasks.add(this.workers[replica]);
+        }
+
+        int[] numSwaps = ParallelSwapEngine.invokeAll(this.executor, tasks);
+
+        // Recalculate the costs, to avoid drift from summing delta costs
+        for(int replica = 0; replica < this.numReplicas; replica++) {
+            this.cost[replica] = this.netlist.totalCost(this.column[replica], this.row[replica]);
+
+            if(this.cost[replica] < this.bestCost) {
+                this.bestCost = this.cost[replica];
+                System.arraycopy(this.column[replica], 0, this.bestColumn, 0, this.netlist.numBlocks);
+                System.arraycopy(this.row[replica], 0, this.bestRow, 0, this.netlist.numBlocks);
+            }
+        }
+
+        // Alternate between exchanging the even and the odd pairs
+        for(int i = this.iteration % 2; i + 1 < this.numReplicas; i += 2) {
+            int coldReplica = this.replicaAt[i];
+            int hotReplica = this.replicaAt[i + 1];
+
+            double exponent = (1 / temperatures[i] - 1 / temperatures[i + 1]) * (this.cost[coldReplica] - this.cost[hotReplica]);
+
+            this.numExchangeAttempts++;
+            if(exponent >= 0 || this.random.nextDouble() < Math.exp(exponent)) {
+                this.replicaAt[i] = hotReplica;
+                this.replicaAt[i + 1] = coldReplica;
+                this.numExchanges++;
+            }
+        }
+
+        int coldest = this.replicaAt[0];
+        this.netlist.storePlacement(this.column[coldest], this.row[coldest]);
+        this.iteration++;
+
+        // The tasks are ordered by temperature
+        return numSwaps[0];
+    }
+
+    /**
+     * Store the best placement that was found by any replica in the circuit.
+     */
+    void storeBestPlacement() throws PlacementException {
+        this.netlist.storePlacement(this.bestColumn, this.bestRow);
+    }
+}
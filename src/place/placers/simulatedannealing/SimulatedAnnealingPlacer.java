@@ -12,14 +12,20 @@ import place.interfaces.Options;
 import place.placers.Placer;
 import place.visual.PlacementVisualizer;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
 
 abstract class SimulatedAnnealingPlacer extends Placer {
 
-    private static final String
+    protected static final String
         O_GREEDY = "greedy",
         O_DETAILED = "detailed",
         O_EFFORT_LEVEL = "effort level",
@@ -28,7 +34,10 @@ abstract class SimulatedAnnealingPlacer extends Placer {
         O_STOP_RATIO = "stop ratio",
         O_RLIM = "rlim",
         O_MAX_RLIM = "max rlim",
-        O_FIX_IO_PINS = "fix io pins";
+        O_FIX_IO_PINS = "fix io pins",
+        O_THREADS = "threads",
+        O_REPLICAS = "replicas",
+        O_REPLICA_TEMPERATURE_RATIO = "replica temperature ratio";
 
     public static void initOptions(Options options) {
         options.add(
@@ -78,6 +87,21 @@ abstract class SimulatedAnnealingPlacer extends Placer {
                 O_FIX_IO_PINS,
                 "fix the IO pins",
                 Boolean.TRUE);
+
+        options.add(
+                O_THREADS,
+                "number of threads for region partitioned swap iterations (1 is serial)",
+                new Integer(1));
+
+        options.add(
+                O_REPLICAS,
+                "number of replicas for parallel tempering (1 is a single annealing chain)",
+                new Integer(1));
+
+        options.add(
+                O_REPLICA_TEMPERATURE_RATIO,
+                "temperature ratio between neighbouring replicas",
+                new Double(1.5));
     }
 
 
@@ -90,17 +114,31 @@ abstract class SimulatedAnnealingPlacer extends Placer {
     protected double rlim;
     protected int initialRlim, maxRlim;
     private double temperature, stopRatio;
+    private int iteration;
 
     private final double temperatureMultiplier;
 
     private final boolean fixPins;
     protected boolean greedy, detailed;
-    protected final int movesPerTemperature;
+    protected int movesPerTemperature;
+    private final double effortLevel, effortExponent;
+
+    // The blocks that can be moved by a swap, null if all blocks can be moved
+    private List<GlobalBlock> movableBlocks;
+    private Set<GlobalBlock> movableBlockSet;
 
     protected boolean circuitChanged = true;
     private double[] deltaCosts;
     private int numNets;
 
+    // Reused for every move, so finding a swap doesn't allocate anything
+    private final Swap swap = new Swap();
+
+    private final int numThreads, numReplicas;
+    private final double replicaTemperatureRatio;
+    private ParallelSwapEngine parallelSwapEngine;
+    private ReplicaExchangeEngine replicaExchangeEngine;
+
 
     protected SimulatedAnnealingPlacer(Circuit circuit, Options options, Random random, Logger logger, PlacementVisualizer visualizer) {
         super(circuit, options, random, logger, visualizer);
@@ -110,9 +148,9 @@ abstract class SimulatedAnnealingPlacer extends Placer {
 
         this.fixPins = this.options.getBoolean(O_FIX_IO_PINS);
 
-        double effortLevel = this.options.getDouble(O_EFFORT_LEVEL);
-        double effortExponent = this.options.getDouble(O_EFFORT_EXPONENT);
-        this.movesPerTemperature = (int) (effortLevel * Math.pow(this.circuit.getNumGlobalBlocks(), effortExponent));
+        this.effortLevel = this.options.getDouble(O_EFFORT_LEVEL);
+        this.effortExponent = this.options.getDouble(O_EFFORT_EXPONENT);
+        this.movesPerTemperature = this.calculateMovesPerTemperature();
         this.logger.printf("Swaps per iteration: %d\n\n", this.movesPerTemperature);
 
         this.temperatureMultiplier = this.options.getDouble(O_TEMPERATURE);
@@ -135,6 +173,47 @@ abstract class SimulatedAnnealingPlacer extends Placer {
 
         this.maxRlim = maxRlimOption;
         this.rlim = Math.min(RlimOption, this.maxRlim);
+
+        this.numThreads = this.options.getInteger(O_THREADS);
+        this.numReplicas = this.options.getInteger(O_REPLICAS);
+        this.replicaTemperatureRatio = this.options.getDouble(O_REPLICA_TEMPERATURE_RATIO);
+    }
+
+
+    private int calculateMovesPerTemperature() {
+        return (int) (this.effortLevel * Math.pow(this.getNumMovableBlocks(), this.effortExponent));
+    }
+
+    /**
+     * Restrict the swaps to the given blocks: the first block of a swap
+     * is one of them, and so are the blocks on the site it is swapped
+     * to. Free sites can be used anywhere. The number of swaps per
+     * temperature and the number of samples for the initial temperature
+     * are based on the number of these blocks. The blocks must not be
+     * fixed, and a macro must be given as a whole.
+     */
+    protected final void setMovableBlocks(List<GlobalBlock> movableBlocks) {
+        this.movableBlocks = movableBlocks;
+        this.movableBlockSet = Collections.newSetFromMap(new IdentityHashMap<GlobalBlock, Boolean>());
+        this.movableBlockSet.addAll(movableBlocks);
+
+        this.movesPerTemperature = this.calculateMovesPerTemperature();
+    }
+
+    protected final int getNumMovableBlocks() {
+        if(this.movableBlocks == null) {
+            return this.circuit.getNumGlobalBlocks();
+        } else {
+            return this.movableBlocks.size();
+        }
+    }
+
+    private GlobalBlock getRandomBlock() {
+        if(this.movableBlocks == null) {
+            return this.circuit.getRandomBlock(this.random);
+        } else {
+            return this.movableBlocks.get(this.random.nextInt(this.movableBlocks.size()));
+        }
     }
 
 
@@ -148,6 +227,15 @@ abstract class SimulatedAnnealingPlacer extends Placer {
     protected abstract void pushThrough(int iteration);
     protected abstract void revert(int iteration);
 
+    /**
+     * Placers that return true can do their swap iterations with
+     * ParallelSwapEngine or ReplicaExchangeEngine. The cost function of such a placer must
+     * only depend on the bounding box wirelength.
+     */
+    protected boolean supportsParallelSwaps() {
+        return false;
+    }
+
 
     @Override
     public void initializeData() {
@@ -200,14 +288,35 @@ abstract class SimulatedAnnealingPlacer extends Placer {
         this.initializePlace();
         this.stopTimer(T_INITIALIZE_DATA);
 
-        int iteration = 0;
+        this.startTimer(T_INITIALIZE_DATA);
+        this.initializeParallelSwaps();
+        this.stopTimer(T_INITIALIZE_DATA);
+
+        try {
+            this.doAnnealing();
+        } finally {
+            if(this.parallelSwapEngine != null) {
+                this.parallelSwapEngine.shutdown();
+                this.parallelSwapEngine = null;
+            }
+            if(this.replicaExchangeEngine != null) {
+                this.replicaExchangeEngine.shutdown();
+                this.replicaExchangeEngine = null;
+            }
+        }
+    }
+
+    private void doAnnealing() throws PlacementException {
+        this.iteration = 0;
 
         if(!this.greedy) {
-            this.calculateInitialTemperature();
+            if(!this.resumeFromCheckpoint()) {
+                this.calculateInitialTemperature();
+            }
 
             // Do placement
             while(this.temperature > this.stopRatio * this.getCost() / this.numNets) {
-                int numSwaps = this.doSwapIteration();
+                int numSwaps = this.doAnnealingIteration();
                 double alpha = ((double) numSwaps) / this.movesPerTemperature;
 
                 double previousTemperature = this.temperature;
@@ -215,9 +324,14 @@ abstract class SimulatedAnnealingPlacer extends Placer {
                 this.updateRlim(alpha);
                 double gamma = this.updateTemperature(alpha);
 
-                this.printStatistics(iteration, previousTemperature, previousRlim, alpha, gamma);
+                this.printStatistics(this.iteration, previousTemperature, previousRlim, alpha, gamma);
 
-                iteration++;
+                this.iteration++;
+                this.checkpoint();
+            }
+
+            if(this.replicaExchangeEngine != null) {
+                this.storeBestReplica();
             }
 
             this.rlim = 3;
@@ -227,13 +341,60 @@ abstract class SimulatedAnnealingPlacer extends Placer {
         this.greedy = true;
         int numSwaps = this.doSwapIteration();
         double alpha = ((double) numSwaps) / this.movesPerTemperature;
-        this.printStatistics(iteration, this.temperature, this.rlim, alpha, 0.0);
+        this.printStatistics(this.iteration, this.temperature, this.rlim, alpha, 0.0);
 
 
         this.logger.println();
     }
 
 
+    /**
+     * The subclasses add the state of their cost functions. The swap
+     * engines have their own random streams, which are not stored.
+     */
+    @Override
+    protected boolean supportsCheckpoints() {
+        return this.parallelSwapEngine == null && this.replicaExchangeEngine == null;
+    }
+
+    @Override
+    protected void writeState(DataOutputStream output) throws IOException {
+        output.writeInt(this.iteration);
+        output.writeDouble(this.temperature);
+        output.writeDouble(this.rlim);
+    }
+
+    @Override
+    protected void readState(DataInputStream input) throws IOException {
+        this.iteration = input.readInt();
+        this.temperature = input.readDouble();
+        this.rlim = input.readDouble();
+    }
+
+
+    private void initializeParallelSwaps() {
+        if(this.numThreads <= 1 && this.numReplicas <= 1) {
+            return;
+        }
+
+        if(!this.supportsParallelSwaps()) {
+            this.logger.printf("%s doesn't support parallel swaps, using 1 thread\n\n", this.getName());
+
+        } else if(!this.fixPins) {
+            this.logger.print("Parallel swaps require fixed IO pins, using 1 thread\n\n");
+
+        } else if(this.numReplicas > 1) {
+            SwapNetlist netlist = new SwapNetlist(this.circuit);
+            this.replicaExchangeEngine = new ReplicaExchangeEngine(netlist, this.numReplicas, this.replicaTemperatureRatio, this.random.nextLong());
+            this.logger.printf("Parallel tempering with %d replicas, one thread per replica\n\n", this.numReplicas);
+
+        } else {
+            SwapNetlist netlist = new SwapNetlist(this.circuit);
+            this.parallelSwapEngine = new ParallelSwapEngine(netlist, this.numThreads, this.random.nextLong());
+            this.logger.printf("Parallel swaps with %d threads\n\n", this.parallelSwapEngine.getNumThreads());
+        }
+    }
+
     private void calculateInitialTemperature() throws PlacementException {
         if(this.detailed) {
             this.temperature = this.calculateInitialTemperatureDetailed();
@@ -243,7 +404,7 @@ abstract class SimulatedAnnealingPlacer extends Placer {
     }
 
     private double calculateInitialTemperatureGlobal() throws PlacementException {
-        int numSamples = this.circuit.getNumGlobalBlocks();
+        int numSamples = this.getNumMovableBlocks();
         double stdDev = this.doSwapIteration(numSamples, false);
 
         return this.temperatureMultiplier * stdDev;
@@ -253,7 +414,7 @@ abstract class SimulatedAnnealingPlacer extends Placer {
         // Use the method described in "Temperature Measurement and
         // Equilibrium Dynamics of Simulated Annealing Placements"
 
-        int numSamples = Math.max(this.circuit.getNumGlobalBlocks() / 5, 500);
+        int numSamples = Math.max(this.getNumMovableBlocks() / 5, 500);
         this.doSwapIteration(numSamples, false);
 
         this.startTimer(T_DO_SWAPS);
@@ -329,6 +490,47 @@ abstract class SimulatedAnnealingPlacer extends Placer {
         return (int) this.doSwapIteration(this.movesPerTemperature, true);
     }
 
+    private int doAnnealingIteration() throws PlacementException {
+        if(this.parallelSwapEngine == null && this.replicaExchangeEngine == null) {
+            return this.doSwapIteration();
+        }
+
+        this.startTimer(T_DO_SWAPS);
+
+        int intRlim = (int) Math.round(this.rlim);
+        int numSwaps;
+        if(this.parallelSwapEngine != null) {
+            numSwaps = this.parallelSwapEngine.doSwapIteration(this.movesPerTemperature, this.temperature, intRlim, this.greedy);
+        } else {
+            numSwaps = this.replicaExchangeEngine.doSwapIteration(this.movesPerTemperature, this.temperature, intRlim, this.greedy);
+        }
+
+        this.stopTimer(T_DO_SWAPS);
+
+        // The engine has moved the blocks in the circuit
+        this.reinitializePlace();
+
+        return numSwaps;
+    }
+
+    private void storeBestReplica() throws PlacementException {
+        this.replicaExchangeEngine.storeBestPlacement();
+        this.reinitializePlace();
+
+        this.logger.printf(
+                "Replica exchanges: %d of %d accepted, best cost %.5g\n",
+                this.replicaExchangeEngine.getNumExchanges(),
+                this.replicaExchangeEngine.getNumExchangeAttempts(),
+                this.replicaExchangeEngine.getBestCost());
+    }
+
+    private void reinitializePlace() {
+        this.startTimer(T_INITIALIZE_DATA);
+        this.initializePlace();
+        this.circuitChanged = true;
+        this.stopTimer(T_INITIALIZE_DATA);
+    }
+
     private double doSwapIteration(int moves, boolean pushThrough) throws PlacementException {
 
         this.initializeSwapIteration();
@@ -379,7 +581,7 @@ abstract class SimulatedAnnealingPlacer extends Placer {
             double sumQuads = quadSumDeltaCost;
             double quadSum = sumDeltaCost * sumDeltaCost;
 
-            double numBlocks = this.circuit.getNumGlobalBlocks();
+            double numBlocks = this.getNumMovableBlocks();
             double quadNumBlocks = numBlocks * numBlocks;
 
             result = Math.sqrt(Math.abs(sumQuads / numBlocks - quadSum / quadNumBlocks));
@@ -396,7 +598,7 @@ abstract class SimulatedAnnealingPlacer extends Placer {
             // Find a suitable from block
             GlobalBlock fromBlock = null;
             do {
-                fromBlock = this.circuit.getRandomBlock(this.random);
+                fromBlock = this.getRandomBlock();
             } while(this.isFixed(fromBlock));
 
             BlockType blockType = fromBlock.getType();
@@ -426,22 +628,21 @@ abstract class SimulatedAnnealingPlacer extends Placer {
                 } else if(!fromBlock.getSite().equals(toSite)) {
 
                     // Make sure toSite doesn't contain a block that is in a macro
-                    // (This is also not supported in VPR)
-                    boolean toBlocksInMacro = false;
+                    // (This is also not supported in VPR) or that can't be moved
+                    boolean toBlocksFixed = false;
                     int toColumn = toSite.getColumn();
                     int toMinRow = toSite.getRow();
                     int toMaxRow = toMinRow + freeAbove;
                     for(int toRow = toMinRow; toRow <= toMaxRow; toRow++) {
                         GlobalBlock toBlock = ((Site) this.circuit.getSite(toColumn, toRow)).getBlock();
-                        if(toBlock != null && toBlock.isInMacro()) {
-                            toBlocksInMacro = true;
+                        if(toBlock != null && (toBlock.isInMacro() || !this.isMovable(toBlock))) {
+                            toBlocksFixed = true;
                             break;
                         }
                     }
 
-                    if(!toBlocksInMacro) {
-                        Swap swap = new Swap(this.circuit, fromBlock, toSite);
-                        return swap;
+                    if(!toBlocksFixed) {
+                        return this.swap.set(this.circuit, fromBlock, toSite);
                     }
                 }
             }
@@ -453,6 +654,10 @@ abstract class SimulatedAnnealingPlacer extends Placer {
         return this.fixPins && block.getCategory() == BlockCategory.IO;
     }
 
+    private boolean isMovable(GlobalBlock block) {
+        return this.movableBlockSet == null || this.movableBlockSet.contains(block);
+    }
+
 
 
     protected final double updateTemperature(double alpha) {
@@ -6,6 +6,9 @@ import place.interfaces.Logger;
 import place.interfaces.Options;
 import place.visual.PlacementVisualizer;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.List;
 import java.util.Random;
 
@@ -47,7 +50,7 @@ public class SimulatedAnnealingPlacerTD extends SimulatedAnnealingPlacer {
         T_CALCULATE_COST = "calculate global cost";
 
 
-    private EfficientBoundingBoxNetCC calculator;
+    private FlatBoundingBoxNetCC calculator;
     private final TimingGraph timingGraph;
     private final double criticalityExponentStart, criticalityExponentEnd;
     private double cachedBBCost, cachedTDCost, previousBBCost, previousTDCost;
@@ -58,7 +61,7 @@ public class SimulatedAnnealingPlacerTD extends SimulatedAnnealingPlacer {
     public SimulatedAnnealingPlacerTD(Circuit circuit, Options options, Random random, Logger logger, PlacementVisualizer visualizer) {
         super(circuit, options, random, logger, visualizer);
 
-        this.calculator = new EfficientBoundingBoxNetCC(circuit);
+        this.calculator = new FlatBoundingBoxNetCC(circuit);
         this.timingGraph = circuit.getTimingGraph();
 
 
@@ -109,6 +112,32 @@ public class SimulatedAnnealingPlacerTD extends SimulatedAnnealingPlacer {
         this.updatePreviousCosts();
     }
 
+    @Override
+    protected void writeState(DataOutputStream output) throws IOException {
+        super.writeState(output);
+        this.calculator.writeState(output);
+
+        // The timing cost depends on the criticalities of the last
+        // update, which are not stored, so the costs themselves are
+        this.getCost();
+        output.writeDouble(this.cachedBBCost);
+        output.writeDouble(this.cachedTDCost);
+        output.writeDouble(this.previousBBCost);
+        output.writeDouble(this.previousTDCost);
+    }
+
+    @Override
+    protected void readState(DataInputStream input) throws IOException {
+        super.readState(input);
+        this.calculator.readState(input);
+
+        this.cachedBBCost = input.readDouble();
+        this.cachedTDCost = input.readDouble();
+        this.previousBBCost = input.readDouble();
+        this.previousTDCost = input.readDouble();
+        this.circuitChanged = false;
+    }
+
     private void updatePreviousCosts() {
         this.getCost();
 
@@ -5,6 +5,9 @@ import place.interfaces.Logger;
 import place.interfaces.Options;
 import place.visual.PlacementVisualizer;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.List;
 import java.util.Random;
 
@@ -16,13 +19,11 @@ public class SimulatedAnnealingPlacerWLD extends SimulatedAnnealingPlacer {
         SimulatedAnnealingPlacer.initOptions(options);
     }
 
-    private EfficientBoundingBoxNetCC calculator;
+    private FlatBoundingBoxNetCC calculator;
     private double cachedCost;
 
     public SimulatedAnnealingPlacerWLD(Circuit circuit, Options options, Random random, Logger logger, PlacementVisualizer visualizer) {
         super(circuit, options, random, logger, visualizer);
-
-        this.calculator = new EfficientBoundingBoxNetCC(circuit);
     }
 
     @Override
@@ -32,7 +33,31 @@ public class SimulatedAnnealingPlacerWLD extends SimulatedAnnealingPlacer {
 
     @Override
     protected void initializePlace() {
-        this.calculator.recalculateFromScratch();
+        if(this.calculator == null) {
+            // This isn't done in the constructor: the ECO placer only
+            // puts its new blocks on a site in initializeData()
+            this.calculator = new FlatBoundingBoxNetCC(this.circuit);
+        } else {
+            this.calculator.recalculateFromScratch();
+        }
+    }
+
+    @Override
+    protected void writeState(DataOutputStream output) throws IOException {
+        super.writeState(output);
+        this.calculator.writeState(output);
+    }
+
+    @Override
+    protected void readState(DataInputStream input) throws IOException {
+        super.readState(input);
+        this.calculator.readState(input);
+        this.circuitChanged = true;
+    }
+
+    @Override
+    protected boolean supportsParallelSwaps() {
+        return true;
     }
 
     @Override
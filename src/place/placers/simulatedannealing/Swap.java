@@ -1,20 +1,33 @@
 package place.placers.simulatedannealing;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import place.circuit.Circuit;
 import place.circuit.block.GlobalBlock;
 import place.circuit.block.Macro;
 import place.circuit.block.Site;
 import place.circuit.exceptions.PlacementException;
 
+/**
+ * A swap of one block, or of all the blocks in a macro, with the
+ * blocks on another (set of) site(s). A Swap object can be reused for
+ * many moves with set(), so no memory is allocated per move.
+ */
 public class Swap {
 
     private boolean applied = false;
-    private List<Site> sites1 = new ArrayList<>(), sites2 = new ArrayList<>();
+
+    private int numBlocks = 0;
+    private Site[] sites1 = new Site[1], sites2 = new Site[1];
+
+    public Swap() {
+    }
 
     public Swap(Circuit circuit, GlobalBlock block, Site site) {
+        this.set(circuit, block, site);
+    }
+
+    public Swap set(Circuit circuit, GlobalBlock block, Site site) {
+        this.applied = false;
+
         if(block.isInMacro()) {
             // block has to be the FIRST block in the macro
             Macro macro = block.getMacro();
@@ -27,33 +40,47 @@ public class Swap {
 
             int macroHeight = macro.getHeight();
             int blockSpace = macro.getBlockSpace();
+            this.ensureCapacity((macroHeight + blockSpace - 1) / blockSpace);
+
+            this.numBlocks = 0;
             for(int offset = 0; offset < macroHeight; offset += blockSpace) {
-                this.sites1.add((Site) circuit.getSite(column1, minRow1 + offset));
-                this.sites2.add((Site) circuit.getSite(column2, minRow2 + offset));
+                this.sites1[this.numBlocks] = (Site) circuit.getSite(column1, minRow1 + offset);
+                this.sites2[this.numBlocks] = (Site) circuit.getSite(column2, minRow2 + offset);
+                this.numBlocks++;
             }
 
         } else {
-            this.sites1.add((Site) block.getSite());
-            this.sites2.add(site);
+            this.sites1[0] = (Site) block.getSite();
+            this.sites2[0] = site;
+            this.numBlocks = 1;
+        }
+
+        return this;
+    }
+
+    private void ensureCapacity(int numBlocks) {
+        if(this.sites1.length < numBlocks) {
+            this.sites1 = new Site[numBlocks];
+            this.sites2 = new Site[numBlocks];
         }
     }
 
     public int getNumBlocks() {
-        return this.sites1.size();
+        return this.numBlocks;
     }
 
     public GlobalBlock getBlock1(int index) {
-        return this.sites1.get(index).getBlock();
+        return this.sites1[index].getBlock();
     }
     public GlobalBlock getBlock2(int index) {
-        return this.sites2.get(index).getBlock();
+        return this.sites2[index].getBlock();
     }
 
     public Site getSite1(int index) {
-        return this.sites1.get(index);
+        return this.sites1[index];
     }
     public Site getSite2(int index) {
-        return this.sites2.get(index);
+        return this.sites2[index];
     }
 
 
@@ -75,10 +102,10 @@ public class Swap {
     private void swap() throws PlacementException {
         int numBlocks = this.getNumBlocks();
         for(int i = 0; i < numBlocks; i++) {
-            Site site1 = this.sites1.get(i);
+            Site site1 = this.sites1[i];
             GlobalBlock block1 = site1.getBlock();
 
-            Site site2 = this.sites2.get(i);
+            Site site2 = this.sites2[i];
             GlobalBlock block2 = site2.getBlock();
 
 
@@ -0,0 +1,257 @@
+package place.placers.simulatedannealing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import place.circuit.Circuit;
+import place.circuit.architecture.BlockCategory;
+import place.circuit.architecture.BlockType;
+import place.circuit.block.GlobalBlock;
+import place.circuit.block.Macro;
+import place.circuit.block.Site;
+import place.circuit.exceptions.PlacementException;
+import place.circuit.pin.AbstractPin;
+import place.circuit.pin.GlobalPin;
+
+/**
+ * Index based copy of the parts of the circuit that don't change
+ * during simulated annealing: the blocks, their macros and the nets.
+ * Blocks and nets are identified by their index. A placement is
+ * stored in separate position and occupation arrays, so several
+ * placements can share the same SwapNetlist.
+ */
+class SwapNetlist {
+
+    final Circuit circuit;
+    final int width, height;
+    final int numBlocks, numNets;
+
+    final GlobalBlock[] blocks;
+    final boolean[] movable;
+    final int[] macroHead, macroHeight, macroBlockSpace;
+    final int[] blockHeight;
+    final int[][] blockColumns;
+
+    // Block to net and net to block adjacency, in compressed rows
+    final int[] blockNetStart, blockNets;
+    final int[] netBlockStart, netBlocks;
+    final double[] netWeight;
+
+    private final Map<GlobalBlock, Integer> blockIndexes;
+
+    SwapNetlist(Circuit circuit) {
+        this.circuit = circuit;
+        this.width = circuit.getWidth();
+        this.height = circuit.getHeight();
+
+        List<GlobalBlock> blockList = circuit.getGlobalBlocks();
+        this.numBlocks = blockList.size();
+        this.blocks = blockList.toArray(new GlobalBlock[this.numBlocks]);
+
+        this.blockIndexes = new IdentityHashMap<>(this.numBlocks);
+        for(int i = 0; i < this.numBlocks; i++) {
+            this.blockIndexes.put(this.blocks[i], i);
+        }
+
+        this.movable = new boolean[this.numBlocks];
+        this.macroHead = new int[this.numBlocks];
+        this.macroHeight = new int[this.numBlocks];
+        this.macroBlockSpace = new int[this.numBlocks];
+        this.blockHeight = new int[this.numBlocks];
+        this.blockColumns = new int[this.numBlocks][];
+
+        Map<BlockType, int[]> columnsPerBlockType = new HashMap<>();
+        for(int i = 0; i < this.numBlocks; i++) {
+            GlobalBlock block = this.blocks[i];
+            BlockType blockType = block.getType();
+
+            this.movable[i] = block.getCategory() != BlockCategory.IO;
+            this.blockHeight[i] = blockType.getHeight();
+
+            if(block.isInMacro()) {
+                Macro macro = block.getMacro();
+                this.macroHead[i] = this.blockIndexes.get(macro.getBlock(0));
+                this.macroHeight[i] = macro.getHeight();
+                this.macroBlockSpace[i] = macro.getBlockSpace();
+            } else {
+                this.macroHead[i] = i;
+                this.macroHeight[i] = 1;
+                this.macroBlockSpace[i] = 1;
+            }
+
+            if(this.movable[i]) {
+                int[] columns = columnsPerBlockType.get(blockType);
+                if(columns == null) {
+                    List<Integer> columnList = circuit.getColumnsPerBlockType(blockType);
+                    columns = new int[columnList.size()];
+                    for(int j = 0; j < columns.length; j++) {
+                        columns[j] = columnList.get(j);
+                    }
+                    Arrays.sort(columns);
+                    columnsPerBlockType.put(blockType, columns);
+                }
+                this.blockColumns[i] = columns;
+            }
+        }
+
+
+        // Build the nets in the same way as EfficientBoundingBoxNetCC
+        List<int[]> nets = new ArrayList<>();
+        int[] netSize = new int[this.numBlocks];
+        int[] stamp = new int[this.numBlocks];
+        int[] netBuffer = new int[16];
+        for(GlobalBlock block : this.blocks) {
+            for(AbstractPin abstractPin : block.getOutputPins()) {
+                GlobalPin pin = (GlobalPin) abstractPin;
+                int numSinks = pin.getNumSinks();
+                if(numSinks == 0 || pin.getSink(0).getPortType().isClock()) {
+                    continue;
+                }
+
+                int netIndex = nets.size() + 1;
+                if(netBuffer.length < numSinks + 1) {
+                    netBuffer = new int[numSinks + 1];
+                }
+
+                int size = 0;
+                int source = this.blockIndexes.get(pin.getOwner());
+                stamp[source] = netIndex;
+                netBuffer[size++] = source;
+
+                for(int i = 0; i < numSinks; i++) {
+                    int sink = this.blockIndexes.get(pin.getSink(i).getOwner());
+                    if(stamp[sink] != netIndex) {
+                        stamp[sink] = netIndex;
+                        netBuffer[size++] = sink;
+                    }
+                }
+
+                for(int i = 0; i < size; i++) {
+                    netSize[netBuffer[i]]++;
+                }
+                nets.add(Arrays.copyOf(netBuffer, size));
+            }
+        }
+
+        this.numNets = nets.size();
+        this.netWeight = new double[this.numNets];
+        this.netBlockStart = new int[this.numNets + 1];
+        for(int net = 0; net < this.numNets; net++) {
+            int[] netBlocks = nets.get(net);
+            this.netWeight[net] = EfficientBoundingBoxData.getWeight(netBlocks.length);
+            this.netBlockStart[net + 1] = this.netBlockStart[net] + netBlocks.length;
+        }
+
+        this.netBlocks = new int[this.netBlockStart[this.numNets]];
+        this.blockNetStart = new int[this.numBlocks + 1];
+        for(int i = 0; i < this.numBlocks; i++) {
+            this.blockNetStart[i + 1] = this.blockNetStart[i] + netSize[i];
+        }
+        this.blockNets = new int[this.blockNetStart[this.numBlocks]];
+
+        int[] blockNetPosition = Arrays.copyOf(this.blockNetStart, this.numBlocks);
+        for(int net = 0; net < this.numNets; net++) {
+            int[] netBlocks = nets.get(net);
+            System.arraycopy(netBlocks, 0, this.netBlocks, this.netBlockStart[net], netBlocks.length);
+
+            for(int block : netBlocks) {
+                this.blockNets[blockNetPosition[block]++] = net;
+            }
+        }
+    }
+
+
+    int getIndex(GlobalBlock block) {
+        return this.blockIndexes.get(block);
+    }
+
+    int siteIndex(int column, int row) {
+        return column * (this.height + 2) + row;
+    }
+
+    int numSites() {
+        return (this.width + 2) * (this.height + 2);
+    }
+
+
+    /**
+     * Copy the current placement of the circuit in the given arrays.
+     */
+    void loadPlacement(int[] column, int[] row, int[] occupation) {
+        Arrays.fill(occupation, -1);
+
+        for(int i = 0; i < this.numBlocks; i++) {
+            GlobalBlock block = this.blocks[i];
+            column[i] = block.getColumn();
+            row[i] = block.getRow();
+
+            if(this.movable[i]) {
+                occupation[this.siteIndex(column[i], row[i])] = i;
+            }
+        }
+    }
+
+    /**
+     * Move the blocks in the circuit to the positions in the given arrays.
+     */
+    void storePlacement(int[] column, int[] row) throws PlacementException {
+        // Remove all moved blocks first, so that no block is
+        // put on a site that hasn't been freed yet
+        List<Integer> movedBlocks = new ArrayList<>();
+        for(int i = 0; i < this.numBlocks; i++) {
+            GlobalBlock block = this.blocks[i];
+            if(block.getColumn() != column[i] || block.getRow() != row[i]) {
+                block.removeSite();
+                movedBlocks.add(i);
+            }
+        }
+
+        for(int i : movedBlocks) {
+            Site site = (Site) this.circuit.getSite(column[i], row[i], true);
+            if(site == null) {
+                throw new IllegalStateException(String.format(
+                        "Block %s was swapped to (%d, %d), which is not a site anchor",
+                        this.blocks[i].getName(), column[i], row[i]));
+            }
+            this.blocks[i].setSite(site);
+        }
+    }
+
+
+    double netCost(int net, int[] column, int[] row) {
+        int minX = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE;
+        int minY = Integer.MAX_VALUE, maxY = Integer.MIN_VALUE;
+        for(int i = this.netBlockStart[net]; i < this.netBlockStart[net + 1]; i++) {
+            int block = this.netBlocks[i];
+            int x = column[block];
+            int y = row[block];
+
+            if(x < minX) {
+                minX = x;
+            }
+            if(x > maxX) {
+                maxX = x;
+            }
+            if(y < minY) {
+                minY = y;
+            }
+            if(y > maxY) {
+                maxY = y;
+            }
+        }
+
+        return this.netWeight[net] * ((maxX - minX + 1) + (maxY - minY + 1));
+    }
+
+    double totalCost(int[] column, int[] row) {
+        double cost = 0;
+        for(int net = 0; net < this.numNets; net++) {
+            cost += this.netCost(net, column, row);
+        }
+        return cost;
+    }
+}
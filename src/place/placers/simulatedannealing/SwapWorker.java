@@ -0,0 +1,327 @@
+package place.placers.simulatedannealing;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+/**
+ * Does wirelength driven swaps on an index based placement, limited
+ * to the columns [minColumn, maxColumn]. The worker owns the blocks
+ * whose snapshot column lies in that range: their positions are read
+ * from and written to the live arrays. The positions of all other
+ * blocks are read from the snapshot arrays. A worker that owns the
+ * whole placement can use the same arrays for both.
+ */
+class SwapWorker implements Callable<Integer> {
+
+    private final SwapNetlist netlist;
+    private final int[] liveColumn, liveRow, occupation;
+    private final int[] snapshotColumn, snapshotRow;
+
+    private int minColumn, maxColumn;
+
+    private int[] movableBlocks = new int[16];
+    private int numMovable;
+
+    private Random random;
+    private int moves, rlim;
+    private double temperature;
+    private boolean greedy;
+
+    private final int[] netStamp;
+    private int stamp = 0;
+    private int[] affectedNets = new int[16];
+    private int numAffectedNets;
+
+    private int[] movedBlocks = new int[4], oldColumns = new int[4], oldRows = new int[4];
+    private int numMovedBlocks;
+    private int toColumn, toRow;
+
+    SwapWorker(SwapNetlist netlist, int[] liveColumn, int[] liveRow, int[] occupation, int[] snapshotColumn, int[] snapshotRow) {
+        this.netlist = netlist;
+        this.liveColumn = liveColumn;
+        this.liveRow = liveRow;
+        this.occupation = occupation;
+        this.snapshotColumn = snapshotColumn;
+        this.snapshotRow = snapshotRow;
+
+        this.netStamp = new int[netlist.numNets];
+    }
+
+    int getNumMovable() {
+        return this.numMovable;
+    }
+
+    void setColumns(int minColumn, int maxColumn) {
+        this.minColumn = minColumn;
+        this.maxColumn = maxColumn;
+
+        this.numMovable = 0;
+        for(int block = 0; block < this.netlist.numBlocks; block++) {
+            int column = this.snapshotColumn[block];
+            if(this.netlist.movable[block] && column >= minColumn && column <= maxColumn) {
+                if(this.numMovable == this.movableBlocks.length) {
+                    this.movableBlocks = Arrays.copyOf(this.movableBlocks, 2 * this.numMovable);
+                }
+                this.movableBlocks[this.numMovable++] = block;
+            }
+        }
+    }
+
+    void prepare(int moves, double temperature, int rlim, boolean greedy, long seed) {
+        this.moves = moves;
+        this.temperature = temperature;
+        this.rlim = rlim;
+        this.greedy = greedy;
+        this.random = new Random(seed);
+    }
+
+    @Override
+    public Integer call() {
+        int numSwaps = 0;
+        if(this.numMovable == 0) {
+            return numSwaps;
+        }
+
+        for(int i = 0; i < this.moves; i++) {
+            int fromBlock = this.findSwap();
+            if(fromBlock < 0) {
+                continue;
+            }
+
+            double oldCost = this.collectAffectedNets(fromBlock);
+            this.applySwap(fromBlock);
+            double deltaCost = this.calculateCost() - oldCost;
+
+            if(deltaCost <= 0 || (!this.greedy && this.random.nextDouble() < Math.exp(-deltaCost / this.temperature))) {
+                numSwaps++;
+            } else {
+                this.revertSwap();
+            }
+        }
+
+        return numSwaps;
+    }
+
+
+    private boolean owns(int block) {
+        int column = this.snapshotColumn[block];
+        return column >= this.minColumn && column <= this.maxColumn;
+    }
+    private int column(int block) {
+        return this.owns(block) ? this.liveColumn[block] : this.snapshotColumn[block];
+    }
+    private int row(int block) {
+        return this.owns(block) ? this.liveRow[block] : this.snapshotRow[block];
+    }
+
+
+    /**
+     * Find a block and a target site in the columns of this worker.
+     * This follows SimulatedAnnealingPlacer.findSwap. Returns the
+     * index of the (first macro) block, or -1 if no swap was found.
+     * The target site is stored in toColumn and toRow.
+     */
+    private int findSwap() {
+        SwapNetlist netlist = this.netlist;
+
+        for(int attempt = 0; attempt < 10; attempt++) {
+            int fromBlock = netlist.macroHead[this.movableBlocks[this.random.nextInt(this.numMovable)]];
+            int freeAbove = netlist.macroHeight[fromBlock] - 1;
+            int blockHeight = netlist.blockHeight[fromBlock];
+
+            int column = this.liveColumn[fromBlock];
+            int row = this.liveRow[fromBlock];
+            int minRow = Math.max(1, row - this.rlim);
+            int maxRow = Math.min(netlist.height - freeAbove, row + this.rlim);
+
+            // Only rows with a site anchor: the top site of a column of tall blocks may not fit
+            int minRowIndex = (int) Math.ceil((minRow - 1.0) / blockHeight);
+            int maxRowIndex = Math.min((maxRow - 1) / blockHeight, (netlist.height - blockHeight) / blockHeight);
+            if(maxRowIndex < minRowIndex) {
+                continue;
+            }
+
+            int[] columns = netlist.blockColumns[fromBlock];
+            int minColumnIndex = lowerBound(columns, Math.max(this.minColumn, column - this.rlim));
+            int maxColumnIndex = lowerBound(columns, Math.min(this.maxColumn, column + this.rlim) + 1) - 1;
+            if(maxColumnIndex == minColumnIndex && maxRowIndex == minRowIndex) {
+                continue;
+            }
+
+            int maxTries = Math.min(4 * this.rlim * this.rlim / blockHeight, 10);
+            for(int tries = 0; tries < maxTries; tries++) {
+                int toColumn = columns[minColumnIndex + this.random.nextInt(maxColumnIndex + 1 - minColumnIndex)];
+                int toRow = 1 + blockHeight * (minRowIndex + this.random.nextInt(maxRowIndex + 1 - minRowIndex));
+
+                if(toColumn == column && toRow == row) {
+                    continue;
+                }
+
+                // Make sure the target sites don't contain a block that is in a macro
+                boolean toBlocksInMacro = false;
+                for(int toBlockRow = toRow; toBlockRow <= toRow + freeAbove; toBlockRow += blockHeight) {
+                    int toBlock = this.occupation[netlist.siteIndex(toColumn, toBlockRow)];
+                    if(toBlock >= 0 && netlist.macroHeight[toBlock] > 1) {
+                        toBlocksInMacro = true;
+                        break;
+                    }
+                }
+
+                if(!toBlocksInMacro) {
+                    this.toColumn = toColumn;
+                    this.toRow = toRow;
+                    return fromBlock;
+                }
+            }
+        }
+
+        return -1;
+    }
+
+    private double collectAffectedNets(int fromBlock) {
+        SwapNetlist netlist = this.netlist;
+
+        this.stamp++;
+        this.numAffectedNets = 0;
+        this.numMovedBlocks = 0;
+
+        int fromColumn = this.liveColumn[fromBlock];
+        int fromRow = this.liveRow[fromBlock];
+        int macroHeight = netlist.macroHeight[fromBlock];
+        int blockSpace = netlist.macroBlockSpace[fromBlock];
+
+        double cost = 0;
+        for(int offset = 0; offset < macroHeight; offset += blockSpace) {
+            int block1 = this.occupation[netlist.siteIndex(fromColumn, fromRow + offset)];
+            int block2 = this.occupation[netlist.siteIndex(this.toColumn, this.toRow + offset)];
+
+            cost += this.addAffectedNets(block1);
+            if(block2 >= 0) {
+                cost += this.addAffectedNets(block2);
+            }
+        }
+
+        return cost;
+    }
+
+    private double addAffectedNets(int block) {
+        SwapNetlist netlist = this.netlist;
+
+        double cost = 0;
+        for(int i = netlist.blockNetStart[block]; i < netlist.blockNetStart[block + 1]; i++) {
+            int net = netlist.blockNets[i];
+            if(this.netStamp[net] != this.stamp) {
+                this.netStamp[net] = this.stamp;
+
+                if(this.numAffectedNets == this.affectedNets.length) {
+                    this.affectedNets = Arrays.copyOf(this.affectedNets, 2 * this.numAffectedNets);
+                }
+                this.affectedNets[this.numAffectedNets++] = net;
+
+                cost += this.netCost(net);
+            }
+        }
+
+        return cost;
+    }
+
+    private double calculateCost() {
+        double cost = 0;
+        for(int i = 0; i < this.numAffectedNets; i++) {
+            cost += this.netCost(this.affectedNets[i]);
+        }
+        return cost;
+    }
+
+    private double netCost(int net) {
+        SwapNetlist netlist = this.netlist;
+
+        int minX = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE;
+        int minY = Integer.MAX_VALUE, maxY = Integer.MIN_VALUE;
+        for(int i = netlist.netBlockStart[net]; i < netlist.netBlockStart[net + 1]; i++) {
+            int block = netlist.netBlocks[i];
+            int x = this.column(block);
+            int y = this.row(block);
+
+            if(x < minX) {
+                minX = x;
+            }
+            if(x > maxX) {
+                maxX = x;
+            }
+            if(y < minY) {
+                minY = y;
+            }
+            if(y > maxY) {
+                maxY = y;
+            }
+        }
+
+        return netlist.netWeight[net] * ((maxX - minX + 1) + (maxY - minY + 1));
+    }
+
+
+    private void applySwap(int fromBlock) {
+        SwapNetlist netlist = this.netlist;
+
+        int fromColumn = this.liveColumn[fromBlock];
+        int fromRow = this.liveRow[fromBlock];
+        int macroHeight = netlist.macroHeight[fromBlock];
+        int blockSpace = netlist.macroBlockSpace[fromBlock];
+
+        for(int offset = 0; offset < macroHeight; offset += blockSpace) {
+            int site1 = netlist.siteIndex(fromColumn, fromRow + offset);
+            int site2 = netlist.siteIndex(this.toColumn, this.toRow + offset);
+            int block1 = this.occupation[site1];
+            int block2 = this.occupation[site2];
+
+            this.moveBlock(block1, this.toColumn, this.toRow + offset);
+            this.occupation[site2] = block1;
+
+            if(block2 >= 0) {
+                this.moveBlock(block2, fromColumn, fromRow + offset);
+            }
+            this.occupation[site1] = block2;
+        }
+    }
+
+    private void moveBlock(int block, int column, int row) {
+        if(this.numMovedBlocks == this.movedBlocks.length) {
+            int length = 2 * this.numMovedBlocks;
+            this.movedBlocks = Arrays.copyOf(this.movedBlocks, length);
+            this.oldColumns = Arrays.copyOf(this.oldColumns, length);
+            this.oldRows = Arrays.copyOf(this.oldRows, length);
+        }
+
+        this.movedBlocks[this.numMovedBlocks] = block;
+        this.oldColumns[this.numMovedBlocks] = this.liveColumn[block];
+        this.oldRows[this.numMovedBlocks] = this.liveRow[block];
+        this.numMovedBlocks++;
+
+        this.liveColumn[block] = column;
+        this.liveRow[block] = row;
+    }
+
+    private void revertSwap() {
+        SwapNetlist netlist = this.netlist;
+
+        // Clear the new sites first: a block can move to the old site of another moved block
+        for(int i = 0; i < this.numMovedBlocks; i++) {
+            int block = this.movedBlocks[i];
+            this.occupation[netlist.siteIndex(this.liveColumn[block], this.liveRow[block])] = -1;
+        }
+
+        for(int i = 0; i < this.numMovedBlocks; i++) {
+            int block = this.movedBlocks[i];
+            this.liveColumn[block] = this.oldColumns[i];
+            this.liveRow[block] = this.oldRows[i];
+            this.occupation[netlist.siteIndex(this.oldColumns[i], this.oldRows[i])] = block;
+        }
+    }
+
+    private static int lowerBound(int[] values, int value) {
+        int index = Arrays.binarySearch(values, value);
+        return index >= 0 ? index : -index - 1;
+    }
+}
@@ -1,71 +1,27 @@
 package place.visual;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Set;
+import java.util.List;
 
 import place.circuit.Circuit;
 import place.circuit.block.GlobalBlock;
-import place.placers.analytical.AnalyticalAndGradientPlacer.NetBlock;
 
 class Placement {
 
     private String name;
     private Circuit circuit;
-    private int numBlocks;
+    private List<GlobalBlock> blocks;
 
-    private Map<GlobalBlock, Coordinate> blocks;
+    private float[] x, y;
     private double bbCost;
 
-    Placement(String name, Circuit circuit) {
-        this.initializeData(name, circuit);
-
-        for(GlobalBlock block : this.circuit.getGlobalBlocks()) {
-            this.blocks.put(block, new Coordinate(block.getColumn(), block.getRow()));
-        }
-
-        this.bbCost = -1.0;
-    }
-
-
-    Placement(String name, Circuit circuit, Map<GlobalBlock, NetBlock> blockIndexes, int[] x, int[] y, double bbCost) {
-        this.initializeData(name, circuit);
-
-        for(Map.Entry<GlobalBlock, NetBlock> blockIndexEntry : blockIndexes.entrySet()) {
-            GlobalBlock block = blockIndexEntry.getKey();
-            NetBlock netBlock = blockIndexEntry.getValue();
-
-            int index = netBlock.getBlockIndex();
-            float offset = netBlock.getOffset();
-
-            this.blocks.put(block, new Coordinate(x[index], y[index] + Math.ceil(offset)));
-        }
-
-        this.bbCost = bbCost;
-    }
-
-    Placement(String name, Circuit circuit, Map<GlobalBlock, NetBlock> blockIndexes, double[] x, double[] y, double bbCost) {
-        this.initializeData(name, circuit);
-
-        for(Map.Entry<GlobalBlock, NetBlock> blockIndexEntry : blockIndexes.entrySet()) {
-            GlobalBlock block = blockIndexEntry.getKey();
-            NetBlock netBlock = blockIndexEntry.getValue();
-
-            int index = netBlock.getBlockIndex();
-            float offset = netBlock.getOffset();
-
-            this.blocks.put(block, new Coordinate(x[index], y[index] + Math.ceil(offset)));
-        }
-
-        this.bbCost = bbCost;
-    }
-
-    private void initializeData(String name, Circuit circuit) {
-        this.name = circuit.getName() + " | " + name;
+    Placement(String name, Circuit circuit, float[] x, float[] y, double bbCost) {
+        this.name = name;
         this.circuit = circuit;
-        this.numBlocks = circuit.getGlobalBlocks().size();
+        this.blocks = circuit.getGlobalBlocks();
 
-        this.blocks = new HashMap<GlobalBlock, Coordinate>();
+        this.x = x;
+        this.y = y;
+        this.bbCost = bbCost;
     }
 
 
@@ -74,7 +30,7 @@ class Placement {
         return this.name;
     }
     public int getNumBlocks() {
-        return this.numBlocks;
+        return this.blocks.size();
     }
     public int getWidth() {
         return this.circuit.getWidth();
@@ -83,9 +39,19 @@ class Placement {
         return this.circuit.getHeight();
     }
 
-    public Set<Map.Entry<GlobalBlock, Coordinate>> blocks() {
-        return this.blocks.entrySet();
+    public GlobalBlock getBlock(int index) {
+        return this.blocks.get(index);
+    }
+    public boolean hasCoordinate(int index) {
+        return !Float.isNaN(this.x[index]);
     }
+    public double getX(int index) {
+        return this.x[index];
+    }
+    public double getY(int index) {
+        return this.y[index];
+    }
+
     public boolean hasBBCost(){
     	return !(this.bbCost < 0.0);
     }
@@ -0,0 +1,328 @@
+package place.visual;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import place.circuit.Circuit;
+import place.circuit.block.GlobalBlock;
+import place.placers.analytical.AnalyticalAndGradientPlacer.NetBlock;
+
+/**
+ * All placements that were added to the visualizer. The first
+ * placement is stored completely, every next placement only stores the
+ * blocks that moved since its base: the previous placement or the one
+ * before that, whichever differs least. The gradient placers alternate
+ * linear and legal placements, so a legal placement is usually based on
+ * the previous legal placement. A placement is stored completely as a
+ * keyframe when most blocks moved, or when it would be rebuilt from more
+ * than KEYFRAME_INTERVAL deltas.
+ *
+ * Blocks are identified by their index in circuit.getGlobalBlocks().
+ * A block without a position has NaN coordinates and is not drawn.
+ */
+class PlacementHistory {
+
+    private static final int MAGIC = 0x504c5654, VERSION = 1;
+    private static final int KEYFRAME_INTERVAL = 32;
+
+    private final Circuit circuit;
+    private final List<GlobalBlock> blocks;
+    private final int numBlocks;
+
+    private final List<Frame> frames = new ArrayList<Frame>();
+
+    // The coordinates of the last two placements that were added, and of the placement that is being added
+    private float[] previousX, previousY;
+    private float[] beforePreviousX, beforePreviousY;
+    private float[] newX, newY;
+
+    // The block index of every global block in the last map that was added, -1 if it isn't in the map
+    private Map<GlobalBlock, NetBlock> cachedBlockIndexes;
+    private int[] netBlockIndexes;
+    private float[] netBlockOffsets;
+
+    PlacementHistory(Circuit circuit) {
+        this.circuit = circuit;
+        this.blocks = circuit.getGlobalBlocks();
+        this.numBlocks = this.blocks.size();
+
+        this.previousX = new float[this.numBlocks];
+        this.previousY = new float[this.numBlocks];
+        this.beforePreviousX = new float[this.numBlocks];
+        this.beforePreviousY = new float[this.numBlocks];
+        this.newX = new float[this.numBlocks];
+        this.newY = new float[this.numBlocks];
+    }
+
+
+    void add(String name) {
+        for(int i = 0; i < this.numBlocks; i++) {
+            GlobalBlock block = this.blocks.get(i);
+            if(block.getSite() == null) {
+                this.newX[i] = Float.NaN;
+                this.newY[i] = Float.NaN;
+            } else {
+                this.newX[i] = block.getColumn();
+                this.newY[i] = block.getRow();
+            }
+        }
+
+        this.addFrame(name, -1.0);
+    }
+
+    void add(String name, Map<GlobalBlock, NetBlock> blockIndexes, int[] x, int[] y, double bbCost) {
+        this.cacheBlockIndexes(blockIndexes);
+
+        for(int i = 0; i < this.numBlocks; i++) {
+            int index = this.netBlockIndexes[i];
+            if(index < 0) {
+                this.newX[i] = Float.NaN;
+                this.newY[i] = Float.NaN;
+            } else {
+                this.newX[i] = x[index];
+                this.newY[i] = y[index] + this.netBlockOffsets[i];
+            }
+        }
+
+        this.addFrame(name, bbCost);
+    }
+
+    void add(String name, Map<GlobalBlock, NetBlock> blockIndexes, double[] x, double[] y, double bbCost) {
+        this.cacheBlockIndexes(blockIndexes);
+
+        for(int i = 0; i < this.numBlocks; i++) {
+            int index = this.netBlockIndexes[i];
+            if(index < 0) {
+                this.newX[i] = Float.NaN;
+                this.newY[i] = Float.NaN;
+            } else {
+                this.newX[i] = (float) x[index];
+                this.newY[i] = (float) (y[index] + this.netBlockOffsets[i]);
+            }
+        }
+
+        this.addFrame(name, bbCost);
+    }
+
+    private void cacheBlockIndexes(Map<GlobalBlock, NetBlock> blockIndexes) {
+        // The placers pass the same map every time
+        if(blockIndexes == this.cachedBlockIndexes) {
+            return;
+        }
+
+        this.cachedBlockIndexes = blockIndexes;
+        this.netBlockIndexes = new int[this.numBlocks];
+        this.netBlockOffsets = new float[this.numBlocks];
+
+        for(int i = 0; i < this.numBlocks; i++) {
+            NetBlock netBlock = blockIndexes.get(this.blocks.get(i));
+            if(netBlock == null) {
+                this.netBlockIndexes[i] = -1;
+            } else {
+                this.netBlockIndexes[i] = netBlock.getBlockIndex();
+                this.netBlockOffsets[i] = (float) Math.ceil(netBlock.getOffset());
+            }
+        }
+    }
+
+    private void addFrame(String name, double bbCost) {
+        String fullName = this.circuit.getName() + " | " + name;
+        int frameIndex = this.frames.size();
+
+        int base = frameIndex - 1;
+        float[] baseX = this.previousX, baseY = this.previousY;
+        int numMoved = this.numMoved(baseX, baseY);
+
+        if(frameIndex >= 2) {
+            int numMovedBeforePrevious = this.numMoved(this.beforePreviousX, this.beforePreviousY);
+            if(numMovedBeforePrevious < numMoved) {
+                base = frameIndex - 2;
+                baseX = this.beforePreviousX;
+                baseY = this.beforePreviousY;
+                numMoved = numMovedBeforePrevious;
+            }
+        }
+
+        // A delta takes 12 bytes per moved block, a keyframe 8 bytes per block
+        int chainLength = base < 0 ? 0 : this.frames.get(base).chainLength + 1;
+        boolean keyframe = base < 0
+                || chainLength > KEYFRAME_INTERVAL
+                || 3 * numMoved >= 2 * this.numBlocks;
+
+        Frame frame;
+        if(keyframe) {
+            frame = new Frame(fullName, bbCost, -1, 0, null, this.newX.clone(), this.newY.clone());
+
+        } else {
+            int[] movedBlocks = new int[numMoved];
+            float[] movedX = new float[numMoved];
+            float[] movedY = new float[numMoved];
+
+            int j = 0;
+            for(int i = 0; i < this.numBlocks; i++) {
+                if(this.moved(i, baseX, baseY)) {
+                    movedBlocks[j] = i;
+                    movedX[j] = this.newX[i];
+                    movedY[j] = this.newY[i];
+                    j++;
+                }
+            }
+
+            frame = new Frame(fullName, bbCost, base, chainLength, movedBlocks, movedX, movedY);
+        }
+
+        this.frames.add(frame);
+
+        // Rotate the coordinate arrays, the oldest ones are overwritten by the next placement
+        float[] oldestX = this.beforePreviousX, oldestY = this.beforePreviousY;
+        this.beforePreviousX = this.previousX;
+        this.beforePreviousY = this.previousY;
+        this.previousX = this.newX;
+        this.previousY = this.newY;
+        this.newX = oldestX;
+        this.newY = oldestY;
+    }
+
+    private int numMoved(float[] baseX, float[] baseY) {
+        int numMoved = 0;
+        for(int i = 0; i < this.numBlocks; i++) {
+            if(this.moved(i, baseX, baseY)) {
+                numMoved++;
+            }
+        }
+        return numMoved;
+    }
+    private boolean moved(int block, float[] baseX, float[] baseY) {
+        return Float.floatToIntBits(this.newX[block]) != Float.floatToIntBits(baseX[block])
+                || Float.floatToIntBits(this.newY[block]) != Float.floatToIntBits(baseY[block]);
+    }
+
+
+
+    int size() {
+        return this.frames.size();
+    }
+    String getName(int index) {
+        return this.frames.get(index).name;
+    }
+    double getBBCost(int index) {
+        return this.frames.get(index).bbCost;
+    }
+    boolean hasBBCost(int index) {
+        return !(this.frames.get(index).bbCost < 0.0);
+    }
+
+    /**
+     * Rebuild a placement from its keyframe and the deltas in between.
+     */
+    Placement getPlacement(int index) {
+        Frame frame = this.frames.get(index);
+
+        // The frames from the keyframe to the requested placement
+        int[] chain = new int[frame.chainLength + 1];
+        int chainIndex = index;
+        for(int i = frame.chainLength; i >= 0; i--) {
+            chain[i] = chainIndex;
+            chainIndex = this.frames.get(chainIndex).base;
+        }
+
+        Frame keyframe = this.frames.get(chain[0]);
+        float[] x = keyframe.x.clone();
+        float[] y = keyframe.y.clone();
+
+        for(int i = 1; i < chain.length; i++) {
+            Frame delta = this.frames.get(chain[i]);
+            for(int j = 0; j < delta.movedBlocks.length; j++) {
+                int block = delta.movedBlocks[j];
+                x[block] = delta.x[j];
+                y[block] = delta.y[j];
+            }
+        }
+
+        return new Placement(frame.name, this.circuit, x, y, frame.bbCost);
+    }
+
+
+    /**
+     * Write all placements to a binary trace file. The file starts with
+     * the circuit size and the name and type of every global block. Then
+     * follows every placement: its name, its bounding box cost (-1 if
+     * unknown) and the index of its base placement. For a keyframe the
+     * base is -1 and the coordinates of all blocks follow. Otherwise the
+     * number of blocks that moved since the base follows, and the index
+     * and coordinates of each of them. Coordinates are floats, NaN for
+     * blocks without a position.
+     */
+    void write(File file) throws IOException {
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+
+        try {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+
+            output.writeUTF(this.circuit.getName());
+            output.writeInt(this.circuit.getWidth());
+            output.writeInt(this.circuit.getHeight());
+
+            output.writeInt(this.numBlocks);
+            for(GlobalBlock block : this.blocks) {
+                output.writeUTF(block.getName());
+                output.writeUTF(block.getType().getName());
+            }
+
+            output.writeInt(this.frames.size());
+            for(Frame frame : this.frames) {
+                output.writeUTF(frame.name);
+                output.writeDouble(frame.bbCost);
+
+                output.writeInt(frame.base);
+                if(frame.movedBlocks == null) {
+                    for(int i = 0; i < this.numBlocks; i++) {
+                        output.writeFloat(frame.x[i]);
+                        output.writeFloat(frame.y[i]);
+                    }
+
+                } else {
+                    output.writeInt(frame.movedBlocks.length);
+                    for(int i = 0; i < frame.movedBlocks.length; i++) {
+                        output.writeInt(frame.movedBlocks[i]);
+                        output.writeFloat(frame.x[i]);
+                        output.writeFloat(frame.y[i]);
+                    }
+                }
+            }
+
+        } finally {
+            output.close();
+        }
+    }
+
+
+    private static class Frame {
+        final String name;
+        final double bbCost;
+
+        // The frame this frame is a delta of, and the number of deltas since the keyframe. -1 and 0 for a keyframe
+        final int base, chainLength;
+
+        // null for a keyframe, otherwise the indexes of the blocks that moved
+        final int[] movedBlocks;
+        final float[] x, y;
+
+        Frame(String name, double bbCost, int base, int chainLength, int[] movedBlocks, float[] x, float[] y) {
+            this.name = name;
+            this.bbCost = bbCost;
+            this.base = base;
+            this.chainLength = chainLength;
+            this.movedBlocks = movedBlocks;
+            this.x = x;
+            this.y = y;
+        }
+    }
+}
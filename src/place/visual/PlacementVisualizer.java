@@ -6,16 +6,21 @@ import place.interfaces.Logger;
 import place.placers.analytical.AnalyticalAndGradientPlacer.NetBlock;
 
 import java.awt.BorderLayout;
+import java.awt.Color;
 import java.awt.Container;
 import java.awt.Dimension;
 import java.awt.Frame;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
 import java.awt.Toolkit;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.util.ArrayList;
-import java.util.List;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
 import java.util.Map;
 
+import javax.imageio.ImageIO;
 import javax.swing.BoxLayout;
 import javax.swing.JButton;
 import javax.swing.JFrame;
@@ -24,6 +29,9 @@ import javax.swing.JPanel;
 
 public class PlacementVisualizer {
 
+    // The number of pixels per site in exported images
+    private static final int IMAGE_BLOCK_SIZE = 8;
+
     private Logger logger;
 
     private JFrame frame;
@@ -34,7 +42,8 @@ public class PlacementVisualizer {
     private Circuit circuit;
 
     private int currentPlacement;
-    private List<Placement> placements = new ArrayList<Placement>();
+    private PlacementHistory placements;
+    private boolean finalPlacementAdded = false;
     private double[] bbCost;
 
     public PlacementVisualizer(Logger logger) {
@@ -44,31 +53,113 @@ public class PlacementVisualizer {
     public void setCircuit(Circuit circuit) {
         this.enabled = true;
         this.circuit = circuit;
+        this.placements = new PlacementHistory(circuit);
     }
 
     public void addPlacement(String name) {
         if(this.enabled) {
-            this.placements.add(new Placement(name, this.circuit));
+            this.placements.add(name);
         }
     }
     public void addPlacement(String name, Map<GlobalBlock, NetBlock> blockIndexes, int[] x, int[] y, double bbCost) {
         if(this.enabled) {
-            this.placements.add(new Placement(name, this.circuit, blockIndexes, x, y, bbCost));
+            this.placements.add(name, blockIndexes, x, y, bbCost);
         }
     }
     public void addPlacement(String name, Map<GlobalBlock, NetBlock> blockIndexes, double[] x, double[] y, double bbCost) {
         if(this.enabled) {
-            this.placements.add(new Placement(name, this.circuit, blockIndexes, x, y, bbCost));
+            this.placements.add(name, blockIndexes, x, y, bbCost);
+        }
+    }
+
+    private void addFinalPlacement() {
+        if(!this.finalPlacementAdded) {
+            this.addPlacement("Final placement");
+            this.finalPlacementAdded = true;
+        }
+    }
+
+
+    /**
+     * Write all placements without opening a window, so this also works
+     * on a machine without a display. Every placement is drawn to a PNG
+     * image in the image folder, and the complete history is written to
+     * the trace file. Either of them can be null.
+     */
+    public void exportPlacements(File imageFolder, File traceFile) {
+        if(!this.enabled) {
+            return;
+        }
+
+        this.addFinalPlacement();
+
+        if(imageFolder != null) {
+            try {
+                this.writeImages(imageFolder);
+            } catch(IOException error) {
+                this.logger.raise("Failed to write the placement images to " + imageFolder, error);
+            }
+        }
+
+        if(traceFile != null) {
+            try {
+                this.placements.write(traceFile);
+            } catch(IOException error) {
+                this.logger.raise("Failed to write the placement trace " + traceFile, error);
+            }
         }
     }
 
+    private void writeImages(File folder) throws IOException {
+        folder.mkdirs();
+
+        int width = (this.circuit.getWidth() + 2) * IMAGE_BLOCK_SIZE + 1;
+        int height = (this.circuit.getHeight() + 2) * IMAGE_BLOCK_SIZE + 1;
+
+        PlacementPanel panel = new PlacementPanel(this.logger);
+        panel.setBackground(Color.WHITE);
+        panel.setSize(width, height);
+
+        // The name of the placement is written above the circuit
+        Graphics2D titleGraphics = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB).createGraphics();
+        int titleHeight = titleGraphics.getFontMetrics().getHeight() + 4;
+        titleGraphics.dispose();
+
+        BufferedImage image = new BufferedImage(width, height + titleHeight, BufferedImage.TYPE_INT_RGB);
+
+        int numPlacements = this.placements.size();
+        for(int index = 0; index < numPlacements; index++) {
+            Placement placement = this.placements.getPlacement(index);
+            panel.setPlacement(placement);
+
+            Graphics2D g = image.createGraphics();
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, width, titleHeight);
+            g.setColor(Color.BLACK);
+            g.drawString(placement.getName(), 2, g.getFontMetrics().getAscent() + 2);
+
+            g.translate(0, titleHeight);
+            panel.printAll(g);
+            g.dispose();
+
+            ImageIO.write(image, "png", new File(folder, String.format("placement_%04d.png", index)));
+        }
+
+        this.logger.printf("Wrote %d placement images to %s\n", numPlacements, folder);
+    }
+
 
     public void createAndDrawGUI() {
         if(!this.enabled) {
             return;
         }
 
-        this.addPlacement("Final placement");
+        if(GraphicsEnvironment.isHeadless()) {
+            this.logger.println("No display available, the placement visualizer is not shown");
+            return;
+        }
+
+        this.addFinalPlacement();
 
 
         this.frame = new JFrame("Placement visualizer");
@@ -98,8 +189,8 @@ public class PlacementVisualizer {
         this.placementLabel = new JLabel("");
         titlePanel.add(this.placementLabel, BorderLayout.CENTER);
 
-        for(Placement placement:this.placements){
-        	if(placement.getName().contains("linear")){
+        for(int index = 0; index < this.placements.size(); index++){
+        	if(this.placements.getName(index).contains("linear")){
                 JButton previousFastButton = new JButton("<<<");
                 previousFastButton.addActionListener(new NavigateActionListener(this, -3));
                 buttonPanel.add(previousFastButton, BorderLayout.CENTER);
@@ -119,8 +210,8 @@ public class PlacementVisualizer {
         nextGradientButton.addActionListener(new NavigateActionListener(this, 1));
         buttonPanel.add(nextGradientButton, BorderLayout.CENTER);
 
-        for(Placement placement:this.placements){
-        	if(placement.getName().contains("linear")){
+        for(int index = 0; index < this.placements.size(); index++){
+        	if(this.placements.getName(index).contains("linear")){
                 JButton nextButton = new JButton(">>");
                 nextButton.addActionListener(new NavigateActionListener(this, 2));
                 buttonPanel.add(nextButton, BorderLayout.CENTER);
@@ -139,25 +230,27 @@ public class PlacementVisualizer {
 
         
         //BB Cost plot
-        for(Placement placement:this.placements){
-        	if(placement.getName().contains("linear")){
-        		if(placement.hasBBCost()){
+        for(int index = 0; index < this.placements.size(); index++){
+        	if(this.placements.getName(index).contains("linear")){
+        		if(this.placements.hasBBCost(index)){
                     JButton enablePlot = new JButton("Plot");
                     enablePlot.addActionListener(new PlotActionListener(this));
                     buttonPanel.add(enablePlot, BorderLayout.CENTER);
                     
                     int bbPlacements = 0;
-                    for(Placement bbPlacement:this.placements){
-                    	if(bbPlacement.getName().contains("linear") || bbPlacement.getName().contains("legal")){
+                    for(int bbIndex = 0; bbIndex < this.placements.size(); bbIndex++){
+                    	String name = this.placements.getName(bbIndex);
+                    	if(name.contains("linear") || name.contains("legal")){
                     		bbPlacements += 1;
                     	}
                     }
                     this.bbCost = new double[bbPlacements];
                     
                     int i = 0;
-                    for(Placement bbPlacement:this.placements){
-                    	if(bbPlacement.getName().contains("linear") || bbPlacement.getName().contains("legal")){
-                    		this.bbCost[i] = bbPlacement.getBBCost();
+                    for(int bbIndex = 0; bbIndex < this.placements.size(); bbIndex++){
+                    	String name = this.placements.getName(bbIndex);
+                    	if(name.contains("linear") || name.contains("legal")){
+                    		this.bbCost[i] = this.placements.getBBCost(bbIndex);
                     		i += 1;
                     	}
                     }
@@ -175,10 +268,10 @@ public class PlacementVisualizer {
     private void drawPlacement(int index) {
         this.currentPlacement = index;
 
-        Placement placement = this.placements.get(index);
+        Placement placement = this.placements.getPlacement(index);
 
         this.placementLabel.setText(placement.getName());
-        this.placementPanel.setPlacement(this.placements.get(index));
+        this.placementPanel.setPlacement(placement);
     }
 
     void navigate(int type, int step) {
@@ -220,7 +313,7 @@ public class PlacementVisualizer {
     }
     
     PlacementType getPlacementType(int index){
-    	String name = this.placements.get(index).getName();
+    	String name = this.placements.getName(index);
     	if(name.contains("gradient descent")){
     		return PlacementType.GRADIENT_DESCENT;
     	}else if(name.contains("gradient_expand")){
@@ -117,6 +117,32 @@ public class Architecture implements Serializable {
     }
 
 
+    /**
+     * Restore the parsed architecture and delay tables from the cache,
+     * instead of parsing the architecture file. Returns false if the
+     * cache has no entry for these files.
+     */
+    public boolean loadFromCache(ArchitectureCache cache, File lookupDumpFile) throws IOException {
+        Architecture cached = cache.load(this.architectureFile, lookupDumpFile);
+        if(cached == null) {
+            return false;
+        }
+
+        this.autoSize = cached.autoSize;
+        this.autoRatio = cached.autoRatio;
+        this.width = cached.width;
+        this.height = cached.height;
+        this.ioCapacity = cached.ioCapacity;
+        this.delayTables = cached.delayTables;
+
+        return true;
+    }
+
+    public void storeInCache(ArchitectureCache cache, File lookupDumpFile) throws IOException {
+        cache.store(this, this.architectureFile, lookupDumpFile);
+    }
+
+
     private void processLayout(Element root) {
         Element layoutElement = this.getFirstChild(root, "layout");
 
@@ -0,0 +1,116 @@
+package route.circuit.architecture;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Disk cache for parsed architectures. An entry contains the
+ * serialized Architecture, including the BlockTypeData and
+ * PortTypeData singletons and the delay tables. Entries are keyed
+ * by a hash of the architecture file and the lookup dump file, so
+ * an entry is never used for another device or another set of
+ * delay tables.
+ */
+public class ArchitectureCache {
+
+    // Increase this when the serialized form of the architecture changes
+    private static final int VERSION = 1;
+    private static final String EXTENSION = ".route.arch";
+
+    private final File directory;
+
+    public ArchitectureCache(File directory) {
+        this.directory = directory;
+    }
+
+
+    /**
+     * Returns the cached architecture for this combination of files,
+     * or null if there is no valid cache entry. Loading an entry
+     * replaces the BlockTypeData and PortTypeData singletons.
+     */
+    Architecture load(File architectureFile, File lookupDumpFile) throws IOException {
+        File entry = this.getEntry(architectureFile, lookupDumpFile);
+        if(!entry.exists()) {
+            return null;
+        }
+
+        try(ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(entry)))) {
+            return (Architecture) in.readObject();
+
+        } catch(ClassNotFoundException | ClassCastException | IOException error) {
+            // The entry was written by an incompatible version, or is corrupt
+            Files.deleteIfExists(entry.toPath());
+            return null;
+        }
+    }
+
+    void store(Architecture architecture, File architectureFile, File lookupDumpFile) throws IOException {
+        if(!this.directory.exists()) {
+            Files.createDirectories(this.directory.toPath());
+        }
+
+        // Write to a temporary file first, so that concurrent runs
+        // never see a partially written entry
+        File entry = this.getEntry(architectureFile, lookupDumpFile);
+        File tmpEntry = File.createTempFile("arch", ".tmp", this.directory);
+
+        try(ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmpEntry)))) {
+            out.writeObject(architecture);
+        }
+
+        Files.move(tmpEntry.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+
+    private File getEntry(File architectureFile, File lookupDumpFile) throws IOException {
+        return new File(this.directory, this.hash(architectureFile, lookupDumpFile) + EXTENSION);
+    }
+
+    private String hash(File architectureFile, File lookupDumpFile) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch(NoSuchAlgorithmException error) {
+            throw new IOException(error);
+        }
+
+        digest.update(("version " + VERSION + "\n").getBytes(StandardCharsets.US_ASCII));
+        this.update(digest, architectureFile);
+
+        if(lookupDumpFile == null) {
+            digest.update("no delay tables\n".getBytes(StandardCharsets.US_ASCII));
+        } else {
+            digest.update("delay tables\n".getBytes(StandardCharsets.US_ASCII));
+            this.update(digest, lookupDumpFile);
+        }
+
+        StringBuilder hash = new StringBuilder();
+        for(byte b : digest.digest()) {
+            hash.append(String.format("%02x", b));
+        }
+        return hash.toString();
+    }
+
+    private void update(MessageDigest digest, File file) throws IOException {
+        byte[] buffer = new byte[1 << 16];
+        try(InputStream in = new FileInputStream(file)) {
+            int read;
+            while((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+    }
+}
@@ -1,9 +1,12 @@
 package route.circuit.architecture;
 
+import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Map;
 
-public class DelayMap {
+public class DelayMap implements Serializable {
+	private static final long serialVersionUID = -2374826304470613916L;
+	
 	private Map<Long, Float> delayMap;
 	
 	public DelayMap() {
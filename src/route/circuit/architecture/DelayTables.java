@@ -4,6 +4,8 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -17,7 +19,7 @@ public class DelayTables implements Serializable {
 
     private boolean dummyTables = false;
     private transient File file;
-    private List<List<Float>>
+    private transient List<List<Float>>
             ioToIo = new ArrayList<>(),
             ioToClb = new ArrayList<>(),
             clbToIo = new ArrayList<>(),
@@ -93,6 +95,46 @@ public class DelayTables implements Serializable {
         }
     }
 
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+
+        this.writeMatrix(out, this.clbToClb);
+        this.writeMatrix(out, this.ioToClb);
+        this.writeMatrix(out, this.clbToIo);
+        this.writeMatrix(out, this.ioToIo);
+    }
+    private void writeMatrix(ObjectOutputStream out, List<List<Float>> matrix) throws IOException {
+        out.writeInt(matrix.size());
+        for(List<Float> row : matrix) {
+            out.writeInt(row.size());
+            for(Float delay : row) {
+                out.writeFloat(delay);
+            }
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws ClassNotFoundException, IOException {
+        in.defaultReadObject();
+
+        this.clbToClb = this.readMatrix(in);
+        this.ioToClb = this.readMatrix(in);
+        this.clbToIo = this.readMatrix(in);
+        this.ioToIo = this.readMatrix(in);
+    }
+    private List<List<Float>> readMatrix(ObjectInputStream in) throws IOException {
+        int numRows = in.readInt();
+        List<List<Float>> matrix = new ArrayList<>(numRows);
+        for(int y = 0; y < numRows; y++) {
+            int numColumns = in.readInt();
+            List<Float> row = new ArrayList<>(numColumns);
+            for(int x = 0; x < numColumns; x++) {
+                row.add(in.readFloat());
+            }
+            matrix.add(row);
+        }
+        return matrix;
+    }
+
     private List<List<Float>> getTable(BlockCategory fromCategory, BlockCategory toCategory) {
         if(fromCategory == BlockCategory.IO) {
             if(toCategory == BlockCategory.IO) {
@@ -1,9 +1,7 @@
 package route.circuit.io;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -20,6 +18,8 @@ import route.circuit.block.AbstractBlock;
 import route.circuit.block.GlobalBlock;
 import route.circuit.block.LeafBlock;
 import route.circuit.block.LocalBlock;
+import route.circuit.io.NetTokenizer.Symbol;
+import route.circuit.io.NetTokenizer.Token;
 import route.circuit.pin.AbstractPin;
 import route.circuit.pin.GlobalPin;
 
@@ -28,15 +28,15 @@ public class NetParser {
     //private Circuit circuit;
     private Architecture architecture;
     private String circuitName;
-    private BufferedReader reader;
+    private NetTokenizer tokenizer;
 
     private Map<BlockType, List<AbstractBlock>> blocks;
 
     // blockStack is a LinkedList because we want to be able to peekLast()
     private LinkedList<AbstractBlock> blockStack;
     private Stack<TupleBlockMap> inputsStack;
-    private Stack<Map<String, String>> outputsStack;
-    private Stack<Map<String, String>> clocksStack;
+    private Stack<Map<String, Symbol[]>> outputsStack;
+    private Stack<Map<String, Symbol[]>> clocksStack;
 
     private Map<String, AbstractPin> sourcePins;
 
@@ -47,7 +47,7 @@ public class NetParser {
     public NetParser(Architecture architecture, String circuitName, File file) throws FileNotFoundException {
         this.architecture = architecture;
         this.circuitName = circuitName;
-        this.reader = new BufferedReader(new FileReader(file));
+        this.tokenizer = new NetTokenizer(file);
     }
 
 
@@ -62,8 +62,8 @@ public class NetParser {
         // processed.
         this.blockStack = new LinkedList<AbstractBlock>();
         this.inputsStack = new Stack<TupleBlockMap>();
-        this.outputsStack = new Stack<Map<String, String>>();
-        this.clocksStack = new Stack<Map<String, String>>();
+        this.outputsStack = new Stack<Map<String, Symbol[]>>();
+        this.clocksStack = new Stack<Map<String, Symbol[]>>();
 
 
         // sourcePins contains the names of the outputs of leaf blocks and
@@ -73,60 +73,40 @@ public class NetParser {
         this.sourcePins = new HashMap<String, AbstractPin>();
 
 
-        String line, multiLine = "";
-
-        while ((line = this.reader.readLine()) != null) {
-            String trimmedLine = line.trim();
-
-            // Add the current line to the multiLine
-            if(multiLine.length() > 0) {
-                multiLine += " ";
-            }
-            multiLine += trimmedLine;
-
-            if(!this.isCompleteLine(multiLine)) {
-                continue;
-            }
-
-
-
-            String lineStart = multiLine.substring(0, 5);
-
-            switch(lineStart) {
-            case "<inpu":
-                this.processInputLine(multiLine);
+        Token token;
+        while((token = this.tokenizer.next()) != Token.EOF) {
+            switch(token) {
+            case INPUTS:
+                this.currentPortType = PortDirection.INPUT;
                 break;
 
-
-            case "<outp":
-                this.processOutputLine(multiLine);
+            case OUTPUTS:
+                this.currentPortType = PortDirection.OUTPUT;
                 break;
 
-            case "<cloc":
-                this.processClockLine(multiLine);
+            case CLOCKS:
+                this.currentPortType = PortDirection.CLOCK;
                 break;
 
-
-            case "<port":
-                this.processPortLine(multiLine);
+            case PORT:
+                this.processPort();
                 break;
 
-
-            case "<bloc":
-                if(!multiLine.substring(multiLine.length() - 2).equals("/>")) {
-                    this.processBlockLine(multiLine);
-                }
+            case BLOCK_START:
+                this.processBlock();
                 break;
 
-
-            case "</blo":
+            case BLOCK_END:
                 this.processBlockEndLine();
                 break;
-            }
 
-            multiLine = "";
+            default:
+                break;
+            }
         }
 
+        this.tokenizer.close();
+
 
         Circuit circuit = new Circuit(this.circuitName, this.architecture, this.blocks);
         circuit.initializeData();
@@ -135,103 +115,46 @@ public class NetParser {
     }
 
 
-    private boolean isCompleteLine(String line) {
-        int lineLength = line.length();
-
-        // The line is empty
-        if(lineLength == 0) {
-            return false;
-        }
-
-
-        // The line doesn't end with a ">" character
-        if(!line.substring(lineLength - 1).equals(">")) {
-            return false;
-        }
-
-        // The line is a port line, but not all ports are on this line
-        if(lineLength >= 7
-                && line.substring(0, 5).equals("<port")
-                && !line.substring(lineLength - 7).equals("</port>")) {
-            return false;
-        }
-
-        return true;
-    }
-
-
-
-    @SuppressWarnings("unused")
-    private void processInputLine(String line) {
-        this.currentPortType = PortDirection.INPUT;
-    }
-
-    @SuppressWarnings("unused")
-    private void processOutputLine(String line) {
-        this.currentPortType = PortDirection.OUTPUT;
-    }
-
-    @SuppressWarnings("unused")
-    private void processClockLine(String line) {
-        this.currentPortType = PortDirection.CLOCK;
-    }
-
-
-    private void processPortLine(String line) {
+    private void processPort() {
 
         // This is a clock port
         if(this.currentPortType == null) {
             return;
         }
 
-        int nameStart = 12;
-        int nameEnd = line.indexOf("\"", 12);
-        String name = line.substring(nameStart, nameEnd);
-
-        int portsStart = nameEnd + 2;
-        int portsEnd = line.length() - 7;
-        String ports = line.substring(portsStart, portsEnd);
+        String name = this.tokenizer.getPortName().getValue();
+        Symbol[] nets = this.tokenizer.getNets();
 
         switch(this.currentPortType) {
             case INPUT:
-                this.inputsStack.peek().getMap().put(name, ports);
+                this.inputsStack.peek().getMap().put(name, nets);
                 break;
 
             case OUTPUT:
-                this.outputsStack.peek().put(name, ports);
+                this.outputsStack.peek().put(name, nets);
                 break;
 
             case CLOCK:
-                this.clocksStack.peek().put(name, ports);
+                this.clocksStack.peek().put(name, nets);
                 break;
         }
     }
 
 
-    private void processBlockLine(String line) {
+    private void processBlock() {
 
-        int nameStart = 13;
-        int nameEnd = line.indexOf("\"", nameStart);
-        String name = line.substring(nameStart, nameEnd);
-
-        int typeStart = nameEnd + 12;
-        int typeEnd = line.indexOf("[", typeStart);
-        String type = line.substring(typeStart, typeEnd);
+        String name = this.tokenizer.getBlockName();
+        String type = this.tokenizer.getBlockType().getValue();
 
         // Ignore the top-level block
         if(type.equals("FPGA_packed_netlist")) {
             return;
         }
 
+        int index = this.tokenizer.getBlockIndex();
 
-        int indexStart = typeEnd + 1;
-        int indexEnd = line.indexOf("]", indexStart);
-        int index = Integer.parseInt(line.substring(indexStart, indexEnd));
-
-
-        int modeStart = indexEnd + 9;
-        int modeEnd = line.length() - 2;
-        String mode = modeStart < modeEnd ? line.substring(modeStart, modeEnd) : null;
+        Symbol modeSymbol = this.tokenizer.getBlockMode();
+        String mode = modeSymbol == null ? null : modeSymbol.getValue();
 
 
         BlockType parentBlockType = this.blockStack.isEmpty() ? null : this.blockStack.peek().getType();
@@ -257,8 +180,8 @@ public class NetParser {
 
         this.blockStack.push(newBlock);
         this.inputsStack.push(new TupleBlockMap(newBlock));
-        this.outputsStack.push(new HashMap<String, String>());
-        this.clocksStack.push(new HashMap<String, String>());
+        this.outputsStack.push(new HashMap<String, Symbol[]>());
+        this.clocksStack.push(new HashMap<String, Symbol[]>());
 
 
         if(!this.blocks.containsKey(blockType)) {
@@ -277,10 +200,10 @@ public class NetParser {
                 TupleBlockMap globalTuple = this.inputsStack.pop();
                 AbstractBlock globalBlock = globalTuple.getBlock();
 
-                Map<String, String> inputs = globalTuple.getMap();
+                Map<String, Symbol[]> inputs = globalTuple.getMap();
                 processPortsHashMap(globalBlock, inputs);
 
-                Map<String, String> clocks = this.clocksStack.pop();
+                Map<String, Symbol[]> clocks = this.clocksStack.pop();
                 processPortsHashMap(globalBlock, clocks);
             }
 
@@ -289,7 +212,7 @@ public class NetParser {
             // Remove this block and its outputs from the stacks
             AbstractBlock block = this.blockStack.pop();
 
-            Map<String, String> outputs = this.outputsStack.pop();
+            Map<String, Symbol[]> outputs = this.outputsStack.pop();
             processPortsHashMap(block, outputs);
 
             // Process the inputs of all the children of this block, but
@@ -299,75 +222,51 @@ public class NetParser {
                 TupleBlockMap childTuple = this.inputsStack.pop();
                 AbstractBlock childBlock = childTuple.getBlock();
 
-                Map<String, String> inputs = childTuple.getMap();
+                Map<String, Symbol[]> inputs = childTuple.getMap();
                 processPortsHashMap(childBlock, inputs);
 
-                Map<String, String> clocks = this.clocksStack.pop();
+                Map<String, Symbol[]> clocks = this.clocksStack.pop();
                 processPortsHashMap(childBlock, clocks);
             }
         }
     }
 
-    private void processPortsHashMap(AbstractBlock block, Map<String, String> ports) {
-        for(Map.Entry<String, String> portEntry : ports.entrySet()) {
+    private void processPortsHashMap(AbstractBlock block, Map<String, Symbol[]> ports) {
+        for(Map.Entry<String, Symbol[]> portEntry : ports.entrySet()) {
             String portName = portEntry.getKey();
             PortType portType = new PortType(block.getType(), portName);
             List<AbstractPin> pins = block.getPins(portType);
 
-            String nets = portEntry.getValue();
+            Symbol[] nets = portEntry.getValue();
 
             this.addNets(pins, nets);
         }
     }
 
 
-    private void addNets(List<AbstractPin> sinkPins, String netsString) {
-        //TODO: no regex?
-        String[] nets = netsString.trim().split("\\s+");
-
+    private void addNets(List<AbstractPin> sinkPins, Symbol[] nets) {
         for(int sinkPinIndex = 0; sinkPinIndex < nets.length; sinkPinIndex++) {
             AbstractPin sinkPin = sinkPins.get(sinkPinIndex);
-            String net = nets[sinkPinIndex];
+            Symbol net = nets[sinkPinIndex];
 
             this.addNet(sinkPin, net);
         }
     }
 
 
-    private void addNet(AbstractPin sinkPin, String net) {
-        if(net.equals("open")) {
+    private void addNet(AbstractPin sinkPin, Symbol netSymbol) {
+        if(netSymbol.isOpen()) {
             return;
         }
 
         AbstractBlock sinkBlock = sinkPin.getOwner();
+        String net = netSymbol.getValue();
 
-        int separator = net.lastIndexOf("->");
-
-        if(separator != -1) {
-            int pinIndexEnd = separator - 1;
-            int pinIndexStart = net.lastIndexOf("[", pinIndexEnd) + 1;
-            int sourcePinIndex = Integer.parseInt(net.substring(pinIndexStart, pinIndexEnd));
-
-            int portEnd = pinIndexStart - 1;
-            int portStart = net.lastIndexOf(".", portEnd) + 1;
-            String sourcePortName = net.substring(portStart, portEnd);
-
-
-            int blockIndexEnd = portStart - 2;
-            int blockIndexStart = portStart;
-            int sourceBlockIndex = -1;
-
-            if(net.charAt(blockIndexEnd) == ']') {
-                blockIndexStart = net.lastIndexOf("[", blockIndexEnd) + 1;
-                sourceBlockIndex = Integer.parseInt(net.substring(blockIndexStart, blockIndexEnd));
-            }
-
-            int typeEnd = blockIndexStart - 1;
-            int typeStart = 0;
-            String sourceBlockName = net.substring(typeStart, typeEnd);
-
-            //BlockType sourceBlockType = new BlockType(sourceBlockName);
-            //PortType sourcePortType = new PortType(sourceBlockType, sourcePortName);
+        if(netSymbol.isReference()) {
+            int sourcePinIndex = netSymbol.getSourcePinIndex();
+            String sourcePortName = netSymbol.getSourcePortName();
+            int sourceBlockIndex = netSymbol.getSourceBlockIndex();
+            String sourceBlockName = netSymbol.getSourceBlockName();
 
             // Determine the source block
             AbstractBlock sourceBlock;
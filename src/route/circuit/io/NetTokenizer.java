@@ -0,0 +1,590 @@
+package route.circuit.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Single pass tokenizer for packed .net files. The file is read as a
+ * byte stream through a fixed size buffer. Tag and attribute names are
+ * matched on the raw bytes. Block types, modes and port names come from
+ * the architecture, so there are few of them and they are interned in a
+ * symbol table: each of them is only decoded once. Net names are mostly
+ * unique, so they are decoded every time and not kept by the tokenizer.
+ *
+ * Only the tags the net parser needs are reported: block start and end
+ * tags, the inputs, outputs and clocks sections and the port tags.
+ * Everything else is skipped.
+ */
+public class NetTokenizer {
+
+    public enum Token {BLOCK_START, BLOCK_END, INPUTS, OUTPUTS, CLOCKS, PORT, EOF};
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static final byte[] TAG_BLOCK = bytes("block");
+    private static final byte[] TAG_INPUTS = bytes("inputs");
+    private static final byte[] TAG_OUTPUTS = bytes("outputs");
+    private static final byte[] TAG_CLOCKS = bytes("clocks");
+    private static final byte[] TAG_PORT = bytes("port");
+
+    private static final byte[] ATTRIBUTE_NAME = bytes("name");
+    private static final byte[] ATTRIBUTE_INSTANCE = bytes("instance");
+    private static final byte[] ATTRIBUTE_MODE = bytes("mode");
+
+    private static final byte[] NET_OPEN = bytes("open");
+    private static final Symbol OPEN = new Symbol("open");
+
+    private final InputStream input;
+    private final byte[] buffer;
+    private int position, limit;
+
+    // Scratch space for the tag name, attribute names and values
+    private byte[] scratch;
+    private int scratchSize;
+
+    private final SymbolTable symbols;
+
+    // Attributes of the most recent tag
+    private String blockName;
+    private Symbol blockType;
+    private int blockIndex;
+    private Symbol blockMode;
+    private Symbol portName;
+
+    // Nets of the most recent port tag
+    private Symbol[] nets;
+    private int numNets;
+
+    public NetTokenizer(File file) throws FileNotFoundException {
+        this(new FileInputStream(file));
+    }
+    public NetTokenizer(InputStream input) {
+        this.input = input;
+        this.buffer = new byte[BUFFER_SIZE];
+        this.position = 0;
+        this.limit = 0;
+
+        this.scratch = new byte[256];
+
+        this.symbols = new SymbolTable();
+
+        this.nets = new Symbol[64];
+    }
+
+    public void close() throws IOException {
+        this.input.close();
+    }
+
+
+    /**
+     * Advance to the next tag that is relevant for the parser.
+     */
+    public Token next() throws IOException {
+        while(true) {
+            if(!this.skipTo('<')) {
+                return Token.EOF;
+            }
+            this.position++;
+
+            int c = this.peek();
+            if(c == '?' || c == '!') {
+                this.skipTo('>');
+                continue;
+            }
+
+            boolean endTag = false;
+            if(c == '/') {
+                endTag = true;
+                this.position++;
+            }
+
+            this.scratchSize = 0;
+            this.readName();
+
+            if(endTag) {
+                this.skipTo('>');
+                if(this.scratchEquals(0, this.scratchSize, TAG_BLOCK)) {
+                    return Token.BLOCK_END;
+                }
+                continue;
+            }
+
+            if(this.scratchEquals(0, this.scratchSize, TAG_BLOCK)) {
+                if(this.readBlockAttributes()) {
+                    return Token.BLOCK_START;
+                }
+
+            } else if(this.scratchEquals(0, this.scratchSize, TAG_PORT)) {
+                this.readPort();
+                return Token.PORT;
+
+            } else if(this.scratchEquals(0, this.scratchSize, TAG_INPUTS)) {
+                this.skipTo('>');
+                return Token.INPUTS;
+
+            } else if(this.scratchEquals(0, this.scratchSize, TAG_OUTPUTS)) {
+                this.skipTo('>');
+                return Token.OUTPUTS;
+
+            } else if(this.scratchEquals(0, this.scratchSize, TAG_CLOCKS)) {
+                this.skipTo('>');
+                return Token.CLOCKS;
+
+            } else {
+                this.skipTo('>');
+            }
+        }
+    }
+
+    public String getBlockName() {
+        return this.blockName;
+    }
+    public Symbol getBlockType() {
+        return this.blockType;
+    }
+    public int getBlockIndex() {
+        return this.blockIndex;
+    }
+    public Symbol getBlockMode() {
+        return this.blockMode;
+    }
+
+    public Symbol getPortName() {
+        return this.portName;
+    }
+    public Symbol[] getNets() {
+        return Arrays.copyOf(this.nets, this.numNets);
+    }
+
+
+    /**
+     * Reads the attributes of a block tag. Returns false if the
+     * tag is self-closing: those blocks are unused and ignored.
+     */
+    private boolean readBlockAttributes() throws IOException {
+        this.blockName = null;
+        this.blockType = null;
+        this.blockIndex = -1;
+        this.blockMode = null;
+
+        while(true) {
+            this.skipWhitespace();
+
+            int c = this.peek();
+            if(c == '>') {
+                this.position++;
+                return true;
+
+            } else if(c == '/') {
+                this.skipTo('>');
+                return false;
+
+            } else if(c == -1) {
+                return false;
+            }
+
+            this.scratchSize = 0;
+            this.readName();
+            int nameEnd = this.scratchSize;
+            this.readAttributeValue();
+
+            if(this.scratchEquals(0, nameEnd, ATTRIBUTE_NAME)) {
+                this.blockName = this.decode(nameEnd, this.scratchSize);
+
+            } else if(this.scratchEquals(0, nameEnd, ATTRIBUTE_INSTANCE)) {
+                int bracket = nameEnd;
+                while(bracket < this.scratchSize && this.scratch[bracket] != '[') {
+                    bracket++;
+                }
+                this.blockType = this.symbols.get(this.scratch, nameEnd, bracket);
+                this.blockIndex = parseInt(this.scratch, bracket + 1, this.scratchSize - 1);
+
+            } else if(this.scratchEquals(0, nameEnd, ATTRIBUTE_MODE)) {
+                if(this.scratchSize > nameEnd) {
+                    this.blockMode = this.symbols.get(this.scratch, nameEnd, this.scratchSize);
+                }
+            }
+        }
+    }
+
+    private void readPort() throws IOException {
+        this.portName = null;
+
+        while(true) {
+            this.skipWhitespace();
+
+            int c = this.peek();
+            if(c == '>') {
+                this.position++;
+                break;
+
+            } else if(c == '/') {
+                this.skipTo('>');
+                this.numNets = 0;
+                return;
+
+            } else if(c == -1) {
+                this.numNets = 0;
+                return;
+            }
+
+            this.scratchSize = 0;
+            this.readName();
+            int nameEnd = this.scratchSize;
+            this.readAttributeValue();
+
+            if(this.scratchEquals(0, nameEnd, ATTRIBUTE_NAME)) {
+                this.portName = this.symbols.get(this.scratch, nameEnd, this.scratchSize);
+            }
+        }
+
+        // The nets are separated by whitespace, the port ends with "</port>"
+        this.numNets = 0;
+        while(true) {
+            this.skipWhitespace();
+
+            int c = this.peek();
+            if(c == '<' || c == -1) {
+                break;
+            }
+
+            this.scratchSize = 0;
+            while(true) {
+                c = this.peek();
+                if(c == -1 || c == '<' || isWhitespace(c)) {
+                    break;
+                }
+                this.appendScratch((byte) c);
+                this.position++;
+            }
+
+            if(this.numNets == this.nets.length) {
+                this.nets = Arrays.copyOf(this.nets, this.nets.length * 2);
+            }
+            if(this.scratchEquals(0, this.scratchSize, NET_OPEN)) {
+                this.nets[this.numNets++] = OPEN;
+            } else {
+                this.nets[this.numNets++] = this.newNet(0, this.scratchSize);
+            }
+        }
+
+        this.skipTo('>');
+    }
+
+    private void readName() throws IOException {
+        while(true) {
+            int c = this.peek();
+            if(c == -1 || c == '>' || c == '/' || c == '=' || isWhitespace(c)) {
+                return;
+            }
+            this.appendScratch((byte) c);
+            this.position++;
+        }
+    }
+    private void readAttributeValue() throws IOException {
+        if(!this.skipTo('"')) {
+            return;
+        }
+        this.position++;
+
+        while(true) {
+            int c = this.peek();
+            if(c == -1) {
+                return;
+            }
+            this.position++;
+            if(c == '"') {
+                return;
+            }
+            this.appendScratch((byte) c);
+        }
+    }
+
+
+    private int peek() throws IOException {
+        if(this.position == this.limit && !this.fill()) {
+            return -1;
+        }
+        return this.buffer[this.position] & 0xFF;
+    }
+    private boolean fill() throws IOException {
+        int read = this.input.read(this.buffer, 0, this.buffer.length);
+        if(read <= 0) {
+            this.position = 0;
+            this.limit = 0;
+            return false;
+        }
+
+        this.position = 0;
+        this.limit = read;
+        return true;
+    }
+
+    private boolean skipTo(char target) throws IOException {
+        while(true) {
+            if(this.position == this.limit && !this.fill()) {
+                return false;
+            }
+
+            for(int i = this.position; i < this.limit; i++) {
+                if(this.buffer[i] == target) {
+                    this.position = i;
+                    return true;
+                }
+            }
+            this.position = this.limit;
+        }
+    }
+    private void skipWhitespace() throws IOException {
+        while(true) {
+            int c = this.peek();
+            if(c == -1 || !isWhitespace(c)) {
+                return;
+            }
+            this.position++;
+        }
+    }
+
+    private void appendScratch(byte b) {
+        if(this.scratchSize == this.scratch.length) {
+            this.scratch = Arrays.copyOf(this.scratch, this.scratch.length * 2);
+        }
+        this.scratch[this.scratchSize++] = b;
+    }
+    private boolean scratchEquals(int start, int end, byte[] value) {
+        if(end - start != value.length) {
+            return false;
+        }
+        for(int i = 0; i < value.length; i++) {
+            if(this.scratch[start + i] != value[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    private String decode(int start, int end) {
+        return new String(this.scratch, start, end - start, StandardCharsets.UTF_8);
+    }
+    private int lastIndexOf(byte value, int from) {
+        for(int i = from; i >= 0; i--) {
+            if(this.scratch[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Make a symbol for the net in the scratch space. A reference of the
+     * form "block[index].port[pin]->interconnect" is split up on the raw
+     * bytes, and the port name comes from the symbol table.
+     */
+    private Symbol newNet(int start, int end) {
+        String net = this.decode(start, end);
+
+        int separator = -1;
+        for(int i = end - 2; i >= start; i--) {
+            if(this.scratch[i] == '-' && this.scratch[i + 1] == '>') {
+                separator = i;
+                break;
+            }
+        }
+        if(separator == -1) {
+            return new Symbol(net);
+        }
+
+        int pinIndexEnd = separator - 1;
+        int pinIndexStart = this.lastIndexOf((byte) '[', pinIndexEnd) + 1;
+        int sourcePinIndex = parseInt(this.scratch, pinIndexStart, pinIndexEnd);
+
+        int portEnd = pinIndexStart - 1;
+        int portStart = this.lastIndexOf((byte) '.', portEnd) + 1;
+        String sourcePortName = this.symbols.get(this.scratch, portStart, portEnd).getValue();
+
+        int blockIndexEnd = portStart - 2;
+        int blockIndexStart = portStart;
+        int sourceBlockIndex = -1;
+
+        if(this.scratch[blockIndexEnd] == ']') {
+            blockIndexStart = this.lastIndexOf((byte) '[', blockIndexEnd) + 1;
+            sourceBlockIndex = parseInt(this.scratch, blockIndexStart, blockIndexEnd);
+        }
+
+        int typeEnd = blockIndexStart - 1;
+        String sourceBlockName = this.decode(start, typeEnd);
+
+        return new Symbol(net, sourceBlockName, sourceBlockIndex, sourcePortName, sourcePinIndex);
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+    private static int parseInt(byte[] bytes, int start, int end) {
+        int value = 0;
+        for(int i = start; i < end; i++) {
+            value = value * 10 + (bytes[i] - '0');
+        }
+        return value;
+    }
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+
+
+    /**
+     * A name from the net file. Net names are not interned, so every
+     * occurrence of a net has its own symbol. The tokenizer splits up
+     * net references of the form "block[index].port[pin]->interconnect"
+     * when it makes the symbol.
+     */
+    public static class Symbol {
+        private final String value;
+
+        private final boolean isReference;
+        private final String sourceBlockName, sourcePortName;
+        private final int sourceBlockIndex, sourcePinIndex;
+
+        Symbol(String value) {
+            this.value = value;
+
+            this.isReference = false;
+            this.sourceBlockName = null;
+            this.sourceBlockIndex = -1;
+            this.sourcePortName = null;
+            this.sourcePinIndex = -1;
+        }
+        Symbol(String value, String sourceBlockName, int sourceBlockIndex, String sourcePortName, int sourcePinIndex) {
+            this.value = value;
+
+            this.isReference = true;
+            this.sourceBlockName = sourceBlockName;
+            this.sourceBlockIndex = sourceBlockIndex;
+            this.sourcePortName = sourcePortName;
+            this.sourcePinIndex = sourcePinIndex;
+        }
+
+        public String getValue() {
+            return this.value;
+        }
+
+        public boolean isOpen() {
+            return this.value.equals("open");
+        }
+
+        public boolean isReference() {
+            return this.isReference;
+        }
+        public String getSourceBlockName() {
+            return this.sourceBlockName;
+        }
+        public int getSourceBlockIndex() {
+            return this.sourceBlockIndex;
+        }
+        public String getSourcePortName() {
+            return this.sourcePortName;
+        }
+        public int getSourcePinIndex() {
+            return this.sourcePinIndex;
+        }
+
+        @Override
+        public String toString() {
+            return this.value;
+        }
+    }
+
+
+    /**
+     * Open addressing hash table that maps byte sequences on symbols,
+     * without creating a String for sequences that are already known.
+     */
+    private static class SymbolTable {
+        private byte[][] keys;
+        private int[] hashes;
+        private Symbol[] values;
+        private int size;
+
+        SymbolTable() {
+            this.keys = new byte[1024][];
+            this.hashes = new int[1024];
+            this.values = new Symbol[1024];
+            this.size = 0;
+        }
+
+        Symbol get(byte[] bytes, int start, int end) {
+            int hash = hash(bytes, start, end);
+            int mask = this.keys.length - 1;
+
+            int slot = hash & mask;
+            while(this.keys[slot] != null) {
+                if(this.hashes[slot] == hash && equals(this.keys[slot], bytes, start, end)) {
+                    return this.values[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+
+            byte[] key = Arrays.copyOfRange(bytes, start, end);
+            Symbol symbol = new Symbol(new String(key, StandardCharsets.UTF_8));
+
+            this.keys[slot] = key;
+            this.hashes[slot] = hash;
+            this.values[slot] = symbol;
+            this.size++;
+
+            if(2 * this.size > this.keys.length) {
+                this.grow();
+            }
+
+            return symbol;
+        }
+
+        private void grow() {
+            byte[][] oldKeys = this.keys;
+            int[] oldHashes = this.hashes;
+            Symbol[] oldValues = this.values;
+
+            int capacity = oldKeys.length * 2;
+            this.keys = new byte[capacity][];
+            this.hashes = new int[capacity];
+            this.values = new Symbol[capacity];
+
+            int mask = capacity - 1;
+            for(int i = 0; i < oldKeys.length; i++) {
+                if(oldKeys[i] != null) {
+                    int slot = oldHashes[i] & mask;
+                    while(this.keys[slot] != null) {
+                        slot = (slot + 1) & mask;
+                    }
+                    this.keys[slot] = oldKeys[i];
+                    this.hashes[slot] = oldHashes[i];
+                    this.values[slot] = oldValues[i];
+                }
+            }
+        }
+
+        private static int hash(byte[] bytes, int start, int end) {
+            int hash = 0;
+            for(int i = start; i < end; i++) {
+                hash = 31 * hash + bytes[i];
+            }
+            return hash ^ (hash >>> 16);
+        }
+        private static boolean equals(byte[] key, byte[] bytes, int start, int end) {
+            if(key.length != end - start) {
+                return false;
+            }
+            for(int i = 0; i < key.length; i++) {
+                if(key[i] != bytes[start + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
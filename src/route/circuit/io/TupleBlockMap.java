@@ -4,17 +4,18 @@ import java.util.HashMap;
 import java.util.Map;
 
 import route.circuit.block.AbstractBlock;
+import route.circuit.io.NetTokenizer.Symbol;
 
 class TupleBlockMap {
 
     private AbstractBlock block;
-    private Map<String, String> map;
+    private Map<String, Symbol[]> map;
 
     TupleBlockMap(AbstractBlock block) {
-        this(block, new HashMap<String, String>());
+        this(block, new HashMap<String, Symbol[]>());
     }
 
-    TupleBlockMap(AbstractBlock block, Map<String, String> map) {
+    TupleBlockMap(AbstractBlock block, Map<String, Symbol[]> map) {
         this.block = block;
         this.map = map;
     }
@@ -23,7 +24,7 @@ class TupleBlockMap {
         return this.block;
     }
 
-    Map<String, String> getMap() {
+    Map<String, Symbol[]> getMap() {
         return this.map;
     }
 }
@@ -1,6 +1,7 @@
 package route.circuit.resource;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -30,6 +31,8 @@ public class ResourceGraph {
 	
 	private final Map<RouteNodeType, List<RouteNode>> routeNodeMap;
 	
+	private RouteNodeStore nodeStore;
+	
 	private static int SOURCE_COST_INDEX = 0;
 	private static int SINK_COST_INDEX = 1;
 	private static int OPIN_COST_INDEX = 2;
@@ -468,6 +471,29 @@ public class ResourceGraph {
 		this.routeNodes.add(routeNode);
 		this.routeNodeMap.get(routeNode.type).add(routeNode);
 	}
+	
+	/**
+	 * Copy the immutable attributes of all the route nodes to an
+	 * off-heap store. If backingFile is null the store is allocated
+	 * in direct memory, otherwise the file is memory-mapped.
+	 */
+	public void buildNodeStore(File backingFile) throws IOException {
+		if(backingFile == null) {
+			this.nodeStore = new RouteNodeStore(this.routeNodes.size());
+		} else {
+			this.nodeStore = new RouteNodeStore(this.routeNodes.size(), backingFile);
+		}
+		
+		for(RouteNode node : this.routeNodes) {
+			this.nodeStore.put(node);
+		}
+	}
+	public boolean hasNodeStore() {
+		return this.nodeStore != null;
+	}
+	public RouteNodeStore getNodeStore() {
+		return this.nodeStore;
+	}
 	public List<RouteNode> getRouteNodes() {
 		return this.routeNodes;
 	}
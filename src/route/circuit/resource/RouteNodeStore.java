@@ -0,0 +1,169 @@
+package route.circuit.resource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Off-heap store for the immutable attributes of the route nodes. It
+ * is only built with --off_heap_rrg or --off_heap_rrg_file, after the
+ * RRG has been read. The router keeps reading the fields of the nodes,
+ * which stay on the heap, so the store is a flat copy of the graph
+ * for code that wants to scan the attributes of very large devices
+ * without touching the node objects.
+ *
+ * Every node occupies a fixed-stride record, so the attributes of
+ * node i are found at offset i * RECORD_SIZE. The records are spread
+ * over chunks of at most NODES_PER_CHUNK nodes to stay below the 2GB
+ * limit of a single ByteBuffer. The chunks are either direct buffers
+ * or regions of a memory-mapped file.
+ *
+ * Record layout (little endian):
+ *   0  short xlow      2  short xhigh
+ *   4  short ylow      6  short yhigh
+ *   8  short n        10  short capacity
+ *  12  byte  type     13  byte  flags       14  short (padding)
+ *  16  float centerx  20  float centery
+ *  24  float r        28  float c
+ *  32  float base_cost
+ */
+public class RouteNodeStore {
+
+	public static final int RECORD_SIZE = 36;
+
+	private static final int CHUNK_SHIFT = 20;
+	private static final int NODES_PER_CHUNK = 1 << CHUNK_SHIFT;
+	private static final int CHUNK_MASK = NODES_PER_CHUNK - 1;
+
+	private static final int XLOW = 0, XHIGH = 2, YLOW = 4, YHIGH = 6;
+	private static final int N = 8, CAPACITY = 10;
+	private static final int TYPE = 12, FLAGS = 13;
+	private static final int CENTERX = 16, CENTERY = 20;
+	private static final int R = 24, C = 28;
+	private static final int BASE_COST = 32;
+
+	private static final byte FLAG_WIRE = 0x01;
+
+	private static final RouteNodeType[] TYPES = RouteNodeType.values();
+
+	private final int numNodes;
+	private final ByteBuffer[] chunks;
+
+	/**
+	 * Allocate the records in direct (off-heap) memory.
+	 */
+	public RouteNodeStore(int numNodes) {
+		this.numNodes = numNodes;
+		this.chunks = new ByteBuffer[numChunks(numNodes)];
+
+		for(int i = 0; i < this.chunks.length; i++) {
+			ByteBuffer chunk = ByteBuffer.allocateDirect(this.chunkSize(i) * RECORD_SIZE);
+			chunk.order(ByteOrder.LITTLE_ENDIAN);
+			this.chunks[i] = chunk;
+		}
+	}
+
+	/**
+	 * Map the records on a file. The pages are managed by the
+	 * operating system, so the store can be larger than the
+	 * available memory.
+	 */
+	public RouteNodeStore(int numNodes, File backingFile) throws IOException {
+		this.numNodes = numNodes;
+		this.chunks = new ByteBuffer[numChunks(numNodes)];
+
+		try(RandomAccessFile file = new RandomAccessFile(backingFile, "rw")) {
+			file.setLength((long) numNodes * RECORD_SIZE);
+			FileChannel channel = file.getChannel();
+
+			for(int i = 0; i < this.chunks.length; i++) {
+				long position = (long) i * NODES_PER_CHUNK * RECORD_SIZE;
+				ByteBuffer chunk = channel.map(FileChannel.MapMode.READ_WRITE, position, (long) this.chunkSize(i) * RECORD_SIZE);
+				chunk.order(ByteOrder.LITTLE_ENDIAN);
+				this.chunks[i] = chunk;
+			}
+		}
+	}
+
+	private static int numChunks(int numNodes) {
+		return (numNodes + NODES_PER_CHUNK - 1) >> CHUNK_SHIFT;
+	}
+	private int chunkSize(int chunkIndex) {
+		return Math.min(NODES_PER_CHUNK, this.numNodes - chunkIndex * NODES_PER_CHUNK);
+	}
+
+	public int numNodes() {
+		return this.numNodes;
+	}
+
+	public void put(RouteNode node) {
+		ByteBuffer chunk = this.chunk(node.index);
+		int offset = offset(node.index);
+
+		chunk.putShort(offset + XLOW, node.xlow);
+		chunk.putShort(offset + XHIGH, node.xhigh);
+		chunk.putShort(offset + YLOW, node.ylow);
+		chunk.putShort(offset + YHIGH, node.yhigh);
+		chunk.putShort(offset + N, node.n);
+		chunk.putShort(offset + CAPACITY, node.capacity);
+
+		chunk.put(offset + TYPE, (byte) node.type.ordinal());
+		chunk.put(offset + FLAGS, node.isWire ? FLAG_WIRE : 0);
+
+		chunk.putFloat(offset + CENTERX, node.centerx);
+		chunk.putFloat(offset + CENTERY, node.centery);
+		chunk.putFloat(offset + R, node.r);
+		chunk.putFloat(offset + C, node.c);
+		chunk.putFloat(offset + BASE_COST, node.base_cost);
+	}
+
+	private ByteBuffer chunk(int index) {
+		return this.chunks[index >> CHUNK_SHIFT];
+	}
+	private static int offset(int index) {
+		return (index & CHUNK_MASK) * RECORD_SIZE;
+	}
+
+	public short xlow(int index) {
+		return this.chunk(index).getShort(offset(index) + XLOW);
+	}
+	public short xhigh(int index) {
+		return this.chunk(index).getShort(offset(index) + XHIGH);
+	}
+	public short ylow(int index) {
+		return this.chunk(index).getShort(offset(index) + YLOW);
+	}
+	public short yhigh(int index) {
+		return this.chunk(index).getShort(offset(index) + YHIGH);
+	}
+	public short n(int index) {
+		return this.chunk(index).getShort(offset(index) + N);
+	}
+	public short capacity(int index) {
+		return this.chunk(index).getShort(offset(index) + CAPACITY);
+	}
+	public RouteNodeType type(int index) {
+		return TYPES[this.chunk(index).get(offset(index) + TYPE)];
+	}
+	public boolean isWire(int index) {
+		return (this.chunk(index).get(offset(index) + FLAGS) & FLAG_WIRE) != 0;
+	}
+	public float centerx(int index) {
+		return this.chunk(index).getFloat(offset(index) + CENTERX);
+	}
+	public float centery(int index) {
+		return this.chunk(index).getFloat(offset(index) + CENTERY);
+	}
+	public float r(int index) {
+		return this.chunk(index).getFloat(offset(index) + R);
+	}
+	public float c(int index) {
+		return this.chunk(index).getFloat(offset(index) + C);
+	}
+	public float baseCost(int index) {
+		return this.chunk(index).getFloat(offset(index) + BASE_COST);
+	}
+}
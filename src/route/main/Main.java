@@ -6,6 +6,7 @@ import java.io.IOException;
 
 import route.circuit.Circuit;
 import route.circuit.architecture.Architecture;
+import route.circuit.architecture.ArchitectureCache;
 import route.circuit.architecture.BlockCategory;
 import route.circuit.architecture.BlockType;
 import route.circuit.exceptions.InvalidFileFormatException;
@@ -32,6 +33,11 @@ public class Main {
 	private String circuitName;
 	private File architectureFile, blifFile, netFile, placeFile, lookupDumpFile, sdcFile, rrgFile;
 	
+	private File architectureCacheDirectory;
+	
+	private boolean offHeapRRG;
+	private File offHeapRRGFile;
+	
 	private Circuit circuit;
 
 	public Main(Logger logger, String[] arguments) {
@@ -50,6 +56,13 @@ public class Main {
  				this.lookupDumpFile = new File(arguments[++i]);
 			} else if(arguments[i].contains("rr_graph_file")) {
 				this.rrgFile = new File(arguments[++i]);
+			} else if(arguments[i].contains("architecture_cache")) {
+				this.architectureCacheDirectory = new File(arguments[++i]);
+			} else if(arguments[i].contains("off_heap_rrg_file")) {
+				this.offHeapRRG = true;
+				this.offHeapRRGFile = new File(arguments[++i]);
+			} else if(arguments[i].contains("off_heap_rrg")) {
+				this.offHeapRRG = true;
 			}
 		}
 		
@@ -67,6 +80,10 @@ public class Main {
 		
 		this.loadCircuit();
 		
+		if(this.offHeapRRG) {
+			this.buildNodeStore();
+		}
+		
 		this.readPlaceFile();
 		
 		this.circuit.getTimingGraph().initializeTiming();
@@ -102,11 +119,35 @@ public class Main {
     			this.netFile,
     			this.sdcFile,
     			this.rrgFile);
-    	try {
-    		architecture.parse();
-    		architecture.getVprTiming(this.lookupDumpFile);
-    	} catch(IOException | InvalidFileFormatException | InterruptedException | ParserConfigurationException | SAXException error) {
-    		this.logger.raise("Failed to parse architecture file or delay tables", error);
+    	ArchitectureCache cache = null;
+    	if(this.architectureCacheDirectory != null) {
+    		cache = new ArchitectureCache(this.architectureCacheDirectory);
+    	}
+    	
+    	boolean cached = false;
+    	if(cache != null) {
+    		try {
+    			cached = architecture.loadFromCache(cache, this.lookupDumpFile);
+    		} catch(IOException error) {
+    			System.err.println("Failed to read the architecture cache: " + error.getMessage());
+    		}
+    	}
+    	
+    	if(!cached) {
+    		try {
+    			architecture.parse();
+    			architecture.getVprTiming(this.lookupDumpFile);
+    		} catch(IOException | InvalidFileFormatException | InterruptedException | ParserConfigurationException | SAXException error) {
+    			this.logger.raise("Failed to parse architecture file or delay tables", error);
+    		}
+    		
+    		if(cache != null) {
+    			try {
+    				architecture.storeInCache(cache, this.lookupDumpFile);
+    			} catch(IOException error) {
+    				System.err.println("Failed to write the architecture cache: " + error.getMessage());
+    			}
+    		}
     	}
 
     	// Parse net file
@@ -121,6 +162,13 @@ public class Main {
     	this.detaildGlobalBlockInformation();
     	this.printNumBlocks();
     }
+    private void buildNodeStore() {
+    	try {
+    		this.circuit.getResourceGraph().buildNodeStore(this.offHeapRRGFile);
+    	} catch(IOException error) {
+    		this.logger.raise("Failed to create the off-heap route node store", error);
+    	}
+    }
     private void readPlaceFile() {
         // Read the place file
         if(this.placeFile != null){